@@ -0,0 +1,118 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.benchmarks;
+
+import uk.ac.ed.ph.jacomax.MaximaConfiguration;
+import uk.ac.ed.ph.jacomax.MaximaConfiguration.ProcessIoMode;
+import uk.ac.ed.ph.jacomax.MaximaInteractiveProcess;
+import uk.ac.ed.ph.jacomax.MaximaProcessLauncher;
+import uk.ac.ed.ph.jacomax.MaximaTimeoutException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end benchmarks for {@link MaximaInteractiveProcess}, running against a
+ * {@link FakeMaxima} so that we measure the overhead of Jacomax rather than Maxima itself.
+ * <p>
+ * <code>callLatency</code> reports latency percentiles for a single call,
+ * <code>callThroughput</code> reports the number of calls per second that can be made
+ * on a single process and <code>startup</code> reports the time taken to launch a new
+ * process and wait for its first input prompt. (The latter is dominated by JVM startup
+ * for the {@link FakeMaxima}, so is mainly useful for comparing I/O modes.)
+ *
+ * @author David McKain
+ */
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+@State(Scope.Thread)
+public class EndToEndBenchmark {
+
+    @Param({ "THREAD_POOL", "DEDICATED_READER" })
+    public ProcessIoMode processIoMode;
+
+    /** Size of the result of each call, with 0 meaning a tiny result */
+    @Param({ "0", "100000" })
+    public int outputSize;
+
+    /** Time taken by {@link FakeMaxima} to evaluate each call */
+    @Param({ "0" })
+    public long delayMillis;
+
+    private MaximaProcessLauncher launcher;
+    private MaximaInteractiveProcess process;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final MaximaConfiguration configuration = FakeMaxima.createConfiguration(delayMillis, outputSize);
+        configuration.setProcessIoMode(processIoMode);
+        launcher = new MaximaProcessLauncher(configuration);
+        process = launcher.launchInteractiveProcess();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        process.terminate();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String callLatency() throws MaximaTimeoutException {
+        return process.executeCall("1;");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String callThroughput() throws MaximaTimeoutException {
+        return process.executeCall("1;");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int startup() {
+        return launcher.launchInteractiveProcess().terminate();
+    }
+}
@@ -0,0 +1,220 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.benchmarks;
+
+import uk.ac.ed.ph.jacomax.MaximaConfiguration;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A very simple stand-in for Maxima, which can be used to benchmark the Jacomax machinery
+ * for talking to Maxima without needing Maxima to be installed.
+ * <p>
+ * This reads Maxima statements from STDIN and behaves just enough like Maxima to satisfy
+ * Jacomax: it outputs input prompts, evaluates any statement ending with <code>;</code> by
+ * outputting an output prompt followed by the statement itself (or a large result, if
+ * configured) and handles the <code>print()</code> calls used to generate call terminators.
+ * Lisp calls and statements ending with <code>$</code> generate no output. It exits when it
+ * reads <code>quit();</code> or reaches the end of its input.
+ * <p>
+ * The following arguments are supported:
+ * <ul>
+ *   <li><code>--delay=millis</code>: time taken to "evaluate" each statement (default 0)</li>
+ *   <li><code>--output-size=chars</code>: size of the result of each <code>;</code>
+ *     statement (default 0, meaning the statement itself is output)</li>
+ *   <li><code>--startup-delay=millis</code>: time taken to start up (default 0)</li>
+ * </ul>
+ * Use {@link #createConfiguration(long, int)} to create a {@link MaximaConfiguration}
+ * that will launch this in a new JVM.
+ *
+ * @author David McKain
+ */
+public final class FakeMaxima {
+
+    /** Maxima's default line length, used for splitting long results */
+    private static final int LINE_LENGTH = 79;
+
+    private static final Pattern PRINT_PATTERN = Pattern.compile("print\\(\"(.*?)\"\\)");
+
+    private final long delayMillis;
+    private final String largeResult;
+    private final PrintWriter stdout;
+    private int inputNumber;
+
+    public FakeMaxima(final long delayMillis, final int outputSize, final PrintWriter stdout) {
+        this.delayMillis = delayMillis;
+        this.stdout = stdout;
+        this.inputNumber = 1;
+        if (outputSize > 0) {
+            final StringBuilder resultBuilder = new StringBuilder(outputSize);
+            for (int i=0; i<outputSize; i++) {
+                resultBuilder.append((char) ('0' + i % 10));
+            }
+            this.largeResult = resultBuilder.toString();
+        }
+        else {
+            this.largeResult = null;
+        }
+    }
+
+    /**
+     * Creates a {@link MaximaConfiguration} that will run a {@link FakeMaxima} in a new
+     * JVM, using the current JVM's executable and class path.
+     */
+    public static MaximaConfiguration createConfiguration(final long delayMillis, final int outputSize) {
+        final MaximaConfiguration configuration = new MaximaConfiguration();
+        configuration.setMaximaExecutablePath(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        configuration.setMaximaCommandArguments(new String[] {
+                "-XX:TieredStopAtLevel=1",
+                "-cp",
+                System.getProperty("java.class.path"),
+                FakeMaxima.class.getName(),
+                "--delay=" + delayMillis,
+                "--output-size=" + outputSize
+        });
+        configuration.setMaximaCharset("UTF-8");
+        return configuration;
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        long delayMillis = 0;
+        long startupDelayMillis = 0;
+        int outputSize = 0;
+        for (final String arg : args) {
+            if (arg.startsWith("--delay=")) {
+                delayMillis = Long.parseLong(arg.substring("--delay=".length()));
+            }
+            else if (arg.startsWith("--output-size=")) {
+                outputSize = Integer.parseInt(arg.substring("--output-size=".length()));
+            }
+            else if (arg.startsWith("--startup-delay=")) {
+                startupDelayMillis = Long.parseLong(arg.substring("--startup-delay=".length()));
+            }
+            else {
+                System.err.println("Unsupported argument " + arg);
+                System.exit(1);
+            }
+        }
+        if (startupDelayMillis > 0) {
+            Thread.sleep(startupDelayMillis);
+        }
+        final PrintWriter stdout = new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"));
+        final BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+        new FakeMaxima(delayMillis, outputSize, stdout).run(stdin);
+    }
+
+    public void run(final BufferedReader stdin) throws IOException, InterruptedException {
+        stdout.print("Fake Maxima for Jacomax benchmarking\n");
+        printInputPrompt();
+        String line;
+        while ((line = stdin.readLine()) != null) {
+            if (line.trim().startsWith(":lisp")) {
+                printInputPrompt();
+                continue;
+            }
+            for (final String statement : splitStatements(line)) {
+                if (statement.startsWith("quit()")) {
+                    stdout.flush();
+                    return;
+                }
+                evaluate(statement);
+                printInputPrompt();
+            }
+        }
+        stdout.flush();
+    }
+
+    private void evaluate(final String statement) throws InterruptedException {
+        final Matcher printMatcher = PRINT_PATTERN.matcher(statement);
+        if (printMatcher.find()) {
+            /* (This is used for generating call terminators, so we don't delay here) */
+            stdout.print(printMatcher.group(1));
+            stdout.print(" \n");
+            return;
+        }
+        if (delayMillis > 0) {
+            Thread.sleep(delayMillis);
+        }
+        if (statement.endsWith(";")) {
+            final String result = largeResult!=null ? largeResult : statement.substring(0, statement.length() - 1);
+            printOutput("(%o" + inputNumber + ") " + result);
+        }
+    }
+
+    /**
+     * Prints the given output line, splitting it up with backslashes in the same way as
+     * Maxima does for long linear outputs.
+     */
+    private void printOutput(final String output) {
+        int position = 0;
+        while (output.length() - position > LINE_LENGTH) {
+            stdout.append(output, position, position + LINE_LENGTH - 1).append("\\\n");
+            position += LINE_LENGTH - 1;
+        }
+        stdout.append(output, position, output.length()).append('\n');
+    }
+
+    private void printInputPrompt() {
+        stdout.print("(%i" + inputNumber++ + ") ");
+        stdout.flush();
+    }
+
+    /**
+     * Splits the given line into statements ending with <code>;</code> or <code>$</code>,
+     * ignoring any such characters within strings.
+     */
+    static List<String> splitStatements(final String line) {
+        final List<String> result = new ArrayList<String>();
+        boolean isInString = false;
+        int statementStart = 0;
+        for (int i=0; i<line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c=='"') {
+                isInString ^= true;
+            }
+            else if (!isInString && (c==';' || c=='$')) {
+                final String statement = line.substring(statementStart, i + 1).trim();
+                if (statement.length() > 1) {
+                    result.add(statement);
+                }
+                statementStart = i + 1;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.benchmarks;
+
+import uk.ac.ed.ph.jacomax.internal.InteractiveCallOutputHandler;
+import uk.ac.ed.ph.jacomax.internal.MaximaProcessController;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link InteractiveCallOutputHandler} (and hence the decoding done by its
+ * superclass) by replaying recorded outputs of interactive calls through it.
+ * <p>
+ * The recordings can be scaled up to test larger outputs, and are replayed in chunks of
+ * different sizes so that chunk boundaries fall in different places. Using UTF-16LE forces
+ * the handler to decode everything, rather than scanning bytes.
+ * Run with <code>-prof gc</code> to see allocation rates.
+ *
+ * @author David McKain
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Thread)
+public class OutputHandlingBenchmark {
+
+    @Param({ "simple-call", "list-call", "tex-call" })
+    public String recording;
+
+    @Param({ "1", "100" })
+    public int scale;
+
+    @Param({ "7", "1024" })
+    public int chunkSize;
+
+    @Param({ "UTF-8", "UTF-16LE" })
+    public String charsetName;
+
+    private byte[] outputBytes;
+    private byte[] chunk;
+    private ByteBuffer decodingByteBuffer;
+    private CharBuffer decodingCharBuffer;
+    private CharsetDecoder decoder;
+    private InteractiveCallOutputHandler discardingOutputHandler;
+
+    @Setup
+    public void setup() throws IOException {
+        final Charset charset = Charset.forName(charsetName);
+        outputBytes = Recordings.scaleCallRecording(Recordings.load(recording), scale).getBytes(charset.name());
+        chunk = new byte[chunkSize];
+        decodingByteBuffer = ByteBuffer.allocate(MaximaProcessController.OUTPUT_BUFFER_SIZE);
+        decodingCharBuffer = CharBuffer.allocate(MaximaProcessController.OUTPUT_BUFFER_SIZE);
+        decoder = charset.newDecoder();
+        discardingOutputHandler = new InteractiveCallOutputHandler((Appendable) null, Recordings.CALL_TERMINATOR_OUTPUT,
+                decodingByteBuffer, decodingCharBuffer, decoder);
+    }
+
+    /**
+     * Handles the output as {@link uk.ac.ed.ph.jacomax.MaximaInteractiveProcess#executeCall(String)} does.
+     */
+    @Benchmark
+    public String callOutput() throws IOException {
+        final StringBuilder outputBuilder = new StringBuilder();
+        final InteractiveCallOutputHandler outputHandler = new InteractiveCallOutputHandler(outputBuilder,
+                Recordings.CALL_TERMINATOR_OUTPUT, decodingByteBuffer, decodingCharBuffer, decoder);
+        Recordings.replay(outputHandler, outputBytes, chunk, false);
+        return outputBuilder.toString();
+    }
+
+    /**
+     * Handles the output as {@link uk.ac.ed.ph.jacomax.MaximaInteractiveProcess#executeCallDiscardOutput(String)} does.
+     */
+    @Benchmark
+    public boolean callOutputDiscarded() throws IOException {
+        return Recordings.replay(discardingOutputHandler, outputBytes, chunk, false);
+    }
+}
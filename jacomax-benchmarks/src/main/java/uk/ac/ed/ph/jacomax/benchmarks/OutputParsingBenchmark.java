@@ -0,0 +1,136 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.benchmarks;
+
+import uk.ac.ed.ph.jacomax.internal.InteractiveCallOutputHandler;
+import uk.ac.ed.ph.jacomax.utilities.MaximaOutputUtilities;
+import uk.ac.ed.ph.jacomax.utilities.SingleLinearOutput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the parsing methods in {@link MaximaOutputUtilities} on the raw outputs
+ * of recorded interactive calls.
+ * <p>
+ * The <code>...Regex</code> benchmarks measure the previous regular expression based
+ * implementations of these methods, for comparison.
+ *
+ * @author David McKain
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Thread)
+public class OutputParsingBenchmark {
+
+    @Param({ "simple-call", "list-call", "tex-call" })
+    public String recording;
+
+    @Param({ "1", "100" })
+    public int scale;
+
+    /** Raw call output, as returned by executeCall() */
+    private String rawOutput;
+
+    /** Raw linear result, as passed to parseLinearResult() */
+    private String rawResult;
+
+    @Setup
+    public void setup() throws IOException {
+        /* Work out what executeCall() would have returned for this recording */
+        final Charset charset = Charset.forName("UTF-8");
+        final byte[] outputBytes = Recordings.scaleCallRecording(Recordings.load(recording), scale).getBytes(charset.name());
+        final StringBuilder outputBuilder = new StringBuilder();
+        Recordings.replay(new InteractiveCallOutputHandler(outputBuilder, Recordings.CALL_TERMINATOR_OUTPUT,
+                ByteBuffer.allocate(1024), CharBuffer.allocate(1024), charset.newDecoder()),
+                outputBytes, new byte[1024], false);
+        rawOutput = outputBuilder.toString();
+
+        /* Extract the raw linear result from the (last) output prompt */
+        rawResult = rawOutput.substring(rawOutput.lastIndexOf("(%o")).replaceFirst("^\\(%o\\d+\\) ", "").trim();
+    }
+
+    @Benchmark
+    public String stripIntermediateInputPrompts() {
+        return MaximaOutputUtilities.stripIntermediateInputPrompts(rawOutput);
+    }
+
+    @Benchmark
+    public SingleLinearOutput parseSingleLinearOutput() {
+        return MaximaOutputUtilities.parseSingleLinearOutput(rawOutput);
+    }
+
+    @Benchmark
+    public List<SingleLinearOutput> parseMultipleLinearOutputs() {
+        return MaximaOutputUtilities.parseMultipleLinearOutputs(rawOutput);
+    }
+
+    @Benchmark
+    public String parseLinearResult() {
+        return MaximaOutputUtilities.parseLinearResult(rawResult);
+    }
+
+    @Benchmark
+    public String stripIntermediateInputPromptsRegex() {
+        return rawOutput.replaceAll("\\(\\Q" + MaximaOutputUtilities.DEFAULT_INCHAR + "\\E\\d+\\)", "");
+    }
+
+    @Benchmark
+    public SingleLinearOutput parseSingleLinearOutputRegex() {
+        final String withoutInputPrompts = stripIntermediateInputPromptsRegex();
+        final Pattern extractPattern = Pattern.compile("(?sm)(.*?)(\\(\\Q" + MaximaOutputUtilities.DEFAULT_OUTCHAR + "\\E\\d+\\))\\s*(.*?)\\s*");
+        final Matcher matcher = extractPattern.matcher(withoutInputPrompts);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new SingleLinearOutput(matcher.group(1), matcher.group(2),
+                MaximaOutputUtilities.parseLinearResult(matcher.group(3)));
+    }
+}
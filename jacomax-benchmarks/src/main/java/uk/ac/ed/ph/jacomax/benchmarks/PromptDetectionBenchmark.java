@@ -0,0 +1,118 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.benchmarks;
+
+import uk.ac.ed.ph.jacomax.internal.InteractiveCallOutputHandler;
+import uk.ac.ed.ph.jacomax.internal.InteractiveStartupOutputHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the detection of input prompts by {@link InteractiveStartupOutputHandler} and
+ * {@link InteractiveCallOutputHandler} when output is being discarded.
+ * <p>
+ * Each operation feeds a complete Maxima output through the handler in chunks, as if it had
+ * been read from Maxima. Run this with <code>-prof gc</code> to check that no allocations
+ * are made per chunk, i.e. that <code>gc.alloc.rate.norm</code> is (close to) zero.
+ *
+ * @author David McKain
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+@State(Scope.Thread)
+public class PromptDetectionBenchmark {
+
+    private static final String STARTUP_OUTPUT = "Maxima 5.45.1 https://maxima.sourceforge.io\n"
+        + "using Lisp SBCL 2.1.11.debian\n"
+        + "Distributed under the GNU Public License. See the file COPYING.\n"
+        + "Dedicated to the memory of William Schelter.\n"
+        + "The function bug_report() provides bug reporting information.\n"
+        + "(%i1) ";
+
+    @Param({ "UTF-8", "UTF-16LE" })
+    public String charsetName;
+
+    @Param({ "16", "1024" })
+    public int chunkSize;
+
+    private byte[] startupOutputBytes;
+    private byte[] callOutputBytes;
+    private byte[] chunk;
+    private InteractiveStartupOutputHandler startupOutputHandler;
+    private InteractiveCallOutputHandler callOutputHandler;
+
+    @Setup
+    public void setup() throws IOException {
+        final Charset charset = Charset.forName(charsetName);
+        final StringBuilder callOutputBuilder = new StringBuilder();
+        for (int i=2; i<22; i++) {
+            callOutputBuilder.append("(%o").append(i).append(") [")
+                .append(i).append(", ").append(i * i).append(", ").append(i * i * i)
+                .append("]\n");
+        }
+        callOutputBuilder.append("(%i22) ").append(Recordings.CALL_TERMINATOR_OUTPUT).append(" \n(%i23) ");
+
+        startupOutputBytes = STARTUP_OUTPUT.getBytes(charset.name());
+        callOutputBytes = callOutputBuilder.toString().getBytes(charset.name());
+        chunk = new byte[chunkSize];
+        startupOutputHandler = new InteractiveStartupOutputHandler(ByteBuffer.allocate(1024),
+                CharBuffer.allocate(1024), charset.newDecoder());
+        callOutputHandler = new InteractiveCallOutputHandler((Appendable) null, Recordings.CALL_TERMINATOR_OUTPUT,
+                ByteBuffer.allocate(1024), CharBuffer.allocate(1024), charset.newDecoder());
+    }
+
+    @Benchmark
+    public boolean startupOutput() throws IOException {
+        return Recordings.replay(startupOutputHandler, startupOutputBytes, chunk, false);
+    }
+
+    @Benchmark
+    public boolean callOutputDiscarded() throws IOException {
+        return Recordings.replay(callOutputHandler, callOutputBytes, chunk, false);
+    }
+}
@@ -0,0 +1,126 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.benchmarks;
+
+import uk.ac.ed.ph.jacomax.internal.MaximaOutputHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Helpers for loading the recorded Maxima outputs used by the benchmarks, and for replaying
+ * them through {@link MaximaOutputHandler}s.
+ * <p>
+ * The recordings are stored (in UTF-8) as resources under <code>recordings/</code>. Each
+ * "call" recording is the output of an interactive call, starting just after the input
+ * prompt preceding it and ending with the input prompt after the call terminator line.
+ *
+ * @author David McKain
+ */
+final class Recordings {
+
+    /** Terminator used by MaximaInteractiveProcessImpl, which the call recordings use */
+    static final String CALL_TERMINATOR_OUTPUT = "JACOMAX-INTERACTIVE-CALL-OUTPUT-TERMINATOR";
+
+    private Recordings() {
+        /* (Static helpers only) */
+    }
+
+    /**
+     * Loads the recording having the given name.
+     */
+    static String load(final String name) throws IOException {
+        final InputStream recordingStream = Recordings.class.getResourceAsStream("recordings/" + name + ".out");
+        if (recordingStream==null) {
+            throw new IllegalArgumentException("No recording called " + name);
+        }
+        try {
+            final ByteArrayOutputStream resultStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int count;
+            while ((count = recordingStream.read(buffer)) != -1) {
+                resultStream.write(buffer, 0, count);
+            }
+            return resultStream.toString("UTF-8");
+        }
+        finally {
+            recordingStream.close();
+        }
+    }
+
+    /**
+     * Makes a larger version of the given call recording by repeating the output that comes
+     * before the terminator line the given number of times.
+     */
+    static String scaleCallRecording(final String callRecording, final int scale) {
+        final int terminatorLineStart = callRecording.lastIndexOf('\n', callRecording.indexOf(CALL_TERMINATOR_OUTPUT)) + 1;
+        final String callOutput = callRecording.substring(0, terminatorLineStart);
+        final StringBuilder resultBuilder = new StringBuilder(callRecording.length() * scale);
+        for (int i=0; i<scale; i++) {
+            resultBuilder.append(callOutput);
+        }
+        return resultBuilder.append(callRecording, terminatorLineStart, callRecording.length()).toString();
+    }
+
+    /**
+     * Makes a larger version of the given recording by simply repeating it.
+     */
+    static String scaleRecording(final String recording, final int scale) {
+        final StringBuilder resultBuilder = new StringBuilder(recording.length() * scale);
+        for (int i=0; i<scale; i++) {
+            resultBuilder.append(recording);
+        }
+        return resultBuilder.toString();
+    }
+
+    /**
+     * Replays the given Maxima output through the given handler, feeding it in chunks of the
+     * same size as the given chunk buffer, as if they had been read from Maxima.
+     *
+     * @return final result of {@link MaximaOutputHandler#handleOutput(byte[], int, boolean)}
+     */
+    static boolean replay(final MaximaOutputHandler handler, final byte[] output, final byte[] chunk,
+            final boolean endWithEof)
+            throws IOException {
+        boolean finished = false;
+        int length;
+        handler.callStarting();
+        for (int position=0; position<output.length; position+=chunk.length) {
+            length = Math.min(chunk.length, output.length - position);
+            System.arraycopy(output, position, chunk, 0, length);
+            finished = handler.handleOutput(chunk, length, endWithEof && position + length==output.length);
+        }
+        handler.callFinished();
+        if (!finished) {
+            throw new IllegalStateException("Handler did not finish at end of output");
+        }
+        return finished;
+    }
+}
@@ -0,0 +1,371 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import uk.ac.ed.ph.jacomax.internal.Assert;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps an existing {@link MaximaInteractiveProcess}, adding the ability to cache the outputs
+ * of calls in a {@link MaximaCallCache}.
+ * <p>
+ * Caching is opt-in: only calls made via {@link #executeCacheableCall(String)} (and friends)
+ * will use the cache. All other methods simply delegate to the underlying process. You should
+ * only mark calls as cacheable if their output depends only on their input, and not on any
+ * state built up within the Maxima session. (E.g. <code>string(expand((x+1)^2));</code> is fine,
+ * but <code>string(f(x));</code> is not if <code>f</code> is defined by earlier calls.) Cached
+ * calls are not sent to Maxima, so they have no side effects within the session either.
+ * <p>
+ * Cached outputs are returned exactly as Maxima originally generated them, so any output
+ * labels (e.g. <code>(%o5)</code>) will be those of the original call. Use the methods in
+ * {@link uk.ac.ed.ph.jacomax.utilities.MaximaOutputUtilities}, which don't care about the
+ * label numbers, to parse them.
+ * <p>
+ * Calls are cached using a normalised form of their input, with leading and trailing whitespace
+ * removed and other runs of whitespace outside strings collapsed to a single space.
+ * <p>
+ * A single {@link MaximaCallCache} may be shared by many instances of this class.
+ * Like {@link MaximaInteractiveProcess}, an instance of this class should only be used
+ * by one thread at a time.
+ *
+ * @see MemoryMaximaCallCache
+ *
+ * @author David McKain
+ */
+public final class CachingMaximaInteractiveProcess implements MaximaInteractiveProcess {
+
+    private final MaximaInteractiveProcess underlyingProcess;
+    private final MaximaCallCache callCache;
+
+    public CachingMaximaInteractiveProcess(final MaximaInteractiveProcess underlyingProcess,
+            final MaximaCallCache callCache) {
+        Assert.notNull(underlyingProcess, "underlyingProcess");
+        Assert.notNull(callCache, "callCache");
+        this.underlyingProcess = underlyingProcess;
+        this.callCache = callCache;
+    }
+
+    /**
+     * Returns the underlying {@link MaximaInteractiveProcess}, e.g. for returning to
+     * a {@link MaximaProcessPool}.
+     */
+    public MaximaInteractiveProcess getUnderlyingProcess() {
+        return underlyingProcess;
+    }
+
+    public MaximaCallCache getCallCache() {
+        return callCache;
+    }
+
+    //-------------------------------------------------------------------
+
+    /**
+     * Version of {@link #executeCall(String)} that returns the cached output for the given
+     * input if there is one, and otherwise executes the call and caches its output.
+     *
+     * @throws IllegalArgumentException if maximaInput is null or does not appear to
+     *   have been terminated correctly
+     * @throws MaximaTimeoutException if the call is not cached and times out
+     * @throws MaximaProcessTerminatedException if the underlying Maxima process has
+     *   already been terminated, even if the output of the call is cached
+     */
+    public String executeCacheableCall(final String maximaInput)
+            throws MaximaTimeoutException {
+        return executeCacheableCall(maximaInput, getDefaultCallTimeout(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Version of {@link #executeCacheableCall(String)} that uses the given timeout instead
+     * of the current default.
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    public String executeCacheableCall(final String maximaInput, final int callTimeout)
+            throws MaximaTimeoutException {
+        return executeCacheableCall(maximaInput, callTimeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Version of {@link #executeCacheableCall(String, int)} that takes the timeout in the
+     * given {@link TimeUnit}.
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    public String executeCacheableCall(final String maximaInput, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        Assert.notNull(maximaInput, "maximaInput");
+        if (underlyingProcess.isTerminated()) {
+            throw new MaximaProcessTerminatedException();
+        }
+        final String cacheKey = normaliseCallInput(maximaInput);
+        String output = callCache.getCachedOutput(cacheKey);
+        if (output==null) {
+            /* (Failed calls throw, so only successful outputs are cached) */
+            output = underlyingProcess.executeCall(maximaInput, callTimeout, unit);
+            callCache.cacheOutput(cacheKey, output);
+        }
+        return output;
+    }
+
+    /**
+     * Normalises the given call input into the form used for cache keys. Leading and trailing
+     * whitespace is removed, and any other runs of whitespace outside strings are replaced
+     * by a single space.
+     */
+    public static String normaliseCallInput(final String maximaInput) {
+        final String trimmed = maximaInput.trim();
+        final int length = trimmed.length();
+        StringBuilder result = null;
+        boolean inString = false;
+        for (int i=0; i<length; i++) {
+            final char c = trimmed.charAt(i);
+            if (inString) {
+                if (c=='\\') {
+                    /* (Skip escaped character, if any) */
+                    if (result!=null) {
+                        result.append(c);
+                        if (i+1 < length) {
+                            result.append(trimmed.charAt(i+1));
+                        }
+                    }
+                    i++;
+                    continue;
+                }
+                else if (c=='"') {
+                    inString = false;
+                }
+            }
+            else if (c=='"') {
+                inString = true;
+            }
+            else if (Character.isWhitespace(c)) {
+                int runEnd = i + 1;
+                while (runEnd < length && Character.isWhitespace(trimmed.charAt(runEnd))) {
+                    runEnd++;
+                }
+                if (c!=' ' || runEnd > i + 1) {
+                    /* (Need to rewrite this run, so start building result if not already done) */
+                    if (result==null) {
+                        result = new StringBuilder(length).append(trimmed, 0, i);
+                    }
+                }
+                if (result!=null) {
+                    result.append(' ');
+                }
+                i = runEnd - 1;
+                continue;
+            }
+            if (result!=null) {
+                result.append(c);
+            }
+        }
+        return result!=null ? result.toString() : trimmed;
+    }
+
+    //-------------------------------------------------------------------
+
+    public int getDefaultCallTimeout() {
+        return underlyingProcess.getDefaultCallTimeout();
+    }
+
+    public void setDefaultCallTimeout(final int defaultCallTimeout) {
+        underlyingProcess.setDefaultCallTimeout(defaultCallTimeout);
+    }
+
+    public long getDefaultCallTimeout(final TimeUnit unit) {
+        return underlyingProcess.getDefaultCallTimeout(unit);
+    }
+
+    public void setDefaultCallTimeout(final long defaultCallTimeout, final TimeUnit unit) {
+        underlyingProcess.setDefaultCallTimeout(defaultCallTimeout, unit);
+    }
+
+    public String executeCall(final String maximaInput)
+            throws MaximaTimeoutException {
+        return underlyingProcess.executeCall(maximaInput);
+    }
+
+    public String executeCall(final String maximaInput, final int callTimeout)
+            throws MaximaTimeoutException {
+        return underlyingProcess.executeCall(maximaInput, callTimeout);
+    }
+
+    public String executeCall(final String maximaInput, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        return underlyingProcess.executeCall(maximaInput, callTimeout, unit);
+    }
+
+    public void executeCall(final String maximaInput, final Appendable output)
+            throws MaximaTimeoutException {
+        underlyingProcess.executeCall(maximaInput, output);
+    }
+
+    public void executeCall(final String maximaInput, final Appendable output, final int callTimeout)
+            throws MaximaTimeoutException {
+        underlyingProcess.executeCall(maximaInput, output, callTimeout);
+    }
+
+    public void executeCall(final String maximaInput, final Appendable output, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        underlyingProcess.executeCall(maximaInput, output, callTimeout, unit);
+    }
+
+    public void executeCallDiscardOutput(final String maximaInput)
+            throws MaximaTimeoutException {
+        underlyingProcess.executeCallDiscardOutput(maximaInput);
+    }
+
+    public void executeCallDiscardOutput(final String maximaInput, final int callTimeout)
+            throws MaximaTimeoutException {
+        underlyingProcess.executeCallDiscardOutput(maximaInput, callTimeout);
+    }
+
+    public void executeCallDiscardOutput(final String maximaInput, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        underlyingProcess.executeCallDiscardOutput(maximaInput, callTimeout, unit);
+    }
+
+    public List<String> executeCalls(final List<String> maximaInputs)
+            throws MaximaTimeoutException {
+        return underlyingProcess.executeCalls(maximaInputs);
+    }
+
+    public List<String> executeCalls(final List<String> maximaInputs, final int callTimeout)
+            throws MaximaTimeoutException {
+        return underlyingProcess.executeCalls(maximaInputs, callTimeout);
+    }
+
+    public List<String> executeCalls(final List<String> maximaInputs, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        return underlyingProcess.executeCalls(maximaInputs, callTimeout, unit);
+    }
+
+    public void executeCallsDiscardOutput(final List<String> maximaInputs)
+            throws MaximaTimeoutException {
+        underlyingProcess.executeCallsDiscardOutput(maximaInputs);
+    }
+
+    public void executeCallsDiscardOutput(final List<String> maximaInputs, final int callTimeout)
+            throws MaximaTimeoutException {
+        underlyingProcess.executeCallsDiscardOutput(maximaInputs, callTimeout);
+    }
+
+    public void executeCallsDiscardOutput(final List<String> maximaInputs, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        underlyingProcess.executeCallsDiscardOutput(maximaInputs, callTimeout, unit);
+    }
+
+    public CompletableFuture<String> executeCallAsync(final String maximaInput) {
+        return underlyingProcess.executeCallAsync(maximaInput);
+    }
+
+    public CompletableFuture<String> executeCallAsync(final String maximaInput, final int callTimeout) {
+        return underlyingProcess.executeCallAsync(maximaInput, callTimeout);
+    }
+
+    public CompletableFuture<String> executeCallAsync(final String maximaInput, final long callTimeout, final TimeUnit unit) {
+        return underlyingProcess.executeCallAsync(maximaInput, callTimeout, unit);
+    }
+
+    public CompletableFuture<Void> executeCallDiscardOutputAsync(final String maximaInput) {
+        return underlyingProcess.executeCallDiscardOutputAsync(maximaInput);
+    }
+
+    public CompletableFuture<Void> executeCallDiscardOutputAsync(final String maximaInput, final int callTimeout) {
+        return underlyingProcess.executeCallDiscardOutputAsync(maximaInput, callTimeout);
+    }
+
+    public CompletableFuture<Void> executeCallDiscardOutputAsync(final String maximaInput, final long callTimeout, final TimeUnit unit) {
+        return underlyingProcess.executeCallDiscardOutputAsync(maximaInput, callTimeout, unit);
+    }
+
+    public void softReset()
+            throws MaximaTimeoutException {
+        underlyingProcess.softReset();
+    }
+
+    public MaximaSessionSnapshot saveSessionSnapshot(final File snapshotFile)
+            throws MaximaTimeoutException {
+        return underlyingProcess.saveSessionSnapshot(snapshotFile);
+    }
+
+    public MaximaSessionSnapshot saveSessionSnapshot(final File snapshotFile, final int callTimeout)
+            throws MaximaTimeoutException {
+        return underlyingProcess.saveSessionSnapshot(snapshotFile, callTimeout);
+    }
+
+    public MaximaSessionSnapshot saveSessionSnapshot(final File snapshotFile, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        return underlyingProcess.saveSessionSnapshot(snapshotFile, callTimeout, unit);
+    }
+
+    public MaximaMetrics getMetrics() {
+        return underlyingProcess.getMetrics();
+    }
+
+    public MaximaProcessUsage getUsage() {
+        return underlyingProcess.getUsage();
+    }
+
+    public boolean isTerminated() {
+        return underlyingProcess.isTerminated();
+    }
+
+    public MaximaTerminationReason getTerminationReason() {
+        return underlyingProcess.getTerminationReason();
+    }
+
+    public boolean isAlive() {
+        return underlyingProcess.isAlive();
+    }
+
+    public boolean ping(final long timeout, final TimeUnit unit) {
+        return underlyingProcess.ping(timeout, unit);
+    }
+
+    public int terminate() {
+        return underlyingProcess.terminate();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+            + "(underlyingProcess=" + underlyingProcess
+            + ",callCache=" + callCache
+            + ")";
+    }
+}
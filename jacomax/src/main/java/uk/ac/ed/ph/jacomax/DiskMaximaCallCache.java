@@ -0,0 +1,345 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import uk.ac.ed.ph.jacomax.internal.Assert;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent implementation of {@link MaximaCallCache} that stores outputs in a file, so that
+ * they survive restarts of the JVM.
+ * <p>
+ * Outputs are appended to the file as they are cached, and an index of their positions
+ * is held in memory and rebuilt from the file when it is opened. Each output is keyed on a
+ * SHA-256 hash of the call input and a fingerprint of the {@link MaximaConfiguration} used
+ * to generate it (see {@link #createConfigurationFingerprint(MaximaConfiguration)}), so
+ * outputs from one Maxima setup are never returned to another, even if they share a file.
+ * If the JVM dies while writing, any incomplete final entry is discarded when the
+ * file is next opened.
+ * <p>
+ * The file is not bounded in size, and re-caching an existing output simply appends
+ * a new copy of it, so call {@link #clear()} if it gets too big. Only one instance of this
+ * class (in one JVM) should use a particular file at any time.
+ * <p>
+ * An instance of this class is safe for use by multiple threads. Call {@link #close()} once
+ * you have finished with it.
+ *
+ * @author David McKain
+ */
+public final class DiskMaximaCallCache implements MaximaCallCache, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskMaximaCallCache.class);
+
+    /** Bytes written at the start of each cache file, including a format version number */
+    private static final byte[] FILE_HEADER = "JACOMAX-CALL-CACHE-1\n".getBytes(Charset.forName("US-ASCII"));
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int KEY_LENGTH = 32;
+
+    private final File file;
+    private final String configurationFingerprint;
+    private final RandomAccessFile randomAccessFile;
+
+    /** Maps hex keys to the position and length of each cached output in the file */
+    private final Map<String, long[]> index;
+
+    /** Length of the valid part of the file, where the next output will be appended */
+    private long fileLength;
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Opens (or creates) a cache in the given file for outputs generated using the given
+     * {@link MaximaConfiguration}.
+     *
+     * @throws JacomaxRuntimeException if the file could not be opened or read, or is not
+     *   a cache file.
+     */
+    public DiskMaximaCallCache(final File file, final MaximaConfiguration maximaConfiguration) {
+        Assert.notNull(file, "file");
+        Assert.notNull(maximaConfiguration, "maximaConfiguration");
+        this.file = file;
+        this.configurationFingerprint = createConfigurationFingerprint(maximaConfiguration);
+        this.index = new HashMap<String, long[]>();
+        try {
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+        }
+        catch (final IOException e) {
+            throw new JacomaxRuntimeException("Could not open cache file " + file, e);
+        }
+        try {
+            loadIndex();
+        }
+        catch (final IOException e) {
+            closeQuietly();
+            throw new JacomaxRuntimeException("Could not read cache file " + file, e);
+        }
+        catch (final RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getConfigurationFingerprint() {
+        return configurationFingerprint;
+    }
+
+    public synchronized String getCachedOutput(final String callInput) {
+        Assert.notNull(callInput, "callInput");
+        ensureOpen();
+        final long[] location = index.get(toHex(createKey(callInput)));
+        if (location==null) {
+            missCount++;
+            return null;
+        }
+        final byte[] outputBytes = new byte[(int) location[1]];
+        try {
+            randomAccessFile.seek(location[0]);
+            randomAccessFile.readFully(outputBytes);
+        }
+        catch (final IOException e) {
+            throw new JacomaxRuntimeException("Could not read from cache file " + file, e);
+        }
+        hitCount++;
+        return new String(outputBytes, UTF8);
+    }
+
+    public synchronized void cacheOutput(final String callInput, final String output) {
+        Assert.notNull(callInput, "callInput");
+        Assert.notNull(output, "output");
+        ensureOpen();
+        final byte[] keyBytes = createKey(callInput);
+        final byte[] outputBytes = output.getBytes(UTF8);
+        final CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(outputBytes);
+
+        /* Each entry is: key, output length, output, CRC of key and output */
+        final ByteBuffer entry = ByteBuffer.allocate(KEY_LENGTH + 4 + outputBytes.length + 4);
+        entry.put(keyBytes).putInt(outputBytes.length).put(outputBytes).putInt((int) crc.getValue());
+        try {
+            randomAccessFile.seek(fileLength);
+            randomAccessFile.write(entry.array());
+        }
+        catch (final IOException e) {
+            throw new JacomaxRuntimeException("Could not write to cache file " + file, e);
+        }
+        index.put(toHex(keyBytes), new long[] { fileLength + KEY_LENGTH + 4, outputBytes.length });
+        fileLength += entry.capacity();
+    }
+
+    public synchronized void clear() {
+        ensureOpen();
+        try {
+            randomAccessFile.setLength(FILE_HEADER.length);
+        }
+        catch (final IOException e) {
+            throw new JacomaxRuntimeException("Could not truncate cache file " + file, e);
+        }
+        index.clear();
+        fileLength = FILE_HEADER.length;
+    }
+
+    public synchronized MaximaCallCacheStatistics getStatistics() {
+        return new MaximaCallCacheStatistics(hitCount, missCount, 0L, 0L, index.size());
+    }
+
+    /**
+     * Closes the underlying file. This cache can no longer be used after this has been called.
+     */
+    public synchronized void close() throws IOException {
+        randomAccessFile.close();
+        index.clear();
+    }
+
+    //-------------------------------------------------------------------
+
+    /**
+     * Creates a fingerprint of the parts of the given {@link MaximaConfiguration} that
+     * affect the outputs of Maxima calls, namely the path to the Maxima executable, its
+     * command arguments, the character set used to communicate with it and the path to the
+     * Lisp image used to launch it (if set).
+     */
+    public static String createConfigurationFingerprint(final MaximaConfiguration maximaConfiguration) {
+        final MessageDigest digest = createDigest();
+        updateDigest(digest, maximaConfiguration.getMaximaExecutablePath());
+        final String[] commandArguments = maximaConfiguration.getMaximaCommandArguments();
+        if (commandArguments!=null) {
+            for (final String commandArgument : commandArguments) {
+                updateDigest(digest, commandArgument);
+            }
+        }
+        final String charset = maximaConfiguration.getMaximaCharset();
+        updateDigest(digest, charset!=null ? charset : MaximaProcessLauncher.DEFAULT_MAXIMA_CHARSET);
+        final String imagePath = maximaConfiguration.getMaximaImagePath();
+        if (imagePath!=null) {
+            updateDigest(digest, imagePath);
+        }
+        return toHex(digest.digest());
+    }
+
+    private byte[] createKey(final String callInput) {
+        final MessageDigest digest = createDigest();
+        updateDigest(digest, configurationFingerprint);
+        updateDigest(digest, callInput);
+        return digest.digest();
+    }
+
+    private void loadIndex() throws IOException {
+        fileLength = randomAccessFile.length();
+        if (fileLength==0L) {
+            randomAccessFile.write(FILE_HEADER);
+            fileLength = FILE_HEADER.length;
+            return;
+        }
+        final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        long validLength;
+        try {
+            final byte[] header = new byte[FILE_HEADER.length];
+            try {
+                inputStream.readFully(header);
+            }
+            catch (final EOFException e) {
+                /* (Handled below) */
+            }
+            if (!Arrays.equals(header, FILE_HEADER)) {
+                throw new JacomaxRuntimeException("File " + file + " is not a Maxima call cache file");
+            }
+            validLength = FILE_HEADER.length;
+            final byte[] keyBytes = new byte[KEY_LENGTH];
+            final CRC32 crc = new CRC32();
+            while (validLength < fileLength) {
+                try {
+                    inputStream.readFully(keyBytes);
+                    final int outputLength = inputStream.readInt();
+                    if (outputLength < 0 || outputLength > fileLength - validLength) {
+                        break;
+                    }
+                    final byte[] outputBytes = new byte[outputLength];
+                    inputStream.readFully(outputBytes);
+                    final int expectedCrc = inputStream.readInt();
+                    crc.reset();
+                    crc.update(keyBytes);
+                    crc.update(outputBytes);
+                    if ((int) crc.getValue()!=expectedCrc) {
+                        break;
+                    }
+                    index.put(toHex(keyBytes), new long[] { validLength + KEY_LENGTH + 4, outputLength });
+                    validLength += KEY_LENGTH + 4 + outputLength + 4;
+                }
+                catch (final EOFException e) {
+                    break;
+                }
+            }
+        }
+        finally {
+            inputStream.close();
+        }
+        if (validLength < fileLength) {
+            logger.warn("Discarding {} bytes of incomplete or corrupt data at the end of cache file {}",
+                    Long.valueOf(fileLength - validLength), file);
+            randomAccessFile.setLength(validLength);
+            fileLength = validLength;
+        }
+        logger.debug("Loaded {} cached outputs from {}", Integer.valueOf(index.size()), file);
+    }
+
+    private void ensureOpen() {
+        if (!randomAccessFile.getChannel().isOpen()) {
+            throw new IllegalStateException("Cache file " + file + " has been closed");
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            randomAccessFile.close();
+        }
+        catch (final IOException e) {
+            logger.warn("Could not close cache file {}", file, e);
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new JacomaxLogicException("SHA-256 should always be supported", e);
+        }
+    }
+
+    private static void updateDigest(final MessageDigest digest, final String value) {
+        if (value!=null) {
+            digest.update(value.getBytes(UTF8));
+        }
+        /* (Separate values so that different splits of the same characters give different digests) */
+        digest.update((byte) 0);
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+            + "(file=" + file
+            + ",configurationFingerprint=" + configurationFingerprint
+            + ")";
+    }
+}
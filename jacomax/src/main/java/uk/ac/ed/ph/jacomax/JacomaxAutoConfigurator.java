@@ -28,9 +28,20 @@
  */
 package uk.ac.ed.ph.jacomax;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -64,6 +75,16 @@ public final class JacomaxAutoConfigurator {
         "/usr/local/bin/maxima"
     };
 
+    /** Folders to search for Lisp runtimes on Linux, after the bin folder of the Maxima install itself */
+    private static final String[] LINUX_LISP_RUNTIME_FOLDERS = {
+        "/usr/bin",
+        "/usr/local/bin"
+    };
+
+    /** Matches plain <code>NAME=value</code> lines in the <code>maxima</code> script that we need to read */
+    private static final Pattern MAXIMA_SCRIPT_SETTING_PATTERN
+        = Pattern.compile("\\s*(MAXIMA_VERSION|MAXIMA_DEFAULT_LISP)=(\"([^\"$`]+)\"|([^\\s\"'$`;]+))\\s*;?\\s*");
+
     private static final String[] MAC_OS_X_EXECUTABLE_PATHS = {
         "/Applications/Maxima.app/Contents/Resources/maxima.sh", /* (Newer releases of Maxima) */
         "/Applications/Maxima.app/Contents/Resources/bin/maxima", /* (Older releases of Maxima) */
@@ -113,7 +134,11 @@ public final class JacomaxAutoConfigurator {
         else {
             /* We'll try common paths for Unix-like systems */
             logger.trace("Looking for Maxima at the following Unixy locations: {}", Arrays.toString(UNIX_EXECUTABLE_PATHS));
-            result.setMaximaExecutablePath(findExecutable(UNIX_EXECUTABLE_PATHS));
+            final String executablePath = findExecutable(UNIX_EXECUTABLE_PATHS);
+            result.setMaximaExecutablePath(executablePath);
+            if (executablePath!=null && "Linux".equals(osName)) {
+                findLinuxLispRuntime(result, new File(executablePath));
+            }
         }
 
         if (result.getMaximaExecutablePath()==null) {
@@ -206,4 +231,176 @@ public final class JacomaxAutoConfigurator {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Tries to change the given {@link MaximaConfiguration} to run the Lisp runtime underlying
+     * the given <code>maxima</code> script directly, rather than running the script itself.
+     * <p>
+     * This is similar to what we do on Windows, and has the same benefits: Maxima starts up a bit
+     * more quickly, and there's no script process in between Jacomax and Lisp, which would leave Lisp
+     * running if the script got killed.
+     * <p>
+     * We only do this when we can be sure we'll run the same Maxima as the script would: we use the
+     * version and default Lisp written into the script, honour any MAXIMA_LISP environment variable,
+     * and only support SBCL, CLISP and GCL. If the user has a <code>maximarc</code> file (which
+     * the script would run, and which could change anything) or we can't work things out, the
+     * configuration is left unchanged.
+     *
+     * @return true if the configuration was changed, false otherwise
+     */
+    static boolean findLinuxLispRuntime(final MaximaConfiguration target, final File maximaScript) {
+        return findLinuxLispRuntime(target, maximaScript, System.getenv());
+    }
+
+    static boolean findLinuxLispRuntime(final MaximaConfiguration target, final File maximaScript,
+            final Map<String, String> systemEnvironment) {
+        File prefixFolder;
+        try {
+            /* (The script normally lives in PREFIX/bin, possibly via a symlink) */
+            final File binFolder = maximaScript.getCanonicalFile().getParentFile();
+            prefixFolder = binFolder!=null ? binFolder.getParentFile() : null;
+        }
+        catch (final IOException e) {
+            logger.trace("Could not resolve location of Maxima script {}", maximaScript, e);
+            return false;
+        }
+        if (prefixFolder==null) {
+            return false;
+        }
+
+        /* The script sources the user's maximarc, which could select a different Lisp or version */
+        final String userFolderPath = systemEnvironment.get("MAXIMA_USERDIR");
+        final String homeFolderPath = systemEnvironment.get("HOME");
+        final File maximarcFile = userFolderPath!=null
+                ? new File(userFolderPath, "maximarc")
+                : (homeFolderPath!=null ? new File(new File(homeFolderPath, ".maxima"), "maximarc") : null);
+        if (maximarcFile!=null && maximarcFile.exists()) {
+            logger.debug("Found {}, so will run Maxima via its script so that this is honoured", maximarcFile);
+            return false;
+        }
+
+        /* Find out which version of Maxima the script runs, and which Lisp it uses by default */
+        final Map<String, String> scriptSettings = readMaximaScriptSettings(maximaScript);
+        final String version = scriptSettings.get("MAXIMA_VERSION");
+        final String lisp = systemEnvironment.get("MAXIMA_LISP")!=null
+                ? systemEnvironment.get("MAXIMA_LISP")
+                : scriptSettings.get("MAXIMA_DEFAULT_LISP");
+        if (version==null || lisp==null) {
+            logger.debug("Could not determine Maxima version and Lisp from {}, so will run Maxima via its script", maximaScript);
+            return false;
+        }
+        final File versionFolder = new File(new File(prefixFolder, "lib" + File.separator + "maxima"), version);
+
+        String runtime = null;
+        String[] commandArguments = null;
+        if ("sbcl".equals(lisp)) {
+            /* SBCL loads Maxima from a core file */
+            final File sbclCore = new File(new File(versionFolder, "binary-sbcl"), "maxima.core");
+            runtime = sbclCore.isFile() ? findLispRuntime(prefixFolder, "sbcl") : null;
+            commandArguments = new String[] {
+                    "--core", sbclCore.getAbsolutePath(), "--noinform", "--end-runtime-options",
+                    "--eval", "(cl-user::run)", "--end-toplevel-options"
+            };
+        }
+        else if ("clisp".equals(lisp)) {
+            /* CLISP loads Maxima from a memory image */
+            final File clispMemoryImage = new File(new File(versionFolder, "binary-clisp"), "maxima.mem");
+            runtime = clispMemoryImage.isFile() ? findLispRuntime(prefixFolder, "clisp") : null;
+            commandArguments = new String[] {
+                    "-q", "-M", clispMemoryImage.getAbsolutePath(), "", "--"
+            };
+        }
+        else if ("gcl".equals(lisp)) {
+            /* GCL builds Maxima as a standalone executable */
+            final File gclExecutable = new File(new File(versionFolder, "binary-gcl"), "maxima");
+            runtime = gclExecutable.isFile() && gclExecutable.canExecute() ? gclExecutable.getAbsolutePath() : null;
+            commandArguments = new String[] {
+                    "-eval", "(cl-user::run)", "-f", "--"
+            };
+        }
+        if (runtime==null) {
+            logger.debug("Could not find a supported {} runtime and image for Maxima {} in {}, so will run Maxima via its script",
+                    new Object[] { lisp, version, versionFolder });
+            return false;
+        }
+        logger.info("Will run Maxima {} by running {} directly, rather than via {}",
+                new Object[] { version, runtime, maximaScript });
+        configureLispRuntime(target, prefixFolder, runtime, commandArguments);
+        return true;
+    }
+
+    /**
+     * Picks out the MAXIMA_VERSION and MAXIMA_DEFAULT_LISP settings from the given
+     * <code>maxima</code> script, which look like <code>MAXIMA_VERSION="5.45.1"</code>.
+     * (If these are set more than once then we can't tell which one applies, so we leave them out.)
+     */
+    static Map<String, String> readMaximaScriptSettings(final File maximaScript) {
+        final Map<String, String> result = new HashMap<String, String>();
+        final Set<String> ambiguousNames = new HashSet<String>();
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(maximaScript), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine())!=null) {
+                    final Matcher matcher = MAXIMA_SCRIPT_SETTING_PATTERN.matcher(line);
+                    if (matcher.matches()) {
+                        final String value = matcher.group(3)!=null ? matcher.group(3) : matcher.group(4);
+                        final String existing = result.put(matcher.group(1), value);
+                        if (existing!=null && !existing.equals(value)) {
+                            ambiguousNames.add(matcher.group(1));
+                        }
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (final IOException e) {
+            logger.debug("Could not read Maxima script {}", maximaScript, e);
+        }
+        result.keySet().removeAll(ambiguousNames);
+        return result;
+    }
+
+    private static String findLispRuntime(final File prefixFolder, final String runtimeName) {
+        final List<File> candidates = new ArrayList<File>();
+        candidates.add(new File(new File(prefixFolder, "bin"), runtimeName));
+        for (final String folder : LINUX_LISP_RUNTIME_FOLDERS) {
+            candidates.add(new File(folder, runtimeName));
+        }
+        for (final File candidate : candidates) {
+            if (candidate.isFile() && candidate.canExecute()) {
+                return candidate.getAbsolutePath();
+            }
+        }
+        return null;
+    }
+
+    private static void configureLispRuntime(final MaximaConfiguration target, final File prefixFolder,
+            final String executablePath, final String[] commandArguments) {
+        target.setMaximaExecutablePath(executablePath);
+        target.setMaximaCommandArguments(commandArguments);
+
+        target.setMaximaRuntimeEnvironment(createLispRuntimeEnvironment(prefixFolder, System.getenv()));
+    }
+
+    /**
+     * Creates the environment for running a Lisp runtime directly, which is the same environment
+     * that the <code>maxima</code> script would have been run with, plus MAXIMA_PREFIX (which the
+     * script would normally set) so that Maxima can find its modules and suchlike.
+     * <p>
+     * (Setting the environment replaces it completely, so we need to copy everything else across
+     * to keep things like the locale, DISPLAY for plotting and any other MAXIMA_* settings.)
+     */
+    static String[] createLispRuntimeEnvironment(final File prefixFolder, final Map<String, String> systemEnvironment) {
+        final List<String> environment = new ArrayList<String>();
+        environment.add("MAXIMA_PREFIX=" + prefixFolder.getAbsolutePath());
+        for (final String name : new TreeSet<String>(systemEnvironment.keySet())) {
+            if (!"MAXIMA_PREFIX".equals(name)) {
+                environment.add(name + "=" + systemEnvironment.get(name));
+            }
+        }
+        return environment.toArray(new String[environment.size()]);
+    }
+}
@@ -29,6 +29,7 @@
 package uk.ac.ed.ph.jacomax;
 
 import uk.ac.ed.ph.jacomax.internal.Assert;
+import uk.ac.ed.ph.jacomax.internal.TimeoutSupport;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -39,6 +40,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -106,6 +108,9 @@ public final class JacomaxPropertiesConfigurator {
     /** Base name of properties specifying {@link MaximaConfiguration#getMaximaRuntimeEnvironment()} */
     public static final String MAXIMA_ENVIRONMENT_PROPERTY_BASE_NAME = "jacomax.maxima.env";
 
+    /** Name of property specifying {@link MaximaConfiguration#getMaximaImagePath()} */
+    public static final String MAXIMA_IMAGE_PATH_PROPERTY_NAME = "jacomax.maxima.image";
+
     /** Name of property specifying {@link MaximaConfiguration#getMaximaCharset()} */
     public static final String MAXIMA_CHARSET_PROPERTY_NAME = "jacomax.maxima.charset";
 
@@ -115,6 +120,21 @@ public final class JacomaxPropertiesConfigurator {
     /** Name of property specifying {@link MaximaConfiguration#getDefaultBatchTimeout()} */
     public static final String DEFAULT_BATCH_TIMEOUT_PROPERTY_NAME = "jacomax.default.batch.timeout";
 
+    /** Name of property specifying {@link MaximaConfiguration#getProcessIoMode()} */
+    public static final String PROCESS_IO_MODE_PROPERTY_NAME = "jacomax.process.io.mode";
+
+    /** Name of property specifying {@link MaximaConfiguration#isUseVirtualThreads()} */
+    public static final String USE_VIRTUAL_THREADS_PROPERTY_NAME = "jacomax.use.virtual.threads";
+
+    /** Name of property specifying {@link MaximaConfiguration#isInterruptOnTimeout()} */
+    public static final String INTERRUPT_ON_TIMEOUT_PROPERTY_NAME = "jacomax.interrupt.on.timeout";
+
+    /** Name of property specifying {@link MaximaConfiguration#getInterruptRecoveryTimeout(TimeUnit)} */
+    public static final String INTERRUPT_RECOVERY_TIMEOUT_PROPERTY_NAME = "jacomax.interrupt.recovery.timeout";
+
+    /** Name of property specifying {@link MaximaConfiguration#getTerminationGracePeriod(TimeUnit)} */
+    public static final String TERMINATION_GRACE_PERIOD_PROPERTY_NAME = "jacomax.termination.grace.period";
+
     /** Resolved Properties */
     private final Properties properties;
 
@@ -292,9 +312,15 @@ public final class JacomaxPropertiesConfigurator {
         config.setMaximaExecutablePath(getRequiredProperty(MAXIMA_EXECUTABLE_PATH_PROPERTY_NAME));
         config.setMaximaCommandArguments(getIndexedProperty(MAXIMA_COMMAND_ARGUMENTS_PROPERTY_BASE_NAME));
         config.setMaximaRuntimeEnvironment(getIndexedProperty(MAXIMA_ENVIRONMENT_PROPERTY_BASE_NAME));
+        config.setMaximaImagePath(getProperty(MAXIMA_IMAGE_PATH_PROPERTY_NAME));
         config.setMaximaCharset(getProperty(MAXIMA_CHARSET_PROPERTY_NAME));
-        config.setDefaultCallTimeout(getIntegerProperty(DEFAULT_CALL_TIMEOUT_PROPERTY_NAME));
-        config.setDefaultBatchTimeout(getIntegerProperty(DEFAULT_BATCH_TIMEOUT_PROPERTY_NAME));
+        config.setDefaultCallTimeout(getTimeoutProperty(DEFAULT_CALL_TIMEOUT_PROPERTY_NAME), TimeUnit.NANOSECONDS);
+        config.setDefaultBatchTimeout(getTimeoutProperty(DEFAULT_BATCH_TIMEOUT_PROPERTY_NAME), TimeUnit.NANOSECONDS);
+        config.setProcessIoMode(getEnumProperty(PROCESS_IO_MODE_PROPERTY_NAME, MaximaConfiguration.ProcessIoMode.class));
+        config.setUseVirtualThreads(getBooleanProperty(USE_VIRTUAL_THREADS_PROPERTY_NAME));
+        config.setInterruptOnTimeout(getBooleanProperty(INTERRUPT_ON_TIMEOUT_PROPERTY_NAME));
+        config.setInterruptRecoveryTimeout(getTimeoutProperty(INTERRUPT_RECOVERY_TIMEOUT_PROPERTY_NAME), TimeUnit.NANOSECONDS);
+        config.setTerminationGracePeriod(getTimeoutProperty(TERMINATION_GRACE_PERIOD_PROPERTY_NAME), TimeUnit.NANOSECONDS);
     }
 
     //----------------------------------------------------------------
@@ -342,6 +368,47 @@ public final class JacomaxPropertiesConfigurator {
         return result!=null ? result.intValue() : 0;
     }
 
+    /**
+     * Reads a timeout property, returning the result in nanoseconds or 0 if the property
+     * is not set.
+     * <p>
+     * The value is an integer optionally followed by one of the units <code>ns</code>,
+     * <code>us</code>, <code>ms</code>, <code>s</code> or <code>m</code>. Seconds are assumed
+     * if there is no unit, e.g. <code>20</code>, <code>20s</code> and <code>300ms</code>.
+     */
+    public long getTimeoutProperty(final String propertyName) {
+        final String valueString = getProperty(propertyName);
+        if (valueString==null) {
+            return 0L;
+        }
+        try {
+            return TimeoutSupport.parse(valueString);
+        }
+        catch (final IllegalArgumentException e) {
+            throw new JacomaxConfigurationException("Default timeout " + valueString
+                    + " must be an integer, optionally followed by one of the units ns, us, ms, s or m");
+        }
+    }
+
+    public boolean getBooleanProperty(final String propertyName) {
+        final String valueString = getProperty(propertyName);
+        return valueString!=null && Boolean.parseBoolean(valueString.trim());
+    }
+
+    public <E extends Enum<E>> E getEnumProperty(final String propertyName, final Class<E> enumClass) {
+        final String valueString = getProperty(propertyName);
+        if (valueString==null || valueString.trim().length()==0) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(enumClass, valueString.trim());
+        }
+        catch (final IllegalArgumentException e) {
+            throw new JacomaxConfigurationException("Property " + propertyName + " value " + valueString
+                    + " must be one of " + Arrays.toString(enumClass.getEnumConstants()));
+        }
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "[" + propertiesSourceDescription + "]";
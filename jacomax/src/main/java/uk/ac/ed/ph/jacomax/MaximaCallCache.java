@@ -0,0 +1,69 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+/**
+ * Cache of the raw outputs of Maxima calls, as used by {@link CachingMaximaInteractiveProcess}.
+ * <p>
+ * Implementations must be safe for use by multiple threads, so that a single cache can be
+ * shared by many processes (e.g. all of those in a {@link MaximaProcessPool}).
+ *
+ * @see MemoryMaximaCallCache
+ *
+ * @author David McKain
+ */
+public interface MaximaCallCache {
+
+    /**
+     * Returns the cached output for the call having the given (normalised) input, or null if
+     * there is no such output. Implementations should count this as a hit or a miss accordingly.
+     *
+     * @param callInput normalised call input, which must not be null
+     */
+    String getCachedOutput(String callInput);
+
+    /**
+     * Caches the output of the call having the given (normalised) input.
+     *
+     * @param callInput normalised call input, which must not be null
+     * @param output raw output of the call, which must not be null
+     */
+    void cacheOutput(String callInput, String output);
+
+    /**
+     * Removes all cached outputs. (Statistics are not reset.)
+     */
+    void clear();
+
+    /**
+     * Returns a snapshot of the current statistics for this cache.
+     */
+    MaximaCallCacheStatistics getStatistics();
+
+}
@@ -0,0 +1,137 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.io.Serializable;
+
+/**
+ * This simple POJO is used to specify how a {@link MemoryMaximaCallCache} should manage
+ * its cached call outputs.
+ *
+ * @see MemoryMaximaCallCache
+ *
+ * @author David McKain
+ */
+public class MaximaCallCacheConfiguration implements Serializable, Cloneable {
+
+    private static final long serialVersionUID = -1719734577153396270L;
+
+    /** Policy used to decide which entry to evict when a cache is full */
+    public enum EvictionPolicy {
+
+        /** Evict the least recently used entry */
+        LRU,
+
+        /** Evict the least frequently used entry, breaking ties by evicting the least recently used */
+        LFU,
+        ;
+    }
+
+    /**
+     * Maximum number of call outputs to keep in the cache.
+     * <p>
+     * Set this to zero (or less) to use the default value of {@link MemoryMaximaCallCache#DEFAULT_MAX_SIZE}.
+     */
+    private int maxSize;
+
+    /**
+     * Policy used to decide which entry to evict once the cache is full.
+     * <p>
+     * Set this to null to use {@link EvictionPolicy#LRU}.
+     */
+    private EvictionPolicy evictionPolicy;
+
+    /**
+     * Time (in seconds) for which a cached call output will be used before it expires.
+     * <p>
+     * Set this to zero (or less) if cached outputs should not expire.
+     */
+    private int timeToLive;
+
+    public MaximaCallCacheConfiguration() {
+    }
+
+    /**
+     * Convenience copy constructor
+     */
+    public MaximaCallCacheConfiguration(final MaximaCallCacheConfiguration source) {
+        if (source!=null) {
+            this.maxSize = source.maxSize;
+            this.evictionPolicy = source.evictionPolicy;
+            this.timeToLive = source.timeToLive;
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public void setEvictionPolicy(final EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+    }
+
+
+    public int getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(final int timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    //-------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(hashCode())
+            + "(maxSize=" + maxSize
+            + ",evictionPolicy=" + evictionPolicy
+            + ",timeToLive=" + timeToLive
+            + ")";
+    }
+
+    @Override
+    public Object clone() {
+        try {
+            return super.clone();
+        }
+        catch (final CloneNotSupportedException e) {
+            throw new JacomaxLogicException("Unexpected clone failure", e);
+        }
+    }
+}
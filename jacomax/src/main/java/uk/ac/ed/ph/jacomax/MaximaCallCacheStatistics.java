@@ -0,0 +1,98 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.io.Serializable;
+
+/**
+ * Immutable snapshot of the statistics for a {@link MaximaCallCache}.
+ *
+ * @author David McKain
+ */
+public final class MaximaCallCacheStatistics implements Serializable {
+
+    private static final long serialVersionUID = 4707224357592398346L;
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final int size;
+
+    public MaximaCallCacheStatistics(final long hitCount, final long missCount,
+            final long evictionCount, final long expirationCount, final int size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.size = size;
+    }
+
+    /** Returns the number of lookups that found a cached output */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /** Returns the number of lookups that did not find a cached output (including expired ones) */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /** Returns the number of cached outputs evicted to make room for new ones */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /** Returns the number of cached outputs removed because they had expired */
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /** Returns the number of outputs currently cached */
+    public int getSize() {
+        return size;
+    }
+
+    /** Returns the proportion of lookups that were hits, or 0 if there have been no lookups */
+    public double getHitRate() {
+        final long lookupCount = hitCount + missCount;
+        return lookupCount > 0 ? (double) hitCount / lookupCount : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+            + "(hitCount=" + hitCount
+            + ",missCount=" + missCount
+            + ",evictionCount=" + evictionCount
+            + ",expirationCount=" + expirationCount
+            + ",size=" + size
+            + ")";
+    }
+}
@@ -0,0 +1,131 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.io.Serializable;
+
+/**
+ * Immutable record of how a single call to Maxima went, as passed to
+ * {@link MaximaInstrumentation#callCompleted(long, MaximaCallMetrics)}.
+ * <p>
+ * All times are in nanoseconds and measured from the start of the call. Times that don't apply
+ * (e.g. the time to the first output if Maxima produced no output) are -1.
+ *
+ * @author David McKain
+ */
+public final class MaximaCallMetrics implements Serializable {
+
+    private static final long serialVersionUID = 1874026377591627451L;
+
+    /**
+     * Enumerates the possible outcomes of a call.
+     */
+    public enum Outcome {
+
+        /** Call completed normally */
+        SUCCEEDED,
+
+        /** Call failed (e.g. because of an I/O error), terminating the process */
+        FAILED,
+
+        /** Call did not complete in time, terminating the process */
+        TIMED_OUT,
+        ;
+    }
+
+    private final Outcome outcome;
+    private final long totalNanos;
+    private final long inputWrittenNanos;
+    private final long firstOutputNanos;
+    private final long outputHandlingNanos;
+    private final long inputBytes;
+    private final long outputBytes;
+
+    public MaximaCallMetrics(final Outcome outcome, final long totalNanos, final long inputWrittenNanos,
+            final long firstOutputNanos, final long outputHandlingNanos, final long inputBytes,
+            final long outputBytes) {
+        this.outcome = outcome;
+        this.totalNanos = totalNanos;
+        this.inputWrittenNanos = inputWrittenNanos;
+        this.firstOutputNanos = firstOutputNanos;
+        this.outputHandlingNanos = outputHandlingNanos;
+        this.inputBytes = inputBytes;
+        this.outputBytes = outputBytes;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /** Returns the total time taken by the call */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /** Returns the time taken to write all of the call input to Maxima */
+    public long getInputWrittenNanos() {
+        return inputWrittenNanos;
+    }
+
+    /**
+     * Returns the time taken for the first output to be read from Maxima. (Comparing this with
+     * {@link #getInputWrittenNanos()} gives a rough idea of how long Maxima spent computing.)
+     */
+    public long getFirstOutputNanos() {
+        return firstOutputNanos;
+    }
+
+    /** Returns the total time spent decoding and scanning Maxima output */
+    public long getOutputHandlingNanos() {
+        return outputHandlingNanos;
+    }
+
+    /** Returns the number of bytes sent to Maxima */
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    /** Returns the number of bytes read from Maxima */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+            + "(outcome=" + outcome
+            + ",totalNanos=" + totalNanos
+            + ",inputWrittenNanos=" + inputWrittenNanos
+            + ",firstOutputNanos=" + firstOutputNanos
+            + ",outputHandlingNanos=" + outputHandlingNanos
+            + ",inputBytes=" + inputBytes
+            + ",outputBytes=" + outputBytes
+            + ")";
+    }
+}
@@ -0,0 +1,80 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+/**
+ * Base JMX management interface exposing the call statistics accumulated in a {@link MaximaMetrics}.
+ * <p>
+ * All times are reported in milliseconds. Percentiles are approximate; see
+ * {@link MaximaLatencyHistogram} for details.
+ *
+ * @see MaximaProcessLauncherMXBean
+ * @see MaximaInteractiveProcessMXBean
+ *
+ * @author David McKain
+ */
+public interface MaximaCallStatisticsMXBean {
+
+    /** Returns the number of calls that have completed, including those that failed or timed out */
+    long getCallCount();
+
+    /** Returns the number of calls that failed */
+    long getFailedCallCount();
+
+    /** Returns the number of calls that timed out */
+    long getTimedOutCallCount();
+
+    /** Returns the total number of bytes sent to Maxima during calls */
+    long getInputBytes();
+
+    /** Returns the total number of bytes read from Maxima during calls */
+    long getOutputBytes();
+
+    /** Returns the mean call duration */
+    double getMeanCallMillis();
+
+    /** Returns the median call duration */
+    double getMedianCallMillis();
+
+    /** Returns the 95th percentile call duration */
+    double getPercentile95CallMillis();
+
+    /** Returns the 99th percentile call duration */
+    double getPercentile99CallMillis();
+
+    /** Returns the longest call duration */
+    double getMaxCallMillis();
+
+    /** Returns the duration of the most recently completed call, or -1 if there have been no calls */
+    double getLastCallMillis();
+
+    /** Returns the outcome of the most recently completed call, or null if there have been no calls */
+    String getLastCallOutcome();
+
+}
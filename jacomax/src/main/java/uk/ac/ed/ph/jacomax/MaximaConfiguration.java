@@ -28,9 +28,12 @@
  */
 package uk.ac.ed.ph.jacomax;
 
+import uk.ac.ed.ph.jacomax.internal.TimeoutSupport;
+
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This simple POJO is used to specify how a {@link MaximaProcessLauncher}
@@ -48,7 +51,31 @@ import java.util.Properties;
  */
 public class MaximaConfiguration implements Serializable, Cloneable {
 
-    private static final long serialVersionUID = -7568972957741246870L;
+    private static final long serialVersionUID = -7851511520042427370L;
+
+    /**
+     * Enumerates the ways in which I/O with the underlying Maxima process can be managed.
+     */
+    public enum ProcessIoMode {
+
+        /**
+         * Each Maxima process gets its own small pool of threads, with Maxima STDIN and STDOUT
+         * being handled by separate tasks submitted to this pool for each call.
+         * <p>
+         * This is the default behaviour.
+         */
+        THREAD_POOL,
+
+        /**
+         * Each Maxima process gets a single long-lived thread that reads Maxima STDOUT
+         * (and STDERR) for the lifetime of the process. Call input is written to Maxima STDIN
+         * directly by the thread making the call.
+         * <p>
+         * This uses fewer threads and avoids handing each call off to other threads, which
+         * may be useful if you want to keep a large number of processes running.
+         */
+        DEDICATED_READER,
+    }
 
     /**
      * Full path to your Maxima executable file.
@@ -72,6 +99,16 @@ public class MaximaConfiguration implements Serializable, Cloneable {
      */
     private String[] maximaRuntimeEnvironment;
 
+    /**
+     * Full path to a prebuilt executable Lisp image containing Maxima (and any packages you want
+     * preloaded), as created by {@link MaximaImageBuilder}.
+     * <p>
+     * If this is not null, Maxima processes will be launched by running this image directly,
+     * instead of {@link #getMaximaExecutablePath()} and {@link #getMaximaCommandArguments()},
+     * which is usually much faster. ({@link #getMaximaRuntimeEnvironment()} is still used.)
+     */
+    private String maximaImagePath;
+
     /**
      * Character encoding used by Maxima when running a {@link MaximaInteractiveProcess},
      * which is usually a property of the underlying Lisp platform it's running on.
@@ -87,8 +124,11 @@ public class MaximaConfiguration implements Serializable, Cloneable {
      * <p>
      * Set this to zero to use the default value of {@link MaximaProcessLauncher#DEFAULT_CALL_TIMEOUT}.
      * Set this to a negative number to stop this safety feature from happening.
+     * <p>
+     * This is stored in nanoseconds, and may be set to sub-second values using
+     * {@link #setDefaultCallTimeout(long, TimeUnit)}.
      */
-    private int defaultCallTimeout;
+    private long defaultCallTimeoutNanos;
 
     /**
      * Default time to wait when executing a batch operation with {@link MaximaProcessLauncher#runBatchProcess(java.io.InputStream, java.io.OutputStream)}
@@ -96,8 +136,61 @@ public class MaximaConfiguration implements Serializable, Cloneable {
      * <p>
      * Set this to zero to use the default value of {@link MaximaProcessLauncher#DEFAULT_BATCH_TIMEOUT}.
      * Set this to a negative number to stop this safety feature from happening.
+     * <p>
+     * This is stored in nanoseconds, and may be set to sub-second values using
+     * {@link #setDefaultBatchTimeout(long, TimeUnit)}.
+     */
+    private long defaultBatchTimeoutNanos;
+
+    /**
+     * Specifies how I/O with the underlying Maxima process should be managed.
+     * <p>
+     * If null, we will use {@link ProcessIoMode#THREAD_POOL}.
+     */
+    private ProcessIoMode processIoMode;
+
+    /**
+     * Set this to true to perform Maxima I/O using virtual threads rather than platform threads,
+     * which allows large numbers of Maxima processes to be run without tying up lots of OS threads.
+     * <p>
+     * This requires Java 21 or later. If virtual threads are not available then a warning is
+     * logged and platform threads are used instead.
+     */
+    private boolean useVirtualThreads;
+
+    /**
+     * Set this to true to try to recover {@link MaximaInteractiveProcess}es from call timeouts,
+     * rather than simply terminating them.
+     * <p>
+     * When a call times out, Maxima is sent an interrupt (<code>SIGINT</code>) to abort the
+     * current computation, and its output is then read until it is ready for the next call. The
+     * process is only terminated if this does not happen within {@link #getInterruptRecoveryTimeout(TimeUnit)}.
+     * Either way, a {@link MaximaTimeoutException} is thrown, and you can use
+     * {@link MaximaInteractiveProcess#isTerminated()} to see whether the process survived.
+     * <p>
+     * This only works on UNIX-like platforms where the underlying Lisp aborts the computation
+     * and returns to the Maxima prompt when interrupted (e.g. SBCL and CLISP). Otherwise the
+     * process will be terminated as normal.
+     */
+    private boolean interruptOnTimeout;
+
+    /**
+     * Time to wait for Maxima to recover after being interrupted when {@link #isInterruptOnTimeout()}
+     * is true, before the underlying process gets killed.
+     * <p>
+     * Set this to zero to use the default value of {@link MaximaProcessLauncher#DEFAULT_INTERRUPT_RECOVERY_TIMEOUT}
+     * seconds. (Stored in nanoseconds.)
+     */
+    private long interruptRecoveryTimeoutNanos;
+
+    /**
+     * Time to allow a Maxima process to exit by itself when it is terminated, and then again after
+     * asking it (and any processes it started) to terminate, before forcibly destroying them.
+     * <p>
+     * Set this to zero to use the default value of {@link MaximaProcessLauncher#DEFAULT_TERMINATION_GRACE_PERIOD}
+     * seconds, or to a negative value to forcibly destroy processes straight away. (Stored in nanoseconds.)
      */
-    private int defaultBatchTimeout;
+    private long terminationGracePeriodNanos;
 
     public MaximaConfiguration() {
     }
@@ -110,9 +203,15 @@ public class MaximaConfiguration implements Serializable, Cloneable {
             this.maximaExecutablePath = source.maximaExecutablePath;
             this.maximaCommandArguments = safeClone(source.maximaCommandArguments);
             this.maximaRuntimeEnvironment = safeClone(source.maximaRuntimeEnvironment);
+            this.maximaImagePath = source.maximaImagePath;
             this.maximaCharset = source.maximaCharset;
-            this.defaultCallTimeout = source.defaultCallTimeout;
-            this.defaultBatchTimeout = source.defaultBatchTimeout;
+            this.defaultCallTimeoutNanos = source.defaultCallTimeoutNanos;
+            this.defaultBatchTimeoutNanos = source.defaultBatchTimeoutNanos;
+            this.processIoMode = source.processIoMode;
+            this.useVirtualThreads = source.useVirtualThreads;
+            this.interruptOnTimeout = source.interruptOnTimeout;
+            this.interruptRecoveryTimeoutNanos = source.interruptRecoveryTimeoutNanos;
+            this.terminationGracePeriodNanos = source.terminationGracePeriodNanos;
         }
     }
 
@@ -143,6 +242,15 @@ public class MaximaConfiguration implements Serializable, Cloneable {
     }
 
 
+    public String getMaximaImagePath() {
+        return maximaImagePath;
+    }
+
+    public void setMaximaImagePath(final String maximaImagePath) {
+        this.maximaImagePath = maximaImagePath;
+    }
+
+
     public String getMaximaCharset() {
         return maximaCharset;
     }
@@ -152,22 +260,94 @@ public class MaximaConfiguration implements Serializable, Cloneable {
     }
 
 
+    /**
+     * Returns the default call timeout in seconds, rounding sub-second timeouts up.
+     */
     public int getDefaultCallTimeout() {
-        return defaultCallTimeout;
+        return TimeoutSupport.toSeconds(defaultCallTimeoutNanos);
     }
 
     public void setDefaultCallTimeout(final int defaultCallTimeout) {
-        this.defaultCallTimeout = defaultCallTimeout;
+        this.defaultCallTimeoutNanos = TimeUnit.SECONDS.toNanos(defaultCallTimeout);
     }
 
+    /**
+     * Returns the default call timeout in the given unit, truncated as per {@link TimeUnit#convert(long, TimeUnit)}.
+     */
+    public long getDefaultCallTimeout(final TimeUnit unit) {
+        return unit.convert(defaultCallTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
 
-    public int getDefaultBatchTimeout() {
-        return defaultBatchTimeout;
+    public void setDefaultCallTimeout(final long defaultCallTimeout, final TimeUnit unit) {
+        this.defaultCallTimeoutNanos = TimeoutSupport.toNanos(defaultCallTimeout, unit);
     }
 
 
+    /**
+     * Returns the default batch timeout in seconds, rounding sub-second timeouts up.
+     */
+    public int getDefaultBatchTimeout() {
+        return TimeoutSupport.toSeconds(defaultBatchTimeoutNanos);
+    }
+
     public void setDefaultBatchTimeout(final int defaultBatchTimeout) {
-        this.defaultBatchTimeout = defaultBatchTimeout;
+        this.defaultBatchTimeoutNanos = TimeUnit.SECONDS.toNanos(defaultBatchTimeout);
+    }
+
+    /**
+     * Returns the default batch timeout in the given unit, truncated as per {@link TimeUnit#convert(long, TimeUnit)}.
+     */
+    public long getDefaultBatchTimeout(final TimeUnit unit) {
+        return unit.convert(defaultBatchTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void setDefaultBatchTimeout(final long defaultBatchTimeout, final TimeUnit unit) {
+        this.defaultBatchTimeoutNanos = TimeoutSupport.toNanos(defaultBatchTimeout, unit);
+    }
+
+
+    public ProcessIoMode getProcessIoMode() {
+        return processIoMode;
+    }
+
+    public void setProcessIoMode(final ProcessIoMode processIoMode) {
+        this.processIoMode = processIoMode;
+    }
+
+
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public void setUseVirtualThreads(final boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+
+    public boolean isInterruptOnTimeout() {
+        return interruptOnTimeout;
+    }
+
+    public void setInterruptOnTimeout(final boolean interruptOnTimeout) {
+        this.interruptOnTimeout = interruptOnTimeout;
+    }
+
+
+    public long getInterruptRecoveryTimeout(final TimeUnit unit) {
+        return unit.convert(interruptRecoveryTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void setInterruptRecoveryTimeout(final long interruptRecoveryTimeout, final TimeUnit unit) {
+        this.interruptRecoveryTimeoutNanos = TimeoutSupport.toNanos(interruptRecoveryTimeout, unit);
+    }
+
+
+    public long getTerminationGracePeriod(final TimeUnit unit) {
+        return unit.convert(terminationGracePeriodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void setTerminationGracePeriod(final long terminationGracePeriod, final TimeUnit unit) {
+        this.terminationGracePeriodNanos = TimeoutSupport.toNanos(terminationGracePeriod, unit);
     }
 
     //-------------------------------------------------------------------
@@ -182,9 +362,15 @@ public class MaximaConfiguration implements Serializable, Cloneable {
             + "(maximaExecutablePath=" + maximaExecutablePath
             + ",maximaCommandArguments=" + Arrays.toString(maximaCommandArguments)
             + ",maximaRuntimeEnvironment=" + Arrays.toString(maximaRuntimeEnvironment)
+            + ",maximaImagePath=" + maximaImagePath
             + ",maximaCharset=" + maximaCharset
-            + ",defaultCallTimeout=" + defaultCallTimeout
-            + ",defaultBatchTimeout=" + defaultBatchTimeout
+            + ",defaultCallTimeout=" + TimeoutSupport.format(defaultCallTimeoutNanos)
+            + ",defaultBatchTimeout=" + TimeoutSupport.format(defaultBatchTimeoutNanos)
+            + ",processIoMode=" + processIoMode
+            + ",useVirtualThreads=" + useVirtualThreads
+            + ",interruptOnTimeout=" + interruptOnTimeout
+            + ",interruptRecoveryTimeout=" + TimeoutSupport.format(interruptRecoveryTimeoutNanos)
+            + ",terminationGracePeriod=" + TimeoutSupport.format(terminationGracePeriodNanos)
             + ")";
     }
 
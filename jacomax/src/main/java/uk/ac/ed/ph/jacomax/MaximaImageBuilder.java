@@ -0,0 +1,207 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import uk.ac.ed.ph.jacomax.internal.Assert;
+import uk.ac.ed.ph.jacomax.internal.StringLiteralSupport;
+import uk.ac.ed.ph.jacomax.utilities.MaximaOutputUtilities;
+import uk.ac.ed.ph.jacomax.utilities.SingleLinearOutput;
+
+import java.io.File;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Helper for building an executable Lisp image containing Maxima, together with any packages
+ * and definitions you want to have preloaded. Launching Maxima from such an image (by setting
+ * {@link MaximaConfiguration#setMaximaImagePath(String)}) avoids most of the usual startup cost,
+ * which makes launching processes (e.g. replacements in a {@link MaximaProcessPool}) much cheaper.
+ * <p>
+ * The image is built by launching Maxima using the given {@link MaximaConfiguration}, running
+ * the given preload calls and then asking the underlying Lisp to save itself. This is currently
+ * supported for the Lisps listed in {@link LispImplementation}. The resulting image is tied to the
+ * particular Lisp and Maxima installation, so will need rebuilding if you upgrade either of them.
+ *
+ * @author David McKain
+ */
+public final class MaximaImageBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(MaximaImageBuilder.class);
+
+    /**
+     * Enumerates the Lisp implementations that images can be built for.
+     */
+    public enum LispImplementation {
+
+        SBCL("(sb-ext:save-lisp-and-die {0} :executable t :toplevel (function cl-user::run))"),
+        CLISP("(progn (ext:saveinitmem {0} :executable t :quiet t :init-function (function cl-user::run)) (ext:quit))"),
+        CCL("(ccl:save-application {0} :prepend-kernel t :toplevel-function (function cl-user::run))"),
+        GCL("(progn (setq si::*top-level-hook* (function cl-user::run)) (si::save-system {0}))"),
+        ;
+
+        /** Lisp form that saves the image, with "{0}" standing in for the image file path */
+        private final String saveImageTemplate;
+
+        private LispImplementation(final String saveImageTemplate) {
+            this.saveImageTemplate = saveImageTemplate;
+        }
+
+        /**
+         * Returns the Lisp form that saves an executable image to the given path, which
+         * also causes the Lisp process to exit.
+         */
+        public String createSaveImageForm(final String imagePath) {
+            return saveImageTemplate.replace("{0}", StringLiteralSupport.createStringLiteral(imagePath));
+        }
+    }
+
+    private final MaximaConfiguration maximaConfiguration;
+
+    /**
+     * Creates a new builder, which will launch Maxima using the given {@link MaximaConfiguration}.
+     * (Any {@link MaximaConfiguration#getMaximaImagePath()} is ignored, so that images are always
+     * built from a standard Maxima installation.)
+     */
+    public MaximaImageBuilder(final MaximaConfiguration maximaConfiguration) {
+        Assert.notNull(maximaConfiguration, "maximaConfiguration");
+        this.maximaConfiguration = new MaximaConfiguration(maximaConfiguration);
+        this.maximaConfiguration.setMaximaImagePath(null);
+    }
+
+    /**
+     * Builds an image in the given file, preloading the given Maxima calls, using the default
+     * call timeout for each step.
+     *
+     * @see #buildImage(File, List, int)
+     */
+    public MaximaConfiguration buildImage(final File imageFile, final List<String> preloadCalls)
+            throws MaximaTimeoutException {
+        return buildImage(imageFile, preloadCalls, 0);
+    }
+
+    /**
+     * Builds an image in the given file, preloading the given Maxima calls.
+     *
+     * @param imageFile file to save the image to, which must not be null. Any existing file
+     *   will be replaced.
+     * @param preloadCalls Maxima calls to run before saving the image, e.g. <code>load(...)$</code>.
+     *   This may be null or empty.
+     * @param timeout timeout (in seconds) for each step, with zero meaning the default call timeout
+     *   and a negative number meaning no timeout.
+     *
+     * @return copy of the {@link MaximaConfiguration} used by this builder, with its
+     *   {@link MaximaConfiguration#getMaximaImagePath()} set to the new image
+     *
+     * @throws MaximaTimeoutException if any step timed out
+     * @throws JacomaxConfigurationException if images are not supported for the Lisp
+     *   that Maxima is running on
+     * @throws JacomaxRuntimeException if the image was not created
+     */
+    public MaximaConfiguration buildImage(final File imageFile, final List<String> preloadCalls, final int timeout)
+            throws MaximaTimeoutException {
+        Assert.notNull(imageFile, "imageFile");
+        final String imagePath = imageFile.getAbsolutePath();
+        if (imageFile.exists() && !imageFile.delete()) {
+            throw new JacomaxRuntimeException("Could not delete existing image file " + imagePath);
+        }
+        final MaximaInteractiveProcess process = new MaximaProcessLauncher(maximaConfiguration).launchInteractiveProcess();
+        try {
+            final int callTimeout = timeout!=0 ? timeout : process.getDefaultCallTimeout();
+            if (preloadCalls!=null && !preloadCalls.isEmpty()) {
+                logger.debug("Running {} preload call(s)", Integer.valueOf(preloadCalls.size()));
+                process.executeCallsDiscardOutput(preloadCalls, callTimeout);
+            }
+            final String lispImplementationOutput = process.executeCall("string(?lisp\\-implementation\\-type());", callTimeout);
+            final SingleLinearOutput parsedOutput = MaximaOutputUtilities.parseSingleLinearOutput(lispImplementationOutput);
+            if (parsedOutput==null) {
+                throw new JacomaxRuntimeException("Could not determine Lisp implementation type from Maxima output: "
+                        + lispImplementationOutput);
+            }
+            final String lispImplementationType = parsedOutput.getResult();
+            final LispImplementation lispImplementation = detectLispImplementation(lispImplementationType);
+            if (lispImplementation==null) {
+                throw new JacomaxConfigurationException("Building images is not supported for Lisp implementation "
+                        + lispImplementationType);
+            }
+            logger.info("Saving {} image of Maxima to {}", lispImplementation, imagePath);
+            try {
+                process.executeCallDiscardOutput(":lisp " + lispImplementation.createSaveImageForm(imagePath), callTimeout);
+            }
+            catch (final MaximaProcessTerminatedException e) {
+                /* (Expected, since the Lisp process exits once the image has been saved) */
+            }
+            catch (final JacomaxRuntimeException e) {
+                /* (Ditto, as sending the rest of the call input may fail. We check for the image below) */
+                logger.debug("Maxima call failed while saving image, which is probably OK", e);
+            }
+        }
+        finally {
+            process.terminate();
+        }
+        if (!imageFile.isFile()) {
+            throw new JacomaxRuntimeException("Maxima image was not created at " + imagePath);
+        }
+        final MaximaConfiguration result = new MaximaConfiguration(maximaConfiguration);
+        result.setMaximaImagePath(imagePath);
+        return result;
+    }
+
+    /**
+     * Works out the {@link LispImplementation} from the result of the Lisp
+     * <code>lisp-implementation-type</code> function, returning null if it's not supported.
+     */
+    public static LispImplementation detectLispImplementation(final String lispImplementationType) {
+        if (lispImplementationType==null) {
+            return null;
+        }
+        final String type = lispImplementationType.toUpperCase();
+        if (type.contains("SBCL")) {
+            return LispImplementation.SBCL;
+        }
+        else if (type.contains("CLISP")) {
+            return LispImplementation.CLISP;
+        }
+        else if (type.contains("CLOZURE") || type.equals("CCL")) {
+            return LispImplementation.CCL;
+        }
+        else if (type.contains("GNU COMMON LISP") || type.contains("GCL")) {
+            return LispImplementation.GCL;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+            + "(maximaConfiguration=" + maximaConfiguration
+            + ")";
+    }
+}
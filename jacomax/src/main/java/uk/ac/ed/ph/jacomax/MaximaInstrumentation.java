@@ -0,0 +1,102 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+/**
+ * Service provider interface for receiving timing and throughput information about
+ * Maxima processes and the calls made to them, e.g. for feeding into a metrics library.
+ * <p>
+ * Register an implementation of this using {@link MaximaProcessLauncher#setInstrumentation(MaximaInstrumentation)}.
+ * It will then be told about all processes launched by that {@link MaximaProcessLauncher}.
+ * (Jacomax also keeps its own {@link MaximaMetrics} for each launcher and process, so you don't
+ * need to do this if those are sufficient.)
+ * <p>
+ * Implementations must be safe for use by multiple threads, and should return quickly as they
+ * are called from the threads performing Maxima I/O. Any Exceptions thrown are logged and
+ * otherwise ignored.
+ * <p>
+ * Each process is identified by a number assigned by Jacomax, which is unique within the
+ * JVM. (This is not the operating system's process ID.)
+ *
+ * @see MaximaMetrics
+ *
+ * @author David McKain
+ */
+public interface MaximaInstrumentation {
+
+    /**
+     * Called when a Maxima process has been started.
+     *
+     * @param processNumber number identifying the process
+     */
+    void processStarted(long processNumber);
+
+    /**
+     * Called when a {@link MaximaInteractiveProcess} has started up and is ready for calls.
+     *
+     * @param processNumber number identifying the process
+     * @param startupNanos time taken (in nanoseconds) between the process being started and
+     *   Maxima reaching its first input prompt
+     */
+    void processReady(long processNumber, long startupNanos);
+
+    /**
+     * Called when a call to Maxima has completed, whether successfully or not. (A batch process
+     * counts as a single call.)
+     *
+     * @param processNumber number identifying the process
+     * @param callMetrics details of the call
+     */
+    void callCompleted(long processNumber, MaximaCallMetrics callMetrics);
+
+    /**
+     * Called just before {@link #processTerminated(long, long, boolean)} if child processes of
+     * a Maxima process (e.g. the Lisp runtime started by the <code>maxima</code> script) were
+     * still running when it was terminated, and had to be destroyed by Jacomax.
+     * <p>
+     * This does nothing by default.
+     *
+     * @param processNumber number identifying the process
+     * @param orphanCount number of child processes that had to be destroyed
+     */
+    default void orphansReaped(final long processNumber, final int orphanCount) {
+        /* (Nothing to do by default) */
+    }
+
+    /**
+     * Called when a Maxima process has been terminated.
+     *
+     * @param processNumber number identifying the process
+     * @param lifetimeNanos time (in nanoseconds) since the process was started
+     * @param forciblyDestroyed whether the process had to be forcibly destroyed, rather than
+     *   exiting by itself
+     */
+    void processTerminated(long processNumber, long lifetimeNanos, boolean forciblyDestroyed);
+
+}
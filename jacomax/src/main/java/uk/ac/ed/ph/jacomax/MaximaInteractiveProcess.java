@@ -28,6 +28,11 @@
  */
 package uk.ac.ed.ph.jacomax;
 
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Handle on an "interactive" Maxima process, as created using
  * {@link MaximaProcessLauncher#launchInteractiveProcess()}.
@@ -39,14 +44,21 @@ package uk.ac.ed.ph.jacomax;
  * the Maxima process once you have finished using it. Any further calls
  * made will result in a {@link MaximaProcessTerminatedException} being thrown.
  * <p>
- * Calls are executed with a timeout (specified in seconds), which can be passed
- * explicitly of defaulted in various ways. If the timeout is greater than zero and
- * the call has not completed in the allotted time, the underlying Maxima process is
- * terminated and a {@link MaximaTimeoutException} is thrown. Any further calls made
- * will generate a {@link MaximaProcessTerminatedException}. If the timeout is zero
- * or less, then calls are allowed to run indefinitely. (This should be used
+ * Calls are executed with a timeout (specified in seconds, or in any {@link TimeUnit}
+ * for finer control), which can be passed explicitly of defaulted in various ways. If the timeout is greater than zero and
+ * the call has not completed in the allotted time, a {@link MaximaTimeoutException} is thrown.
+ * Normally the underlying Maxima process is terminated at this point, and any further calls made
+ * will generate a {@link MaximaProcessTerminatedException}. However, if
+ * {@link MaximaConfiguration#isInterruptOnTimeout()} is set, Maxima is interrupted instead,
+ * and the process remains usable if Maxima gets back to its input prompt within the
+ * recovery timeout (use {@link #isTerminated()} to find out whether this happened).
+ * If the timeout is zero or less, then calls are allowed to run indefinitely. (This should be used
  * with caution!)
  * <p>
+ * Calls may also be executed asynchronously using {@link #executeCallAsync(String)} and
+ * friends, which return a {@link CompletableFuture}. Only one call may be running at
+ * any time, so you must wait for this to complete before making another call.
+ * <p>
  * An instance of this class should only be used by one thread at a time.
  *
  * @author David McKain
@@ -57,7 +69,8 @@ public interface MaximaInteractiveProcess {
     int PROCESS_FORCIBLY_DESTROYED = -2;
 
     /**
-     * Returns the default call timeout for this process.
+     * Returns the default call timeout for this process, in seconds. (Sub-second timeouts
+     * are rounded up.)
      */
     int getDefaultCallTimeout();
 
@@ -67,12 +80,26 @@ public interface MaximaInteractiveProcess {
      */
     void setDefaultCallTimeout(int defaultCallTimeout);
 
+    /**
+     * Returns the default call timeout for this process in the given {@link TimeUnit}.
+     * (Unlike {@link #getDefaultCallTimeout()}, this is accurate for sub-second timeouts.)
+     */
+    long getDefaultCallTimeout(TimeUnit unit);
+
+    /**
+     * Sets the default call timeout for this process in the given {@link TimeUnit},
+     * allowing sub-second timeouts to be used.
+     * @param defaultCallTimeout
+     * @param unit
+     */
+    void setDefaultCallTimeout(long defaultCallTimeout, TimeUnit unit);
+
     /**
      * Executes the given Maxima code, waiting for Maxima to finish evaluating
      * it and returning the raw output.
      * <p>
-     * If the call times out, then {@link #terminate()} will be called and a
-     * {@link MaximaTimeoutException} is thrown.
+     * If the call times out, then a {@link MaximaTimeoutException} is thrown. The process will
+     * normally have been terminated, unless it was successfully interrupted as described above.
      *
      * @param maximaInput Maxima code to call. This should include any required
      *   terminator characters (e.g. <code>;</code> or <code>$</code>) as expected by Maxima.
@@ -84,11 +111,12 @@ public interface MaximaInteractiveProcess {
      * @throws IllegalArgumentException if maximaInput is null or does not appear to
      *   end with a terminator that can be safely handled.
      * @throws MaximaTimeoutException if the default timeout is positive and Maxima
-     *   did not return a result within this time.
+     *   did not return a result within this time. The process is terminated unless
+     *   the call was successfully interrupted.
      * @throws MaximaProcessTerminatedException if the Maxima process has already
-     *   been terminated, either by calling {@link #terminate()}, because a
-     *   {@link MaximaTimeoutException} previously occurred or because a previous
-     *   call failed to execute.
+     *   been terminated, either by calling {@link #terminate()}, because a previous
+     *   {@link MaximaTimeoutException} could not be recovered from by interrupting
+     *   Maxima, or because a previous call failed to execute.
      */
     String executeCall(String maximaInput)
         throws MaximaTimeoutException;
@@ -107,6 +135,73 @@ public interface MaximaInteractiveProcess {
     String executeCall(String maximaInput, int callTimeout)
         throws MaximaTimeoutException;
 
+    /**
+     * Version of {@link #executeCall(String, int)} that takes the timeout in the
+     * given {@link TimeUnit}, allowing sub-second timeouts to be used.
+     *
+     * @param maximaInput
+     * @param callTimeout
+     * @param unit
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    String executeCall(String maximaInput, long callTimeout, TimeUnit unit)
+        throws MaximaTimeoutException;
+
+    /**
+     * Version of {@link #executeCall(String)} that streams the raw Maxima output to the
+     * given {@link Appendable} (e.g. a {@link java.io.Writer}) as it is read, rather than
+     * accumulating it in memory. This is useful for calls that generate large outputs.
+     * <p>
+     * Output is passed to the {@link Appendable} in chunks as it is read from Maxima. These chunks
+     * are of arbitrary size and do not necessarily end at line breaks, so you will need to do
+     * your own buffering if you want to process the output a line at a time. If the {@link Appendable}
+     * throws an {@link java.io.IOException}, then {@link #terminate()} will be called (since
+     * the remaining output cannot be consumed) and a {@link JacomaxRuntimeException} is thrown.
+     *
+     * @param maximaInput
+     * @param output {@link Appendable} to send output to, which must not be null
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    void executeCall(String maximaInput, Appendable output)
+        throws MaximaTimeoutException;
+
+    /**
+     * Version of {@link #executeCall(String, Appendable)} that uses the given timeout instead
+     * of the current default.
+     *
+     * @param maximaInput
+     * @param output
+     * @param callTimeout
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    void executeCall(String maximaInput, Appendable output, int callTimeout)
+        throws MaximaTimeoutException;
+
+    /**
+     * Version of {@link #executeCall(String, Appendable, int)} that takes the timeout in the
+     * given {@link TimeUnit}, allowing sub-second timeouts to be used.
+     *
+     * @param maximaInput
+     * @param output
+     * @param callTimeout
+     * @param unit
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    void executeCall(String maximaInput, Appendable output, long callTimeout, TimeUnit unit)
+        throws MaximaTimeoutException;
+
     /**
      * Version of {@link #executeCall(String)} that throws away the output from Maxima.
      * (This is marginally more efficient than calling {@link #executeCall(String)} and
@@ -134,6 +229,197 @@ public interface MaximaInteractiveProcess {
     void executeCallDiscardOutput(String maximaInput, int callTimeout)
         throws MaximaTimeoutException;
 
+    /**
+     * Version of {@link #executeCallDiscardOutput(String, int)} that takes the timeout in the
+     * given {@link TimeUnit}, allowing sub-second timeouts to be used.
+     *
+     * @param maximaInput
+     * @param callTimeout
+     * @param unit
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    void executeCallDiscardOutput(String maximaInput, long callTimeout, TimeUnit unit)
+        throws MaximaTimeoutException;
+
+    /**
+     * Executes a sequence of Maxima calls in a "pipelined" fashion, returning the raw
+     * output of each call.
+     * <p>
+     * All of the calls are sent to Maxima in one go, which avoids a round trip per call and
+     * can therefore be considerably faster than calling {@link #executeCall(String)} in turn
+     * when executing lots of small calls. The results are equivalent to doing this, except
+     * that the timeout applies to the sequence of calls as a whole and that a failing call
+     * does not stop subsequent calls from being evaluated.
+     *
+     * @param maximaInputs Maxima code for each call, in order, with each satisfying the same
+     *   constraints as {@link #executeCall(String)}
+     *
+     * @return raw Maxima output for each call, in the same order as the inputs
+     *
+     * @throws IllegalArgumentException if maximaInputs is null or any of the calls is null or
+     *   does not appear to end with a terminator that can be safely handled.
+     * @throws MaximaTimeoutException if the default timeout is positive and Maxima
+     *   did not finish evaluating all of the calls within this time. The process is
+     *   terminated unless the calls were successfully interrupted.
+     * @throws MaximaProcessTerminatedException if the Maxima process has already
+     *   been terminated.
+     */
+    List<String> executeCalls(List<String> maximaInputs)
+        throws MaximaTimeoutException;
+
+    /**
+     * Version of {@link #executeCalls(List)} that uses the given timeout for the whole
+     * sequence of calls instead of the current default.
+     *
+     * @param maximaInputs
+     * @param callTimeout
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    List<String> executeCalls(List<String> maximaInputs, int callTimeout)
+        throws MaximaTimeoutException;
+
+    /**
+     * Version of {@link #executeCalls(List<String>, int)} that takes the timeout in the
+     * given {@link TimeUnit}, allowing sub-second timeouts to be used.
+     *
+     * @param maximaInputs
+     * @param callTimeout
+     * @param unit
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    List<String> executeCalls(List<String> maximaInputs, long callTimeout, TimeUnit unit)
+        throws MaximaTimeoutException;
+
+    /**
+     * Version of {@link #executeCalls(List)} that throws away the output from Maxima.
+     * This is useful for quickly executing a sequence of set up calls.
+     *
+     * @param maximaInputs
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    void executeCallsDiscardOutput(List<String> maximaInputs)
+        throws MaximaTimeoutException;
+
+    /**
+     * Version of {@link #executeCallsDiscardOutput(List)} that takes a custom timeout.
+     *
+     * @param maximaInputs
+     * @param callTimeout
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    void executeCallsDiscardOutput(List<String> maximaInputs, int callTimeout)
+        throws MaximaTimeoutException;
+
+    /**
+     * Version of {@link #executeCallsDiscardOutput(List<String>, int)} that takes the timeout in the
+     * given {@link TimeUnit}, allowing sub-second timeouts to be used.
+     *
+     * @param maximaInputs
+     * @param callTimeout
+     * @param unit
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     */
+    void executeCallsDiscardOutput(List<String> maximaInputs, long callTimeout, TimeUnit unit)
+        throws MaximaTimeoutException;
+
+    /**
+     * Asynchronous version of {@link #executeCall(String)}.
+     * <p>
+     * The resulting {@link CompletableFuture} completes with the raw Maxima output, or
+     * completes exceptionally with a {@link MaximaTimeoutException} (or unchecked Exception)
+     * in the same circumstances as {@link #executeCall(String)} would throw it.
+     * Cancelling it will terminate this process.
+     * <p>
+     * No further calls may be made to this process until the result has completed.
+     *
+     * @param maximaInput
+     *
+     * @throws IllegalArgumentException if maximaInput is null or does not appear to
+     *   end with a terminator that can be safely handled.
+     * @throws MaximaProcessTerminatedException if the Maxima process has already
+     *   been terminated.
+     */
+    CompletableFuture<String> executeCallAsync(String maximaInput);
+
+    /**
+     * Version of {@link #executeCallAsync(String)} that uses the given timeout instead
+     * of the current default.
+     *
+     * @param maximaInput
+     * @param callTimeout
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaProcessTerminatedException
+     */
+    CompletableFuture<String> executeCallAsync(String maximaInput, int callTimeout);
+
+    /**
+     * Version of {@link #executeCallAsync(String, int)} that takes the timeout in the
+     * given {@link TimeUnit}, allowing sub-second timeouts to be used.
+     *
+     * @param maximaInput
+     * @param callTimeout
+     * @param unit
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaProcessTerminatedException
+     */
+    CompletableFuture<String> executeCallAsync(String maximaInput, long callTimeout, TimeUnit unit);
+
+    /**
+     * Asynchronous version of {@link #executeCallDiscardOutput(String)}.
+     *
+     * @see #executeCallAsync(String)
+     *
+     * @param maximaInput
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaProcessTerminatedException
+     */
+    CompletableFuture<Void> executeCallDiscardOutputAsync(String maximaInput);
+
+    /**
+     * Version of {@link #executeCallDiscardOutputAsync(String)} that takes a custom timeout.
+     *
+     * @param maximaInput
+     * @param callTimeout
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaProcessTerminatedException
+     */
+    CompletableFuture<Void> executeCallDiscardOutputAsync(String maximaInput, int callTimeout);
+
+    /**
+     * Version of {@link #executeCallDiscardOutputAsync(String, int)} that takes the timeout in the
+     * given {@link TimeUnit}, allowing sub-second timeouts to be used.
+     *
+     * @param maximaInput
+     * @param callTimeout
+     * @param unit
+     *
+     * @throws IllegalArgumentException
+     * @throws MaximaProcessTerminatedException
+     */
+    CompletableFuture<Void> executeCallDiscardOutputAsync(String maximaInput, long callTimeout, TimeUnit unit);
+
     /**
      * Performs a "soft reset" of the process by calling
      * <code>[kill(all),reset()];</code>, which has the effect of clearing up
@@ -146,6 +432,72 @@ public interface MaximaInteractiveProcess {
     void softReset()
         throws MaximaTimeoutException;
 
+    /**
+     * Saves the current state of this Maxima session (i.e. the values, functions and other things
+     * you have defined) to the given file, using Maxima's <code>save(..., all)</code> function.
+     * The resulting {@link MaximaSessionSnapshot} can be passed to
+     * {@link MaximaProcessLauncher#launchInteractiveProcessFromSnapshot(MaximaSessionSnapshot)} to launch
+     * new processes that start in the same state, which is usually much quicker than repeating the
+     * calls that set it up.
+     * <p>
+     * Only things recorded in Maxima's information lists (e.g. <code>values</code> and
+     * <code>functions</code>) are saved, so anything defined directly in Lisp (including
+     * packages written in Lisp) will not be included.
+     *
+     * @param snapshotFile file to save the snapshot to. If null, a temporary file will be
+     *   created, which you should delete using {@link MaximaSessionSnapshot#delete()} once
+     *   you have finished with it.
+     *
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     * @throws JacomaxRuntimeException if a temporary file could not be created
+     */
+    MaximaSessionSnapshot saveSessionSnapshot(File snapshotFile)
+        throws MaximaTimeoutException;
+
+    /**
+     * Version of {@link #saveSessionSnapshot(File)} that uses the given timeout instead
+     * of the current default.
+     *
+     * @param snapshotFile
+     * @param callTimeout
+     *
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     * @throws JacomaxRuntimeException
+     */
+    MaximaSessionSnapshot saveSessionSnapshot(File snapshotFile, int callTimeout)
+        throws MaximaTimeoutException;
+
+    /**
+     * Version of {@link #saveSessionSnapshot(File, int)} that takes the timeout in the
+     * given {@link TimeUnit}, allowing sub-second timeouts to be used.
+     *
+     * @param snapshotFile
+     * @param callTimeout
+     * @param unit
+     *
+     * @throws MaximaTimeoutException
+     * @throws MaximaProcessTerminatedException
+     * @throws JacomaxRuntimeException
+     */
+    MaximaSessionSnapshot saveSessionSnapshot(File snapshotFile, long callTimeout, TimeUnit unit)
+        throws MaximaTimeoutException;
+
+    /**
+     * Returns the {@link MaximaMetrics} recording the calls made to this process.
+     * (The {@link MaximaProcessLauncher} that launched this process also has
+     * {@link MaximaMetrics} covering all of the processes it has launched.)
+     */
+    MaximaMetrics getMetrics();
+
+    /**
+     * Measures the resources used so far by this process, such as its memory and CPU usage.
+     * This needs to ask the operating system about the underlying process, so is a little more
+     * expensive than {@link #getMetrics()}.
+     */
+    MaximaProcessUsage getUsage();
+
     /**
      * Returns whether or not this process has been terminated due to a call to
      * {@link #terminate()}, or because of a timeout, or due to a previous call
@@ -155,6 +507,42 @@ public interface MaximaInteractiveProcess {
      */
     boolean isTerminated();
 
+    /**
+     * Returns why this process was terminated, or null if it has not been terminated.
+     */
+    MaximaTerminationReason getTerminationReason();
+
+    /**
+     * Returns whether this process is still alive, i.e. it has not been terminated and the
+     * underlying Maxima process is still running. This is cheap, as it doesn't communicate with
+     * Maxima, but it won't spot a Maxima process that is running but has stopped responding.
+     * (Use {@link #ping(long, TimeUnit)} for that.)
+     * <p>
+     * If the underlying Maxima process has exited by itself, then this process will be
+     * terminated, with a {@link #getTerminationReason()} of {@link MaximaTerminationReason#PROCESS_DIED}.
+     *
+     * @return true if the process is alive, false otherwise.
+     */
+    boolean isAlive();
+
+    /**
+     * Checks that this process is alive and responsive by making a trivial call to Maxima,
+     * which must complete within the given timeout. As with any other call, a process that
+     * doesn't respond in time will normally be terminated.
+     * <p>
+     * This must not be called while another call is running. The call counts towards the
+     * {@link #getMetrics()} for this process in the same way as any other call.
+     *
+     * @param timeout maximum time to wait for Maxima to respond, which must be positive and
+     *   should normally be small
+     * @param unit {@link TimeUnit} for the timeout, which must not be null
+     *
+     * @return true if Maxima responded in time, false otherwise.
+     *
+     * @throws IllegalArgumentException if timeout is zero or less, or if unit is null
+     */
+    boolean ping(long timeout, TimeUnit unit);
+
     /**
      * Terminates the underlying Maxima process, forcibly if required. No
      * more calls can be made to this process after this point.
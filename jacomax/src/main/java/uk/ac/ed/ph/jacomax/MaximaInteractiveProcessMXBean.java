@@ -0,0 +1,84 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+/**
+ * JMX management interface for a single {@link MaximaInteractiveProcess}.
+ * <p>
+ * Bear in mind that {@link MaximaInteractiveProcess} is not thread-safe, so the
+ * {@link #softReset()} operation should only be used on processes that nobody else is using.
+ * (It is refused for processes managed by a {@link MaximaProcessPool}, which are reset whenever
+ * they are returned to the pool.)
+ * {@link #terminate()} may be used at any time.
+ *
+ * @see MaximaProcessLauncher#registerMBeans(String)
+ *
+ * @author David McKain
+ */
+public interface MaximaInteractiveProcessMXBean extends MaximaCallStatisticsMXBean {
+
+    /** Returns the number identifying this process amongst those launched by this JVM */
+    long getProcessNumber();
+
+    /** Returns whether a call is currently running */
+    boolean isBusy();
+
+    /** Returns whether the process has been terminated */
+    boolean isTerminated();
+
+    /** @see MaximaInteractiveProcess#isAlive() */
+    boolean isAlive();
+
+    /**
+     * Returns the name of the {@link MaximaTerminationReason} explaining why the process was
+     * terminated, or null if it is still alive.
+     */
+    String getTerminationReason();
+
+    /** Returns the default call timeout used by the process, in seconds */
+    int getDefaultCallTimeout();
+
+    /**
+     * Terminates the process, forcibly if required.
+     *
+     * @see MaximaInteractiveProcess#terminate()
+     */
+    int terminate();
+
+    /**
+     * Soft-resets the process.
+     *
+     * @see MaximaInteractiveProcess#softReset()
+     *
+     * @throws IllegalStateException if the process is busy, terminated or managed by a
+     *   {@link MaximaProcessPool}, or if the reset failed
+     */
+    void softReset();
+
+}
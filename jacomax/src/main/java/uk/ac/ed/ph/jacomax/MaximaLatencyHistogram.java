@@ -0,0 +1,156 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Simple thread-safe histogram of durations (in nanoseconds), as used by {@link MaximaMetrics}.
+ * <p>
+ * Values are counted in logarithmic buckets, with 8 buckets for each power of 2, so percentiles are
+ * accurate to within 12.5%. Recording a value is cheap and doesn't allocate any Objects.
+ *
+ * @author David McKain
+ */
+public final class MaximaLatencyHistogram {
+
+    /** Number of bits used to divide up each power of 2 */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** Enough buckets to cover all non-negative longs */
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong count;
+    private final AtomicLong totalNanos;
+    private final AtomicLong maxNanos;
+
+    public MaximaLatencyHistogram() {
+        this.bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.totalNanos = new AtomicLong();
+        this.maxNanos = new AtomicLong();
+    }
+
+    /**
+     * Records the given duration. Negative values are ignored.
+     */
+    public void record(final long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        bucketCounts.incrementAndGet(bucketIndex(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long currentMax = maxNanos.get();
+        while (nanos > currentMax && !maxNanos.compareAndSet(currentMax, nanos)) {
+            currentMax = maxNanos.get();
+        }
+    }
+
+    /** Returns the number of durations recorded */
+    public long getCount() {
+        return count.get();
+    }
+
+    /** Returns the sum of all durations recorded */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /** Returns the largest duration recorded, or 0 if nothing has been recorded */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /** Returns the mean duration, or 0 if nothing has been recorded */
+    public double getMeanNanos() {
+        final long currentCount = count.get();
+        return currentCount > 0 ? (double) totalNanos.get() / currentCount : 0.0;
+    }
+
+    /**
+     * Returns (an upper bound for) the given percentile of the recorded durations, or 0 if nothing
+     * has been recorded.
+     *
+     * @param percentile required percentile, between 0 and 100 inclusive
+     */
+    public long getPercentileNanos(final double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        final long currentCount = count.get();
+        if (currentCount==0) {
+            return 0L;
+        }
+        final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * currentCount));
+        long seen = 0L;
+        for (int i=0; i<BUCKET_COUNT; i++) {
+            seen += bucketCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), getMaxNanos());
+            }
+        }
+        /* (Only get here if values were recorded while we were looking) */
+        return getMaxNanos();
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketUpperBound(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        final long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        final long lowerBound = (SUB_BUCKET_COUNT + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1L;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+            + "(count=" + getCount()
+            + ",meanNanos=" + getMeanNanos()
+            + ",p50Nanos=" + getPercentileNanos(50.0)
+            + ",p99Nanos=" + getPercentileNanos(99.0)
+            + ",maxNanos=" + getMaxNanos()
+            + ")";
+    }
+}
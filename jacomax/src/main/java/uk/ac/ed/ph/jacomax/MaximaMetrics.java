@@ -0,0 +1,236 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Default implementation of {@link MaximaInstrumentation}, which simply accumulates counts and
+ * {@link MaximaLatencyHistogram}s for everything it is told about.
+ * <p>
+ * Jacomax keeps one of these for each {@link MaximaProcessLauncher} (see
+ * {@link MaximaProcessLauncher#getMetrics()}) and each {@link MaximaInteractiveProcess}
+ * (see {@link MaximaInteractiveProcess#getMetrics()}). You can read these at any time, e.g.
+ * for displaying on a dashboard.
+ * <p>
+ * An instance of this class is safe for use by multiple threads.
+ *
+ * @author David McKain
+ */
+public final class MaximaMetrics implements MaximaInstrumentation {
+
+    private final AtomicLong processesStarted;
+    private final AtomicLong processesTerminated;
+    private final AtomicLong forcedDestroyCount;
+    private final AtomicLong reapedOrphanCount;
+    private final AtomicLong callCount;
+    private final AtomicLong failedCallCount;
+    private final AtomicLong timedOutCallCount;
+    private final AtomicLong inputBytes;
+    private final AtomicLong outputBytes;
+    private final MaximaLatencyHistogram startupHistogram;
+    private final MaximaLatencyHistogram lifetimeHistogram;
+    private final MaximaLatencyHistogram callHistogram;
+    private final MaximaLatencyHistogram inputWrittenHistogram;
+    private final MaximaLatencyHistogram firstOutputHistogram;
+    private final MaximaLatencyHistogram outputHandlingHistogram;
+    private final AtomicReference<MaximaCallMetrics> lastCallMetrics;
+
+    public MaximaMetrics() {
+        this.processesStarted = new AtomicLong();
+        this.processesTerminated = new AtomicLong();
+        this.forcedDestroyCount = new AtomicLong();
+        this.reapedOrphanCount = new AtomicLong();
+        this.callCount = new AtomicLong();
+        this.failedCallCount = new AtomicLong();
+        this.timedOutCallCount = new AtomicLong();
+        this.inputBytes = new AtomicLong();
+        this.outputBytes = new AtomicLong();
+        this.startupHistogram = new MaximaLatencyHistogram();
+        this.lifetimeHistogram = new MaximaLatencyHistogram();
+        this.callHistogram = new MaximaLatencyHistogram();
+        this.inputWrittenHistogram = new MaximaLatencyHistogram();
+        this.firstOutputHistogram = new MaximaLatencyHistogram();
+        this.outputHandlingHistogram = new MaximaLatencyHistogram();
+        this.lastCallMetrics = new AtomicReference<MaximaCallMetrics>();
+    }
+
+    //-------------------------------------------------------------------
+    // MaximaInstrumentation methods
+
+    public void processStarted(final long processNumber) {
+        processesStarted.incrementAndGet();
+    }
+
+    public void processReady(final long processNumber, final long startupNanos) {
+        startupHistogram.record(startupNanos);
+    }
+
+    public void callCompleted(final long processNumber, final MaximaCallMetrics callMetrics) {
+        callCount.incrementAndGet();
+        switch (callMetrics.getOutcome()) {
+            case FAILED:
+                failedCallCount.incrementAndGet();
+                break;
+
+            case TIMED_OUT:
+                timedOutCallCount.incrementAndGet();
+                break;
+
+            default:
+                break;
+        }
+        inputBytes.addAndGet(callMetrics.getInputBytes());
+        outputBytes.addAndGet(callMetrics.getOutputBytes());
+        callHistogram.record(callMetrics.getTotalNanos());
+        inputWrittenHistogram.record(callMetrics.getInputWrittenNanos());
+        firstOutputHistogram.record(callMetrics.getFirstOutputNanos());
+        outputHandlingHistogram.record(callMetrics.getOutputHandlingNanos());
+        lastCallMetrics.set(callMetrics);
+    }
+
+    public void orphansReaped(final long processNumber, final int orphanCount) {
+        reapedOrphanCount.addAndGet(orphanCount);
+    }
+
+    public void processTerminated(final long processNumber, final long lifetimeNanos, final boolean forciblyDestroyed) {
+        processesTerminated.incrementAndGet();
+        if (forciblyDestroyed) {
+            forcedDestroyCount.incrementAndGet();
+        }
+        lifetimeHistogram.record(lifetimeNanos);
+    }
+
+    //-------------------------------------------------------------------
+
+    /** Returns the number of processes started */
+    public long getProcessesStarted() {
+        return processesStarted.get();
+    }
+
+    /** Returns the number of processes terminated */
+    public long getProcessesTerminated() {
+        return processesTerminated.get();
+    }
+
+    /** Returns the number of processes that have been started but not yet terminated */
+    public long getLiveProcessCount() {
+        return processesStarted.get() - processesTerminated.get();
+    }
+
+    /** Returns the number of processes that had to be forcibly destroyed */
+    public long getForcedDestroyCount() {
+        return forcedDestroyCount.get();
+    }
+
+    /**
+     * Returns the number of orphaned child processes (e.g. Lisp runtimes started by the
+     * <code>maxima</code> script) that had to be destroyed when processes were terminated
+     */
+    public long getReapedOrphanCount() {
+        return reapedOrphanCount.get();
+    }
+
+    /** Returns the number of calls completed, including failed and timed out calls */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    /** Returns the number of calls that failed */
+    public long getFailedCallCount() {
+        return failedCallCount.get();
+    }
+
+    /** Returns the number of calls that timed out */
+    public long getTimedOutCallCount() {
+        return timedOutCallCount.get();
+    }
+
+    /** Returns the total number of bytes sent to Maxima */
+    public long getInputBytes() {
+        return inputBytes.get();
+    }
+
+    /** Returns the total number of bytes read from Maxima */
+    public long getOutputBytes() {
+        return outputBytes.get();
+    }
+
+    /** Returns the histogram of times taken for {@link MaximaInteractiveProcess}es to start up */
+    public MaximaLatencyHistogram getStartupHistogram() {
+        return startupHistogram;
+    }
+
+    /** Returns the {@link MaximaCallMetrics} for the most recently completed call, or null if there have been no calls */
+    public MaximaCallMetrics getLastCallMetrics() {
+        return lastCallMetrics.get();
+    }
+
+    /** Returns the histogram of process lifetimes */
+    public MaximaLatencyHistogram getLifetimeHistogram() {
+        return lifetimeHistogram;
+    }
+
+    /** Returns the histogram of total call times */
+    public MaximaLatencyHistogram getCallHistogram() {
+        return callHistogram;
+    }
+
+    /** Returns the histogram of {@link MaximaCallMetrics#getInputWrittenNanos()} */
+    public MaximaLatencyHistogram getInputWrittenHistogram() {
+        return inputWrittenHistogram;
+    }
+
+    /** Returns the histogram of {@link MaximaCallMetrics#getFirstOutputNanos()} */
+    public MaximaLatencyHistogram getFirstOutputHistogram() {
+        return firstOutputHistogram;
+    }
+
+    /** Returns the histogram of {@link MaximaCallMetrics#getOutputHandlingNanos()} */
+    public MaximaLatencyHistogram getOutputHandlingHistogram() {
+        return outputHandlingHistogram;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+            + "(processesStarted=" + getProcessesStarted()
+            + ",processesTerminated=" + getProcessesTerminated()
+            + ",forcedDestroyCount=" + getForcedDestroyCount()
+            + ",reapedOrphanCount=" + getReapedOrphanCount()
+            + ",callCount=" + getCallCount()
+            + ",failedCallCount=" + getFailedCallCount()
+            + ",timedOutCallCount=" + getTimedOutCallCount()
+            + ",inputBytes=" + getInputBytes()
+            + ",outputBytes=" + getOutputBytes()
+            + ",callHistogram=" + callHistogram
+            + ")";
+    }
+}
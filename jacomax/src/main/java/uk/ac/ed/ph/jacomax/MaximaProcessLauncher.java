@@ -28,10 +28,17 @@
  */
 package uk.ac.ed.ph.jacomax;
 
+import uk.ac.ed.ph.jacomax.MaximaConfiguration.ProcessIoMode;
 import uk.ac.ed.ph.jacomax.internal.Assert;
+import uk.ac.ed.ph.jacomax.internal.JmxSupport;
 import uk.ac.ed.ph.jacomax.internal.MaximaBatchProcessImpl;
 import uk.ac.ed.ph.jacomax.internal.MaximaInteractiveProcessImpl;
+import uk.ac.ed.ph.jacomax.internal.MaximaInteractiveProcessMXBeanImpl;
 import uk.ac.ed.ph.jacomax.internal.MaximaProcessController;
+import uk.ac.ed.ph.jacomax.internal.MaximaProcessLauncherMXBeanImpl;
+import uk.ac.ed.ph.jacomax.internal.ProcessSupport;
+import uk.ac.ed.ph.jacomax.internal.TimeoutSupport;
+import uk.ac.ed.ph.jacomax.internal.VirtualThreadSupport;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -41,9 +48,12 @@ import java.nio.charset.IllegalCharsetNameException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.management.ObjectName;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,12 +88,27 @@ public final class MaximaProcessLauncher {
     /** Default value for {@link MaximaConfiguration#getDefaultBatchTimeout()} */
     public static final int DEFAULT_BATCH_TIMEOUT = 180;
 
+    /** Default value for {@link MaximaConfiguration#getInterruptRecoveryTimeout(TimeUnit)}, in seconds */
+    public static final int DEFAULT_INTERRUPT_RECOVERY_TIMEOUT = 5;
+
+    /** Default value for {@link MaximaConfiguration#getTerminationGracePeriod(TimeUnit)}, in seconds */
+    public static final int DEFAULT_TERMINATION_GRACE_PERIOD = 1;
+
     /** Default value for {@link MaximaConfiguration#getMaximaCharset()} */
     public static final String DEFAULT_MAXIMA_CHARSET = "US-ASCII";
 
     /** Underlying {@link MaximaConfiguration} used by this launcher */
     private final MaximaConfiguration maximaConfiguration;
 
+    /** {@link MaximaMetrics} for all processes launched by this launcher */
+    private final MaximaMetrics metrics;
+
+    /** Optional additional {@link MaximaInstrumentation} for processes launched by this launcher */
+    private volatile MaximaInstrumentation instrumentation;
+
+    /** Name of the {@link MaximaProcessLauncherMXBean} registered for this launcher, if any */
+    private volatile ObjectName mbeanName;
+
     /**
      * Creates a new Maxima process launcher, using the given {@link MaximaConfiguration}
      * to specify how to run and connect to Maxima.
@@ -91,6 +116,72 @@ public final class MaximaProcessLauncher {
     public MaximaProcessLauncher(final MaximaConfiguration maximaConfiguration) {
         Assert.notNull(maximaConfiguration, "MaximaConfiguration");
         this.maximaConfiguration = maximaConfiguration;
+        this.metrics = new MaximaMetrics();
+    }
+
+    /**
+     * Returns the {@link MaximaMetrics} for all processes launched by this launcher.
+     */
+    public MaximaMetrics getMetrics() {
+        return metrics;
+    }
+
+    public MaximaInstrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * Registers a {@link MaximaInstrumentation} that will be told about all processes subsequently
+     * launched by this launcher, in addition to the built-in {@link MaximaMetrics}.
+     *
+     * @param instrumentation instrumentation to register, which may be null to register nothing
+     */
+    public void setInstrumentation(final MaximaInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Registers a {@link MaximaProcessLauncherMXBean} for this launcher with the platform
+     * MBeanServer, using the name <code>uk.ac.ed.ph.jacomax:type=MaximaProcessLauncher,name=[name]</code>.
+     * <p>
+     * Each {@link MaximaInteractiveProcess} subsequently launched will also have a
+     * {@link MaximaInteractiveProcessMXBean} registered, named
+     * <code>uk.ac.ed.ph.jacomax:type=MaximaInteractiveProcess,launcher=[name],name=[processNumber]</code>,
+     * which is unregistered once the process terminates.
+     * <p>
+     * Any existing MBeans with the same names will be replaced.
+     *
+     * @param name name for this launcher, which must not be null
+     * @return {@link ObjectName} of the registered MBean
+     *
+     * @throws JacomaxRuntimeException if the MBean could not be registered
+     */
+    public synchronized ObjectName registerMBeans(final String name) {
+        unregisterMBeans();
+        final ObjectName objectName = JmxSupport.createObjectName("MaximaProcessLauncher", name);
+        JmxSupport.registerMBean(new MaximaProcessLauncherMXBeanImpl(this), objectName);
+        mbeanName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Unregisters the {@link MaximaProcessLauncherMXBean} registered via {@link #registerMBeans(String)},
+     * doing nothing if none is registered. (MBeans for processes that are still alive remain
+     * registered until those processes terminate, but no more will be registered.)
+     */
+    public synchronized void unregisterMBeans() {
+        if (mbeanName!=null) {
+            JmxSupport.unregisterMBean(mbeanName);
+            mbeanName = null;
+        }
+    }
+
+    /**
+     * Returns the {@link ObjectName} of the {@link MaximaProcessLauncherMXBean} registered
+     * for this launcher, or null if it has not been registered.
+     */
+    public ObjectName getMBeanName() {
+        return mbeanName;
     }
 
     /**
@@ -110,11 +201,88 @@ public final class MaximaProcessLauncher {
      *   The caller is reponsible for closing this stream afterwards.
      */
     public MaximaInteractiveProcess launchInteractiveProcess(final OutputStream maximaStderrHandler) {
-        final MaximaInteractiveProcessImpl process = new MaximaInteractiveProcessImpl(newMaximaProcessController(maximaStderrHandler),
-                computeDefaultTimeout(maximaConfiguration.getDefaultCallTimeout(), DEFAULT_CALL_TIMEOUT),
+        return doLaunchInteractiveProcess(maximaStderrHandler, false);
+    }
+
+    /**
+     * Launches a new {@link MaximaInteractiveProcess} to be managed by a {@link MaximaProcessPool}.
+     */
+    MaximaInteractiveProcess launchPooledInteractiveProcess() {
+        return doLaunchInteractiveProcess(null, true);
+    }
+
+    private MaximaInteractiveProcessImpl doLaunchInteractiveProcess(final OutputStream maximaStderrHandler,
+            final boolean pooled) {
+        final MaximaProcessController maximaProcessController = newMaximaProcessController(maximaStderrHandler,
+                computeInterruptRecoveryTimeoutNanos());
+        final MaximaInteractiveProcessImpl process = new MaximaInteractiveProcessImpl(maximaProcessController,
+                computeDefaultTimeoutNanos(maximaConfiguration.getDefaultCallTimeout(TimeUnit.NANOSECONDS), DEFAULT_CALL_TIMEOUT),
                 computeMaximaCharset());
+        process.setPooled(pooled);
         process.advanceToFirstInputPrompt();
         logger.debug("Maxima interactive process started and ready for communication");
+        registerProcessMBean(process, maximaProcessController);
+        return process;
+    }
+
+    private void registerProcessMBean(final MaximaInteractiveProcessImpl process,
+            final MaximaProcessController maximaProcessController) {
+        final ObjectName launcherMBeanName = mbeanName;
+        if (launcherMBeanName!=null) {
+            try {
+                maximaProcessController.registerMBean(new MaximaInteractiveProcessMXBeanImpl(process, maximaProcessController),
+                        JmxSupport.createProcessObjectName(launcherMBeanName, maximaProcessController.getProcessNumber()));
+            }
+            catch (final JacomaxRuntimeException e) {
+                /* (Not worth failing the launch over) */
+                logger.warn("Could not register MBean for Maxima process", e);
+            }
+        }
+    }
+
+    /**
+     * Launches a new {@link MaximaInteractiveProcess} that starts in the state saved in the given
+     * {@link MaximaSessionSnapshot}, which is loaded using the default call timeout.
+     * <p>
+     * Note that calling {@link MaximaInteractiveProcess#softReset()} on the resulting
+     * process will also clear up things loaded from the snapshot.
+     *
+     * @param snapshot snapshot to load, created using
+     *   {@link MaximaInteractiveProcess#saveSessionSnapshot(java.io.File)}, which must not be null
+     *
+     * @throws JacomaxRuntimeException if the snapshot file does not exist, or if loading it
+     *   timed out.
+     */
+    public MaximaInteractiveProcess launchInteractiveProcessFromSnapshot(final MaximaSessionSnapshot snapshot) {
+        return launchInteractiveProcessFromSnapshot(snapshot, null);
+    }
+
+    /**
+     * Version of {@link #launchInteractiveProcessFromSnapshot(MaximaSessionSnapshot)} that passes any
+     * STDERR output from Maxima to the given OutputStream.
+     *
+     * @see #launchInteractiveProcess(OutputStream)
+     */
+    public MaximaInteractiveProcess launchInteractiveProcessFromSnapshot(final MaximaSessionSnapshot snapshot,
+            final OutputStream maximaStderrHandler) {
+        Assert.notNull(snapshot, "snapshot");
+        if (!snapshot.getFile().isFile()) {
+            throw new JacomaxRuntimeException("Session snapshot file " + snapshot.getFile() + " does not exist");
+        }
+        final MaximaInteractiveProcessImpl process = doLaunchInteractiveProcess(maximaStderrHandler, false);
+        try {
+            process.loadSessionSnapshot(snapshot, process.getDefaultCallTimeout(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        }
+        catch (final MaximaTimeoutException e) {
+            /* (The process may still be alive if the call was interrupted rather than killed) */
+            process.terminate();
+            throw new JacomaxRuntimeException("Timed out loading session snapshot " + snapshot.getFile(), e);
+        }
+        catch (final RuntimeException e) {
+            process.terminate();
+            throw e;
+        }
+        logger.debug("Maxima interactive process started from snapshot {}", snapshot.getFile());
         return process;
     }
 
@@ -139,7 +307,7 @@ public final class MaximaProcessLauncher {
         Assert.notNull(batchInputStream, "batchInputStream");
         Assert.notNull(batchOutputStream, "batchOutputStream");
         return doRunBatchProcess(batchInputStream, batchOutputStream, null,
-                computeDefaultTimeout(maximaConfiguration.getDefaultBatchTimeout(), DEFAULT_BATCH_TIMEOUT));
+                computeDefaultTimeoutNanos(maximaConfiguration.getDefaultBatchTimeout(TimeUnit.NANOSECONDS), DEFAULT_BATCH_TIMEOUT));
     }
 
     /**
@@ -168,7 +336,7 @@ public final class MaximaProcessLauncher {
         Assert.notNull(batchInputStream, "batchInputStream");
         Assert.notNull(batchOutputStream, "batchOutputStream");
         return doRunBatchProcess(batchInputStream, batchOutputStream, batchErrorStream,
-                computeDefaultTimeout(maximaConfiguration.getDefaultBatchTimeout(), DEFAULT_BATCH_TIMEOUT));
+                computeDefaultTimeoutNanos(maximaConfiguration.getDefaultBatchTimeout(TimeUnit.NANOSECONDS), DEFAULT_BATCH_TIMEOUT));
     }
 
     /**
@@ -196,7 +364,27 @@ public final class MaximaProcessLauncher {
             throws MaximaTimeoutException {
         Assert.notNull(batchInputStream, "batchInputStream");
         Assert.notNull(batchOutputStream, "batchOutputStream");
-        return doRunBatchProcess(batchInputStream, batchOutputStream, null, timeout);
+        return runBatchProcess(batchInputStream, batchOutputStream, null, timeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Version of {@link #runBatchProcess(InputStream, OutputStream, int)} that takes the timeout in the
+     * given {@link TimeUnit}, allowing sub-second timeouts to be used.
+     *
+     * @param batchInputStream batch input stream, which must not be null
+     * @param batchOutputStream batch output stream, which must not be null
+     * @param timeout timeout to use. Zero or less indicates that no timeout should be
+     *   applied
+     * @param unit unit for the timeout, which must not be null
+     *
+     * @return underlying exit value from the Maxima process
+     *
+     * @throws MaximaTimeoutException if the process exceeded its timeout and had to be killed.
+     */
+    public int runBatchProcess(final InputStream batchInputStream, final OutputStream batchOutputStream,
+            final long timeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        return runBatchProcess(batchInputStream, batchOutputStream, null, timeout, unit);
     }
 
     /**
@@ -228,14 +416,39 @@ public final class MaximaProcessLauncher {
             throws MaximaTimeoutException {
         Assert.notNull(batchInputStream, "batchInputStream");
         Assert.notNull(batchOutputStream, "batchOutputStream");
-        return doRunBatchProcess(batchInputStream, batchOutputStream, batchErrorStream, timeout);
+        return runBatchProcess(batchInputStream, batchOutputStream, batchErrorStream, timeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Version of {@link #runBatchProcess(InputStream, OutputStream, OutputStream, int)} that takes
+     * the timeout in the given {@link TimeUnit}, allowing sub-second timeouts to be used.
+     *
+     * @param batchInputStream batch input stream, which must not be null
+     * @param batchOutputStream batch output stream, which must not be null
+     * @param batchErrorStream optional output stream to receive Maxima STDERR. If null, then
+     *   STDERR output will be discarded.
+     * @param timeout timeout to use. Zero or less indicates that no timeout should be
+     *   applied
+     * @param unit unit for the timeout, which must not be null
+     *
+     * @return underlying exit value from the Maxima process
+     *
+     * @throws MaximaTimeoutException if the process exceeded its timeout and had to be killed.
+     */
+    public int runBatchProcess(final InputStream batchInputStream, final OutputStream batchOutputStream,
+            final OutputStream batchErrorStream, final long timeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        Assert.notNull(batchInputStream, "batchInputStream");
+        Assert.notNull(batchOutputStream, "batchOutputStream");
+        return doRunBatchProcess(batchInputStream, batchOutputStream, batchErrorStream,
+                TimeoutSupport.toNanos(timeout, unit));
     }
 
     private int doRunBatchProcess(final InputStream batchInputStream, final OutputStream batchOutputStream,
-            final OutputStream batchErrorStream, final int timeout)
+            final OutputStream batchErrorStream, final long timeoutNanos)
             throws MaximaTimeoutException {
-        final MaximaBatchProcessImpl batchProcess = new MaximaBatchProcessImpl(newMaximaProcessController(batchErrorStream), batchInputStream, batchOutputStream);
-        return batchProcess.run(timeout);
+        final MaximaBatchProcessImpl batchProcess = new MaximaBatchProcessImpl(newMaximaProcessController(batchErrorStream, 0L), batchInputStream, batchOutputStream);
+        return batchProcess.run(timeoutNanos);
     }
 
     //------------------------------------------------------------------------
@@ -253,33 +466,84 @@ public final class MaximaProcessLauncher {
         }
     }
 
-    private int computeDefaultTimeout(final int configured, final int defaultValue) {
-        if (configured > 0) {
-            return configured;
+    private ProcessIoMode computeProcessIoMode() {
+        final ProcessIoMode processIoMode = maximaConfiguration.getProcessIoMode();
+        return processIoMode!=null ? processIoMode : ProcessIoMode.THREAD_POOL;
+    }
+
+    private boolean computeUseVirtualThreads() {
+        if (!maximaConfiguration.isUseVirtualThreads()) {
+            return false;
+        }
+        if (!VirtualThreadSupport.isAvailable()) {
+            logger.warn("Virtual threads were requested but are not available on this JVM (Java 21 or later is required)."
+                    + " Platform threads will be used instead.");
+            return false;
+        }
+        return true;
+    }
+
+    private long computeDefaultTimeoutNanos(final long configuredNanos, final int defaultSeconds) {
+        if (configuredNanos > 0L) {
+            return configuredNanos;
         }
-        else if (configured==0) {
-            return defaultValue;
+        else if (configuredNanos==0L) {
+            return TimeUnit.SECONDS.toNanos(defaultSeconds);
         }
         else {
-            return 0;
+            return 0L;
         }
     }
 
-    private MaximaProcessController newMaximaProcessController(final OutputStream maximaStderrHandler) {
-        return new MaximaProcessController(this, launchMaximaProcess(), maximaStderrHandler);
+    /**
+     * Works out how long interactive processes should wait to recover after interrupting
+     * a call that timed out, returning zero if they shouldn't try to recover.
+     */
+    private long computeInterruptRecoveryTimeoutNanos() {
+        if (!maximaConfiguration.isInterruptOnTimeout()) {
+            return 0L;
+        }
+        if (!ProcessSupport.isInterruptSupported()) {
+            logger.warn("Interrupting Maxima on timeout was requested but is not supported on this platform."
+                    + " Processes will be terminated on timeout instead.");
+            return 0L;
+        }
+        return computeDefaultTimeoutNanos(maximaConfiguration.getInterruptRecoveryTimeout(TimeUnit.NANOSECONDS),
+                DEFAULT_INTERRUPT_RECOVERY_TIMEOUT);
+    }
+
+    /**
+     * Works out how long processes are given to terminate before being forcibly destroyed.
+     */
+    private long computeTerminationGracePeriodNanos() {
+        return computeDefaultTimeoutNanos(maximaConfiguration.getTerminationGracePeriod(TimeUnit.NANOSECONDS),
+                DEFAULT_TERMINATION_GRACE_PERIOD);
+    }
+
+    private MaximaProcessController newMaximaProcessController(final OutputStream maximaStderrHandler,
+            final long interruptRecoveryTimeoutNanos) {
+        return new MaximaProcessController(this, launchMaximaProcess(), maximaStderrHandler,
+                computeProcessIoMode(), computeUseVirtualThreads(), interruptRecoveryTimeoutNanos,
+                computeTerminationGracePeriodNanos());
     }
 
     private Process launchMaximaProcess() {
         /* Extract relevant configuration required to get Maxima running */
         final String maximaExecutablePath = maximaConfiguration.getMaximaExecutablePath();
         final String[] maximaCommandArguments = maximaConfiguration.getMaximaCommandArguments();
+        final String maximaImagePath = maximaConfiguration.getMaximaImagePath();
         String[] maximaRuntimeEnvironment = maximaConfiguration.getMaximaRuntimeEnvironment();
-        if (maximaExecutablePath==null) {
-            throw new JacomaxConfigurationException("maximaExecutablePath must not be null");
-        }
 
         /* Build up the resulting command that we will execute */
         final List<String> maximaCommandArray = new ArrayList<String>();
+        if (maximaImagePath!=null) {
+            /* (Prebuilt images start Maxima directly, so don't need any further arguments) */
+            maximaCommandArray.add(maximaImagePath);
+            return startMaximaProcess(maximaCommandArray, maximaRuntimeEnvironment);
+        }
+        if (maximaExecutablePath==null) {
+            throw new JacomaxConfigurationException("maximaExecutablePath must not be null");
+        }
         final Pattern windowsMagicPattern = Pattern.compile("^(.+?\\\\Maxima-([\\d.]+))\\\\bin\\\\maxima.bat$");
         final Matcher windowsMagicMatcher = windowsMagicPattern.matcher(maximaExecutablePath);
         if (windowsMagicMatcher.matches()) {
@@ -327,7 +591,10 @@ public final class MaximaProcessLauncher {
             }
         }
 
-        /* Now start the process up */
+        return startMaximaProcess(maximaCommandArray, maximaRuntimeEnvironment);
+    }
+
+    private Process startMaximaProcess(final List<String> maximaCommandArray, final String[] maximaRuntimeEnvironment) {
         Process result;
         try {
             if (logger.isInfoEnabled()) {
@@ -0,0 +1,899 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import uk.ac.ed.ph.jacomax.internal.Assert;
+import uk.ac.ed.ph.jacomax.internal.JmxSupport;
+import uk.ac.ed.ph.jacomax.internal.ProcessTree;
+import uk.ac.ed.ph.jacomax.internal.TimeoutSupport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages a pool of {@link MaximaInteractiveProcess}es created by a {@link MaximaProcessLauncher},
+ * avoiding the cost of starting up a new Maxima process for each piece of work you want to do.
+ * <p>
+ * Use {@link #borrowProcess()} to obtain a process from the pool, and make sure you pass it back
+ * to {@link #returnProcess(MaximaInteractiveProcess)} once you have finished with it, typically
+ * in a <code>finally</code> block. Don't call {@link MaximaInteractiveProcess#terminate()} on
+ * a borrowed process unless you really want it thrown away.
+ * <p>
+ * Processes are given a {@link MaximaInteractiveProcess#softReset()} when they are returned.
+ * Processes that have been terminated while borrowed (e.g. because a call resulted in a
+ * {@link MaximaTimeoutException}) are discarded on return.
+ * <p>
+ * Idle processes whose underlying Maxima process has died are discarded rather than being
+ * borrowed. Set {@link MaximaProcessPoolConfiguration#isPingOnBorrow()} to also check that each
+ * process still responds to a trivial call before it is borrowed.
+ * <p>
+ * The pool tries to keep {@link MaximaProcessPoolConfiguration#getWarmPoolSize()} idle processes
+ * "warm" and ready for borrowing. New processes are launched in the background as processes are
+ * borrowed or discarded, so callers don't normally have to wait for Maxima to start up. Use
+ * {@link #getIdleProcessCount()} and {@link #getWarmingProcessCount()} to see how well the pool
+ * is keeping up with demand.
+ * <p>
+ * Maxima processes tend to slow down as they get older, even with regular resets. You can set
+ * limits on the number of calls, age, memory and CPU usage of processes in the
+ * {@link MaximaProcessPoolConfiguration}. Processes exceeding these limits are recycled when
+ * they are returned, being terminated and replaced in the background. Idle processes are also
+ * checked periodically against the age limit, so that they are normally replaced before anyone
+ * tries to borrow them.
+ * <p>
+ * Call {@link #shutdown()} to terminate all of the pooled processes once you have finished
+ * with the pool.
+ * <p>
+ * The pool's state can be monitored via JMX by calling {@link #registerMBean(String)}.
+ * <p>
+ * An instance of this class is thread-safe.
+ *
+ * @see MaximaProcessPoolConfiguration
+ *
+ * @author David McKain
+ */
+public final class MaximaProcessPool implements MaximaProcessPoolMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(MaximaProcessPool.class);
+
+    /** Default value for {@link MaximaProcessPoolConfiguration#getMinPoolSize()} */
+    public static final int DEFAULT_MIN_POOL_SIZE = 1;
+
+    /** Default value for {@link MaximaProcessPoolConfiguration#getMaxPoolSize()} */
+    public static final int DEFAULT_MAX_POOL_SIZE = 8;
+
+    /** Default value for {@link MaximaProcessPoolConfiguration#getWarmPoolSize()} */
+    public static final int DEFAULT_WARM_POOL_SIZE = 1;
+
+    /** Default value for {@link MaximaProcessPoolConfiguration#getDefaultBorrowTimeout()} */
+    public static final int DEFAULT_BORROW_TIMEOUT = 60;
+
+    /** Default value for {@link MaximaProcessPoolConfiguration#getPingTimeout(TimeUnit)}, in seconds */
+    public static final int DEFAULT_PING_TIMEOUT = 2;
+
+    /** Longest interval between checks of idle processes against the age limit */
+    private static final long MAX_AGE_SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Shortest interval between checks of idle processes against the age limit */
+    private static final long MIN_AGE_SWEEP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /** {@link MaximaProcessLauncher} used to create new processes */
+    private final MaximaProcessLauncher launcher;
+
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final int warmPoolSize;
+    private final int defaultBorrowTimeout;
+
+    /** Timeout for pinging processes before they are borrowed, or zero if this is not being done */
+    private final long pingTimeoutNanos;
+
+    /* Recycling limits, which are zero if not used */
+    private final int maxCallsPerProcess;
+    private final long maxProcessAgeNanos;
+    private final long maxResidentMemory;
+    private final long maxCpuTimeNanos;
+
+    /** Number of processes that have been recycled */
+    private final AtomicLong recycledProcessCount;
+
+    /** Runs {@link WarmingTask}s to launch new processes in the background */
+    private final ExecutorService warmingExecutor;
+
+    /**
+     * Interval between checks of idle processes against {@link #maxProcessAgeNanos}, or zero if
+     * there is no age limit
+     */
+    private final long ageSweepIntervalNanos;
+
+    /** Runs {@link AgeSweepTask} every {@link #ageSweepIntervalNanos}, or null if there is no age limit */
+    private final ScheduledExecutorService ageSweepExecutor;
+
+    /** Lock guarding all of the mutable state below */
+    private final ReentrantLock lock;
+
+    /** Signalled whenever a process becomes idle or a pool slot frees up */
+    private final Condition poolStateChanged;
+
+    /** Idle processes, with the most recently used at the front */
+    private final Deque<MaximaInteractiveProcess> idleProcesses;
+
+    /** Processes currently borrowed, mapped to their total number of calls when they were borrowed */
+    private final Map<MaximaInteractiveProcess, Long> borrowedProcesses;
+
+    /**
+     * Number of calls made to each live process by borrowers, excluding calls made by the pool
+     * itself (e.g. soft resets), which is checked against {@link #maxCallsPerProcess}
+     */
+    private final Map<MaximaInteractiveProcess, Long> borrowerCallCounts;
+
+    /** Number of live processes, including idle, borrowed and those being launched */
+    private int liveProcessCount;
+
+    /** Number of processes currently being launched in the background */
+    private int warmingProcessCount;
+
+    /** Set once {@link #shutdown()} has been called */
+    private boolean shutdown;
+
+    /** Name of the MBean registered for this pool, if any */
+    private volatile ObjectName mbeanName;
+
+    /**
+     * Creates a new pool using the given {@link MaximaProcessLauncher} and default
+     * pool settings.
+     */
+    public MaximaProcessPool(final MaximaProcessLauncher launcher) {
+        this(launcher, new MaximaProcessPoolConfiguration());
+    }
+
+    /**
+     * Creates a new pool using the given {@link MaximaProcessLauncher}, with settings taken
+     * from the given {@link MaximaProcessPoolConfiguration}.
+     * <p>
+     * This will block until the initial {@link MaximaProcessPoolConfiguration#getMinPoolSize()}
+     * processes have been launched. Any further processes required to fill the warm pool will
+     * then be launched in the background. If any of the initial launches fail, the pool is shut
+     * down (terminating the processes already launched) and the Exception is rethrown.
+     */
+    public MaximaProcessPool(final MaximaProcessLauncher launcher, final MaximaProcessPoolConfiguration poolConfiguration) {
+        Assert.notNull(launcher, "launcher");
+        Assert.notNull(poolConfiguration, "poolConfiguration");
+        this.launcher = launcher;
+        this.minPoolSize = computeValue(poolConfiguration.getMinPoolSize(), DEFAULT_MIN_POOL_SIZE);
+        this.maxPoolSize = poolConfiguration.getMaxPoolSize() > 0 ? poolConfiguration.getMaxPoolSize() : DEFAULT_MAX_POOL_SIZE;
+        this.warmPoolSize = computeValue(poolConfiguration.getWarmPoolSize(), DEFAULT_WARM_POOL_SIZE);
+        this.defaultBorrowTimeout = computeValue(poolConfiguration.getDefaultBorrowTimeout(), DEFAULT_BORROW_TIMEOUT);
+        this.maxCallsPerProcess = Math.max(0, poolConfiguration.getMaxCallsPerProcess());
+        this.maxProcessAgeNanos = Math.max(0L, poolConfiguration.getMaxProcessAge(TimeUnit.NANOSECONDS));
+        this.maxResidentMemory = Math.max(0L, poolConfiguration.getMaxResidentMemory());
+        this.maxCpuTimeNanos = Math.max(0L, poolConfiguration.getMaxCpuTime(TimeUnit.NANOSECONDS));
+        if (poolConfiguration.isPingOnBorrow()) {
+            final long pingTimeout = poolConfiguration.getPingTimeout(TimeUnit.NANOSECONDS);
+            this.pingTimeoutNanos = pingTimeout > 0L ? pingTimeout : TimeUnit.SECONDS.toNanos(DEFAULT_PING_TIMEOUT);
+        }
+        else {
+            this.pingTimeoutNanos = 0L;
+        }
+        this.recycledProcessCount = new AtomicLong();
+        if (maxCpuTimeNanos > 0L && !ProcessTree.isDescendantsSupported()) {
+            logger.warn("maxCpuTime has been set but will be ignored as it requires Java 9 or later");
+        }
+        if (minPoolSize > maxPoolSize) {
+            throw new JacomaxConfigurationException("minPoolSize " + minPoolSize
+                    + " must not exceed maxPoolSize " + maxPoolSize);
+        }
+        this.lock = new ReentrantLock();
+        this.poolStateChanged = lock.newCondition();
+        this.idleProcesses = new ArrayDeque<MaximaInteractiveProcess>();
+        this.borrowedProcesses = new HashMap<MaximaInteractiveProcess, Long>();
+        this.borrowerCallCounts = new HashMap<MaximaInteractiveProcess, Long>();
+        this.liveProcessCount = 0;
+        this.warmingProcessCount = 0;
+        this.shutdown = false;
+        final ThreadFactory threadFactory = new PoolThreadFactory();
+        this.warmingExecutor = Executors.newCachedThreadPool(threadFactory);
+        try {
+            ensureMinimumPoolSize();
+            replenish();
+        }
+        catch (final RuntimeException e) {
+            /* (Don't leak any processes we've already launched, or the warming threads) */
+            shutdown();
+            throw e;
+        }
+        if (maxProcessAgeNanos > 0L) {
+            /* (Check often enough that idle processes are normally replaced before they get too old) */
+            this.ageSweepIntervalNanos = Math.max(MIN_AGE_SWEEP_INTERVAL_NANOS,
+                    Math.min(MAX_AGE_SWEEP_INTERVAL_NANOS, maxProcessAgeNanos / 10));
+            this.ageSweepExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            ageSweepExecutor.scheduleWithFixedDelay(new AgeSweepTask(), ageSweepIntervalNanos,
+                    ageSweepIntervalNanos, TimeUnit.NANOSECONDS);
+        }
+        else {
+            this.ageSweepIntervalNanos = 0L;
+            this.ageSweepExecutor = null;
+        }
+    }
+
+    //------------------------------------------------------------------------
+
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public int getWarmPoolSize() {
+        return warmPoolSize;
+    }
+
+    public int getDefaultBorrowTimeout() {
+        return defaultBorrowTimeout;
+    }
+
+    /** Returns the number of live processes, including idle, borrowed and those being launched */
+    public int getPoolSize() {
+        lock.lock();
+        try {
+            return liveProcessCount;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of processes currently idle in the pool. These are all ready to
+     * be borrowed.
+     */
+    public int getIdleProcessCount() {
+        lock.lock();
+        try {
+            return idleProcesses.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the number of processes currently being launched in the background */
+    public int getWarmingProcessCount() {
+        lock.lock();
+        try {
+            return warmingProcessCount;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the number of processes currently borrowed from the pool */
+    public int getBorrowedProcessCount() {
+        lock.lock();
+        try {
+            return borrowedProcesses.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the number of processes that have been recycled after exceeding one of the recycling limits */
+    public long getRecycledProcessCount() {
+        return recycledProcessCount.get();
+    }
+
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    //------------------------------------------------------------------------
+
+    /**
+     * Registers this pool as a {@link MaximaProcessPoolMXBean} with the platform MBeanServer,
+     * using the name <code>uk.ac.ed.ph.jacomax:type=MaximaProcessPool,name=[name]</code>.
+     * Any existing MBean with the same name will be replaced.
+     * <p>
+     * The MBean is unregistered when the pool is {@link #shutdown()}.
+     * <p>
+     * (Use {@link MaximaProcessLauncher#registerMBeans(String)} on the underlying launcher if
+     * you also want MBeans for each of the pooled processes.)
+     *
+     * @param name name for this pool, which must not be null
+     * @return {@link ObjectName} of the registered MBean
+     *
+     * @throws JacomaxRuntimeException if the MBean could not be registered
+     */
+    public synchronized ObjectName registerMBean(final String name) {
+        unregisterMBean();
+        final ObjectName objectName = JmxSupport.createObjectName("MaximaProcessPool", name);
+        JmxSupport.registerMBean(this, objectName);
+        mbeanName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Unregisters the MBean registered via {@link #registerMBean(String)}, doing nothing
+     * if none is registered.
+     */
+    public synchronized void unregisterMBean() {
+        if (mbeanName!=null) {
+            JmxSupport.unregisterMBean(mbeanName);
+            mbeanName = null;
+        }
+    }
+
+    /**
+     * Returns the {@link ObjectName} of the MBean registered for this pool, or null if
+     * it has not been registered.
+     */
+    public ObjectName getMBeanName() {
+        return mbeanName;
+    }
+
+    //------------------------------------------------------------------------
+
+    /**
+     * Borrows a {@link MaximaInteractiveProcess} from the pool, using the default borrow timeout.
+     *
+     * @see #borrowProcess(int)
+     */
+    public MaximaInteractiveProcess borrowProcess()
+            throws MaximaProcessPoolExhaustedException {
+        return borrowProcess(defaultBorrowTimeout);
+    }
+
+    /**
+     * Borrows a {@link MaximaInteractiveProcess} from the pool. An idle process will be used
+     * if one is available, otherwise a new process will be launched if the pool has not reached
+     * its maximum size. If neither of these is possible, this will wait until another thread
+     * returns a process (or a process being launched in the background becomes ready).
+     * <p>
+     * The caller must pass the process back to {@link #returnProcess(MaximaInteractiveProcess)}
+     * once it has finished with it.
+     *
+     * @param borrowTimeout maximum time to wait (in seconds) for a process to become available.
+     *   Zero or less indicates that we should wait indefinitely.
+     *
+     * @throws MaximaProcessPoolExhaustedException if no process became available within the
+     *   given timeout
+     * @throws IllegalStateException if the pool has been shut down
+     */
+    public MaximaInteractiveProcess borrowProcess(final int borrowTimeout)
+            throws MaximaProcessPoolExhaustedException {
+        long remainingNanos = TimeUnit.SECONDS.toNanos(borrowTimeout);
+        while (true) {
+            MaximaInteractiveProcess process = null;
+            boolean launchRequired = false;
+            lock.lock();
+            try {
+                while (true) {
+                    ensureNotShutdown();
+                    if (!idleProcesses.isEmpty()) {
+                        process = idleProcesses.pollFirst();
+                        break;
+                    }
+                    if (liveProcessCount < maxPoolSize) {
+                        liveProcessCount++;
+                        launchRequired = true;
+                        break;
+                    }
+                    if (borrowTimeout > 0) {
+                        if (remainingNanos <= 0L) {
+                            throw new MaximaProcessPoolExhaustedException(borrowTimeout);
+                        }
+                        remainingNanos = poolStateChanged.awaitNanos(remainingNanos);
+                    }
+                    else {
+                        poolStateChanged.await();
+                    }
+                }
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JacomaxRuntimeException("Interrupted while waiting for a Maxima process to become available", e);
+            }
+            finally {
+                lock.unlock();
+            }
+            if (launchRequired) {
+                process = launchReservedProcess();
+            }
+            else if (!process.isAlive()) {
+                /* (Somebody killed an idle process behind our back, or it died, so throw it away and try again) */
+                logger.debug("Discarding dead idle process {}", process);
+                discardProcess(process);
+                continue;
+            }
+            else {
+                /* (Process may have become too old while it was idle) */
+                final String recyclingReason = checkRecyclingLimits(process, true, 0L);
+                if (recyclingReason!=null) {
+                    retireProcess(process, recyclingReason);
+                    continue;
+                }
+                if (pingTimeoutNanos > 0L && !process.ping(pingTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                    logger.warn("Idle process {} did not respond to ping, so discarding and replacing it", process);
+                    discardProcess(process);
+                    continue;
+                }
+            }
+            final long callCount = process.getMetrics().getCallCount();
+            lock.lock();
+            try {
+                borrowedProcesses.put(process, Long.valueOf(callCount));
+            }
+            finally {
+                lock.unlock();
+            }
+            logger.trace("Borrowed process {}", process);
+            replenish();
+            return process;
+        }
+    }
+
+    /**
+     * Returns a {@link MaximaInteractiveProcess} previously obtained via {@link #borrowProcess()}
+     * to the pool.
+     * <p>
+     * The process is given a {@link MaximaInteractiveProcess#softReset()} before being made
+     * available to other callers. If the process has been terminated, or if the reset fails,
+     * then the process is discarded and a replacement will be launched in the background
+     * if required.
+     *
+     * @throws IllegalArgumentException if the process is null or is not currently borrowed
+     *   from this pool
+     */
+    public void returnProcess(final MaximaInteractiveProcess process) {
+        Assert.notNull(process, "process");
+        final long callCount = process.getMetrics().getCallCount();
+        long borrowerCallCount;
+        lock.lock();
+        try {
+            final Long callCountWhenBorrowed = borrowedProcesses.remove(process);
+            if (callCountWhenBorrowed==null) {
+                throw new IllegalArgumentException("Process " + process + " is not currently borrowed from this pool");
+            }
+            final Long previousBorrowerCallCount = borrowerCallCounts.get(process);
+            borrowerCallCount = (previousBorrowerCallCount!=null ? previousBorrowerCallCount.longValue() : 0L)
+                    + callCount - callCountWhenBorrowed.longValue();
+            borrowerCallCounts.put(process, Long.valueOf(borrowerCallCount));
+        }
+        finally {
+            lock.unlock();
+        }
+        if (!process.isAlive()) {
+            logger.debug("Returned process {} has been terminated or has died, so discarding and replacing it", process);
+            discardProcess(process);
+            replenish();
+            return;
+        }
+        final String recyclingReason = checkRecyclingLimits(process, false, borrowerCallCount);
+        if (recyclingReason!=null) {
+            retireProcess(process, recyclingReason);
+            return;
+        }
+        try {
+            process.softReset();
+        }
+        catch (final MaximaTimeoutException e) {
+            logger.warn("Timeout performing soft reset on returned process {}, so discarding and replacing it", process);
+            discardProcess(process);
+            replenish();
+            return;
+        }
+        catch (final RuntimeException e) {
+            logger.warn("Unexpected Exception performing soft reset on returned process " + process
+                    + ", so discarding and replacing it", e);
+            discardProcess(process);
+            replenish();
+            return;
+        }
+        lock.lock();
+        try {
+            if (!shutdown) {
+                idleProcesses.addFirst(process);
+                poolStateChanged.signal();
+                logger.trace("Process {} returned to pool", process);
+                return;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        discardProcess(process);
+    }
+
+    /**
+     * Shuts down this pool, terminating all idle processes. Any borrowed processes will be
+     * terminated when they are returned. No further processes may be borrowed after this
+     * point.
+     * <p>
+     * Calling this on a pool that has already been shut down will do nothing.
+     */
+    public void shutdown() {
+        final List<MaximaInteractiveProcess> toTerminate;
+        lock.lock();
+        try {
+            if (shutdown) {
+                return;
+            }
+            logger.debug("Shutting down pool, terminating {} idle process(es)", idleProcesses.size());
+            shutdown = true;
+            toTerminate = new ArrayList<MaximaInteractiveProcess>(idleProcesses);
+            idleProcesses.clear();
+            poolStateChanged.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+        /* (Any processes still warming up will be discarded once they have launched) */
+        warmingExecutor.shutdown();
+        if (ageSweepExecutor!=null) {
+            ageSweepExecutor.shutdownNow();
+        }
+        unregisterMBean();
+        for (final MaximaInteractiveProcess process : toTerminate) {
+            discardProcess(process);
+        }
+    }
+
+    //------------------------------------------------------------------------
+
+    /**
+     * Launches processes until the pool has at least {@link #minPoolSize} live processes.
+     */
+    private void ensureMinimumPoolSize() {
+        while (true) {
+            lock.lock();
+            try {
+                if (shutdown || liveProcessCount >= minPoolSize) {
+                    return;
+                }
+                liveProcessCount++;
+            }
+            finally {
+                lock.unlock();
+            }
+            final MaximaInteractiveProcess process = launchReservedProcess();
+            lock.lock();
+            try {
+                if (!shutdown) {
+                    idleProcesses.addFirst(process);
+                    poolStateChanged.signal();
+                    continue;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+            discardProcess(process);
+        }
+    }
+
+    /**
+     * Schedules background launches of enough processes to bring the pool up to its minimum
+     * size and to have {@link #warmPoolSize} processes idle (or warming up), without exceeding
+     * {@link #maxPoolSize}.
+     */
+    private void replenish() {
+        int launchCount;
+        lock.lock();
+        try {
+            if (shutdown) {
+                return;
+            }
+            launchCount = Math.max(minPoolSize - liveProcessCount,
+                    warmPoolSize - idleProcesses.size() - warmingProcessCount);
+            launchCount = Math.min(launchCount, maxPoolSize - liveProcessCount);
+            if (launchCount <= 0) {
+                return;
+            }
+            liveProcessCount += launchCount;
+            warmingProcessCount += launchCount;
+        }
+        finally {
+            lock.unlock();
+        }
+        logger.debug("Launching {} process(es) in the background", launchCount);
+        for (int i=0; i<launchCount; i++) {
+            try {
+                warmingExecutor.execute(new WarmingTask());
+            }
+            catch (final RejectedExecutionException e) {
+                /* (Pool has been shut down since we reserved the slots, so release the ones we didn't use) */
+                lock.lock();
+                try {
+                    liveProcessCount -= launchCount - i;
+                    warmingProcessCount -= launchCount - i;
+                    poolStateChanged.signalAll();
+                }
+                finally {
+                    lock.unlock();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Launches a new process, for which a slot has already been reserved by incrementing
+     * {@link #liveProcessCount}. The slot is released if the launch fails.
+     */
+    private MaximaInteractiveProcess launchReservedProcess() {
+        logger.debug("Launching new Maxima process for pool");
+        try {
+            return launcher.launchPooledInteractiveProcess();
+        }
+        catch (final RuntimeException e) {
+            releaseSlot(null);
+            throw e;
+        }
+    }
+
+    /**
+     * Checks the given process against the recycling limits, returning a description of the
+     * limit that has been exceeded, or null if the process can continue to be used.
+     *
+     * @param ageOnly whether to only check the age limit, which is used for idle processes as
+     *   nothing else changes while they're idle. (This also makes sure that we don't keep
+     *   recycling new processes if the other limits are set too low.)
+     * @param borrowerCallCount number of calls made to the process by borrowers, which is
+     *   checked against {@link #maxCallsPerProcess}
+     */
+    private String checkRecyclingLimits(final MaximaInteractiveProcess process, final boolean ageOnly,
+            final long borrowerCallCount) {
+        if (ageOnly ? maxProcessAgeNanos==0L
+                : maxCallsPerProcess==0 && maxProcessAgeNanos==0L && maxResidentMemory==0L && maxCpuTimeNanos==0L) {
+            return null;
+        }
+        final MaximaProcessUsage usage = process.getUsage();
+        if (maxProcessAgeNanos > 0L && usage.getAgeNanos() >= maxProcessAgeNanos) {
+            return "been alive for " + TimeoutSupport.format(usage.getAgeNanos());
+        }
+        if (ageOnly) {
+            return null;
+        }
+        if (maxCallsPerProcess > 0 && borrowerCallCount >= maxCallsPerProcess) {
+            return "made " + borrowerCallCount + " calls";
+        }
+        if (maxResidentMemory > 0L && usage.getResidentMemoryBytes() >= maxResidentMemory) {
+            return "used " + usage.getResidentMemoryBytes() + " bytes of memory";
+        }
+        if (maxCpuTimeNanos > 0L && usage.getCpuTimeNanos() >= maxCpuTimeNanos) {
+            return "used " + TimeoutSupport.format(usage.getCpuTimeNanos()) + " of CPU time";
+        }
+        return null;
+    }
+
+    /**
+     * Retires a process that has exceeded one of the recycling limits. Its slot is released
+     * straight away so that a replacement can be launched, and the process itself is terminated
+     * in the background so that the caller doesn't have to wait.
+     */
+    private void retireProcess(final MaximaInteractiveProcess process, final String reason) {
+        logger.debug("Recycling process {} as it has {}", process, reason);
+        recycledProcessCount.incrementAndGet();
+        releaseSlot(process);
+        try {
+            warmingExecutor.execute(new Runnable() {
+                public void run() {
+                    process.terminate();
+                }
+            });
+        }
+        catch (final RejectedExecutionException e) {
+            /* (Pool has been shut down) */
+            process.terminate();
+        }
+        replenish();
+    }
+
+    /**
+     * Terminates the given process (if required) and releases its slot in the pool.
+     */
+    private void discardProcess(final MaximaInteractiveProcess process) {
+        try {
+            process.terminate();
+        }
+        finally {
+            releaseSlot(process);
+        }
+    }
+
+    /**
+     * Releases the slot of the given process, forgetting anything we were recording about it.
+     *
+     * @param process process to forget about, or null if the process was never launched
+     */
+    private void releaseSlot(final MaximaInteractiveProcess process) {
+        lock.lock();
+        try {
+            if (process!=null) {
+                borrowerCallCounts.remove(process);
+            }
+            liveProcessCount--;
+            poolStateChanged.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Task launching a new process in the background, for which a slot has already been
+     * reserved by {@link #replenish()}.
+     */
+    private class WarmingTask implements Runnable {
+
+        public void run() {
+            MaximaInteractiveProcess process;
+            try {
+                process = launcher.launchPooledInteractiveProcess();
+            }
+            catch (final RuntimeException e) {
+                /* (We don't retry here, as the failure is likely to happen again. We'll try
+                 * again next time a process is borrowed or returned.) */
+                logger.warn("Background launch of Maxima process failed", e);
+                lock.lock();
+                try {
+                    warmingProcessCount--;
+                    liveProcessCount--;
+                    poolStateChanged.signalAll();
+                }
+                finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            lock.lock();
+            try {
+                warmingProcessCount--;
+                if (!shutdown) {
+                    idleProcesses.addLast(process);
+                    poolStateChanged.signal();
+                    logger.trace("Process {} warmed up and added to pool", process);
+                    return;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+            discardProcess(process);
+        }
+    }
+
+    /**
+     * Task run periodically when there is an age limit, which retires any idle processes that
+     * will exceed the limit before the next check so that they are replaced in the background,
+     * rather than being found to be too old when somebody tries to borrow them.
+     */
+    private class AgeSweepTask implements Runnable {
+
+        public void run() {
+            final List<MaximaInteractiveProcess> candidates;
+            lock.lock();
+            try {
+                if (shutdown) {
+                    return;
+                }
+                candidates = new ArrayList<MaximaInteractiveProcess>(idleProcesses);
+            }
+            finally {
+                lock.unlock();
+            }
+            for (final MaximaInteractiveProcess process : candidates) {
+                final long ageNanos = process.getUsage().getAgeNanos();
+                if (ageNanos + ageSweepIntervalNanos < maxProcessAgeNanos) {
+                    continue;
+                }
+                boolean wasIdle;
+                lock.lock();
+                try {
+                    /* (Process may have been borrowed since we looked) */
+                    wasIdle = idleProcesses.remove(process);
+                }
+                finally {
+                    lock.unlock();
+                }
+                if (wasIdle) {
+                    retireProcess(process, "been alive for " + TimeoutSupport.format(ageNanos));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates daemon threads for {@link #warmingExecutor} and {@link #ageSweepExecutor}, so that
+     * the pool doesn't stop the JVM from exiting.
+     */
+    private static class PoolThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger poolCounter = new AtomicInteger();
+
+        private final int poolNumber;
+        private final AtomicInteger threadCounter;
+
+        public PoolThreadFactory() {
+            this.poolNumber = poolCounter.incrementAndGet();
+            this.threadCounter = new AtomicInteger();
+        }
+
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "jacomax-pool-" + poolNumber + "-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private void ensureNotShutdown() {
+        if (shutdown) {
+            throw new IllegalStateException("MaximaProcessPool has been shut down");
+        }
+    }
+
+    private static int computeValue(final int configured, final int defaultValue) {
+        if (configured > 0) {
+            return configured;
+        }
+        else if (configured==0) {
+            return defaultValue;
+        }
+        else {
+            return 0;
+        }
+    }
+}
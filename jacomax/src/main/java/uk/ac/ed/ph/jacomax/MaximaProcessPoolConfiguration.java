@@ -0,0 +1,269 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import uk.ac.ed.ph.jacomax.internal.TimeoutSupport;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This simple POJO is used to specify how a {@link MaximaProcessPool} should manage
+ * its pool of {@link MaximaInteractiveProcess}es.
+ *
+ * @see MaximaProcessPool
+ *
+ * @author David McKain
+ */
+public class MaximaProcessPoolConfiguration implements Serializable, Cloneable {
+
+    private static final long serialVersionUID = 2861358349725031517L;
+
+    /**
+     * Minimum number of processes that the pool will try to keep alive at any time.
+     * These are started when the pool is created, and replacements are launched
+     * when processes are discarded.
+     * <p>
+     * Set this to zero to use the default value of {@link MaximaProcessPool#DEFAULT_MIN_POOL_SIZE}.
+     * Set this to a negative number if you don't want any processes to be launched until
+     * they are first needed.
+     */
+    private int minPoolSize;
+
+    /**
+     * Maximum number of processes (idle and borrowed) that the pool will allow
+     * to be alive at any time.
+     * <p>
+     * Set this to zero (or less) to use the default value of {@link MaximaProcessPool#DEFAULT_MAX_POOL_SIZE}.
+     */
+    private int maxPoolSize;
+
+    /**
+     * Number of idle processes that the pool will try to keep ready for borrowing, i.e.
+     * already started up and waiting at their first input prompt. Replacements are launched in
+     * the background as processes are borrowed or discarded, subject to
+     * {@link #getMaxPoolSize()}.
+     * <p>
+     * Set this to zero to use the default value of {@link MaximaProcessPool#DEFAULT_WARM_POOL_SIZE}.
+     * Set this to a negative number to stop processes being launched in the background.
+     */
+    private int warmPoolSize;
+
+    /**
+     * Default time (in seconds) to wait when borrowing a process from a pool that has
+     * reached its maximum size and has no idle processes.
+     * <p>
+     * Set this to zero to use the default value of {@link MaximaProcessPool#DEFAULT_BORROW_TIMEOUT}.
+     * Set this to a negative number to wait indefinitely.
+     */
+    private int defaultBorrowTimeout;
+
+    /*
+     * The following settings control when processes are recycled, i.e. retired and replaced with
+     * fresh ones. Processes are checked when they are returned to or borrowed from the pool (and
+     * idle processes are also checked periodically against the age limit), so they are never
+     * recycled while they are being used. Each of these can be set to zero (or less) for no limit,
+     * which is the default.
+     */
+
+    /**
+     * Maximum number of calls that can be made to a process by borrowers before it is recycled.
+     * Calls made by the pool itself (e.g. the {@link MaximaInteractiveProcess#softReset()} when a
+     * process is returned, or checks made because of {@link #isPingOnBorrow()}) are not counted.
+     */
+    private int maxCallsPerProcess;
+
+    /** Maximum time that a process can be alive before it is recycled (stored in nanoseconds) */
+    private long maxProcessAgeNanos;
+
+    /**
+     * Maximum resident memory (in bytes) that a process can use before it is recycled. This is
+     * only enforced on Linux.
+     */
+    private long maxResidentMemory;
+
+    /**
+     * Maximum CPU time that a process can use before it is recycled (stored in nanoseconds).
+     * This is only enforced on Java 9 or later.
+     */
+    private long maxCpuTimeNanos;
+
+    /**
+     * Set this to check that each idle process responds to a trivial call (using
+     * {@link MaximaInteractiveProcess#ping(long, TimeUnit)}) before it is handed out by
+     * {@link MaximaProcessPool#borrowProcess()}. Processes that fail this check are discarded.
+     * (Processes whose underlying Maxima process has exited are always discarded, regardless of this.)
+     */
+    private boolean pingOnBorrow;
+
+    /**
+     * Timeout for the check made when {@link #isPingOnBorrow()} is set (stored in nanoseconds).
+     * Set this to zero (or less) to use the default value of {@link MaximaProcessPool#DEFAULT_PING_TIMEOUT}
+     * seconds.
+     */
+    private long pingTimeoutNanos;
+
+    public MaximaProcessPoolConfiguration() {
+    }
+
+    /**
+     * Convenience copy constructor
+     */
+    public MaximaProcessPoolConfiguration(final MaximaProcessPoolConfiguration source) {
+        if (source!=null) {
+            this.minPoolSize = source.minPoolSize;
+            this.maxPoolSize = source.maxPoolSize;
+            this.warmPoolSize = source.warmPoolSize;
+            this.defaultBorrowTimeout = source.defaultBorrowTimeout;
+            this.maxCallsPerProcess = source.maxCallsPerProcess;
+            this.maxProcessAgeNanos = source.maxProcessAgeNanos;
+            this.maxResidentMemory = source.maxResidentMemory;
+            this.maxCpuTimeNanos = source.maxCpuTimeNanos;
+            this.pingOnBorrow = source.pingOnBorrow;
+            this.pingTimeoutNanos = source.pingTimeoutNanos;
+        }
+    }
+
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public void setMinPoolSize(final int minPoolSize) {
+        this.minPoolSize = minPoolSize;
+    }
+
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(final int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+
+    public int getWarmPoolSize() {
+        return warmPoolSize;
+    }
+
+    public void setWarmPoolSize(final int warmPoolSize) {
+        this.warmPoolSize = warmPoolSize;
+    }
+
+
+    public int getDefaultBorrowTimeout() {
+        return defaultBorrowTimeout;
+    }
+
+    public void setDefaultBorrowTimeout(final int defaultBorrowTimeout) {
+        this.defaultBorrowTimeout = defaultBorrowTimeout;
+    }
+
+
+    public int getMaxCallsPerProcess() {
+        return maxCallsPerProcess;
+    }
+
+    public void setMaxCallsPerProcess(final int maxCallsPerProcess) {
+        this.maxCallsPerProcess = maxCallsPerProcess;
+    }
+
+
+    public long getMaxProcessAge(final TimeUnit unit) {
+        return unit.convert(maxProcessAgeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void setMaxProcessAge(final long maxProcessAge, final TimeUnit unit) {
+        this.maxProcessAgeNanos = TimeoutSupport.toNanos(maxProcessAge, unit);
+    }
+
+
+    public long getMaxResidentMemory() {
+        return maxResidentMemory;
+    }
+
+    public void setMaxResidentMemory(final long maxResidentMemory) {
+        this.maxResidentMemory = maxResidentMemory;
+    }
+
+
+    public long getMaxCpuTime(final TimeUnit unit) {
+        return unit.convert(maxCpuTimeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void setMaxCpuTime(final long maxCpuTime, final TimeUnit unit) {
+        this.maxCpuTimeNanos = TimeoutSupport.toNanos(maxCpuTime, unit);
+    }
+
+
+    public boolean isPingOnBorrow() {
+        return pingOnBorrow;
+    }
+
+    public void setPingOnBorrow(final boolean pingOnBorrow) {
+        this.pingOnBorrow = pingOnBorrow;
+    }
+
+
+    public long getPingTimeout(final TimeUnit unit) {
+        return unit.convert(pingTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void setPingTimeout(final long pingTimeout, final TimeUnit unit) {
+        this.pingTimeoutNanos = TimeoutSupport.toNanos(pingTimeout, unit);
+    }
+
+    //-------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(hashCode())
+            + "(minPoolSize=" + minPoolSize
+            + ",maxPoolSize=" + maxPoolSize
+            + ",warmPoolSize=" + warmPoolSize
+            + ",defaultBorrowTimeout=" + defaultBorrowTimeout
+            + ",maxCallsPerProcess=" + maxCallsPerProcess
+            + ",maxProcessAge=" + TimeoutSupport.format(maxProcessAgeNanos)
+            + ",maxResidentMemory=" + maxResidentMemory
+            + ",maxCpuTime=" + TimeoutSupport.format(maxCpuTimeNanos)
+            + ",pingOnBorrow=" + pingOnBorrow
+            + ",pingTimeout=" + TimeoutSupport.format(pingTimeoutNanos)
+            + ")";
+    }
+
+    @Override
+    public Object clone() {
+        try {
+            return super.clone();
+        }
+        catch (final CloneNotSupportedException e) {
+            throw new JacomaxLogicException("Unexpected clone failure", e);
+        }
+    }
+}
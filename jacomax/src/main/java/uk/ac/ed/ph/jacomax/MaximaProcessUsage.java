@@ -0,0 +1,100 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.io.Serializable;
+
+/**
+ * Immutable snapshot of the resources used so far by a {@link MaximaInteractiveProcess}, as
+ * returned by {@link MaximaInteractiveProcess#getUsage()}.
+ * <p>
+ * The memory and CPU figures cover the Maxima process and any child processes it has started
+ * (e.g. the Lisp runtime started by the <code>maxima</code> script). They are -1 if they
+ * can't be determined on the current platform, or if the process has been terminated.
+ *
+ * @see MaximaProcessPoolConfiguration#getMaxResidentMemory()
+ *
+ * @author David McKain
+ */
+public final class MaximaProcessUsage implements Serializable {
+
+    private static final long serialVersionUID = -3409843826587711206L;
+
+    private final long callCount;
+    private final long ageNanos;
+    private final long residentMemoryBytes;
+    private final long cpuTimeNanos;
+
+    public MaximaProcessUsage(final long callCount, final long ageNanos, final long residentMemoryBytes,
+            final long cpuTimeNanos) {
+        this.callCount = callCount;
+        this.ageNanos = ageNanos;
+        this.residentMemoryBytes = residentMemoryBytes;
+        this.cpuTimeNanos = cpuTimeNanos;
+    }
+
+    /**
+     * Returns the number of calls made to the process, including those made by Jacomax itself,
+     * e.g. for {@link MaximaInteractiveProcess#softReset()}.
+     */
+    public long getCallCount() {
+        return callCount;
+    }
+
+    /** Returns the time (in nanoseconds) since the process was started */
+    public long getAgeNanos() {
+        return ageNanos;
+    }
+
+    /**
+     * Returns the resident memory (in bytes) used by the process, as read from
+     * <code>/proc/[pid]/status</code> on Linux, or -1 if this can't be determined.
+     */
+    public long getResidentMemoryBytes() {
+        return residentMemoryBytes;
+    }
+
+    /**
+     * Returns the total CPU time (in nanoseconds) used by the process, or -1 if this can't be
+     * determined. (This requires Java 9 or later.)
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+            + "(callCount=" + callCount
+            + ",ageNanos=" + ageNanos
+            + ",residentMemoryBytes=" + residentMemoryBytes
+            + ",cpuTimeNanos=" + cpuTimeNanos
+            + ")";
+    }
+}
@@ -0,0 +1,78 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import uk.ac.ed.ph.jacomax.internal.Assert;
+
+import java.io.File;
+import java.io.Serializable;
+
+/**
+ * Handle on a saved snapshot of the state of a Maxima session, as created using
+ * {@link MaximaInteractiveProcess#saveSessionSnapshot(File)}.
+ * <p>
+ * Pass this to {@link MaximaProcessLauncher#launchInteractiveProcessFromSnapshot(MaximaSessionSnapshot)} to
+ * launch new processes that start in this state.
+ *
+ * @author David McKain
+ */
+public final class MaximaSessionSnapshot implements Serializable {
+
+    private static final long serialVersionUID = -3164213857370925461L;
+
+    private final File file;
+
+    public MaximaSessionSnapshot(final File file) {
+        Assert.notNull(file, "file");
+        this.file = file;
+    }
+
+    /**
+     * Returns the file containing this snapshot.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Deletes the file containing this snapshot, once you no longer need it.
+     *
+     * @return true if the file was deleted, false otherwise
+     */
+    public boolean delete() {
+        return file.delete();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+            + "(file=" + file
+            + ")";
+    }
+}
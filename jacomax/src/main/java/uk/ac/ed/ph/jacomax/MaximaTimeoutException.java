@@ -28,6 +28,10 @@
  */
 package uk.ac.ed.ph.jacomax;
 
+import uk.ac.ed.ph.jacomax.internal.TimeoutSupport;
+
+import java.util.concurrent.TimeUnit;
+
 /**
  * Exception thrown when Maxima takes too long to complete an operation. Possible
  * reasons for this might be:
@@ -44,13 +48,31 @@ public final class MaximaTimeoutException extends Exception {
     private static final long serialVersionUID = 6077105489157609103L;
 
     private final int timeoutSeconds;
+    private final long timeoutNanos;
 
     public MaximaTimeoutException(final int timeoutSeconds) {
-        super("Timeout of " + timeoutSeconds + "s exceeded waiting for response from Maxima");
-        this.timeoutSeconds = timeoutSeconds;
+        this(timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    public MaximaTimeoutException(final long timeout, final TimeUnit unit) {
+        super("Timeout of " + TimeoutSupport.format(TimeoutSupport.toNanos(timeout, unit))
+                + " exceeded waiting for response from Maxima");
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.timeoutSeconds = TimeoutSupport.toSeconds(timeoutNanos);
     }
 
+    /**
+     * Returns the timeout that was exceeded, in seconds. (Sub-second timeouts are
+     * rounded up.)
+     */
     public int getTimeoutSeconds() {
         return timeoutSeconds;
     }
+
+    /**
+     * Returns the timeout that was exceeded in the given unit.
+     */
+    public long getTimeout(final TimeUnit unit) {
+        return unit.convert(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
 }
@@ -0,0 +1,237 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import uk.ac.ed.ph.jacomax.MaximaCallCacheConfiguration.EvictionPolicy;
+import uk.ac.ed.ph.jacomax.internal.Assert;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-memory implementation of {@link MaximaCallCache}, with a configurable
+ * {@link EvictionPolicy} and time to live.
+ * <p>
+ * An instance of this class is safe for use by multiple threads.
+ *
+ * @see MaximaCallCacheConfiguration
+ *
+ * @author David McKain
+ */
+public final class MemoryMaximaCallCache implements MaximaCallCache {
+
+    /** Default maximum number of cached outputs */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final int maxSize;
+    private final EvictionPolicy evictionPolicy;
+    private final long timeToLiveNanos;
+
+    /**
+     * Cache entries, in access order (least recent first). (For {@link EvictionPolicy#LFU},
+     * ordering is maintained by {@link #frequencyBuckets} instead.)
+     */
+    private final LinkedHashMap<String, Entry> entries;
+
+    /** Keys of entries having each access frequency, least recently used first (LFU only) */
+    private final Map<Long, LinkedHashSet<String>> frequencyBuckets;
+
+    /** Lowest frequency in {@link #frequencyBuckets} (LFU only) */
+    private long minFrequency;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+
+    public MemoryMaximaCallCache() {
+        this(new MaximaCallCacheConfiguration());
+    }
+
+    public MemoryMaximaCallCache(final MaximaCallCacheConfiguration configuration) {
+        Assert.notNull(configuration, "configuration");
+        this.maxSize = configuration.getMaxSize() > 0 ? configuration.getMaxSize() : DEFAULT_MAX_SIZE;
+        this.evictionPolicy = configuration.getEvictionPolicy()!=null ? configuration.getEvictionPolicy() : EvictionPolicy.LRU;
+        this.timeToLiveNanos = configuration.getTimeToLive() > 0 ? TimeUnit.SECONDS.toNanos(configuration.getTimeToLive()) : 0L;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, evictionPolicy==EvictionPolicy.LRU);
+        this.frequencyBuckets = new HashMap<Long, LinkedHashSet<String>>();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public synchronized String getCachedOutput(final String callInput) {
+        Assert.notNull(callInput, "callInput");
+        final Entry entry = entries.get(callInput);
+        if (entry==null) {
+            missCount++;
+            return null;
+        }
+        if (entry.expiryTime!=0L && System.nanoTime() - entry.expiryTime >= 0) {
+            removeEntry(callInput, entry);
+            expirationCount++;
+            missCount++;
+            return null;
+        }
+        if (evictionPolicy==EvictionPolicy.LFU) {
+            incrementFrequency(callInput, entry);
+        }
+        hitCount++;
+        return entry.output;
+    }
+
+    public synchronized void cacheOutput(final String callInput, final String output) {
+        Assert.notNull(callInput, "callInput");
+        Assert.notNull(output, "output");
+        final Entry existing = entries.get(callInput);
+        if (existing!=null) {
+            removeEntry(callInput, existing);
+        }
+        while (entries.size() >= maxSize) {
+            evictEntry();
+        }
+        final long expiryTime = timeToLiveNanos > 0 ? ensureNonZero(System.nanoTime() + timeToLiveNanos) : 0L;
+        final Entry entry = new Entry(output, expiryTime);
+        entries.put(callInput, entry);
+        if (evictionPolicy==EvictionPolicy.LFU) {
+            getFrequencyBucket(entry.frequency).add(callInput);
+            minFrequency = entry.frequency;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        frequencyBuckets.clear();
+    }
+
+    public synchronized MaximaCallCacheStatistics getStatistics() {
+        return new MaximaCallCacheStatistics(hitCount, missCount, evictionCount, expirationCount, entries.size());
+    }
+
+    //-------------------------------------------------------------------
+
+    private void evictEntry() {
+        final String evictedKey;
+        if (evictionPolicy==EvictionPolicy.LFU) {
+            LinkedHashSet<String> bucket = frequencyBuckets.get(Long.valueOf(minFrequency));
+            if (bucket==null) {
+                /* (Lowest frequency entry was removed since we last worked this out) */
+                minFrequency = Long.MAX_VALUE;
+                for (final Long frequency : frequencyBuckets.keySet()) {
+                    minFrequency = Math.min(minFrequency, frequency.longValue());
+                }
+                bucket = frequencyBuckets.get(Long.valueOf(minFrequency));
+            }
+            evictedKey = bucket.iterator().next();
+        }
+        else {
+            evictedKey = entries.keySet().iterator().next();
+        }
+        removeEntry(evictedKey, entries.get(evictedKey));
+        evictionCount++;
+    }
+
+    private void removeEntry(final String callInput, final Entry entry) {
+        entries.remove(callInput);
+        if (evictionPolicy==EvictionPolicy.LFU) {
+            removeFromFrequencyBucket(callInput, entry.frequency);
+        }
+    }
+
+    private void incrementFrequency(final String callInput, final Entry entry) {
+        removeFromFrequencyBucket(callInput, entry.frequency);
+        if (entry.frequency==minFrequency && !frequencyBuckets.containsKey(Long.valueOf(minFrequency))) {
+            minFrequency++;
+        }
+        entry.frequency++;
+        getFrequencyBucket(entry.frequency).add(callInput);
+    }
+
+    private LinkedHashSet<String> getFrequencyBucket(final long frequency) {
+        final Long key = Long.valueOf(frequency);
+        LinkedHashSet<String> bucket = frequencyBuckets.get(key);
+        if (bucket==null) {
+            bucket = new LinkedHashSet<String>();
+            frequencyBuckets.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    private void removeFromFrequencyBucket(final String callInput, final long frequency) {
+        final Long key = Long.valueOf(frequency);
+        final LinkedHashSet<String> bucket = frequencyBuckets.get(key);
+        if (bucket!=null) {
+            bucket.remove(callInput);
+            if (bucket.isEmpty()) {
+                frequencyBuckets.remove(key);
+            }
+        }
+    }
+
+    private static long ensureNonZero(final long time) {
+        /* (Zero is used to mean "never expires") */
+        return time!=0L ? time : 1L;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+            + "(maxSize=" + maxSize
+            + ",evictionPolicy=" + evictionPolicy
+            + ",timeToLiveNanos=" + timeToLiveNanos
+            + ",size=" + entries.size()
+            + ")";
+    }
+
+    /** Cached output for a particular call */
+    private static final class Entry {
+
+        final String output;
+
+        /** Value of {@link System#nanoTime()} at which this expires, or 0 if it never expires */
+        final long expiryTime;
+
+        /** Number of times this has been used (LFU only) */
+        long frequency;
+
+        Entry(final String output, final long expiryTime) {
+            this.output = output;
+            this.expiryTime = expiryTime;
+            this.frequency = 1L;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+import uk.ac.ed.ph.jacomax.MaximaCallMetrics;
+import uk.ac.ed.ph.jacomax.MaximaCallStatisticsMXBean;
+import uk.ac.ed.ph.jacomax.MaximaMetrics;
+
+/**
+ * Base for MBeans implementing {@link MaximaCallStatisticsMXBean} by reading from a
+ * {@link MaximaMetrics}.
+ *
+ * @author David McKain
+ */
+abstract class AbstractCallStatisticsMXBean implements MaximaCallStatisticsMXBean {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    protected final MaximaMetrics metrics;
+
+    protected AbstractCallStatisticsMXBean(final MaximaMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public long getCallCount() {
+        return metrics.getCallCount();
+    }
+
+    public long getFailedCallCount() {
+        return metrics.getFailedCallCount();
+    }
+
+    public long getTimedOutCallCount() {
+        return metrics.getTimedOutCallCount();
+    }
+
+    public long getInputBytes() {
+        return metrics.getInputBytes();
+    }
+
+    public long getOutputBytes() {
+        return metrics.getOutputBytes();
+    }
+
+    public double getMeanCallMillis() {
+        return toMillis(metrics.getCallHistogram().getMeanNanos());
+    }
+
+    public double getMedianCallMillis() {
+        return getCallPercentileMillis(50.0);
+    }
+
+    public double getPercentile95CallMillis() {
+        return getCallPercentileMillis(95.0);
+    }
+
+    public double getPercentile99CallMillis() {
+        return getCallPercentileMillis(99.0);
+    }
+
+    public double getMaxCallMillis() {
+        return toMillis(metrics.getCallHistogram().getMaxNanos());
+    }
+
+    public double getLastCallMillis() {
+        final MaximaCallMetrics lastCallMetrics = metrics.getLastCallMetrics();
+        return lastCallMetrics!=null ? toMillis(lastCallMetrics.getTotalNanos()) : -1.0;
+    }
+
+    public String getLastCallOutcome() {
+        final MaximaCallMetrics lastCallMetrics = metrics.getLastCallMetrics();
+        return lastCallMetrics!=null ? lastCallMetrics.getOutcome().name() : null;
+    }
+
+    private double getCallPercentileMillis(final double percentile) {
+        return toMillis(metrics.getCallHistogram().getPercentileNanos(percentile));
+    }
+
+    protected static double toMillis(final double nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,117 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+/**
+ * Incremental matcher used to detect when the Maxima output read so far ends with an
+ * input prompt, such as <code>(%i5) </code>.
+ * <p>
+ * This is fed the output one character at a time and doesn't allocate anything, so is
+ * cheap enough to use on every chunk of output read from Maxima.
+ * <p>
+ * Any label will be accepted for the prompt, so that this works if Maxima's
+ * <code>inchar</code> has been changed. More precisely, a prompt is an opening bracket
+ * followed by any characters other than brackets, ending with a digit and then
+ * <code>") "</code>. (This also matches Maxima's debugger prompts, e.g.
+ * <code>(dbm:1) </code>.) Carriage returns are ignored, and newlines reset the matcher.
+ *
+ * @author David McKain
+ */
+public final class InputPromptMatcher {
+
+    /** Nothing of interest matched */
+    private static final int STATE_NONE = 0;
+
+    /** Matched the opening bracket, followed by zero or more label characters */
+    private static final int STATE_LABEL = 1;
+
+    /** Matched the opening bracket and label, with the last character being a digit */
+    private static final int STATE_LABEL_DIGIT = 2;
+
+    /** Matched the closing bracket */
+    private static final int STATE_CLOSED = 3;
+
+    /** Matched a complete input prompt */
+    private static final int STATE_PROMPT = 4;
+
+    private int state;
+
+    public InputPromptMatcher() {
+        reset();
+    }
+
+    public void reset() {
+        state = STATE_NONE;
+    }
+
+    /**
+     * Feeds the next character of output into this matcher, returning true if the output
+     * read so far now ends with an input prompt.
+     */
+    public boolean feed(final char c) {
+        if (c=='\r') {
+            return state==STATE_PROMPT;
+        }
+        if (c=='(') {
+            state = STATE_LABEL;
+        }
+        else if (c=='\n') {
+            state = STATE_NONE;
+        }
+        else {
+            switch (state) {
+                case STATE_LABEL:
+                case STATE_LABEL_DIGIT:
+                    if (c==')') {
+                        state = state==STATE_LABEL_DIGIT ? STATE_CLOSED : STATE_NONE;
+                    }
+                    else {
+                        state = (c>='0' && c<='9') ? STATE_LABEL_DIGIT : STATE_LABEL;
+                    }
+                    break;
+
+                case STATE_CLOSED:
+                    state = c==' ' ? STATE_PROMPT : STATE_NONE;
+                    break;
+
+                default:
+                    state = STATE_NONE;
+                    break;
+            }
+        }
+        return state==STATE_PROMPT;
+    }
+
+    /**
+     * Returns whether the output read so far ends with an input prompt.
+     */
+    public boolean isPromptReached() {
+        return state==STATE_PROMPT;
+    }
+}
@@ -31,6 +31,7 @@ package uk.ac.ed.ph.jacomax.internal;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 
 import org.slf4j.Logger;
@@ -38,6 +39,15 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Handler for the outputs of each call made with {@link MaximaInteractiveProcessImpl}
+ * <p>
+ * This can also demultiplex the output from a pipelined sequence of calls sent to Maxima in
+ * one go, where each call is followed by its own (distinct) terminator. The output of each
+ * call is then sent to the corresponding output builder.
+ * <p>
+ * When Maxima's output is in an ASCII-compatible charset (US-ASCII, ISO-8859-1 or UTF-8),
+ * terminators are found by scanning the raw bytes read from Maxima (using a KMP-style matcher
+ * that carries its state across reads), so that only the output actually being recorded
+ * needs to be decoded.
  *
  * @author David McKain
  */
@@ -45,36 +55,294 @@ public final class InteractiveCallOutputHandler extends InteractiveOutputHandler
 
     private static final Logger logger = LoggerFactory.getLogger(InteractiveCallOutputHandler.class);
 
-    private final Appendable outputBuilder;
+    private final Appendable[] outputBuilders;
 
-    private final String terminator;
+    private final String[] terminators;
+
+    /** Terminators encoded as bytes, or null if byte-level scanning can't be used */
+    private final byte[][] terminatorBytes;
+
+    /** KMP failure functions for each of the {@link #terminatorBytes} */
+    private final int[][] terminatorFailureFunctions;
 
     private final StringBuilder lastOutputLineBuilder;
 
-    /** This flag gets set at the end of the line containing the required terminator */
+    /** Used to detect input prompts once the required terminators have been found */
+    private final InputPromptMatcher inputPromptMatcher;
+
+    /** Index of the call whose output is currently being read */
+    private int currentCallIndex;
+
+    /** Number of bytes of the current terminator matched so far (when scanning bytes) */
+    private int terminatorMatchLength;
+
+    /**
+     * This flag gets set once the current terminator has been found, and is cleared at the
+     * end of the line containing it (when scanning bytes)
+     */
+    private boolean skippingTerminatorLine;
+
+    /**
+     * This flag gets set at the end of the line containing the terminator for a call
+     * that is followed by another pipelined call, and is cleared once the input prompt
+     * preceding the next call's output has been skipped over.
+     */
+    private boolean skippingInterCallPrompt;
+
+    /** This flag gets set at the end of the line containing the final required terminator */
     private boolean lineContainingTerminatorEnded;
 
     public InteractiveCallOutputHandler(final Appendable outputBuilder,
             final String terminator, final ByteBuffer decodingByteBuffer,
             final CharBuffer decodingCharBuffer, final CharsetDecoder charsetDecoder) {
+        this(new Appendable[] { outputBuilder }, new String[] { terminator },
+                decodingByteBuffer, decodingCharBuffer, charsetDecoder);
+    }
+
+    /**
+     * Creates a handler for a pipelined sequence of calls.
+     *
+     * @param outputBuilders output builders for each call, in order. Individual entries may
+     *   be null to discard the output of the corresponding call.
+     * @param terminators distinct terminators output after each call, in order.
+     */
+    public InteractiveCallOutputHandler(final Appendable[] outputBuilders,
+            final String[] terminators, final ByteBuffer decodingByteBuffer,
+            final CharBuffer decodingCharBuffer, final CharsetDecoder charsetDecoder) {
         super(decodingByteBuffer, decodingCharBuffer, charsetDecoder);
+        if (outputBuilders.length!=terminators.length || terminators.length==0) {
+            throw new IllegalArgumentException("Expected equal non-zero numbers of output builders and terminators");
+        }
         this.lastOutputLineBuilder = new StringBuilder();
-        this.outputBuilder = outputBuilder;
-        this.terminator = terminator;
+        this.inputPromptMatcher = new InputPromptMatcher();
+        this.outputBuilders = outputBuilders;
+        this.terminators = terminators;
+        if (canScanBytes(charsetDecoder.charset(), terminators)) {
+            this.terminatorBytes = new byte[terminators.length][];
+            this.terminatorFailureFunctions = new int[terminators.length][];
+            for (int i=0; i<terminators.length; i++) {
+                terminatorBytes[i] = encodeAscii(terminators[i]);
+                terminatorFailureFunctions[i] = computeFailureFunction(terminatorBytes[i]);
+            }
+        }
+        else {
+            this.terminatorBytes = null;
+            this.terminatorFailureFunctions = null;
+        }
     }
 
     @Override
     public void callStarting() {
         super.callStarting();
         lastOutputLineBuilder.setLength(0);
+        inputPromptMatcher.reset();
+        currentCallIndex = 0;
+        terminatorMatchLength = 0;
+        skippingTerminatorLine = false;
+        skippingInterCallPrompt = false;
         lineContainingTerminatorEnded = false;
     }
 
+    //----------------------------------------------------------
+    // Byte-level scanning
+
+    /**
+     * Byte-level scanning is possible if each terminator character is encoded as the
+     * equivalent single ASCII byte, and if bytes representing ASCII characters can never
+     * appear within the encoding of other characters.
+     */
+    private static boolean canScanBytes(final Charset charset, final String[] terminators) {
+        final String charsetName = charset.name();
+        if (!("UTF-8".equals(charsetName) || "US-ASCII".equals(charsetName) || "ISO-8859-1".equals(charsetName))) {
+            return false;
+        }
+        for (final String terminator : terminators) {
+            if (terminator.length()==0) {
+                return false;
+            }
+            for (int i=0; i<terminator.length(); i++) {
+                final char c = terminator.charAt(i);
+                if (c >= 0x80 || c=='\n' || c=='\r') {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static byte[] encodeAscii(final String string) {
+        final byte[] result = new byte[string.length()];
+        for (int i=0; i<result.length; i++) {
+            result[i] = (byte) string.charAt(i);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the standard KMP failure function for the given pattern, i.e. the length of
+     * the longest proper prefix of <code>pattern[0..i]</code> that is also a suffix of it.
+     */
+    private static int[] computeFailureFunction(final byte[] pattern) {
+        final int[] result = new int[pattern.length];
+        int k = 0;
+        for (int i=1; i<pattern.length; i++) {
+            while (k > 0 && pattern[k]!=pattern[i]) {
+                k = result[k - 1];
+            }
+            if (pattern[k]==pattern[i]) {
+                k++;
+            }
+            result[i] = k;
+        }
+        return result;
+    }
+
+    @Override
+    protected void handleOutputBytes(final byte[] maximaOutputBuffer, final int offset, final int length)
+            throws IOException {
+        if (terminatorBytes==null) {
+            /* Fall back to decoding everything */
+            super.handleOutputBytes(maximaOutputBuffer, offset, length);
+            return;
+        }
+        final int end = offset + length;
+        int position = offset;
+        while (position < end) {
+            if (skippingTerminatorLine) {
+                position = skipTerminatorLine(maximaOutputBuffer, position, end);
+            }
+            else if (skippingInterCallPrompt) {
+                handleInterCallPromptChar((char) (maximaOutputBuffer[position++] & 0xff));
+            }
+            else if (lineContainingTerminatorEnded) {
+                /* Look for the next input prompt. (This is ASCII, so we can simply treat each
+                 * byte as a character here.)
+                 */
+                inputPromptMatcher.feed((char) (maximaOutputBuffer[position++] & 0xff));
+            }
+            else {
+                position = scanCallOutput(maximaOutputBuffer, position, end);
+            }
+        }
+    }
+
+    /**
+     * Scans the output of the current call, recording everything before its terminator.
+     * Returns the position of the first unscanned byte, which will be the end of the buffer
+     * unless the terminator was found.
+     */
+    private int scanCallOutput(final byte[] buffer, final int start, final int end) throws IOException {
+        final byte[] terminator = terminatorBytes[currentCallIndex];
+        final int[] failureFunction = terminatorFailureFunctions[currentCallIndex];
+        final Appendable outputBuilder = outputBuilders[currentCallIndex];
+        final byte firstTerminatorByte = terminator[0];
+        int matchLength = terminatorMatchLength;
+        int outputStart = start; /* (Start of output bytes yet to be recorded, when matchLength==0) */
+        int position = start;
+        byte b;
+        while (position < end) {
+            b = buffer[position];
+            if (matchLength==0) {
+                /* This is the hot loop, so we quickly skip over bytes that can't start the terminator */
+                if (b!=firstTerminatorByte && b!='\r') {
+                    position++;
+                    continue;
+                }
+                recordOutput(outputBuilder, buffer, outputStart, position - outputStart);
+                outputStart = ++position;
+                if (b==firstTerminatorByte) {
+                    matchLength = 1;
+                }
+            }
+            else if (b=='\r') {
+                /* (Carriage returns are ignored) */
+                position++;
+            }
+            else {
+                /* Advance the KMP matcher, recording any bytes previously held as part of a
+                 * partial match that can no longer be part of the terminator.
+                 */
+                int newMatchLength = matchLength;
+                while (newMatchLength > 0 && terminator[newMatchLength]!=b) {
+                    newMatchLength = failureFunction[newMatchLength - 1];
+                }
+                if (terminator[newMatchLength]==b) {
+                    newMatchLength++;
+                }
+                if (newMatchLength==terminator.length) {
+                    logger.trace("Found terminator for call #{}; will skip rest of line", currentCallIndex);
+                    terminatorMatchLength = 0;
+                    skippingTerminatorLine = true;
+                    return position + 1;
+                }
+                if (newMatchLength==0) {
+                    /* All held bytes are output, as is the current byte (which we leave to be recorded later) */
+                    recordOutput(outputBuilder, terminator, 0, matchLength);
+                    outputStart = position;
+                }
+                else {
+                    recordOutput(outputBuilder, terminator, 0, matchLength + 1 - newMatchLength);
+                    outputStart = position + 1;
+                }
+                matchLength = newMatchLength;
+                position++;
+            }
+        }
+        if (matchLength==0) {
+            recordOutput(outputBuilder, buffer, outputStart, end - outputStart);
+        }
+        terminatorMatchLength = matchLength;
+        return end;
+    }
+
+    private void recordOutput(final Appendable outputBuilder, final byte[] bytes, final int offset, final int length)
+            throws IOException {
+        if (outputBuilder!=null && length > 0) {
+            decodeOutputBytes(bytes, offset, length);
+        }
+    }
+
+    private int skipTerminatorLine(final byte[] buffer, final int start, final int end) {
+        for (int position=start; position<end; position++) {
+            if (buffer[position]=='\n') {
+                skippingTerminatorLine = false;
+                if (currentCallIndex < terminators.length - 1) {
+                    skippingInterCallPrompt = true;
+                }
+                else {
+                    logger.trace("Found end of terminator line; will stop reading on next line, which will be input prompt");
+                    lineContainingTerminatorEnded = true;
+                }
+                return position + 1;
+            }
+        }
+        return end;
+    }
+
+    //----------------------------------------------------------
+    // Character-level scanning
+
     @Override
     protected void handleDecodedOutputChunk(final CharBuffer charBuffer) throws IOException {
+        if (terminatorBytes!=null) {
+            /* Bytes being decoded have already been identified as output for the current call */
+            final Appendable outputBuilder = outputBuilders[currentCallIndex];
+            if (outputBuilder!=null && charBuffer.hasRemaining()) {
+                outputBuilder.append(charBuffer);
+            }
+            return;
+        }
+
         /* Build up current line so we can check when we're at the required terminator */
         while (charBuffer.hasRemaining()) {
             final char c = charBuffer.get();
+            if (skippingInterCallPrompt) {
+                handleInterCallPromptChar(c);
+                continue;
+            }
+            if (lineContainingTerminatorEnded) {
+                inputPromptMatcher.feed(c);
+            }
 
             /* NB: On the Windows/GCL platform that I've tested, Maxima terminates lines
              * with a single newline, rather than the platform default.
@@ -84,16 +352,24 @@ public final class InteractiveCallOutputHandler extends InteractiveOutputHandler
              */
             if (c=='\n') {
                 /* See if we have received the required terminator on this line */
-                final int terminatorPosition = lastOutputLineBuilder.indexOf(terminator);
+                final Appendable outputBuilder = outputBuilders[currentCallIndex];
+                final int terminatorPosition = lastOutputLineBuilder.indexOf(terminators[currentCallIndex]);
                 if (terminatorPosition != -1) {
-                    /* Found required input prompt, so terminate */
-                    logger.trace("Found terminator; will stop reading on next line, which will be input prompt");
-                    lineContainingTerminatorEnded = true;
-
                     /* (Record anything that came just before the terminator) */
                     if (outputBuilder!=null && terminatorPosition > 0) {
                         outputBuilder.append(lastOutputLineBuilder, 0, terminatorPosition);
                     }
+
+                    if (currentCallIndex < terminators.length - 1) {
+                        /* More calls to go. Next thing will be an input prompt, followed by output from the next call */
+                        logger.trace("Found terminator for call #{}; will skip next input prompt", currentCallIndex);
+                        skippingInterCallPrompt = true;
+                    }
+                    else {
+                        /* Found final terminator, so stop */
+                        logger.trace("Found terminator; will stop reading on next line, which will be input prompt");
+                        lineContainingTerminatorEnded = true;
+                    }
                 }
                 else if (outputBuilder!=null) {
                     /* Add line just read to output (if being built) */
@@ -111,8 +387,17 @@ public final class InteractiveCallOutputHandler extends InteractiveOutputHandler
         }
     }
 
+    private void handleInterCallPromptChar(final char c) {
+        if (inputPromptMatcher.feed(c)) {
+            /* Skipped over input prompt, so subsequent output belongs to the next call */
+            inputPromptMatcher.reset();
+            skippingInterCallPrompt = false;
+            currentCallIndex++;
+        }
+    }
+
     @Override
     public boolean isNextInputPromptReached() {
-        return lineContainingTerminatorEnded && lastOutputLineBuilder.toString().endsWith(") ");
+        return lineContainingTerminatorEnded && inputPromptMatcher.isPromptReached();
     }
 }
\ No newline at end of file
@@ -60,19 +60,7 @@ public abstract class InteractiveOutputHandler implements MaximaOutputHandler {
 
     public boolean handleOutput(final byte[] maximaOutputBuffer, final int bytesReadFromMaxima, final boolean isMaximaOutputEof)
             throws IOException {
-        int stdoutBufferPos = 0;
-        int stdoutBufferRemaining = bytesReadFromMaxima;
-        int outputChunkSize;
-
-        /* Iterate over input, filling lineByteBuffer as much as possible each time */
-        while (stdoutBufferPos < bytesReadFromMaxima) {
-            outputChunkSize = Math.min(decodingByteBuffer.remaining(), stdoutBufferRemaining);
-            decodingByteBuffer.put(maximaOutputBuffer, stdoutBufferPos, outputChunkSize);
-            stdoutBufferPos += outputChunkSize;
-            stdoutBufferRemaining -= outputChunkSize;
-
-            decodeByteBuffer(false);
-        }
+        handleOutputBytes(maximaOutputBuffer, 0, bytesReadFromMaxima);
         final boolean inputPromptReached = isNextInputPromptReached();
         if (isMaximaOutputEof && !inputPromptReached) {
             throw new IllegalStateException("Maxima output ended before next input prompt");
@@ -80,6 +68,37 @@ public abstract class InteractiveOutputHandler implements MaximaOutputHandler {
         return inputPromptReached;
     }
 
+    /**
+     * Handles raw bytes read from Maxima. This implementation simply decodes them all,
+     * passing the results to {@link #handleDecodedOutputChunk(CharBuffer)}. Subclasses may
+     * override this to work on the raw bytes where this is more efficient.
+     */
+    protected void handleOutputBytes(final byte[] maximaOutputBuffer, final int offset, final int length)
+            throws IOException {
+        decodeOutputBytes(maximaOutputBuffer, offset, length);
+    }
+
+    /**
+     * Decodes the given bytes, passing the resulting characters to
+     * {@link #handleDecodedOutputChunk(CharBuffer)}. Any incomplete character at the end
+     * will be completed by bytes passed in subsequent calls.
+     */
+    protected final void decodeOutputBytes(final byte[] bytes, final int offset, final int length)
+            throws IOException {
+        final int end = offset + length;
+        int position = offset;
+        int outputChunkSize;
+
+        /* Iterate over input, filling decodingByteBuffer as much as possible each time */
+        while (position < end) {
+            outputChunkSize = Math.min(decodingByteBuffer.remaining(), end - position);
+            decodingByteBuffer.put(bytes, position, outputChunkSize);
+            position += outputChunkSize;
+
+            decodeByteBuffer(false);
+        }
+    }
+
     private void decodeByteBuffer(final boolean endOfInput) throws IOException {
         CoderResult coderResult;
         while (true) {
@@ -39,35 +39,30 @@ import java.nio.charset.CharsetDecoder;
  */
 public class InteractiveStartupOutputHandler extends InteractiveOutputHandler {
 
-    private final StringBuilder lastOutputLineBuilder;
+    private final InputPromptMatcher inputPromptMatcher;
 
     public InteractiveStartupOutputHandler(final ByteBuffer decodingByteBuffer,
             final CharBuffer decodingCharBuffer, final CharsetDecoder charsetDecoder) {
         super(decodingByteBuffer, decodingCharBuffer, charsetDecoder);
-        this.lastOutputLineBuilder = new StringBuilder();
+        this.inputPromptMatcher = new InputPromptMatcher();
     }
 
     @Override
     public void callStarting() {
         super.callStarting();
+        inputPromptMatcher.reset();
     }
 
     @Override
     protected void handleDecodedOutputChunk(final CharBuffer buffer) {
-        /* Build up current line so we can check when we're at the required terminator */
+        /* Keep track of whether we've reached the first input prompt */
         while (buffer.hasRemaining()) {
-            final char c = buffer.get();
-            if (c=='\n' || c=='\r') {
-                lastOutputLineBuilder.setLength(0);
-            }
-            else {
-                lastOutputLineBuilder.append(c);
-            }
+            inputPromptMatcher.feed(buffer.get());
         }
     }
 
     @Override
     protected boolean isNextInputPromptReached() {
-        return "(%i1) ".equals(lastOutputLineBuilder.toString());
+        return inputPromptMatcher.isPromptReached();
     }
 }
\ No newline at end of file
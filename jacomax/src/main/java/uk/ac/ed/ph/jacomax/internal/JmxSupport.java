@@ -0,0 +1,133 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+import uk.ac.ed.ph.jacomax.JacomaxRuntimeException;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Helpers for registering Jacomax MBeans with the platform {@link MBeanServer}.
+ *
+ * @author David McKain
+ */
+public final class JmxSupport {
+
+    private static final Logger logger = LoggerFactory.getLogger(JmxSupport.class);
+
+    /** Domain used for all Jacomax MBeans */
+    public static final String DOMAIN = "uk.ac.ed.ph.jacomax";
+
+    /**
+     * Creates an {@link ObjectName} of the form <code>uk.ac.ed.ph.jacomax:type=[type],name=[name]</code>,
+     * quoting the name if required.
+     */
+    public static ObjectName createObjectName(final String type, final String name) {
+        Assert.notNull(name, "name");
+        return parseObjectName(DOMAIN + ":type=" + type + ",name=" + quoteIfRequired(name));
+    }
+
+    /**
+     * Creates an {@link ObjectName} for the given process, grouped under the
+     * {@link ObjectName} of the launcher that created it.
+     */
+    public static ObjectName createProcessObjectName(final ObjectName launcherName, final long processNumber) {
+        return parseObjectName(DOMAIN + ":type=MaximaInteractiveProcess,launcher="
+                + launcherName.getKeyProperty("name") + ",name=" + processNumber);
+    }
+
+    private static ObjectName parseObjectName(final String objectName) {
+        try {
+            return new ObjectName(objectName);
+        }
+        catch (final JMException e) {
+            throw new JacomaxRuntimeException("Could not create MBean name " + objectName, e);
+        }
+    }
+
+    private static String quoteIfRequired(final String value) {
+        for (int i=0; i<value.length(); i++) {
+            final char c = value.charAt(i);
+            if (",=:\"*?\n".indexOf(c)!=-1) {
+                return ObjectName.quote(value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Registers the given MBean with the platform {@link MBeanServer}, replacing any existing
+     * MBean with the same name.
+     *
+     * @throws JacomaxRuntimeException if registration fails
+     */
+    public static void registerMBean(final Object mbean, final ObjectName objectName) {
+        final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (mbeanServer.isRegistered(objectName)) {
+                logger.debug("Replacing existing MBean {}", objectName);
+                mbeanServer.unregisterMBean(objectName);
+            }
+            mbeanServer.registerMBean(mbean, objectName);
+            logger.debug("Registered MBean {}", objectName);
+        }
+        catch (final InstanceNotFoundException e) {
+            /* (Unregistered by someone else in the meantime, so try again) */
+            registerMBean(mbean, objectName);
+        }
+        catch (final JMException e) {
+            throw new JacomaxRuntimeException("Could not register MBean " + objectName, e);
+        }
+    }
+
+    /**
+     * Unregisters the MBean with the given name from the platform {@link MBeanServer}, doing
+     * nothing if it is not registered. Failures are logged rather than thrown.
+     */
+    public static void unregisterMBean(final ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            logger.debug("Unregistered MBean {}", objectName);
+        }
+        catch (final InstanceNotFoundException e) {
+            /* (Already unregistered) */
+        }
+        catch (final JMException e) {
+            logger.warn("Could not unregister MBean " + objectName, e);
+        }
+    }
+}
@@ -58,12 +58,12 @@ public final class MaximaBatchProcessImpl {
         this.batchOutputStream = batchOutputStream;
     }
 
-    public int run(final int timeout) throws MaximaTimeoutException {
+    public int run(final long timeoutNanos) throws MaximaTimeoutException {
         logger.debug("Running Maxima process in batch mode");
         final BatchOutputHandler writerOutputHandler = new BatchOutputHandler(batchOutputStream);
         int returnCode;
         try {
-            maximaProcessController.doMaximaCall(batchInputStream, true, writerOutputHandler, timeout);
+            maximaProcessController.doMaximaCall(batchInputStream, true, writerOutputHandler, timeoutNanos);
         }
         finally {
             try {
@@ -29,17 +29,29 @@
 package uk.ac.ed.ph.jacomax.internal;
 
 import uk.ac.ed.ph.jacomax.JacomaxLogicException;
+import uk.ac.ed.ph.jacomax.JacomaxRuntimeException;
 import uk.ac.ed.ph.jacomax.MaximaInteractiveProcess;
+import uk.ac.ed.ph.jacomax.MaximaMetrics;
 import uk.ac.ed.ph.jacomax.MaximaProcessTerminatedException;
+import uk.ac.ed.ph.jacomax.MaximaProcessUsage;
+import uk.ac.ed.ph.jacomax.MaximaSessionSnapshot;
+import uk.ac.ed.ph.jacomax.MaximaTerminationReason;
 import uk.ac.ed.ph.jacomax.MaximaTimeoutException;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,18 +66,24 @@ public final class MaximaInteractiveProcessImpl implements MaximaInteractiveProc
     private static final Logger logger = LoggerFactory.getLogger(MaximaInteractiveProcessImpl.class);
 
     private static final String CALL_TERMINATOR_OUTPUT = "JACOMAX-INTERACTIVE-CALL-OUTPUT-TERMINATOR";
-    private static final String CALL_TERMINATOR_GENERATOR = "block(kill(1), print(\"" + CALL_TERMINATOR_OUTPUT + "\"))$" + System.getProperty("line.separator");
+    private static final String CALL_TERMINATOR_GENERATOR = createCallTerminatorGenerator(CALL_TERMINATOR_OUTPUT);
+
+    /** Trivial call used by {@link #ping(long, TimeUnit)} */
+    private static final String PING_CALL = "0$";
 
     private final MaximaProcessController maximaProcessController;
-    private int defaultCallTimeout;
+    private long defaultCallTimeoutNanos;
     private final Charset charset;
+
+    /** Set if this process is managed by a {@link uk.ac.ed.ph.jacomax.MaximaProcessPool} */
+    private volatile boolean pooled;
     private final CharsetDecoder maximaOutputDecoder;
     private final ByteBuffer decodingByteBuffer;
     private final CharBuffer decodingCharBuffer;
 
-    public MaximaInteractiveProcessImpl(final MaximaProcessController maximaProcessController, final int defaultCallTimeout, final Charset charset) {
+    public MaximaInteractiveProcessImpl(final MaximaProcessController maximaProcessController, final long defaultCallTimeoutNanos, final Charset charset) {
         this.maximaProcessController = maximaProcessController;
-        this.defaultCallTimeout = defaultCallTimeout;
+        this.defaultCallTimeoutNanos = defaultCallTimeoutNanos;
         this.charset = charset;
         this.decodingByteBuffer = ByteBuffer.allocate(MaximaProcessController.OUTPUT_BUFFER_SIZE);
         this.decodingCharBuffer = CharBuffer.allocate(MaximaProcessController.OUTPUT_BUFFER_SIZE);
@@ -75,18 +93,26 @@ public final class MaximaInteractiveProcessImpl implements MaximaInteractiveProc
     }
 
     public int getDefaultCallTimeout() {
-        return defaultCallTimeout;
+        return TimeoutSupport.toSeconds(defaultCallTimeoutNanos);
     }
 
     public void setDefaultCallTimeout(final int defaultCallTimeout) {
-        this.defaultCallTimeout = defaultCallTimeout;
+        setDefaultCallTimeout(defaultCallTimeout, TimeUnit.SECONDS);
+    }
+
+    public long getDefaultCallTimeout(final TimeUnit unit) {
+        return unit.convert(defaultCallTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void setDefaultCallTimeout(final long defaultCallTimeout, final TimeUnit unit) {
+        this.defaultCallTimeoutNanos = TimeoutSupport.toNanos(defaultCallTimeout, unit);
     }
 
     public void advanceToFirstInputPrompt() {
         logger.trace("Reading Maxima output and first input prompt");
         final InteractiveStartupOutputHandler outputHandler = new InteractiveStartupOutputHandler(decodingByteBuffer, decodingCharBuffer, maximaOutputDecoder);
         try {
-            maximaProcessController.doMaximaCall(null, false, outputHandler, 0);
+            maximaProcessController.doMaximaStartup(outputHandler);
         }
         catch (final MaximaTimeoutException e) {
             throw new JacomaxLogicException("Unexpected Exception waiting for first input prompt", e);
@@ -95,12 +121,18 @@ public final class MaximaInteractiveProcessImpl implements MaximaInteractiveProc
 
     public String executeCall(final String callInput)
             throws MaximaTimeoutException {
-        return executeCall(callInput, defaultCallTimeout);
+        return executeCall(callInput, defaultCallTimeoutNanos, TimeUnit.NANOSECONDS);
     }
 
     public String executeCall(final String callInput, final int callTimeout)
             throws MaximaTimeoutException {
-        logger.debug("executeCall(input={}, timeout={})", callInput, callTimeout);
+        return executeCall(callInput, callTimeout, TimeUnit.SECONDS);
+    }
+
+    public String executeCall(final String callInput, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        final long callTimeoutNanos = TimeoutSupport.toNanos(callTimeout, unit);
+        logger.debug("executeCall(input={}, timeout={})", callInput, TimeoutSupport.format(callTimeoutNanos));
         Assert.notNull(callInput, "maximaInput");
         ensureNotTerminated();
 
@@ -111,13 +143,119 @@ public final class MaximaInteractiveProcessImpl implements MaximaInteractiveProc
         logger.trace("Sending input '{}' to Maxima and reading output the prompt after terminator line '{}'", maximaInput, CALL_TERMINATOR_OUTPUT);
         final StringBuilder outputBuilder = new StringBuilder();
         final InteractiveCallOutputHandler outputHandler = new InteractiveCallOutputHandler(outputBuilder, CALL_TERMINATOR_OUTPUT, decodingByteBuffer, decodingCharBuffer, maximaOutputDecoder);
-        maximaProcessController.doMaximaCall(encodeInput(maximaInput), false, outputHandler, callTimeout);
+        maximaProcessController.doMaximaCall(encodeInput(maximaInput), false, outputHandler, callTimeoutNanos);
         final String rawOutput = outputBuilder.toString();
 
         logger.debug("executeCall() => {}", rawOutput);
         return rawOutput;
     }
 
+    public void executeCall(final String callInput, final Appendable output)
+            throws MaximaTimeoutException {
+        executeCall(callInput, output, defaultCallTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void executeCall(final String callInput, final Appendable output, final int callTimeout)
+            throws MaximaTimeoutException {
+        executeCall(callInput, output, callTimeout, TimeUnit.SECONDS);
+    }
+
+    public void executeCall(final String callInput, final Appendable output, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        final long callTimeoutNanos = TimeoutSupport.toNanos(callTimeout, unit);
+        logger.debug("executeCall(input={}, timeout={}) streaming output", callInput, TimeoutSupport.format(callTimeoutNanos));
+        Assert.notNull(callInput, "maximaInput");
+        Assert.notNull(output, "output");
+        ensureNotTerminated();
+
+        /* (This is the same as executeCall(), except that output is passed straight to the caller) */
+        final String maximaInput = createMaximaInput(callInput);
+        logger.trace("Sending input '{}' to Maxima and streaming output until the prompt after terminator line '{}'", maximaInput, CALL_TERMINATOR_OUTPUT);
+        final InteractiveCallOutputHandler outputHandler = new InteractiveCallOutputHandler(output, CALL_TERMINATOR_OUTPUT, decodingByteBuffer, decodingCharBuffer, maximaOutputDecoder);
+        maximaProcessController.doMaximaCall(encodeInput(maximaInput), false, outputHandler, callTimeoutNanos);
+    }
+
+    public List<String> executeCalls(final List<String> callInputs)
+            throws MaximaTimeoutException {
+        return executeCalls(callInputs, defaultCallTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public List<String> executeCalls(final List<String> callInputs, final int callTimeout)
+            throws MaximaTimeoutException {
+        return executeCalls(callInputs, callTimeout, TimeUnit.SECONDS);
+    }
+
+    public List<String> executeCalls(final List<String> callInputs, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        final long callTimeoutNanos = TimeoutSupport.toNanos(callTimeout, unit);
+        logger.debug("executeCalls(inputs={}, timeout={})", callInputs, TimeoutSupport.format(callTimeoutNanos));
+        final StringBuilder[] outputBuilders = new StringBuilder[callInputs!=null ? callInputs.size() : 0];
+        for (int i=0; i<outputBuilders.length; i++) {
+            outputBuilders[i] = new StringBuilder();
+        }
+        doPipelinedCalls(callInputs, outputBuilders, callTimeoutNanos);
+
+        final List<String> result = new ArrayList<String>(outputBuilders.length);
+        for (final StringBuilder outputBuilder : outputBuilders) {
+            result.add(outputBuilder.toString());
+        }
+        logger.debug("executeCalls() => {}", result);
+        return result;
+    }
+
+    public void executeCallsDiscardOutput(final List<String> callInputs)
+            throws MaximaTimeoutException {
+        executeCallsDiscardOutput(callInputs, defaultCallTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void executeCallsDiscardOutput(final List<String> callInputs, final int callTimeout)
+            throws MaximaTimeoutException {
+        executeCallsDiscardOutput(callInputs, callTimeout, TimeUnit.SECONDS);
+    }
+
+    public void executeCallsDiscardOutput(final List<String> callInputs, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        final long callTimeoutNanos = TimeoutSupport.toNanos(callTimeout, unit);
+        logger.debug("executeCallsDiscardOutput(inputs={}, timeout={})", callInputs, TimeoutSupport.format(callTimeoutNanos));
+        doPipelinedCalls(callInputs, new Appendable[callInputs!=null ? callInputs.size() : 0], callTimeoutNanos);
+    }
+
+    /**
+     * Sends all of the given calls to Maxima in one go, each followed by its own numbered
+     * terminator, and then demultiplexes the resulting output into the given builders.
+     */
+    private void doPipelinedCalls(final List<String> callInputs, final Appendable[] outputBuilders, final long callTimeoutNanos)
+            throws MaximaTimeoutException {
+        Assert.notNull(callInputs, "maximaInputs");
+        ensureNotTerminated();
+        if (callInputs.isEmpty()) {
+            return;
+        }
+
+        final StringBuilder maximaInputBuilder = new StringBuilder();
+        final String[] terminators = new String[callInputs.size()];
+        int index = 0;
+        for (final String callInput : callInputs) {
+            Assert.notNull(callInput, "maximaInput");
+            terminators[index] = CALL_TERMINATOR_OUTPUT + "-" + (index + 1);
+            maximaInputBuilder.append(createMaximaInput(callInput, createCallTerminatorGenerator(terminators[index])));
+            index++;
+        }
+        final String maximaInput = maximaInputBuilder.toString();
+        logger.trace("Sending pipelined input '{}' to Maxima and reading output until the prompt after terminator line '{}'",
+                maximaInput, terminators[terminators.length - 1]);
+        final InteractiveCallOutputHandler outputHandler = new InteractiveCallOutputHandler(outputBuilders, terminators, decodingByteBuffer, decodingCharBuffer, maximaOutputDecoder);
+        maximaProcessController.doMaximaCall(encodeInput(maximaInput), false, outputHandler, callTimeoutNanos);
+    }
+
+    private static String createCallTerminatorGenerator(final String terminatorOutput) {
+        return "block(kill(1), print(\"" + terminatorOutput + "\"))$" + System.getProperty("line.separator");
+    }
+
+    private String createMaximaInput(final String callInput) {
+        return createMaximaInput(callInput, CALL_TERMINATOR_GENERATOR);
+    }
+
     /**
      * Builds the actual Maxima input required to execute a particular call.
      * <p>
@@ -126,7 +264,7 @@ public final class MaximaInteractiveProcessImpl implements MaximaInteractiveProc
      * is required to get this correct, which will no doubt restrict exactly what calls
      * work.
      */
-    private String createMaximaInput(final String callInput) {
+    private String createMaximaInput(final String callInput, final String terminatorGenerator) {
         /* Trim off trailing whitespace so that we can work out what command terminator is being used */
         final String input = callInput.replaceFirst("\\s+$", "");
         final char lastChar = input.charAt(input.length() - 1);
@@ -139,7 +277,7 @@ public final class MaximaInteractiveProcessImpl implements MaximaInteractiveProc
              * if an earlier command on the same input line did not succeed, which results in a timeout
              * in these cases.
              */
-            return input + System.getProperty("line.separator") + CALL_TERMINATOR_GENERATOR;
+            return input + System.getProperty("line.separator") + terminatorGenerator;
         }
         throw new IllegalArgumentException("The Maxima call input '" + callInput
                 + "' does not end with ';' or '$', nor look like a Lisp call, so probably will not work");
@@ -147,12 +285,18 @@ public final class MaximaInteractiveProcessImpl implements MaximaInteractiveProc
 
     public void executeCallDiscardOutput(final String callInput)
             throws MaximaTimeoutException {
-        executeCallDiscardOutput(callInput, defaultCallTimeout);
+        executeCallDiscardOutput(callInput, defaultCallTimeoutNanos, TimeUnit.NANOSECONDS);
     }
 
     public void executeCallDiscardOutput(final String callInput, final int callTimeout)
             throws MaximaTimeoutException {
-        logger.debug("executeCallDiscardOutput(input={}, timeout={})", callInput, callTimeout);
+        executeCallDiscardOutput(callInput, callTimeout, TimeUnit.SECONDS);
+    }
+
+    public void executeCallDiscardOutput(final String callInput, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        final long callTimeoutNanos = TimeoutSupport.toNanos(callTimeout, unit);
+        logger.debug("executeCallDiscardOutput(input={}, timeout={})", callInput, TimeoutSupport.format(callTimeoutNanos));
         Assert.notNull(callInput, "maximaInput");
         ensureNotTerminated();
 
@@ -160,7 +304,60 @@ public final class MaximaInteractiveProcessImpl implements MaximaInteractiveProc
         final String maximaInput = createMaximaInput(callInput);
         logger.trace("Sending input '{}' to Maxima and discarding output until the prompt after terminator line '{}'", maximaInput, CALL_TERMINATOR_OUTPUT);
         final InteractiveCallOutputHandler outputHandler = new InteractiveCallOutputHandler(null, CALL_TERMINATOR_OUTPUT, decodingByteBuffer, decodingCharBuffer, maximaOutputDecoder);
-        maximaProcessController.doMaximaCall(encodeInput(maximaInput), false, outputHandler, callTimeout);
+        maximaProcessController.doMaximaCall(encodeInput(maximaInput), false, outputHandler, callTimeoutNanos);
+    }
+
+    public CompletableFuture<String> executeCallAsync(final String callInput) {
+        return executeCallAsync(callInput, defaultCallTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public CompletableFuture<String> executeCallAsync(final String callInput, final int callTimeout) {
+        return executeCallAsync(callInput, callTimeout, TimeUnit.SECONDS);
+    }
+
+    public CompletableFuture<String> executeCallAsync(final String callInput, final long callTimeout, final TimeUnit unit) {
+        final long callTimeoutNanos = TimeoutSupport.toNanos(callTimeout, unit);
+        logger.debug("executeCallAsync(input={}, timeout={})", callInput, TimeoutSupport.format(callTimeoutNanos));
+        Assert.notNull(callInput, "maximaInput");
+        ensureNotTerminated();
+
+        final String maximaInput = createMaximaInput(callInput);
+        final StringBuilder outputBuilder = new StringBuilder();
+        final InteractiveCallOutputHandler outputHandler = new InteractiveCallOutputHandler(outputBuilder, CALL_TERMINATOR_OUTPUT, decodingByteBuffer, decodingCharBuffer, maximaOutputDecoder);
+        final MaximaCallFuture<String> result = new MaximaCallFuture<String>(maximaProcessController);
+        maximaProcessController.doMaximaCallAsync(encodeInput(maximaInput), false, outputHandler, callTimeoutNanos)
+            .whenComplete(new BiConsumer<Void, Throwable>() {
+                public void accept(final Void unused, final Throwable failure) {
+                    if (failure!=null) {
+                        result.completeExceptionally(failure);
+                    }
+                    else {
+                        final String rawOutput = outputBuilder.toString();
+                        logger.debug("executeCallAsync() => {}", rawOutput);
+                        result.complete(rawOutput);
+                    }
+                }
+            });
+        return result;
+    }
+
+    public CompletableFuture<Void> executeCallDiscardOutputAsync(final String callInput) {
+        return executeCallDiscardOutputAsync(callInput, defaultCallTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public CompletableFuture<Void> executeCallDiscardOutputAsync(final String callInput, final int callTimeout) {
+        return executeCallDiscardOutputAsync(callInput, callTimeout, TimeUnit.SECONDS);
+    }
+
+    public CompletableFuture<Void> executeCallDiscardOutputAsync(final String callInput, final long callTimeout, final TimeUnit unit) {
+        final long callTimeoutNanos = TimeoutSupport.toNanos(callTimeout, unit);
+        logger.debug("executeCallDiscardOutputAsync(input={}, timeout={})", callInput, TimeoutSupport.format(callTimeoutNanos));
+        Assert.notNull(callInput, "maximaInput");
+        ensureNotTerminated();
+
+        final String maximaInput = createMaximaInput(callInput);
+        final InteractiveCallOutputHandler outputHandler = new InteractiveCallOutputHandler(null, CALL_TERMINATOR_OUTPUT, decodingByteBuffer, decodingCharBuffer, maximaOutputDecoder);
+        return maximaProcessController.doMaximaCallAsync(encodeInput(maximaInput), false, outputHandler, callTimeoutNanos);
     }
 
     private ByteArrayInputStream encodeInput(final String maximaInput) {
@@ -180,6 +377,51 @@ public final class MaximaInteractiveProcessImpl implements MaximaInteractiveProc
         executeCallDiscardOutput("[kill(all),reset()]$");
     }
 
+    public MaximaSessionSnapshot saveSessionSnapshot(final File snapshotFile)
+            throws MaximaTimeoutException {
+        return saveSessionSnapshot(snapshotFile, defaultCallTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public MaximaSessionSnapshot saveSessionSnapshot(final File snapshotFile, final int callTimeout)
+            throws MaximaTimeoutException {
+        return saveSessionSnapshot(snapshotFile, callTimeout, TimeUnit.SECONDS);
+    }
+
+    public MaximaSessionSnapshot saveSessionSnapshot(final File snapshotFile, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        ensureNotTerminated();
+        File file = snapshotFile;
+        if (file==null) {
+            try {
+                file = File.createTempFile("jacomax-snapshot", ".lisp");
+            }
+            catch (final IOException e) {
+                throw new JacomaxRuntimeException("Could not create temporary file for session snapshot", e);
+            }
+        }
+        logger.debug("Saving Maxima session snapshot to {}", file);
+        executeCallDiscardOutput("save(" + StringLiteralSupport.createStringLiteral(file.getAbsolutePath()) + ",all)$", callTimeout, unit);
+        return new MaximaSessionSnapshot(file);
+    }
+
+    /**
+     * Loads the given {@link MaximaSessionSnapshot} into this process, as used by
+     * {@link uk.ac.ed.ph.jacomax.MaximaProcessLauncher#launchInteractiveProcessFromSnapshot(MaximaSessionSnapshot)}.
+     */
+    public void loadSessionSnapshot(final MaximaSessionSnapshot snapshot, final long callTimeout, final TimeUnit unit)
+            throws MaximaTimeoutException {
+        logger.debug("Loading Maxima session snapshot from {}", snapshot.getFile());
+        executeCallDiscardOutput("loadfile(" + StringLiteralSupport.createStringLiteral(snapshot.getFile().getAbsolutePath()) + ")$", callTimeout, unit);
+    }
+
+    public MaximaMetrics getMetrics() {
+        return maximaProcessController.getProcessMetrics();
+    }
+
+    public MaximaProcessUsage getUsage() {
+        return maximaProcessController.getProcessUsage();
+    }
+
     public int terminate() {
         return maximaProcessController.terminate();
     }
@@ -188,6 +430,51 @@ public final class MaximaInteractiveProcessImpl implements MaximaInteractiveProc
         return maximaProcessController.isTerminated();
     }
 
+    public MaximaTerminationReason getTerminationReason() {
+        return maximaProcessController.getTerminationReason();
+    }
+
+    public boolean isAlive() {
+        return maximaProcessController.isProcessAlive();
+    }
+
+    public boolean isPooled() {
+        return pooled;
+    }
+
+    public void setPooled(final boolean pooled) {
+        this.pooled = pooled;
+    }
+
+    public boolean ping(final long timeout, final TimeUnit unit) {
+        Assert.notNull(unit, "unit");
+        if (timeout <= 0L) {
+            throw new IllegalArgumentException("ping timeout must be positive");
+        }
+        if (!isAlive()) {
+            return false;
+        }
+        try {
+            executeCallDiscardOutput(PING_CALL, timeout, unit);
+            return true;
+        }
+        catch (final MaximaTimeoutException e) {
+            logger.debug("Maxima did not respond to ping within {}", TimeoutSupport.format(e.getTimeout(TimeUnit.NANOSECONDS)));
+            return false;
+        }
+        catch (final MaximaProcessTerminatedException e) {
+            return false;
+        }
+        catch (final JacomaxLogicException e) {
+            /* (E.g. another call is running, which is a usage error rather than a dead process) */
+            throw e;
+        }
+        catch (final JacomaxRuntimeException e) {
+            logger.debug("Ping failed", e);
+            return false;
+        }
+    }
+
     private void ensureNotTerminated() {
         if (isTerminated()) {
             throw new MaximaProcessTerminatedException();
@@ -0,0 +1,115 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+import uk.ac.ed.ph.jacomax.JacomaxLogicException;
+import uk.ac.ed.ph.jacomax.JacomaxRuntimeException;
+import uk.ac.ed.ph.jacomax.MaximaInteractiveProcessMXBean;
+import uk.ac.ed.ph.jacomax.MaximaTerminationReason;
+import uk.ac.ed.ph.jacomax.MaximaTimeoutException;
+
+/**
+ * Implementation of {@link MaximaInteractiveProcessMXBean} for a {@link MaximaInteractiveProcessImpl}.
+ * <p>
+ * (Failures in operations are reported using standard Exceptions so that JMX clients don't
+ * need Jacomax in their ClassPath.)
+ *
+ * @author David McKain
+ */
+public final class MaximaInteractiveProcessMXBeanImpl extends AbstractCallStatisticsMXBean
+        implements MaximaInteractiveProcessMXBean {
+
+    private final MaximaInteractiveProcessImpl process;
+    private final MaximaProcessController maximaProcessController;
+
+    public MaximaInteractiveProcessMXBeanImpl(final MaximaInteractiveProcessImpl process,
+            final MaximaProcessController maximaProcessController) {
+        super(process.getMetrics());
+        this.process = process;
+        this.maximaProcessController = maximaProcessController;
+    }
+
+    public long getProcessNumber() {
+        return maximaProcessController.getProcessNumber();
+    }
+
+    public boolean isBusy() {
+        return maximaProcessController.isCallRunning();
+    }
+
+    public boolean isTerminated() {
+        return process.isTerminated();
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    public String getTerminationReason() {
+        final MaximaTerminationReason terminationReason = process.getTerminationReason();
+        return terminationReason!=null ? terminationReason.name() : null;
+    }
+
+    public int getDefaultCallTimeout() {
+        return process.getDefaultCallTimeout();
+    }
+
+    public int terminate() {
+        return process.terminate();
+    }
+
+    public void softReset() {
+        if (process.isTerminated()) {
+            throw new IllegalStateException("Maxima process has been terminated");
+        }
+        if (process.isPooled()) {
+            /* (A borrower could start using it at any moment, and the pool resets it on return anyway) */
+            throw new IllegalStateException("Maxima process is managed by a MaximaProcessPool");
+        }
+        try {
+            /* (We don't check whether a call is running first, as that would be racy. Starting
+             * the call fails atomically if somebody else is using the process.) */
+            process.softReset();
+        }
+        catch (final MaximaTimeoutException e) {
+            throw new IllegalStateException(process.isTerminated()
+                    ? "Soft reset timed out and the process has been terminated"
+                    : "Soft reset timed out and was interrupted");
+        }
+        catch (final JacomaxLogicException e) {
+            if (maximaProcessController.isCallRunning()) {
+                throw new IllegalStateException("Maxima process is busy");
+            }
+            throw new IllegalStateException("Soft reset failed: " + e.getMessage());
+        }
+        catch (final JacomaxRuntimeException e) {
+            throw new IllegalStateException("Soft reset failed: " + e.getMessage());
+        }
+    }
+}
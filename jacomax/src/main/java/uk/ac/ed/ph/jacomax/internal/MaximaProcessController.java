@@ -1,20 +1,20 @@
 /* Copyright (c) 2010 - 2012, The University of Edinburgh.
  * All rights reserved.
- *
+ * 
  * Redistribution and use in source and binary forms, with or without
  * modification, are permitted provided that the following conditions are met:
- *
+ * 
  * * Redistributions of source code must retain the above copyright notice, this
  *   list of conditions and the following disclaimer.
- *
+ * 
  * * Redistributions in binary form must reproduce the above copyright notice, this
  *   list of conditions and the following disclaimer in the documentation and/or
  *   other materials provided with the distribution.
- *
+ * 
  * * Neither the name of the University of Edinburgh nor the names of its
  *   contributors may be used to endorse or promote products derived from this
  *   software without specific prior written permission.
- *
+ * 
  * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
  * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
  * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
@@ -30,9 +30,16 @@ package uk.ac.ed.ph.jacomax.internal;
 
 import uk.ac.ed.ph.jacomax.JacomaxLogicException;
 import uk.ac.ed.ph.jacomax.JacomaxRuntimeException;
+import uk.ac.ed.ph.jacomax.MaximaCallMetrics;
+import uk.ac.ed.ph.jacomax.MaximaCallMetrics.Outcome;
+import uk.ac.ed.ph.jacomax.MaximaInstrumentation;
+import uk.ac.ed.ph.jacomax.MaximaMetrics;
+import uk.ac.ed.ph.jacomax.MaximaConfiguration.ProcessIoMode;
 import uk.ac.ed.ph.jacomax.MaximaInteractiveProcess;
 import uk.ac.ed.ph.jacomax.MaximaProcessLauncher;
+import uk.ac.ed.ph.jacomax.MaximaProcessUsage;
 import uk.ac.ed.ph.jacomax.MaximaProcessTerminatedException;
+import uk.ac.ed.ph.jacomax.MaximaTerminationReason;
 import uk.ac.ed.ph.jacomax.MaximaTimeoutException;
 
 import java.io.IOException;
@@ -41,12 +48,26 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.ObjectName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +77,21 @@ import org.slf4j.LoggerFactory;
  * <p>
  * {@link MaximaBatchProcessImpl} and {@link MaximaInteractiveProcessImpl} use this
  * to do their work.
+ * <p>
+ * The {@link ProcessIoMode} determines how the I/O is performed. In
+ * {@link ProcessIoMode#THREAD_POOL} mode, each call is handled by a {@link MaximaInputTask}
+ * and {@link MaximaOutputTask} submitted to a small per-process thread pool. In
+ * {@link ProcessIoMode#DEDICATED_READER} mode, a single {@link MaximaReaderTask} reads
+ * Maxima output for the lifetime of the process, and call input is written directly
+ * by the calling thread.
+ * <p>
+ * In either mode, virtual threads may be used instead of platform threads when running
+ * on Java 21 or later. (See {@link VirtualThreadSupport}.)
+ * <p>
+ * Calls may be made synchronously via {@link #doMaximaCall(InputStream, boolean, MaximaOutputHandler, long)}
+ * or asynchronously via {@link #doMaximaCallAsync(InputStream, boolean, MaximaOutputHandler, long)}.
+ * In {@link ProcessIoMode#DEDICATED_READER} mode, asynchronous calls are completed by the reader
+ * thread so no thread waits for Maxima to finish.
  *
  * @author David McKain
  */
@@ -72,17 +108,23 @@ public final class MaximaProcessController {
     /** Size of buffer used to accumulate bytes to send to Maxima STDERR. */
     public static final int STDERR_BUFFER_SIZE = 128;
 
+    /** Counter used to name {@link MaximaReaderTask} threads */
+    private static final AtomicInteger readerThreadCounter = new AtomicInteger();
+
+    /** Counter used to number processes for {@link MaximaInstrumentation} */
+    private static final AtomicLong processCounter = new AtomicLong();
+
     /**
-     * Time to wait after asking Maxima process to terminate before forcibly killing it.
-     * (This is needed if Maxima gets locked in a calculation that is either very
-     * complex or will never actually finish.)
+     * Shared scheduler used to enforce timeouts in {@link ProcessIoMode#DEDICATED_READER} mode,
+     * i.e. killing Maxima processes whose STDIN is blocked beyond the call timeout and timing
+     * out asynchronous calls. (Lazily created.)
      */
-    private static final int PROCESS_KILL_TIMEOUT = 1;
+    private static ScheduledExecutorService watchdogScheduler;
 
     /** {@link MaximaProcessLauncher} owning this */
     private final MaximaProcessLauncher launcher;
 
-    /** Helper to manage asynchronous calls to Maxima process thread */
+    /** Helper to manage asynchronous calls to Maxima process thread (null in {@link ProcessIoMode#DEDICATED_READER} mode) */
     private final ExecutorService executor;
 
     /** Maxima {@link Process} encapsulated by this */
@@ -110,7 +152,7 @@ public final class MaximaProcessController {
     final OutputStream maximaStderrHandler;
 
     /** Set to true when a call is underway */
-    private boolean callRunning;
+    private final AtomicBoolean callRunning;
 
     /** {@link Future} representing the result of the Thread feeding data to Maxima STDIN */
     private Future<Object> maximaCallInputFuture;
@@ -119,13 +161,117 @@ public final class MaximaProcessController {
     private Future<Object> maximaCallOutputFuture;
 
     /** Flag set when the underlying process has been terminated */
-    private boolean terminated;
+    private volatile boolean terminated;
+
+    /**
+     * Time to wait for Maxima to return to its input prompt after interrupting a call that
+     * has timed out, with zero or less meaning that the process is simply terminated instead.
+     */
+    private final long interruptRecoveryTimeoutNanos;
+
+    /**
+     * Time to wait after asking Maxima process to terminate before forcibly killing it.
+     * (This is needed if Maxima gets locked in a calculation that is either very
+     * complex or will never actually finish.)
+     */
+    private final long terminationGracePeriodNanos;
+
+    /* The following are only used in ProcessIoMode.DEDICATED_READER mode, guarded by readerLock */
+
+    /** Lock used to coordinate calling thread with {@link MaximaReaderTask} */
+    private final ReentrantLock readerLock;
+
+    /** Signalled when a call starts, finishes, or the process is terminated */
+    private final Condition readerStateChanged;
+
+    /** Handler for the current call, null if no call is running */
+    private MaximaOutputHandler readerOutputHandler;
 
-    public MaximaProcessController(final MaximaProcessLauncher launcher, final Process maximaProcess, final OutputStream maximaStderrHandler) {
+    /** Set once the {@link MaximaReaderTask} has finished handling output for the current call */
+    private boolean readerCallFinished;
+
+    /** Failure encountered by {@link MaximaReaderTask} for the current call, if any */
+    private Throwable readerCallFailure;
+
+    /** Set once the current call input has been completely written */
+    private boolean callInputWritten;
+
+    /** Set if the call input could not be written before the timeout */
+    private boolean callInputTimedOut;
+
+    /** Future to complete when the current asynchronous call finishes, null for synchronous calls */
+    private MaximaCallFuture<Void> readerCallFuture;
+
+    /** Task timing out the current asynchronous call, if any */
+    private ScheduledFuture<?> readerCallTimeoutTask;
+
+    /** Timeout for the current call, used when completing asynchronous calls that have been interrupted */
+    private long readerCallTimeoutNanos;
+
+    /** Set once the current asynchronous call has been interrupted after timing out */
+    private boolean readerCallInterrupted;
+
+    /* The following are used for instrumentation */
+
+    /** Number identifying this process for {@link MaximaInstrumentation} */
+    private final long processNumber;
+
+    /** {@link MaximaMetrics} for this process only */
+    private final MaximaMetrics processMetrics;
+
+    /** {@link MaximaMetrics} for the owning launcher */
+    private final MaximaMetrics launcherMetrics;
+
+    /** Additional {@link MaximaInstrumentation} registered with the owning launcher, if any */
+    private final MaximaInstrumentation instrumentation;
+
+    /** Value of {@link System#nanoTime()} when this process was started */
+    private final long processStartTime;
+
+    /** Set when the current call is waiting for Maxima to start up, rather than a real call */
+    private volatile boolean startupCallRunning;
+
+    /** Set when metrics for the current call have yet to be reported */
+    private final AtomicBoolean callMetricsPending;
+
+    /** Set once the termination of this process has been reported */
+    private final AtomicBoolean terminationReported;
+
+    /** Set if the process had to be forcibly destroyed */
+    private volatile boolean forciblyDestroyed;
+
+    /** Number of orphaned child processes that had to be destroyed when terminating the process */
+    private final AtomicInteger reapedOrphanCount;
+
+    /** Reason for termination, null if the process has not been terminated */
+    private volatile MaximaTerminationReason terminationReason;
+
+    /** Name of the MBean registered for this process, if any */
+    private final AtomicReference<ObjectName> mbeanName;
+
+    /* (The following are written by at most one thread during each call) */
+    private volatile long callStartTime;
+    private volatile long callInputWrittenTime;
+    private volatile long callFirstOutputTime;
+    private volatile long callOutputHandlingNanos;
+    private volatile long callInputBytes;
+    private volatile long callOutputBytes;
+
+    public MaximaProcessController(final MaximaProcessLauncher launcher, final Process maximaProcess, final OutputStream maximaStderrHandler,
+            final ProcessIoMode processIoMode, final boolean useVirtualThreads, final long interruptRecoveryTimeoutNanos,
+            final long terminationGracePeriodNanos) {
         this.launcher = launcher;
         this.maximaProcess = maximaProcess;
+        this.processStartTime = System.nanoTime();
+        this.processNumber = processCounter.incrementAndGet();
+        this.processMetrics = new MaximaMetrics();
+        this.launcherMetrics = launcher.getMetrics();
+        this.instrumentation = launcher.getInstrumentation();
+        this.callMetricsPending = new AtomicBoolean(false);
+        this.terminationReported = new AtomicBoolean(false);
+        this.reapedOrphanCount = new AtomicInteger();
+        this.mbeanName = new AtomicReference<ObjectName>();
         this.maximaStderrHandler = maximaStderrHandler;
-        this.executor = Executors.newFixedThreadPool(3); /* (stdin, stdout, stderr, shutdown) */
         this.maximaStdinBuffer = new byte[INPUT_BUFFER_SIZE];
         this.maximaStdoutBuffer = new byte[OUTPUT_BUFFER_SIZE];
         this.maximaStderrBuffer = new byte[STDERR_BUFFER_SIZE];
@@ -133,18 +279,119 @@ public final class MaximaProcessController {
         this.maximaStderr = maximaProcess.getErrorStream();
         this.maximaStdin = maximaProcess.getOutputStream();
         this.terminated = false;
+        this.interruptRecoveryTimeoutNanos = interruptRecoveryTimeoutNanos;
+        this.terminationGracePeriodNanos = terminationGracePeriodNanos;
+        this.callRunning = new AtomicBoolean(false);
         this.maximaCallInputFuture = null;
         this.maximaCallOutputFuture = null;
+        this.readerLock = new ReentrantLock();
+        this.readerStateChanged = readerLock.newCondition();
+        if (processIoMode==ProcessIoMode.DEDICATED_READER) {
+            this.executor = null;
+            final String readerThreadName = "jacomax-reader-" + readerThreadCounter.incrementAndGet();
+            Thread readerThread;
+            if (useVirtualThreads) {
+                readerThread = VirtualThreadSupport.newVirtualThread(new MaximaReaderTask());
+                readerThread.setName(readerThreadName);
+            }
+            else {
+                readerThread = new Thread(new MaximaReaderTask(), readerThreadName);
+                readerThread.setDaemon(true);
+            }
+            readerThread.start();
+        }
+        else if (useVirtualThreads) {
+            /* (Virtual threads are cheap, so we use a new one for each task rather than pooling them) */
+            this.executor = VirtualThreadSupport.newVirtualThreadPerTaskExecutor();
+        }
+        else {
+            this.executor = Executors.newFixedThreadPool(3); /* (stdin, stdout, stderr, shutdown) */
+        }
+        reportProcessStarted();
     }
 
     public MaximaProcessLauncher getOwner() {
         return launcher;
     }
 
+    /**
+     * Returns the {@link MaximaMetrics} for this process.
+     */
+    public MaximaMetrics getProcessMetrics() {
+        return processMetrics;
+    }
+
+    /**
+     * Measures the resources used so far by this process.
+     */
+    public MaximaProcessUsage getProcessUsage() {
+        final long ageNanos = System.nanoTime() - processStartTime;
+        if (terminated) {
+            return new MaximaProcessUsage(processMetrics.getCallCount(), ageNanos, -1L, -1L);
+        }
+        final ProcessTree processTree = ProcessTree.snapshot(maximaProcess);
+        return new MaximaProcessUsage(processMetrics.getCallCount(), ageNanos,
+                processTree.getResidentMemoryBytes(), processTree.getCpuTimeNanos());
+    }
+
+    /**
+     * Returns the number identifying this process amongst those launched by this JVM.
+     */
+    public long getProcessNumber() {
+        return processNumber;
+    }
+
+    public boolean isCallRunning() {
+        return callRunning.get();
+    }
+
     public boolean isTerminated() {
         return terminated;
     }
 
+    /**
+     * Returns whether the underlying process is still running, terminating this if it has
+     * exited by itself.
+     */
+    public boolean isProcessAlive() {
+        if (terminated) {
+            return false;
+        }
+        if (!maximaProcess.isAlive()) {
+            logger.debug("Maxima process has exited unexpectedly - cleaning up");
+            terminateMaximaProcess(MaximaTerminationReason.PROCESS_DIED);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns why this process was terminated, or null if it has not been terminated.
+     */
+    public MaximaTerminationReason getTerminationReason() {
+        return terminationReason;
+    }
+
+    /**
+     * Registers the given MBean for this process, arranging for it to be unregistered once
+     * the process has terminated.
+     */
+    public void registerMBean(final Object mbean, final ObjectName objectName) {
+        JmxSupport.registerMBean(mbean, objectName);
+        mbeanName.set(objectName);
+        if (terminationReported.get()) {
+            /* (Process terminated while we were registering) */
+            unregisterMBean();
+        }
+    }
+
+    private void unregisterMBean() {
+        final ObjectName objectName = mbeanName.getAndSet(null);
+        if (objectName!=null) {
+            JmxSupport.unregisterMBean(objectName);
+        }
+    }
+
     /**
      * Terminates the underlying Maxima process, forcibly if required. No
      * more calls can be made to this process after this point.
@@ -163,35 +410,61 @@ public final class MaximaProcessController {
         cancelCurrentMaximaCall();
 
         /* Then terminate the Maxima process */
-        return terminateMaximaProcess();
+        return terminateMaximaProcess(MaximaTerminationReason.TERMINATED);
     }
 
     /* (Thread safe) */
-    private int terminateMaximaProcess() {
+    private int terminateMaximaProcess(final MaximaTerminationReason reason) {
+        synchronized (this) {
+            if (terminationReason==null) {
+                terminationReason = reason;
+            }
+        }
         terminated = true;
+
+        /* Find any child processes now, as we can't find them once Maxima has gone */
+        final ProcessTree processTree = ProcessTree.snapshot(maximaProcess);
         try {
+            int result = MaximaInteractiveProcess.PROCESS_FORCIBLY_DESTROYED;
             try {
                 /* Ask Maxima to nicely close down by closing its input */
                 logger.debug("Attempting to close Maxima nicely");
                 synchronized (maximaStdin) {
                     maximaStdin.close();
                 }
-                final FutureTask<Integer> shutdownTask = new FutureTask<Integer>(new Callable<Integer>() {
-                    public Integer call() throws Exception {
-                        return maximaProcess.waitFor();
-                    }
-                });
-                executor.execute(shutdownTask);
-                return shutdownTask.get(PROCESS_KILL_TIMEOUT, TimeUnit.SECONDS).intValue();
+                if (maximaProcess.waitFor(terminationGracePeriodNanos, TimeUnit.NANOSECONDS)) {
+                    result = maximaProcess.exitValue();
+                }
+                else {
+                    logger.debug("Maxima process did not terminate naturally, so forcibly terminating");
+                }
             }
             catch (final Exception e) {
                 logger.debug("Maxima process did not terminate naturally, so forcibly terminating", e);
-                maximaProcess.destroy();
-                return MaximaInteractiveProcess.PROCESS_FORCIBLY_DESTROYED;
             }
+            if (result==MaximaInteractiveProcess.PROCESS_FORCIBLY_DESTROYED) {
+                forciblyDestroyed = true;
+            }
+
+            /* Destroy the process if required, plus anything it left behind */
+            reapOrphans(processTree.destroy(terminationGracePeriodNanos));
+            return result;
         }
         finally {
-            executor.shutdown();
+            reportProcessTerminated();
+            if (executor!=null) {
+                executor.shutdown();
+            }
+            else {
+                /* Wake up the reader thread so that it can exit */
+                readerLock.lock();
+                try {
+                    readerStateChanged.signalAll();
+                }
+                finally {
+                    readerLock.unlock();
+                }
+            }
             if (maximaStderrHandler!=null) {
                 try {
                     maximaStderrHandler.close();
@@ -203,76 +476,492 @@ public final class MaximaProcessController {
         }
     }
 
+    /**
+     * Reads Maxima's startup output, up to its first input prompt. This is the same as making
+     * a call with no input and no timeout, except that it's reported to instrumentation
+     * as the process becoming ready rather than as a call.
+     */
+    public void doMaximaStartup(final MaximaOutputHandler maximaOutputHandler)
+            throws MaximaTimeoutException {
+        startupCallRunning = true;
+        doMaximaCall(null, false, maximaOutputHandler, 0);
+    }
+
     public void doMaximaCall(final InputStream callInputStream, final boolean closeOnInputEof,
-            final MaximaOutputHandler maximaOutputHandler, final int callTimeout)
+            final MaximaOutputHandler maximaOutputHandler, final long callTimeoutNanos)
             throws MaximaTimeoutException {
+        beginCall();
+        if (executor!=null) {
+            doThreadPoolMaximaCall(callInputStream, closeOnInputEof, maximaOutputHandler, callTimeoutNanos);
+        }
+        else {
+            doDedicatedReaderMaximaCall(callInputStream, closeOnInputEof, maximaOutputHandler, callTimeoutNanos);
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #doMaximaCall(InputStream, boolean, MaximaOutputHandler, long)}.
+     * <p>
+     * The resulting {@link MaximaCallFuture} completes normally once the output handler has
+     * finished, or exceptionally with the same Exceptions that would have been thrown by
+     * {@link #doMaximaCall(InputStream, boolean, MaximaOutputHandler, long)}. Cancelling it
+     * terminates the Maxima process. No further calls may be made until it has completed.
+     * <p>
+     * Note that call input is written before this method returns.
+     */
+    public MaximaCallFuture<Void> doMaximaCallAsync(final InputStream callInputStream, final boolean closeOnInputEof,
+            final MaximaOutputHandler maximaOutputHandler, final long callTimeoutNanos) {
+        beginCall();
+        if (executor!=null) {
+            final MaximaCallFuture<Void> result = new MaximaCallFuture<Void>(this);
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            doThreadPoolMaximaCall(callInputStream, closeOnInputEof, maximaOutputHandler, callTimeoutNanos);
+                            result.complete(null);
+                        }
+                        catch (final MaximaTimeoutException e) {
+                            result.completeExceptionally(e);
+                        }
+                        catch (final RuntimeException e) {
+                            result.completeExceptionally(e);
+                        }
+                    }
+                });
+            }
+            catch (final RejectedExecutionException e) {
+                /* (Process must have been terminated by another thread) */
+                callRunning.set(false);
+                throw new MaximaProcessTerminatedException();
+            }
+            return result;
+        }
+        return doDedicatedReaderMaximaCallAsync(callInputStream, closeOnInputEof, maximaOutputHandler, callTimeoutNanos);
+    }
+
+    private void beginCall() {
         ensureNotTerminated();
-        if (callRunning) {
+        if (!callRunning.compareAndSet(false, true)) {
             throw new JacomaxLogicException("Precondition failed - callRunning is currently true");
         }
-        callRunning = true;
-        final List<Callable<Object>> callables = new ArrayList<Callable<Object>>();
-        callables.add(Executors.callable(new MaximaInputTask(callInputStream, closeOnInputEof)));
-        callables.add(Executors.callable(new MaximaOutputTask(maximaOutputHandler)));
+        callInputWrittenTime = 0L;
+        callFirstOutputTime = 0L;
+        callOutputHandlingNanos = 0L;
+        callInputBytes = 0L;
+        callOutputBytes = 0L;
+        callStartTime = System.nanoTime();
+        callMetricsPending.set(true);
+    }
+
+    private void doThreadPoolMaximaCall(final InputStream callInputStream, final boolean closeOnInputEof,
+            final MaximaOutputHandler maximaOutputHandler, final long callTimeoutNanos)
+            throws MaximaTimeoutException {
+        final Callable<Object> inputTask = Executors.callable(new MaximaInputTask(callInputStream, closeOnInputEof));
+        final Callable<Object> outputTask = Executors.callable(new MaximaOutputTask(maximaOutputHandler));
+        Outcome outcome = Outcome.FAILED;
         try {
-            List<Future<Object>> callResults;
-            if (callTimeout > 0) {
-                /* Wait until timeout */
-                logger.trace("Invoking maxima call using timeout {}s", callTimeout);
-                callResults = executor.invokeAll(callables, callTimeout, TimeUnit.SECONDS);
+            if (callTimeoutNanos > 0 && interruptRecoveryTimeoutNanos > 0) {
+                /* Wait until timeout, then try to interrupt the call rather than killing Maxima */
+                logger.trace("Invoking maxima call using timeout {} with interrupt recovery", TimeoutSupport.format(callTimeoutNanos));
+                final Future<Object> inputFuture = executor.submit(inputTask);
+                final Future<Object> outputFuture = executor.submit(outputTask);
+                maximaCallInputFuture = inputFuture;
+                maximaCallOutputFuture = outputFuture;
+                if (!awaitThreadPoolCall(inputFuture, outputFuture, System.nanoTime() + callTimeoutNanos)) {
+                    outcome = Outcome.TIMED_OUT;
+                    if (inputFuture.isDone() && interruptMaximaCall()
+                            && awaitThreadPoolCall(inputFuture, outputFuture, System.nanoTime() + interruptRecoveryTimeoutNanos)) {
+                        logger.debug("Maxima returned to its input prompt after the call was interrupted");
+                    }
+                    else {
+                        logger.debug("Timeout was exceeded communicating with Maxima - terminating the process");
+                        inputFuture.cancel(true);
+                        outputFuture.cancel(true);
+                        terminateMaximaProcess(MaximaTerminationReason.CALL_TIMED_OUT);
+                    }
+                    throw new MaximaTimeoutException(callTimeoutNanos, TimeUnit.NANOSECONDS);
+                }
             }
             else {
-                /* Wait indefinitely (this can be dangerous!) */
-                logger.trace("Invoking maxima call without timeout");
-                callResults = executor.invokeAll(callables);
-            }
-            maximaCallInputFuture = callResults.get(0);
-            maximaCallOutputFuture = callResults.get(1);
-            final boolean hadTimeout = callTimeout>0 && maximaCallInputFuture.isCancelled() || maximaCallOutputFuture.isCancelled();
-            if (hadTimeout) {
-                logger.debug("Timeout was exceeded communicating with Maxima - terminating the process");
-                terminateMaximaProcess();
-                throw new MaximaTimeoutException(callTimeout);
+                final List<Callable<Object>> callables = new ArrayList<Callable<Object>>();
+                callables.add(inputTask);
+                callables.add(outputTask);
+                List<Future<Object>> callResults;
+                if (callTimeoutNanos > 0) {
+                    /* Wait until timeout */
+                    logger.trace("Invoking maxima call using timeout {}", TimeoutSupport.format(callTimeoutNanos));
+                    callResults = executor.invokeAll(callables, callTimeoutNanos, TimeUnit.NANOSECONDS);
+                }
+                else {
+                    /* Wait indefinitely (this can be dangerous!) */
+                    logger.trace("Invoking maxima call without timeout");
+                    callResults = executor.invokeAll(callables);
+                }
+                maximaCallInputFuture = callResults.get(0);
+                maximaCallOutputFuture = callResults.get(1);
+                final boolean hadTimeout = callTimeoutNanos>0 && maximaCallInputFuture.isCancelled() || maximaCallOutputFuture.isCancelled();
+                if (hadTimeout) {
+                    logger.debug("Timeout was exceeded communicating with Maxima - terminating the process");
+                    outcome = Outcome.TIMED_OUT;
+                    terminateMaximaProcess(MaximaTerminationReason.CALL_TIMED_OUT);
+                    throw new MaximaTimeoutException(callTimeoutNanos, TimeUnit.NANOSECONDS);
+                }
             }
             maximaCallInputFuture.get();
             maximaCallOutputFuture.get();
+            outcome = Outcome.SUCCEEDED;
         }
         catch (final ExecutionException e) {
-            final Throwable cause = e.getCause();
-            JacomaxRuntimeException toThrow;
-            if (cause instanceof JacomaxRuntimeException) {
-                logger.debug("Caught a JacomaxRuntimeException from thread - terminating the process");
-                toThrow = (JacomaxRuntimeException) cause;
-            }
-            else {
-                logger.debug("Caught unexpected Exception from thread - terminating the process");
-                toThrow = new JacomaxRuntimeException("Unexpected Exception", cause);
-            }
-            terminateMaximaProcess();
-            throw toThrow;
+            throw handleCallFailure(e.getCause());
         }
         catch (final InterruptedException e) {
             if (!terminated) {
                 logger.debug("Maxima threads interrupted unexpectedly - terminating the process");
-                terminateMaximaProcess();
+                terminateMaximaProcess(MaximaTerminationReason.CALL_FAILED);
                 throw new JacomaxRuntimeException("Maxima thread interrupted unexpectedly");
             }
         }
         finally {
             maximaCallInputFuture = null;
             maximaCallOutputFuture = null;
-            callRunning = false;
+            reportCallCompleted(outcome);
+            callRunning.set(false);
+        }
+    }
+
+    /**
+     * Waits until the given deadline for both halves of a {@link ProcessIoMode#THREAD_POOL} call
+     * to finish, returning false if they did not finish in time.
+     */
+    private boolean awaitThreadPoolCall(final Future<Object> inputFuture, final Future<Object> outputFuture,
+            final long deadline)
+            throws InterruptedException, ExecutionException {
+        try {
+            inputFuture.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            outputFuture.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return true;
+        }
+        catch (final TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Tries to abort the current call by sending Maxima an interrupt, which should make it
+     * abandon the current computation and return to its input prompt.
+     *
+     * @return true if the interrupt was sent, false if this is disabled or failed, in which case
+     *   the caller should terminate the process instead.
+     */
+    private boolean interruptMaximaCall() {
+        if (interruptRecoveryTimeoutNanos <= 0 || terminated) {
+            return false;
+        }
+        logger.debug("Timeout was exceeded communicating with Maxima - interrupting the call");
+        return ProcessSupport.sendInterrupt(maximaProcess);
+    }
+
+    private void doDedicatedReaderMaximaCall(final InputStream callInputStream, final boolean closeOnInputEof,
+            final MaximaOutputHandler maximaOutputHandler, final long callTimeoutNanos)
+            throws MaximaTimeoutException {
+        final long deadline = System.nanoTime() + callTimeoutNanos;
+        Outcome outcome = Outcome.FAILED;
+        try {
+            startDedicatedReaderCall(callInputStream, closeOnInputEof, maximaOutputHandler, callTimeoutNanos, null);
+
+            /* Now wait for the reader thread to finish handling the output */
+            final boolean finished = awaitDedicatedReaderCall(callTimeoutNanos > 0, deadline);
+            boolean recovered = false;
+            if (!finished && interruptMaximaCall()) {
+                /* Give the reader thread a chance to drain the output up to the next prompt */
+                recovered = awaitDedicatedReaderCall(true, System.nanoTime() + interruptRecoveryTimeoutNanos);
+            }
+            final Throwable failure = detachDedicatedReaderCall();
+            if (!finished) {
+                outcome = Outcome.TIMED_OUT;
+                if (recovered && failure==null) {
+                    logger.debug("Maxima returned to its input prompt after the call was interrupted");
+                }
+                else {
+                    logger.debug("Timeout was exceeded communicating with Maxima - terminating the process");
+                    terminateMaximaProcess(MaximaTerminationReason.CALL_TIMED_OUT);
+                }
+                throw new MaximaTimeoutException(callTimeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            if (failure!=null) {
+                throw handleCallFailure(failure);
+            }
+            outcome = Outcome.SUCCEEDED;
+        }
+        catch (final MaximaTimeoutException e) {
+            /* (Call input could not be written in time) */
+            outcome = Outcome.TIMED_OUT;
+            throw e;
+        }
+        catch (final InterruptedException e) {
+            abandonDedicatedReaderCall();
+            if (!terminated) {
+                logger.debug("Maxima call interrupted unexpectedly - terminating the process");
+                terminateMaximaProcess(MaximaTerminationReason.CALL_FAILED);
+                throw new JacomaxRuntimeException("Maxima thread interrupted unexpectedly");
+            }
+        }
+        finally {
+            reportCallCompleted(outcome);
+            callRunning.set(false);
+        }
+    }
+
+    /**
+     * Waits for the {@link MaximaReaderTask} to finish handling the output of the current
+     * synchronous call, returning false if it did not finish in time.
+     *
+     * @param timed whether to give up at the given deadline, or wait indefinitely
+     */
+    private boolean awaitDedicatedReaderCall(final boolean timed, final long deadline)
+            throws InterruptedException {
+        readerLock.lock();
+        try {
+            while (!readerCallFinished) {
+                if (timed) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        break;
+                    }
+                    readerStateChanged.awaitNanos(remaining);
+                }
+                else {
+                    readerStateChanged.await();
+                }
+            }
+            return readerCallFinished;
+        }
+        finally {
+            readerLock.unlock();
+        }
+    }
+
+    /**
+     * Detaches the current synchronous call from the {@link MaximaReaderTask}, returning
+     * any failure it encountered.
+     */
+    private Throwable detachDedicatedReaderCall() {
+        readerLock.lock();
+        try {
+            readerOutputHandler = null;
+            return readerCallFailure;
+        }
+        finally {
+            readerLock.unlock();
+        }
+    }
+
+    private MaximaCallFuture<Void> doDedicatedReaderMaximaCallAsync(final InputStream callInputStream, final boolean closeOnInputEof,
+            final MaximaOutputHandler maximaOutputHandler, final long callTimeoutNanos) {
+        final MaximaCallFuture<Void> result = new MaximaCallFuture<Void>(this);
+        try {
+            startDedicatedReaderCall(callInputStream, closeOnInputEof, maximaOutputHandler, callTimeoutNanos, result);
+        }
+        catch (final MaximaTimeoutException e) {
+            reportCallCompleted(Outcome.TIMED_OUT);
+            callRunning.set(false);
+            result.completeExceptionally(e);
+            return result;
+        }
+        catch (final RuntimeException e) {
+            reportCallCompleted(Outcome.FAILED);
+            callRunning.set(false);
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        /* Arrange for the call to time out if the reader thread hasn't completed it in time */
+        if (callTimeoutNanos > 0) {
+            readerLock.lock();
+            try {
+                if (readerCallFuture==result) {
+                    readerCallTimeoutTask = getWatchdogScheduler().schedule(new Runnable() {
+                        public void run() {
+                            timeoutDedicatedReaderCallAsync(result, callTimeoutNanos);
+                        }
+                    }, callTimeoutNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            finally {
+                readerLock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Called when an asynchronous call has timed out. If enabled, we first interrupt Maxima and
+     * give the {@link MaximaReaderTask} a little longer to drain its output, then call this again
+     * to terminate the process if it still hasn't finished.
+     */
+    private void timeoutDedicatedReaderCallAsync(final MaximaCallFuture<Void> callFuture, final long callTimeoutNanos) {
+        boolean tryInterrupt;
+        readerLock.lock();
+        try {
+            if (readerCallFuture!=callFuture) {
+                /* (Call has already completed) */
+                return;
+            }
+            tryInterrupt = interruptRecoveryTimeoutNanos > 0 && !readerCallInterrupted;
+            readerCallInterrupted = true;
+        }
+        finally {
+            readerLock.unlock();
+        }
+        if (tryInterrupt && interruptMaximaCall()) {
+            readerLock.lock();
+            try {
+                if (readerCallFuture==callFuture) {
+                    readerCallTimeoutTask = getWatchdogScheduler().schedule(new Runnable() {
+                        public void run() {
+                            timeoutDedicatedReaderCallAsync(callFuture, callTimeoutNanos);
+                        }
+                    }, interruptRecoveryTimeoutNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            finally {
+                readerLock.unlock();
+            }
+            return;
+        }
+        readerLock.lock();
+        try {
+            if (readerCallFuture!=callFuture) {
+                /* (Call completed while we were trying to interrupt it) */
+                return;
+            }
+            readerOutputHandler = null;
+            readerCallFuture = null;
+            readerCallTimeoutTask = null;
+        }
+        finally {
+            readerLock.unlock();
+        }
+        logger.debug("Timeout was exceeded communicating with Maxima - terminating the process");
+        terminateMaximaProcess(MaximaTerminationReason.CALL_TIMED_OUT);
+        reportCallCompleted(Outcome.TIMED_OUT);
+        callRunning.set(false);
+        callFuture.completeExceptionally(new MaximaTimeoutException(callTimeoutNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Hands the given output handler over to the {@link MaximaReaderTask} and sends the call
+     * input to Maxima from the calling thread.
+     * <p>
+     * If there is a timeout, we arrange for the process to be killed if writing blocks for too
+     * long, as there's no other way of unblocking the write.
+     *
+     * @param callFuture future to be completed by the reader thread for asynchronous calls,
+     *   null for synchronous calls
+     */
+    private void startDedicatedReaderCall(final InputStream callInputStream, final boolean closeOnInputEof,
+            final MaximaOutputHandler maximaOutputHandler, final long callTimeoutNanos,
+            final MaximaCallFuture<Void> callFuture)
+            throws MaximaTimeoutException {
+        try {
+            maximaOutputHandler.callStarting();
+        }
+        catch (final IOException e) {
+            throw handleCallFailure(new JacomaxRuntimeException("An IOException occurred reading from Maxima", e));
+        }
+
+        /* Hand output handler over to the reader thread */
+        readerLock.lock();
+        try {
+            readerOutputHandler = maximaOutputHandler;
+            readerCallFinished = false;
+            readerCallFailure = null;
+            readerCallFuture = callFuture;
+            readerCallTimeoutTask = null;
+            readerCallTimeoutNanos = callTimeoutNanos;
+            readerCallInterrupted = false;
+            callInputWritten = false;
+            callInputTimedOut = false;
+            readerStateChanged.signalAll();
+        }
+        finally {
+            readerLock.unlock();
+        }
+
+        /* Send input to Maxima from this thread */
+        final ScheduledFuture<?> writeWatchdog = (callTimeoutNanos > 0 && callInputStream!=null) ? scheduleWriteWatchdog(callTimeoutNanos) : null;
+        try {
+            writeCallInput(callInputStream, closeOnInputEof);
+        }
+        catch (final IOException e) {
+            if (!isCallInputTimedOut()) {
+                abandonDedicatedReaderCall();
+                throw handleCallFailure(new JacomaxRuntimeException("An IOException occurred sending input to Maxima", e));
+            }
+        }
+        catch (final RuntimeException e) {
+            abandonDedicatedReaderCall();
+            throw handleCallFailure(e);
+        }
+        finally {
+            if (writeWatchdog!=null) {
+                writeWatchdog.cancel(false);
+            }
+        }
+        if (markCallInputWritten()) {
+            logger.debug("Timeout was exceeded sending input to Maxima - terminating the process");
+            abandonDedicatedReaderCall();
+            terminateMaximaProcess(MaximaTerminationReason.CALL_TIMED_OUT);
+            throw new MaximaTimeoutException(callTimeoutNanos, TimeUnit.NANOSECONDS);
         }
     }
 
+    /** Detaches the current call from the {@link MaximaReaderTask} */
+    private void abandonDedicatedReaderCall() {
+        readerLock.lock();
+        try {
+            readerOutputHandler = null;
+            readerCallFuture = null;
+        }
+        finally {
+            readerLock.unlock();
+        }
+    }
+
+    /**
+     * Terminates the process after a call has failed, returning an appropriate
+     * {@link JacomaxRuntimeException} to be thrown by the caller.
+     */
+    private JacomaxRuntimeException handleCallFailure(final Throwable cause) {
+        JacomaxRuntimeException toThrow;
+        if (cause instanceof JacomaxRuntimeException) {
+            logger.debug("Caught a JacomaxRuntimeException from thread - terminating the process");
+            toThrow = (JacomaxRuntimeException) cause;
+        }
+        else {
+            logger.debug("Caught unexpected Exception from thread - terminating the process");
+            toThrow = new JacomaxRuntimeException("Unexpected Exception", cause);
+        }
+        terminateMaximaProcess(MaximaTerminationReason.CALL_FAILED);
+        return toThrow;
+    }
+
     private void cancelCurrentMaximaCall() {
-        if (callRunning) {
+        if (callRunning.get() && executor!=null) {
             logger.trace("Instructing current Maxima call to cancel if possible");
-            maximaCallInputFuture.cancel(true);
-            maximaCallOutputFuture.cancel(true);
+            /* (These will still be null if the call is being made from another thread) */
+            final Future<Object> inputFuture = maximaCallInputFuture;
+            final Future<Object> outputFuture = maximaCallOutputFuture;
+            if (inputFuture!=null) {
+                inputFuture.cancel(true);
+            }
+            if (outputFuture!=null) {
+                outputFuture.cancel(true);
+            }
             maximaCallInputFuture = null;
             maximaCallOutputFuture = null;
-            callRunning = false;
+            callRunning.set(false);
         }
     }
 
@@ -303,6 +992,231 @@ public final class MaximaProcessController {
         }
     }
 
+    /**
+     * Sends call data to Maxima STDIN, closing or flushing Maxima STDIN once there
+     * is no more call data to send.
+     *
+     * @param callInputStream stream providing call data, which may be null
+     * @param closeStdinOnEof whether Maxima STDIN should be closed, rather than just flushed,
+     *   when there is no more input to send to it.
+     */
+    void writeCallInput(final InputStream callInputStream, final boolean closeStdinOnEof) throws IOException {
+        if (callInputStream==null) {
+            logger.trace("Maxim STDIN loop exiting immediately as callInputStream is null");
+            return;
+        }
+        boolean maximaStdinFinished = false;
+        while (!maximaStdinFinished) {
+            logger.trace("Maxima STDIN Loop: maximaStdinFinished={},inputAvailable={}",
+                    maximaStdinFinished, callInputStream.available());
+            checkMaximaStderr();
+            logger.trace("Blocking on call input");
+            final int bytesReadFromCallInput = callInputStream.read(maximaStdinBuffer);
+            synchronized (maximaStdin) {
+                if (bytesReadFromCallInput==-1) {
+                    /* Nothing more to send to Maxima */
+                    logger.trace("Received EOF from inputStream. {}ing Maxima input and exiting write loop", closeStdinOnEof ? "Clos" : "Flush");
+                    if (closeStdinOnEof) {
+                        maximaStdin.close();
+                    }
+                    else {
+                        maximaStdin.flush();
+                    }
+                    maximaStdinFinished = true;
+                    callInputWrittenTime = System.nanoTime();
+                }
+                else if (bytesReadFromCallInput>0 /*&& !isSignalledTerminating()*/) {
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("Read {} byte(s) from callInputStream. Passing to Maxima input and flushing", bytesReadFromCallInput);
+                        logger.trace("MAXIMA>>>: {}", new String(maximaStdinBuffer, 0, bytesReadFromCallInput, "US-ASCII"));
+                    }
+
+                    /* Send stuff to Maxima and try again */
+                    maximaStdin.write(maximaStdinBuffer, 0, bytesReadFromCallInput);
+                    maximaStdin.flush();
+                    callInputBytes += bytesReadFromCallInput;
+                }
+                else {
+                    throw new JacomaxLogicException("Read 0 input bytes from callInputStream after blocking - not expected");
+                }
+            }
+        }
+        logger.trace("Maxim STDIN loop exiting");
+    }
+
+    //------------------------------------------------------------------------
+    // Instrumentation helpers
+
+    /**
+     * Records that the given number of bytes have been read from Maxima during the current call,
+     * returning the current time.
+     */
+    long recordCallOutput(final int bytesReadFromMaxima) {
+        final long now = System.nanoTime();
+        if (callFirstOutputTime==0L) {
+            callFirstOutputTime = now;
+        }
+        callOutputBytes += bytesReadFromMaxima;
+        return now;
+    }
+
+    private void reportProcessStarted() {
+        processMetrics.processStarted(processNumber);
+        launcherMetrics.processStarted(processNumber);
+        if (instrumentation!=null) {
+            try {
+                instrumentation.processStarted(processNumber);
+            }
+            catch (final RuntimeException e) {
+                logger.warn("MaximaInstrumentation failed in processStarted()", e);
+            }
+        }
+    }
+
+    /**
+     * Reports the completion of the current call (once only), or the process becoming ready
+     * if this was the startup "call".
+     */
+    private void reportCallCompleted(final Outcome outcome) {
+        if (!callMetricsPending.compareAndSet(true, false)) {
+            return;
+        }
+        final long now = System.nanoTime();
+        if (startupCallRunning) {
+            startupCallRunning = false;
+            if (outcome==Outcome.SUCCEEDED) {
+                final long startupNanos = now - processStartTime;
+                processMetrics.processReady(processNumber, startupNanos);
+                launcherMetrics.processReady(processNumber, startupNanos);
+                if (instrumentation!=null) {
+                    try {
+                        instrumentation.processReady(processNumber, startupNanos);
+                    }
+                    catch (final RuntimeException e) {
+                        logger.warn("MaximaInstrumentation failed in processReady()", e);
+                    }
+                }
+            }
+            return;
+        }
+        final long startTime = callStartTime;
+        final long inputWrittenTime = callInputWrittenTime;
+        final long firstOutputTime = callFirstOutputTime;
+        final MaximaCallMetrics callMetrics = new MaximaCallMetrics(outcome, now - startTime,
+                inputWrittenTime!=0L ? inputWrittenTime - startTime : -1L,
+                firstOutputTime!=0L ? firstOutputTime - startTime : -1L,
+                callOutputHandlingNanos, callInputBytes, callOutputBytes);
+        processMetrics.callCompleted(processNumber, callMetrics);
+        launcherMetrics.callCompleted(processNumber, callMetrics);
+        if (instrumentation!=null) {
+            try {
+                instrumentation.callCompleted(processNumber, callMetrics);
+            }
+            catch (final RuntimeException e) {
+                logger.warn("MaximaInstrumentation failed in callCompleted()", e);
+            }
+        }
+    }
+
+    private void reapOrphans(final int orphanCount) {
+        if (orphanCount > 0) {
+            logger.debug("Destroyed {} orphaned child process(es) of Maxima process {}", orphanCount, processNumber);
+            reapedOrphanCount.addAndGet(orphanCount);
+        }
+    }
+
+    private void reportProcessTerminated() {
+        if (!terminationReported.compareAndSet(false, true)) {
+            return;
+        }
+        unregisterMBean();
+        final long lifetimeNanos = System.nanoTime() - processStartTime;
+        final boolean destroyed = forciblyDestroyed;
+        final int orphanCount = reapedOrphanCount.get();
+        if (orphanCount > 0) {
+            processMetrics.orphansReaped(processNumber, orphanCount);
+            launcherMetrics.orphansReaped(processNumber, orphanCount);
+        }
+        processMetrics.processTerminated(processNumber, lifetimeNanos, destroyed);
+        launcherMetrics.processTerminated(processNumber, lifetimeNanos, destroyed);
+        if (instrumentation!=null) {
+            try {
+                if (orphanCount > 0) {
+                    instrumentation.orphansReaped(processNumber, orphanCount);
+                }
+                instrumentation.processTerminated(processNumber, lifetimeNanos, destroyed);
+            }
+            catch (final RuntimeException e) {
+                logger.warn("MaximaInstrumentation failed in processTerminated()", e);
+            }
+        }
+    }
+
+    //------------------------------------------------------------------------
+    // ProcessIoMode.DEDICATED_READER helpers
+
+    private static synchronized ScheduledExecutorService getWatchdogScheduler() {
+        if (watchdogScheduler==null) {
+            final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "jacomax-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            watchdogScheduler = scheduler;
+        }
+        return watchdogScheduler;
+    }
+
+    private ScheduledFuture<?> scheduleWriteWatchdog(final long callTimeoutNanos) {
+        return getWatchdogScheduler().schedule(new Runnable() {
+            public void run() {
+                readerLock.lock();
+                try {
+                    if (callInputWritten) {
+                        return;
+                    }
+                    callInputTimedOut = true;
+                }
+                finally {
+                    readerLock.unlock();
+                }
+                logger.debug("Timeout exceeded while sending input to Maxima - killing the process to unblock it");
+                forciblyDestroyed = true;
+                reapOrphans(ProcessTree.snapshot(maximaProcess).destroy(0L));
+            }
+        }, callTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private boolean isCallInputTimedOut() {
+        readerLock.lock();
+        try {
+            return callInputTimedOut;
+        }
+        finally {
+            readerLock.unlock();
+        }
+    }
+
+    /**
+     * Records that the call input has been written, returning whether the write
+     * watchdog has already fired.
+     */
+    private boolean markCallInputWritten() {
+        readerLock.lock();
+        try {
+            callInputWritten = true;
+            return callInputTimedOut;
+        }
+        finally {
+            readerLock.unlock();
+        }
+    }
+
+    //------------------------------------------------------------------------
+
     /**
      * Task sending call input to Maxima STDIN
      *
@@ -326,54 +1240,12 @@ public final class MaximaProcessController {
 
         public void run() {
             try {
-                doMaximaWriteLoop();
+                writeCallInput(callInputStream, closeStdinOnEof);
             }
             catch (final IOException e) {
                 throw new JacomaxRuntimeException("An IOException occurred sending input to Maxima", e);
             }
         }
-
-        private void doMaximaWriteLoop() throws IOException {
-            if (callInputStream==null) {
-                logger.trace("Maxim STDIN loop exiting immediately as callInputStream is null");
-                return;
-            }
-            boolean maximaStdinFinished = false;
-            while (!maximaStdinFinished) {
-                logger.trace("Maxima STDIN Loop: maximaStdinFinished={},inputAvailable={}",
-                        maximaStdinFinished, callInputStream.available());
-                checkMaximaStderr();
-                logger.trace("Blocking on call input");
-                final int bytesReadFromCallInput = callInputStream.read(maximaStdinBuffer);
-                synchronized (maximaStdin) {
-                    if (bytesReadFromCallInput==-1) {
-                        /* Nothing more to send to Maxima */
-                        logger.trace("Received EOF from inputStream. {}ing Maxima input and exiting write loop", closeStdinOnEof ? "Clos" : "Flush");
-                        if (closeStdinOnEof) {
-                            maximaStdin.close();
-                        }
-                        else {
-                            maximaStdin.flush();
-                        }
-                        maximaStdinFinished = true;
-                    }
-                    else if (bytesReadFromCallInput>0 /*&& !isSignalledTerminating()*/) {
-                        if (logger.isTraceEnabled()) {
-                            logger.trace("Read {} byte(s) from callInputStream. Passing to Maxima input and flushing", bytesReadFromCallInput);
-                            logger.trace("MAXIMA>>>: {}", new String(maximaStdinBuffer, 0, bytesReadFromCallInput, "US-ASCII"));
-                        }
-
-                        /* Send stuff to Maxima and try again */
-                        maximaStdin.write(maximaStdinBuffer, 0, bytesReadFromCallInput);
-                        maximaStdin.flush();
-                    }
-                    else {
-                        throw new JacomaxLogicException("Read 0 input bytes from callInputStream after blocking - not expected");
-                    }
-                }
-            }
-            logger.trace("Maxim STDIN loop exiting");
-        }
     }
 
     /**
@@ -430,7 +1302,9 @@ public final class MaximaProcessController {
                         logger.trace("Read {} byte(s) from Maxima. Sending to output handler and checking status", bytesReadFromMaxima);
                         logger.trace("MAXIMA<<<: {}", new String(maximaStdoutBuffer, 0, bytesReadFromMaxima, "US-ASCII"));
                     }
+                    final long handlingStartTime = recordCallOutput(bytesReadFromMaxima);
                     outputHandlerSaysStop = maximaOutputHandler.handleOutput(maximaStdoutBuffer, bytesReadFromMaxima, maximaStdoutFinished);
+                    callOutputHandlingNanos += System.nanoTime() - handlingStartTime;
                 }
                 else if (bytesReadFromMaxima==0) {
                     /* Not expecting this! */
@@ -440,4 +1314,177 @@ public final class MaximaProcessController {
             logger.trace("Maxima STDOUT loop exiting");
         }
     }
+
+    /**
+     * Long-lived task that reads from Maxima STDOUT in {@link ProcessIoMode#DEDICATED_READER}
+     * mode, passing output to the handler for the current call.
+     * <p>
+     * STDOUT is only read while a call is running, so any unexpected output produced
+     * between calls will be handled by the next call, as in {@link ProcessIoMode#THREAD_POOL} mode.
+     *
+     * @author David McKain
+     */
+    private class MaximaReaderTask implements Runnable {
+
+        /** Failure from the last call to {@link #handleReaderOutput(MaximaOutputHandler, int, IOException)}, if any */
+        private Throwable handlerFailure;
+
+        public void run() {
+            try {
+                while (true) {
+                    /* Wait for a call to start */
+                    readerLock.lock();
+                    try {
+                        while (readerOutputHandler==null || readerCallFinished) {
+                            if (terminated) {
+                                logger.trace("Maxima reader exiting as process has been terminated");
+                                return;
+                            }
+                            readerStateChanged.await();
+                        }
+                    }
+                    finally {
+                        readerLock.unlock();
+                    }
+
+                    /* Read next chunk of output */
+                    int bytesReadFromMaxima;
+                    IOException readFailure = null;
+                    try {
+                        checkMaximaStderr();
+                        bytesReadFromMaxima = maximaStdout.read(maximaStdoutBuffer);
+                    }
+                    catch (final IOException e) {
+                        bytesReadFromMaxima = -1;
+                        readFailure = e;
+                    }
+
+                    /* Find handler for current call (if still running) */
+                    final MaximaOutputHandler outputHandler;
+                    readerLock.lock();
+                    try {
+                        outputHandler = readerCallFinished ? null : readerOutputHandler;
+                    }
+                    finally {
+                        readerLock.unlock();
+                    }
+
+                    /* Pass output to it. We don't hold readerLock while doing this, as the handler may
+                     * call out to a slow (or stuck) Appendable, which mustn't hold up the call timeout */
+                    MaximaCallFuture<Void> completedCallFuture = null;
+                    Throwable completedCallFailure = null;
+                    boolean completedCallInterrupted = false;
+                    if (outputHandler==null) {
+                        /* (Call has been abandoned, e.g. due to a timeout) */
+                        logger.trace("Discarding output read after call was abandoned");
+                    }
+                    else if (handleReaderOutput(outputHandler, bytesReadFromMaxima, readFailure)) {
+                        readerLock.lock();
+                        try {
+                            if (readerOutputHandler!=outputHandler || readerCallFinished) {
+                                /* (Call was abandoned while we were handling its output) */
+                                logger.trace("Call was abandoned while its output was being handled");
+                            }
+                            else {
+                                readerCallFinished = true;
+                                readerCallFailure = handlerFailure;
+                                readerStateChanged.signalAll();
+                                if (readerCallFuture!=null) {
+                                    /* Asynchronous call has finished, so we'll complete it once we've released the lock */
+                                    completedCallFuture = readerCallFuture;
+                                    completedCallFailure = handlerFailure;
+                                    completedCallInterrupted = readerCallInterrupted;
+                                    if (readerCallTimeoutTask!=null) {
+                                        readerCallTimeoutTask.cancel(false);
+                                    }
+                                    readerOutputHandler = null;
+                                    readerCallFuture = null;
+                                    readerCallTimeoutTask = null;
+                                }
+                            }
+                        }
+                        finally {
+                            readerLock.unlock();
+                        }
+                    }
+                    if (completedCallFuture!=null) {
+                        completeDedicatedReaderCallAsync(completedCallFuture, completedCallFailure, completedCallInterrupted);
+                    }
+                    if (bytesReadFromMaxima==-1) {
+                        logger.trace("Maxima reader exiting as Maxima STDOUT has finished");
+                        return;
+                    }
+                }
+            }
+            catch (final InterruptedException e) {
+                logger.debug("Maxima reader interrupted unexpectedly - exiting");
+            }
+        }
+
+        /**
+         * Passes output to the given handler, returning true if the call has now finished, in which
+         * case {@link #handlerFailure} records any failure. (Called without readerLock held.)
+         */
+        private boolean handleReaderOutput(final MaximaOutputHandler outputHandler, final int bytesReadFromMaxima,
+                final IOException readFailure) {
+            boolean callFinished;
+            Throwable failure = null;
+            try {
+                if (readFailure!=null) {
+                    throw readFailure;
+                }
+                if (bytesReadFromMaxima==-1) {
+                    logger.trace("Received EOF from Maxima STDOUT so stopping reading from it and informing output handler");
+                    callFinished = true;
+                }
+                else if (bytesReadFromMaxima>0) {
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("Read {} byte(s) from Maxima. Sending to output handler and checking status", bytesReadFromMaxima);
+                        logger.trace("MAXIMA<<<: {}", new String(maximaStdoutBuffer, 0, bytesReadFromMaxima, "US-ASCII"));
+                    }
+                    final long handlingStartTime = recordCallOutput(bytesReadFromMaxima);
+                    callFinished = outputHandler.handleOutput(maximaStdoutBuffer, bytesReadFromMaxima, false);
+                    callOutputHandlingNanos += System.nanoTime() - handlingStartTime;
+                }
+                else {
+                    throw new JacomaxLogicException("Read 0 input bytes from Maxima STDOUT after blocking - not expected");
+                }
+                if (callFinished) {
+                    outputHandler.callFinished();
+                }
+            }
+            catch (final IOException e) {
+                failure = new JacomaxRuntimeException("An IOException occurred reading from Maxima", e);
+                callFinished = true;
+            }
+            catch (final RuntimeException e) {
+                failure = e;
+                callFinished = true;
+            }
+            handlerFailure = failure;
+            return callFinished;
+        }
+
+        private void completeDedicatedReaderCallAsync(final MaximaCallFuture<Void> callFuture, final Throwable failure,
+                final boolean interrupted) {
+            if (failure!=null) {
+                final JacomaxRuntimeException toThrow = handleCallFailure(failure);
+                reportCallCompleted(Outcome.FAILED);
+                callRunning.set(false);
+                callFuture.completeExceptionally(toThrow);
+            }
+            else if (interrupted) {
+                logger.debug("Maxima returned to its input prompt after the call was interrupted");
+                final MaximaTimeoutException toThrow = new MaximaTimeoutException(readerCallTimeoutNanos, TimeUnit.NANOSECONDS);
+                reportCallCompleted(Outcome.TIMED_OUT);
+                callRunning.set(false);
+                callFuture.completeExceptionally(toThrow);
+            }
+            else {
+                reportCallCompleted(Outcome.SUCCEEDED);
+                callRunning.set(false);
+                callFuture.complete(null);
+            }
+        }
+    }
 }
@@ -0,0 +1,70 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+import uk.ac.ed.ph.jacomax.MaximaProcessLauncher;
+import uk.ac.ed.ph.jacomax.MaximaProcessLauncherMXBean;
+
+/**
+ * Implementation of {@link MaximaProcessLauncherMXBean}, reading from the
+ * launcher's {@link uk.ac.ed.ph.jacomax.MaximaMetrics}.
+ *
+ * @author David McKain
+ */
+public final class MaximaProcessLauncherMXBeanImpl extends AbstractCallStatisticsMXBean
+        implements MaximaProcessLauncherMXBean {
+
+    public MaximaProcessLauncherMXBeanImpl(final MaximaProcessLauncher launcher) {
+        super(launcher.getMetrics());
+    }
+
+    public long getProcessesStarted() {
+        return metrics.getProcessesStarted();
+    }
+
+    public long getProcessesTerminated() {
+        return metrics.getProcessesTerminated();
+    }
+
+    public long getLiveProcessCount() {
+        return metrics.getLiveProcessCount();
+    }
+
+    public long getForcedDestroyCount() {
+        return metrics.getForcedDestroyCount();
+    }
+
+    public long getReapedOrphanCount() {
+        return metrics.getReapedOrphanCount();
+    }
+
+    public double getMeanStartupMillis() {
+        return toMillis(metrics.getStartupHistogram().getMeanNanos());
+    }
+}
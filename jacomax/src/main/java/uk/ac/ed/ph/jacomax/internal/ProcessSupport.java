@@ -0,0 +1,157 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides access to operating system details of a {@link Process} that aren't available
+ * via the Java 8 API.
+ * <p>
+ * On Java 9 or later, this uses reflection to call <code>Process.pid()</code>. On older
+ * versions, it falls back to reading the private <code>pid</code> field used by the
+ * UNIX implementation. Signals are sent using the <code>kill</code> command, so are only
+ * supported on UNIX-like systems.
+ *
+ * @author David McKain
+ */
+public final class ProcessSupport {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessSupport.class);
+
+    /** Time to wait for the <code>kill</code> command to complete */
+    private static final int KILL_COMMAND_TIMEOUT = 5;
+
+    /** <code>Process.pid()</code>, null if not supported */
+    private static final Method pidMethod;
+
+    /** Location of the <code>kill</code> command, null if not found */
+    private static final String killCommand;
+
+    static {
+        Method method = null;
+        try {
+            method = Process.class.getMethod("pid");
+        }
+        catch (final Exception e) {
+            logger.debug("Process.pid() is not available on this JVM", e);
+        }
+        pidMethod = method;
+        String command = null;
+        for (final String candidate : new String[] { "/bin/kill", "/usr/bin/kill" }) {
+            if (new File(candidate).canExecute()) {
+                command = candidate;
+                break;
+            }
+        }
+        killCommand = command;
+    }
+
+    /**
+     * Returns the operating system process ID of the given {@link Process}, or -1 if
+     * this can't be determined.
+     */
+    public static long getPid(final Process process) {
+        if (pidMethod!=null) {
+            try {
+                return ((Long) pidMethod.invoke(process)).longValue();
+            }
+            catch (final Exception e) {
+                /* (Process.pid() throws UnsupportedOperationException on some platforms) */
+                logger.debug("Could not determine pid of {}", process, e);
+                return -1L;
+            }
+        }
+        try {
+            final Field pidField = process.getClass().getDeclaredField("pid");
+            pidField.setAccessible(true);
+            return pidField.getInt(process);
+        }
+        catch (final Exception e) {
+            logger.debug("Could not determine pid of {}", process, e);
+            return -1L;
+        }
+    }
+
+    /**
+     * Returns whether {@link #sendInterrupt(Process)} is likely to work on this platform.
+     */
+    public static boolean isInterruptSupported() {
+        return killCommand!=null;
+    }
+
+    /**
+     * Sends <code>SIGINT</code> to the given {@link Process}, as would happen if you pressed
+     * Ctrl-C in a terminal.
+     *
+     * @return true if the signal was sent successfully, false otherwise
+     */
+    public static boolean sendInterrupt(final Process process) {
+        return sendSignal(process, "INT");
+    }
+
+    static boolean sendSignal(final Process process, final String signal) {
+        if (killCommand==null) {
+            logger.debug("Can't send SIG{} as no kill command is available", signal);
+            return false;
+        }
+        final long pid = getPid(process);
+        if (pid <= 0L) {
+            return false;
+        }
+        try {
+            final Process kill = new ProcessBuilder(killCommand, "-" + signal, Long.toString(pid))
+                .redirectErrorStream(true)
+                .start();
+            kill.getOutputStream().close();
+            if (!kill.waitFor(KILL_COMMAND_TIMEOUT, TimeUnit.SECONDS)) {
+                kill.destroy();
+                logger.debug("Timed out sending SIG{} to process {}", signal, pid);
+                return false;
+            }
+            final boolean success = kill.exitValue()==0;
+            logger.debug("Sent SIG{} to process {}: success={}", signal, pid, success);
+            return success;
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        catch (final Exception e) {
+            logger.debug("Could not send SIG{} to process {}", signal, pid, e);
+            return false;
+        }
+    }
+}
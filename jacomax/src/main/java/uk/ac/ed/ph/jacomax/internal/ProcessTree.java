@@ -0,0 +1,336 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Snapshot of a {@link Process} and all of the processes it has started, which is used to
+ * terminate the whole lot.
+ * <p>
+ * This is needed because Maxima is often started via a wrapper script, so destroying the
+ * {@link Process} may only kill the script and leave the underlying Lisp runtime running
+ * as an orphan. The descendants need to be found before the {@link Process} goes away,
+ * as they can't be traced back to it afterwards.
+ * <p>
+ * It can also measure the resources used by the whole tree, which is used to decide when
+ * pooled processes should be recycled.
+ * <p>
+ * Descendants are found using <code>ProcessHandle</code>, which is accessed via reflection
+ * as it requires Java 9 or later. On older versions of Java, only the {@link Process}
+ * itself is terminated.
+ *
+ * @author David McKain
+ */
+public final class ProcessTree {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessTree.class);
+
+    /** <code>Process.descendants()</code>, null if not supported */
+    private static final Method descendantsMethod;
+
+    /* The following <code>ProcessHandle</code> methods are set if descendantsMethod is */
+    private static final Method handleIsAliveMethod;
+    private static final Method handleDestroyMethod;
+    private static final Method handleDestroyForciblyMethod;
+    private static final Method handleOnExitMethod;
+    private static final Method handlePidMethod;
+    private static final Method handleInfoMethod;
+    private static final Method infoTotalCpuDurationMethod;
+
+    /** <code>Process.toHandle()</code>, set if descendantsMethod is */
+    private static final Method toHandleMethod;
+
+    static {
+        Method descendants = null;
+        Method isAlive = null;
+        Method destroy = null;
+        Method destroyForcibly = null;
+        Method onExit = null;
+        Method pid = null;
+        Method info = null;
+        Method totalCpuDuration = null;
+        Method toHandle = null;
+        try {
+            final Class<?> processHandleClass = Class.forName("java.lang.ProcessHandle");
+            isAlive = processHandleClass.getMethod("isAlive");
+            destroy = processHandleClass.getMethod("destroy");
+            destroyForcibly = processHandleClass.getMethod("destroyForcibly");
+            onExit = processHandleClass.getMethod("onExit");
+            pid = processHandleClass.getMethod("pid");
+            info = processHandleClass.getMethod("info");
+            totalCpuDuration = Class.forName("java.lang.ProcessHandle$Info").getMethod("totalCpuDuration");
+            toHandle = Process.class.getMethod("toHandle");
+            descendants = Process.class.getMethod("descendants");
+        }
+        catch (final Exception e) {
+            logger.debug("ProcessHandle is not available on this JVM so descendant processes can't be found", e);
+        }
+        descendantsMethod = descendants;
+        handleIsAliveMethod = isAlive;
+        handleDestroyMethod = destroy;
+        handleDestroyForciblyMethod = destroyForcibly;
+        handleOnExitMethod = onExit;
+        handlePidMethod = pid;
+        handleInfoMethod = info;
+        infoTotalCpuDurationMethod = totalCpuDuration;
+        toHandleMethod = toHandle;
+    }
+
+    /** The {@link Process} itself */
+    private final Process process;
+
+    /** <code>ProcessHandle</code>s for the descendants of the {@link Process} */
+    private final List<Object> descendants;
+
+    private ProcessTree(final Process process, final List<Object> descendants) {
+        this.process = process;
+        this.descendants = descendants;
+    }
+
+    /**
+     * Returns whether descendant processes can be found on this JVM.
+     */
+    public static boolean isDescendantsSupported() {
+        return descendantsMethod!=null;
+    }
+
+    /**
+     * Takes a snapshot of the given {@link Process} and its current descendants.
+     */
+    public static ProcessTree snapshot(final Process process) {
+        Assert.notNull(process, "process");
+        final List<Object> descendants = new ArrayList<Object>();
+        if (descendantsMethod!=null) {
+            try {
+                final Stream<?> stream = (Stream<?>) descendantsMethod.invoke(process);
+                try {
+                    for (final Object handle : stream.toArray()) {
+                        descendants.add(handle);
+                    }
+                }
+                finally {
+                    stream.close();
+                }
+            }
+            catch (final Exception e) {
+                /* (Process.descendants() throws UnsupportedOperationException on some platforms) */
+                logger.debug("Could not find descendants of {}", process, e);
+            }
+        }
+        return new ProcessTree(process, descendants);
+    }
+
+    /**
+     * Returns the number of descendant processes found when the snapshot was taken.
+     */
+    public int getDescendantCount() {
+        return descendants.size();
+    }
+
+    /**
+     * Returns the total resident memory (in bytes) used by the {@link Process} and its descendants,
+     * as read from <code>/proc/[pid]/status</code>. Returns -1 if this can't be determined, e.g.
+     * if we're not running on Linux.
+     */
+    public long getResidentMemoryBytes() {
+        final long processRss = readResidentMemoryBytes(ProcessSupport.getPid(process));
+        if (processRss < 0L) {
+            return -1L;
+        }
+        long result = processRss;
+        for (final Object handle : descendants) {
+            final Object pid = invokeHandleMethod(handlePidMethod, handle);
+            if (pid instanceof Long) {
+                /* (Descendants that have since exited are simply ignored) */
+                result += Math.max(0L, readResidentMemoryBytes(((Long) pid).longValue()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the total CPU time (in nanoseconds) used by the {@link Process} and its descendants.
+     * Returns -1 if this can't be determined, e.g. if we're running on Java 8.
+     */
+    public long getCpuTimeNanos() {
+        if (toHandleMethod==null) {
+            return -1L;
+        }
+        final long processCpuTime = readCpuTimeNanos(invokeHandleMethod(toHandleMethod, process));
+        if (processCpuTime < 0L) {
+            return -1L;
+        }
+        long result = processCpuTime;
+        for (final Object handle : descendants) {
+            result += Math.max(0L, readCpuTimeNanos(handle));
+        }
+        return result;
+    }
+
+    private static long readResidentMemoryBytes(final long pid) {
+        if (pid <= 0L) {
+            return -1L;
+        }
+        final File statusFile = new File("/proc/" + pid + "/status");
+        if (!statusFile.isFile()) {
+            return -1L;
+        }
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(statusFile), "US-ASCII"));
+            try {
+                String line;
+                while ((line = reader.readLine())!=null) {
+                    if (line.startsWith("VmRSS:")) {
+                        /* (This looks like "VmRSS:     1234 kB") */
+                        final String[] fields = line.substring("VmRSS:".length()).trim().split("\\s+");
+                        return Long.parseLong(fields[0]) * 1024L;
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (final IOException e) {
+            logger.debug("Could not read {}", statusFile, e);
+        }
+        catch (final NumberFormatException e) {
+            logger.debug("Could not parse VmRSS in {}", statusFile, e);
+        }
+        /* (Kernel threads and zombies have no VmRSS) */
+        return -1L;
+    }
+
+    private static long readCpuTimeNanos(final Object handle) {
+        if (handle==null) {
+            return -1L;
+        }
+        final Object info = invokeHandleMethod(handleInfoMethod, handle);
+        if (info==null) {
+            return -1L;
+        }
+        final Optional<?> cpuDuration = (Optional<?>) invokeHandleMethod(infoTotalCpuDurationMethod, info);
+        if (cpuDuration==null || !cpuDuration.isPresent()) {
+            return -1L;
+        }
+        return ((Duration) cpuDuration.get()).toNanos();
+    }
+
+    /**
+     * Destroys the {@link Process} and any of its descendants that are still alive. Each is first
+     * asked to terminate, and then forcibly destroyed if it is still alive after the given grace
+     * period.
+     *
+     * @param gracePeriodNanos time to wait for processes to terminate before forcibly destroying
+     *   them, zero or less to destroy them forcibly straight away
+     *
+     * @return number of descendant processes that were still alive and had to be destroyed
+     */
+    public int destroy(final long gracePeriodNanos) {
+        final List<Object> liveDescendants = new ArrayList<Object>();
+        for (final Object handle : descendants) {
+            if (Boolean.TRUE.equals(invokeHandleMethod(handleIsAliveMethod, handle))) {
+                liveDescendants.add(handle);
+            }
+        }
+
+        /* Ask everything to terminate nicely, waiting for the grace period */
+        if (gracePeriodNanos > 0L) {
+            if (process.isAlive()) {
+                process.destroy();
+            }
+            for (final Object handle : liveDescendants) {
+                invokeHandleMethod(handleDestroyMethod, handle);
+            }
+            final long deadline = System.nanoTime() + gracePeriodNanos;
+            try {
+                process.waitFor(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                for (final Object handle : liveDescendants) {
+                    final CompletableFuture<?> exitFuture = (CompletableFuture<?>) invokeHandleMethod(handleOnExitMethod, handle);
+                    if (exitFuture!=null) {
+                        exitFuture.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    }
+                }
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (final Exception e) {
+                /* (Timed out, so we'll fall through to forcible destruction) */
+            }
+        }
+
+        /* Then forcibly destroy anything that's still going */
+        if (process.isAlive()) {
+            logger.debug("Forcibly destroying process {}", process);
+            process.destroyForcibly();
+        }
+        for (final Object handle : liveDescendants) {
+            if (Boolean.TRUE.equals(invokeHandleMethod(handleIsAliveMethod, handle))) {
+                logger.debug("Forcibly destroying descendant process {}", handle);
+                invokeHandleMethod(handleDestroyForciblyMethod, handle);
+            }
+        }
+        return liveDescendants.size();
+    }
+
+    private static Object invokeHandleMethod(final Method method, final Object handle) {
+        try {
+            return method.invoke(handle);
+        }
+        catch (final Exception e) {
+            logger.debug("Could not call {} on {}", method.getName(), handle, e);
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this))
+            + "(process=" + process
+            + ",descendants=" + descendants
+            + ")";
+    }
+}
@@ -0,0 +1,128 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers for working with timeouts, which Jacomax handles internally in nanoseconds.
+ * <p>
+ * As with the public API, a positive timeout is a real timeout, zero usually means
+ * "use the default" and a negative value means "no timeout".
+ *
+ * @author David McKain
+ */
+public final class TimeoutSupport {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Converts the given timeout to whole seconds, for use by methods that use the original
+     * int-second API. Positive timeouts are rounded up so that they don't turn into zero,
+     * and negative ones stay negative.
+     */
+    public static int toSeconds(final long timeoutNanos) {
+        if (timeoutNanos > 0L) {
+            return (int) Math.min(Integer.MAX_VALUE, (timeoutNanos - 1) / NANOS_PER_SECOND + 1);
+        }
+        else if (timeoutNanos < 0L) {
+            return (int) Math.max(Integer.MIN_VALUE, Math.min(-1L, timeoutNanos / NANOS_PER_SECOND));
+        }
+        return 0;
+    }
+
+    /**
+     * Converts the given timeout to nanoseconds, checking that the unit is not null.
+     */
+    public static long toNanos(final long timeout, final TimeUnit unit) {
+        Assert.notNull(unit, "unit");
+        return unit.toNanos(timeout);
+    }
+
+    /**
+     * Formats the given timeout for use in messages, using the largest of
+     * seconds, milliseconds, microseconds or nanoseconds giving a whole number,
+     * e.g. <code>20s</code> or <code>300ms</code>.
+     */
+    public static String format(final long timeoutNanos) {
+        if (timeoutNanos % NANOS_PER_SECOND==0L) {
+            return (timeoutNanos / NANOS_PER_SECOND) + "s";
+        }
+        else if (timeoutNanos % 1000000L==0L) {
+            return (timeoutNanos / 1000000L) + "ms";
+        }
+        else if (timeoutNanos % 1000L==0L) {
+            return (timeoutNanos / 1000L) + "us";
+        }
+        return timeoutNanos + "ns";
+    }
+
+    /**
+     * Parses a timeout of the form understood by {@link #format(long)}, also allowing
+     * <code>m</code> for minutes. A number with no unit is treated as being in seconds.
+     *
+     * @return timeout in nanoseconds
+     *
+     * @throws IllegalArgumentException if the value could not be parsed
+     */
+    public static long parse(final String value) {
+        Assert.notNull(value, "value");
+        final String trimmed = value.trim();
+        int unitIndex = trimmed.length();
+        while (unitIndex>0 && Character.isLetter(trimmed.charAt(unitIndex - 1))) {
+            unitIndex--;
+        }
+        final String unitString = trimmed.substring(unitIndex);
+        TimeUnit unit;
+        if (unitString.length()==0 || unitString.equals("s")) {
+            unit = TimeUnit.SECONDS;
+        }
+        else if (unitString.equals("ms")) {
+            unit = TimeUnit.MILLISECONDS;
+        }
+        else if (unitString.equals("us")) {
+            unit = TimeUnit.MICROSECONDS;
+        }
+        else if (unitString.equals("ns")) {
+            unit = TimeUnit.NANOSECONDS;
+        }
+        else if (unitString.equals("m")) {
+            unit = TimeUnit.MINUTES;
+        }
+        else {
+            throw new IllegalArgumentException("Unknown timeout unit '" + unitString + "' in " + value);
+        }
+        try {
+            return unit.toNanos(Long.parseLong(trimmed.substring(0, unitIndex).trim()));
+        }
+        catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Timeout " + value + " must be an integer, optionally followed by a unit");
+        }
+    }
+}
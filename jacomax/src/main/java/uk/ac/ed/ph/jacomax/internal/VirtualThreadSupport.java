@@ -0,0 +1,115 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides access to virtual threads when running on Java 21 or later.
+ * <p>
+ * Jacomax is compiled for older Java versions, so this uses reflection to look up
+ * the required APIs. Callers should fall back to platform threads if
+ * {@link #isAvailable()} returns false.
+ *
+ * @author David McKain
+ */
+public final class VirtualThreadSupport {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadSupport.class);
+
+    /** {@link ThreadFactory} creating virtual threads, null if not supported */
+    private static final ThreadFactory virtualThreadFactory;
+
+    /** <code>Executors.newThreadPerTaskExecutor(ThreadFactory)</code>, null if not supported */
+    private static final Method newThreadPerTaskExecutorMethod;
+
+    static {
+        ThreadFactory factory = null;
+        Method executorMethod = null;
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "jacomax-virtual-", Long.valueOf(0L));
+            factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            executorMethod = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        }
+        catch (final Exception e) {
+            /* (Either an older JVM, or virtual threads are a preview feature that hasn't been enabled) */
+            logger.debug("Virtual threads are not available on this JVM", e);
+            factory = null;
+            executorMethod = null;
+        }
+        virtualThreadFactory = factory;
+        newThreadPerTaskExecutorMethod = executorMethod;
+    }
+
+    /**
+     * Returns whether virtual threads are supported by the current JVM.
+     */
+    public static boolean isAvailable() {
+        return virtualThreadFactory!=null;
+    }
+
+    /**
+     * Creates a new (unstarted) virtual thread running the given task.
+     *
+     * @throws IllegalStateException if virtual threads are not available
+     */
+    public static Thread newVirtualThread(final Runnable task) {
+        ensureAvailable();
+        return virtualThreadFactory.newThread(task);
+    }
+
+    /**
+     * Creates an {@link ExecutorService} that runs each submitted task in a new virtual thread.
+     *
+     * @throws IllegalStateException if virtual threads are not available
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        ensureAvailable();
+        try {
+            return (ExecutorService) newThreadPerTaskExecutorMethod.invoke(null, virtualThreadFactory);
+        }
+        catch (final Exception e) {
+            throw new IllegalStateException("Could not create virtual thread executor", e);
+        }
+    }
+
+    private static void ensureAvailable() {
+        if (!isAvailable()) {
+            throw new IllegalStateException("Virtual threads are not available on this JVM");
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.utilities;
+
+import uk.ac.ed.ph.jacomax.internal.Assert;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Parses the raw output from a Maxima call containing any number of statements generating
+ * linear output, such as <code>string(x); 1+2; print("Hello")$ y;</code>, returning each result
+ * in turn as a {@link SingleLinearOutput}.
+ * <p>
+ * The raw output is scanned once, with each result being parsed as the iteration proceeds.
+ * The output of each {@link SingleLinearOutput} is anything that was printed after the previous
+ * result (or start of the raw output) and before its output prompt. Anything printed after the
+ * final result is available via {@link #getTrailingOutput()} once the iteration has finished.
+ * Intermediate input prompts are stripped out, as in
+ * {@link MaximaOutputUtilities#parseSingleLinearOutput(String, String, String)}.
+ * <p>
+ * Each result is assumed to end at the first newline that is neither escaped with a backslash
+ * nor inside a string. (This is how Maxima outputs linear results.)
+ * <p>
+ * Instances of this class are not thread safe.
+ *
+ * @see MaximaOutputUtilities#parseMultipleLinearOutputs(String)
+ *
+ * @author David McKain
+ */
+public final class LinearOutputIterator implements Iterator<SingleLinearOutput> {
+
+    private final String rawOutput;
+    private final String inchar;
+    private final String outchar;
+    private final StringBuilder scratchBuilder;
+
+    /** Position of the next character to scan in the raw output */
+    private int position;
+
+    /** Next result to return, if already parsed */
+    private SingleLinearOutput nextResult;
+
+    /** Output after the final result, set once the end of the raw output has been reached */
+    private String trailingOutput;
+
+    public LinearOutputIterator(final String rawOutput) {
+        this(rawOutput, MaximaOutputUtilities.DEFAULT_INCHAR, MaximaOutputUtilities.DEFAULT_OUTCHAR);
+    }
+
+    public LinearOutputIterator(final String rawOutput, final String inchar, final String outchar) {
+        Assert.notNull(rawOutput, "rawOutput");
+        Assert.notNull(inchar, "inchar");
+        Assert.notNull(outchar, "outchar");
+        this.rawOutput = rawOutput;
+        this.inchar = inchar;
+        this.outchar = outchar;
+        this.scratchBuilder = new StringBuilder();
+        this.position = 0;
+    }
+
+    public boolean hasNext() {
+        if (nextResult==null && trailingOutput==null) {
+            nextResult = parseNext();
+        }
+        return nextResult!=null;
+    }
+
+    public SingleLinearOutput next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final SingleLinearOutput result = nextResult;
+        nextResult = null;
+        return result;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns anything that was output after the final result, which will be non-null
+     * once {@link #hasNext()} has returned false.
+     */
+    public String getTrailingOutput() {
+        return trailingOutput;
+    }
+
+    private SingleLinearOutput parseNext() {
+        final int length = rawOutput.length();
+        int promptEnd;
+        char c;
+
+        /* Scan output up to the next output prompt */
+        scratchBuilder.setLength(0);
+        String outputPrompt = null;
+        while (position < length) {
+            c = rawOutput.charAt(position);
+            if (c=='(') {
+                if ((promptEnd = MaximaOutputUtilities.matchPrompt(rawOutput, position, inchar))!=-1) {
+                    position = promptEnd;
+                    continue;
+                }
+                if ((promptEnd = MaximaOutputUtilities.matchPrompt(rawOutput, position, outchar))!=-1) {
+                    outputPrompt = rawOutput.substring(position, promptEnd);
+                    position = promptEnd;
+                    break;
+                }
+            }
+            scratchBuilder.append(c);
+            position++;
+        }
+        final String output = scratchBuilder.toString();
+        if (outputPrompt==null) {
+            trailingOutput = output;
+            return null;
+        }
+
+        /* Skip whitespace before the result */
+        while (position < length && (c = rawOutput.charAt(position))!='\n' && MaximaOutputUtilities.isWhitespace(c)) {
+            position++;
+        }
+
+        /* Parse result up to the end of its line. (This follows the same logic as
+         * MaximaOutputUtilities.parseLinearResult().) */
+        scratchBuilder.setLength(0);
+        boolean isInString = false;
+        boolean isCompletingBackslash = false;
+        while (position < length) {
+            c = rawOutput.charAt(position);
+            if (c=='(' && (promptEnd = MaximaOutputUtilities.matchPrompt(rawOutput, position, inchar))!=-1) {
+                /* Strip out intermediate input prompt */
+                position = promptEnd;
+                continue;
+            }
+            position++;
+            if (isCompletingBackslash) {
+                if (c!='\n' || isInString) {
+                    scratchBuilder.append(c);
+                }
+                isCompletingBackslash = false;
+            }
+            else if (c=='\\') {
+                isCompletingBackslash = true;
+            }
+            else if (c=='\n' && !isInString) {
+                /* End of result */
+                break;
+            }
+            else {
+                scratchBuilder.append(c);
+                if (c=='"') {
+                    isInString ^= true;
+                }
+            }
+        }
+
+        /* Trim trailing whitespace */
+        int resultLength = scratchBuilder.length();
+        while (resultLength > 0 && MaximaOutputUtilities.isWhitespace(scratchBuilder.charAt(resultLength - 1))) {
+            resultLength--;
+        }
+        scratchBuilder.setLength(resultLength);
+        return new SingleLinearOutput(output, outputPrompt, scratchBuilder.toString());
+    }
+}
@@ -30,12 +30,15 @@ package uk.ac.ed.ph.jacomax.utilities;
 
 import uk.ac.ed.ph.jacomax.internal.Assert;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Provides some basic utility methods for handling Maxima outputs.
  * <p>
+ * The parsing methods here work by scanning the raw output once, rather than using
+ * regular expressions, as they tend to get called on every result.
+ * <p>
  * This might become more fully-featured in the future...
  *
  * @author David McKain
@@ -47,13 +50,32 @@ public final class MaximaOutputUtilities {
 
     public static String stripIntermediateInputPrompts(final String rawOutput) {
         Assert.notNull(rawOutput, "rawOutput");
-        return stripIntermediateInputPrompts(rawOutput, "%i");
+        return stripIntermediateInputPrompts(rawOutput, DEFAULT_INCHAR);
     }
 
     public static String stripIntermediateInputPrompts(final String rawOutput, final String inchar) {
         Assert.notNull(rawOutput, "rawOutput");
         Assert.notNull(inchar, "inchar");
-        return rawOutput.replaceAll("\\(\\Q" + inchar + "\\E\\d+\\)", "");
+        StringBuilder resultBuilder = null; /* (Only created if there are any prompts to strip) */
+        int copiedUpTo = 0;
+        int promptEnd;
+        for (int i=rawOutput.indexOf('('); i!=-1; i=rawOutput.indexOf('(', i)) {
+            promptEnd = matchPrompt(rawOutput, i, inchar);
+            if (promptEnd!=-1) {
+                if (resultBuilder==null) {
+                    resultBuilder = new StringBuilder(rawOutput.length());
+                }
+                resultBuilder.append(rawOutput, copiedUpTo, i);
+                copiedUpTo = i = promptEnd;
+            }
+            else {
+                i++;
+            }
+        }
+        if (resultBuilder==null) {
+            return rawOutput;
+        }
+        return resultBuilder.append(rawOutput, copiedUpTo, rawOutput.length()).toString();
     }
 
     /**
@@ -74,20 +96,37 @@ public final class MaximaOutputUtilities {
         Assert.notNull(inchar, "inchar");
         Assert.notNull(outchar, "outchar");
 
-        /* Strip out any intermediate input prompts.
+        /* Scan up to the first output prompt, stripping out any intermediate input prompts.
          * (These appear in certain Lisp/OS combinations.) */
-        final String withoutInputPrompts = stripIntermediateInputPrompts(rawOutput, inchar);
-
-        /* Now split on output prompt */
-        final Pattern extractPattern = Pattern.compile("(?sm)(.*?)(\\(\\Q" + outchar + "\\E\\d+\\))\\s*(.*?)\\s*");
-        final Matcher matcher = extractPattern.matcher(withoutInputPrompts);
-        if (!matcher.matches()) {
+        final int length = rawOutput.length();
+        final StringBuilder outputBuilder = new StringBuilder();
+        String outputPrompt = null;
+        int position = 0;
+        int promptEnd;
+        char c;
+        while (position < length) {
+            c = rawOutput.charAt(position);
+            if (c=='(') {
+                if ((promptEnd = matchPrompt(rawOutput, position, inchar))!=-1) {
+                    position = promptEnd;
+                    continue;
+                }
+                if ((promptEnd = matchPrompt(rawOutput, position, outchar))!=-1) {
+                    outputPrompt = rawOutput.substring(position, promptEnd);
+                    position = promptEnd;
+                    break;
+                }
+            }
+            outputBuilder.append(c);
+            position++;
+        }
+        if (outputPrompt==null) {
             return null;
         }
-        final String output = matcher.group(1);
-        final String outputPrompt = matcher.group(2);
-        final String result = parseLinearResult(matcher.group(3));
-        return new SingleLinearOutput(output, outputPrompt, result);
+
+        /* Everything else is the result, which we parse as we go */
+        final String result = parseLinearResult(rawOutput, position, inchar);
+        return new SingleLinearOutput(outputBuilder.toString(), outputPrompt, result);
     }
 
     public static String parseSingleLinearOutputResult(final String rawOutput) {
@@ -96,15 +135,92 @@ public final class MaximaOutputUtilities {
         return extracted!=null ? extracted.getResult() : null;
     }
 
+    /**
+     * Parses the raw output from a Maxima call containing any number of statements generating
+     * linear output, returning a {@link SingleLinearOutput} for each result in the order
+     * they were output.
+     *
+     * @see LinearOutputIterator
+     *
+     * @param rawOutput
+     */
+    public static List<SingleLinearOutput> parseMultipleLinearOutputs(final String rawOutput) {
+        Assert.notNull(rawOutput, "rawOutput");
+        return parseMultipleLinearOutputs(rawOutput, DEFAULT_INCHAR, DEFAULT_OUTCHAR);
+    }
+
+    public static List<SingleLinearOutput> parseMultipleLinearOutputs(final String rawOutput, final String inchar, final String outchar) {
+        final List<SingleLinearOutput> result = new ArrayList<SingleLinearOutput>();
+        final LinearOutputIterator iterator = new LinearOutputIterator(rawOutput, inchar, outchar);
+        while (iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
     public static String parseLinearResult(final String rawResult) {
         Assert.notNull(rawResult, "rawResult");
-        final StringBuilder resultBuilder = new StringBuilder();
+        final StringBuilder resultBuilder = new StringBuilder(rawResult.length());
+        appendLinearResult(resultBuilder, rawResult, 0, rawResult.length(), null);
+        return resultBuilder.toString();
+    }
+
+    /**
+     * Parses the raw linear result that starts at the given position within the raw output,
+     * ignoring any surrounding whitespace and intermediate input prompts.
+     */
+    private static String parseLinearResult(final String rawOutput, final int start, final String inchar) {
+        final int length = rawOutput.length();
+        int position = start;
+        int promptEnd;
+        while (position < length) {
+            if (isWhitespace(rawOutput.charAt(position))) {
+                position++;
+            }
+            else if ((promptEnd = matchPrompt(rawOutput, position, inchar))!=-1) {
+                position = promptEnd;
+            }
+            else {
+                break;
+            }
+        }
+        int end = length;
+        int promptStart;
+        while (end > position) {
+            if (isWhitespace(rawOutput.charAt(end - 1))) {
+                end--;
+            }
+            else if ((promptStart = matchPromptBefore(rawOutput, end, inchar))!=-1) {
+                end = promptStart;
+            }
+            else {
+                break;
+            }
+        }
+        final StringBuilder resultBuilder = new StringBuilder(Math.max(end - position, 0));
+        appendLinearResult(resultBuilder, rawOutput, position, end, inchar);
+        return resultBuilder.toString();
+    }
+
+    /**
+     * Appends the linear result in the given part of the raw output to the given builder,
+     * removing backslashes (and the newlines Maxima uses to split long lines).
+     *
+     * @param inchar if not null, then input prompts with this inchar are stripped out
+     */
+    private static void appendLinearResult(final StringBuilder resultBuilder, final String rawOutput,
+            final int start, final int end, final String inchar) {
         boolean isInString = false;
         boolean isCompletingBackslash = false;
+        int promptEnd;
         char c;
-        for (int i=0; i<rawResult.length(); i++) {
-            c = rawResult.charAt(i);
-            if (isCompletingBackslash) {
+        for (int i=start; i<end; i++) {
+            c = rawOutput.charAt(i);
+            if (c=='(' && inchar!=null && (promptEnd = matchPrompt(rawOutput, i, inchar))!=-1) {
+                /* Strip out intermediate input prompt */
+                i = promptEnd - 1;
+            }
+            else if (isCompletingBackslash) {
                 /* Only things I'd expect Maxima to backslash are line terminators and '"' */
 
                 /* (NB: I've only ever seen Maxima output single newlines as line terminators,
@@ -138,6 +254,56 @@ public final class MaximaOutputUtilities {
                 }
             }
         }
-        return resultBuilder.toString();
+    }
+
+    /**
+     * Checks whether there is a prompt like <code>(%i12)</code> at the given position
+     * within the given String, using the given prompt character(s) (e.g. <code>%i</code>).
+     *
+     * @return index just after the end of the prompt, or -1 if there is no prompt here.
+     */
+    static int matchPrompt(final String string, final int position, final String promptChar) {
+        final int labelEnd = position + 1 + promptChar.length();
+        if (labelEnd >= string.length()
+                || string.charAt(position)!='('
+                || !string.startsWith(promptChar, position + 1)) {
+            return -1;
+        }
+        int i = labelEnd;
+        while (i < string.length() && string.charAt(i)>='0' && string.charAt(i)<='9') {
+            i++;
+        }
+        if (i==labelEnd || i==string.length() || string.charAt(i)!=')') {
+            return -1;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Checks whether there is a prompt like <code>(%i12)</code> ending just before the given
+     * position within the given String.
+     *
+     * @return index of the start of the prompt, or -1 if there is no prompt here.
+     */
+    static int matchPromptBefore(final String string, final int end, final String promptChar) {
+        if (end < 1 || string.charAt(end - 1)!=')') {
+            return -1;
+        }
+        int i = end - 1;
+        while (i > 0 && string.charAt(i - 1)>='0' && string.charAt(i - 1)<='9') {
+            i--;
+        }
+        final int promptStart = i - promptChar.length() - 1;
+        if (i==end - 1 || promptStart < 0
+                || string.charAt(promptStart)!='('
+                || !string.startsWith(promptChar, promptStart + 1)) {
+            return -1;
+        }
+        return promptStart;
+    }
+
+    /** (Same as the regular expression <code>\s</code>) */
+    static boolean isWhitespace(final char c) {
+        return c==' ' || c=='\t' || c=='\n' || c=='\u000B' || c=='\f' || c=='\r';
     }
 }
@@ -0,0 +1,103 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CachingMaximaInteractiveProcess} class.
+ *
+ * @author David McKain
+ */
+public class CachingMaximaInteractiveProcessTest extends MaximaProcessLauncherTestBase {
+
+    protected MemoryMaximaCallCache callCache;
+    protected CachingMaximaInteractiveProcess maximaInteractiveProcess;
+
+    @Before
+    public void setup() {
+        super.init();
+        callCache = new MemoryMaximaCallCache();
+        maximaInteractiveProcess = new CachingMaximaInteractiveProcess(maximaProcessLauncher.launchInteractiveProcess(), callCache);
+    }
+
+    @After
+    public void cleanup() {
+        if (maximaInteractiveProcess!=null) {
+            maximaInteractiveProcess.terminate();
+            maximaInteractiveProcess = null;
+        }
+    }
+
+    @Test
+    public void testCacheableCall() throws Exception {
+        final String output = maximaInteractiveProcess.executeCacheableCall("string(1 + 1);");
+        Assert.assertNotNull(output);
+        Assert.assertSame(output, maximaInteractiveProcess.executeCacheableCall("  string(1 +\n   1);  "));
+
+        final MaximaCallCacheStatistics statistics = callCache.getStatistics();
+        Assert.assertEquals(1L, statistics.getHitCount());
+        Assert.assertEquals(1L, statistics.getMissCount());
+    }
+
+    @Test
+    public void testUncachedCall() throws Exception {
+        maximaInteractiveProcess.executeCall("string(1+1);");
+        Assert.assertEquals(0, callCache.getStatistics().getSize());
+    }
+
+    @Test
+    public void testStringsNotNormalised() throws Exception {
+        final String output = maximaInteractiveProcess.executeCacheableCall("print(\"a  b\");");
+        Assert.assertNotEquals(output, maximaInteractiveProcess.executeCacheableCall("print(\"a b\");"));
+        Assert.assertEquals(2, callCache.getStatistics().getSize());
+    }
+
+    @Test
+    public void testNormaliseCallInput() {
+        Assert.assertEquals("1;", CachingMaximaInteractiveProcess.normaliseCallInput("1;"));
+        Assert.assertEquals("f(x, y);", CachingMaximaInteractiveProcess.normaliseCallInput(" f(x,\r\n\t y);\n"));
+        Assert.assertEquals("\"a  \\\"  b\" c;", CachingMaximaInteractiveProcess.normaliseCallInput("\"a  \\\"  b\"   c;"));
+    }
+
+    @Test(expected=MaximaProcessTerminatedException.class)
+    public void testCachedCallAfterTerminate() throws Exception {
+        maximaInteractiveProcess.executeCacheableCall("1;");
+        maximaInteractiveProcess.terminate();
+        maximaInteractiveProcess.executeCacheableCall("1;");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCacheableCallNull() throws Exception {
+        maximaInteractiveProcess.executeCacheableCall(null);
+    }
+}
@@ -0,0 +1,164 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link DiskMaximaCallCache} class.
+ *
+ * @author David McKain
+ */
+public class DiskMaximaCallCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MaximaConfiguration maximaConfiguration;
+    private File cacheFile;
+    private DiskMaximaCallCache cache;
+
+    @Before
+    public void setup() throws Exception {
+        maximaConfiguration = new MaximaConfiguration();
+        maximaConfiguration.setMaximaExecutablePath("/usr/bin/maxima");
+        maximaConfiguration.setMaximaCharset("UTF-8");
+        cacheFile = new File(temporaryFolder.getRoot(), "cache.dat");
+        cache = new DiskMaximaCallCache(cacheFile, maximaConfiguration);
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        cache.close();
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        Assert.assertNull(cache.getCachedOutput("1;"));
+        cache.cacheOutput("1;", "(%o1) 1");
+        Assert.assertEquals("(%o1) 1", cache.getCachedOutput("1;"));
+
+        final MaximaCallCacheStatistics statistics = cache.getStatistics();
+        Assert.assertEquals(1L, statistics.getHitCount());
+        Assert.assertEquals(1L, statistics.getMissCount());
+        Assert.assertEquals(1, statistics.getSize());
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        cache.cacheOutput("a;", "1");
+        cache.cacheOutput("b;", "\u00e9\u03c0\u2200");
+        cache.cacheOutput("a;", "2");
+        cache.close();
+
+        cache = new DiskMaximaCallCache(cacheFile, maximaConfiguration);
+        Assert.assertEquals(2, cache.getStatistics().getSize());
+        Assert.assertEquals("2", cache.getCachedOutput("a;"));
+        Assert.assertEquals("\u00e9\u03c0\u2200", cache.getCachedOutput("b;"));
+    }
+
+    @Test
+    public void testDifferentConfiguration() throws Exception {
+        cache.cacheOutput("a;", "1");
+        cache.close();
+
+        final MaximaConfiguration otherConfiguration = new MaximaConfiguration(maximaConfiguration);
+        otherConfiguration.setMaximaCommandArguments(new String[] { "-l", "sbcl" });
+        Assert.assertNotEquals(DiskMaximaCallCache.createConfigurationFingerprint(maximaConfiguration),
+                DiskMaximaCallCache.createConfigurationFingerprint(otherConfiguration));
+        cache = new DiskMaximaCallCache(cacheFile, otherConfiguration);
+        Assert.assertNull(cache.getCachedOutput("a;"));
+    }
+
+    @Test
+    public void testIncompleteEntryDiscarded() throws Exception {
+        cache.cacheOutput("a;", "1");
+        cache.cacheOutput("b;", "2");
+        cache.close();
+
+        /* Chop off the end of the last entry, as if the JVM died while writing it */
+        final RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+        try {
+            file.setLength(file.length() - 3);
+        }
+        finally {
+            file.close();
+        }
+
+        cache = new DiskMaximaCallCache(cacheFile, maximaConfiguration);
+        Assert.assertEquals("1", cache.getCachedOutput("a;"));
+        Assert.assertNull(cache.getCachedOutput("b;"));
+
+        /* New entries should go after the last complete one */
+        cache.cacheOutput("c;", "3");
+        cache.close();
+        cache = new DiskMaximaCallCache(cacheFile, maximaConfiguration);
+        Assert.assertEquals(2, cache.getStatistics().getSize());
+        Assert.assertEquals("3", cache.getCachedOutput("c;"));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        cache.cacheOutput("a;", "1");
+        cache.clear();
+        Assert.assertNull(cache.getCachedOutput("a;"));
+        cache.close();
+
+        cache = new DiskMaximaCallCache(cacheFile, maximaConfiguration);
+        Assert.assertEquals(0, cache.getStatistics().getSize());
+    }
+
+    @Test(expected=JacomaxRuntimeException.class)
+    public void testNotCacheFile() throws Exception {
+        final File otherFile = temporaryFolder.newFile("other.dat");
+        final FileOutputStream outputStream = new FileOutputStream(otherFile);
+        try {
+            outputStream.write("Hello".getBytes("US-ASCII"));
+        }
+        finally {
+            outputStream.close();
+        }
+        new DiskMaximaCallCache(otherFile, maximaConfiguration);
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testClosed() throws Exception {
+        cache.close();
+        cache.getCachedOutput("a;");
+    }
+}
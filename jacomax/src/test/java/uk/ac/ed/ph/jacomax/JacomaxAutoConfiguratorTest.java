@@ -0,0 +1,194 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link JacomaxAutoConfigurator} class, using fake Maxima installs.
+ *
+ * @author David McKain
+ */
+public class JacomaxAutoConfiguratorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File prefixFolder;
+    private File maximaScript;
+    private MaximaConfiguration maximaConfiguration;
+    private Map<String, String> systemEnvironment;
+
+    @Before
+    public void setup() throws IOException {
+        Assume.assumeTrue(File.separatorChar=='/');
+        prefixFolder = temporaryFolder.newFolder("maxima").getCanonicalFile();
+        maximaScript = createFile("bin/maxima", true);
+        maximaConfiguration = new MaximaConfiguration();
+        maximaConfiguration.setMaximaExecutablePath(maximaScript.getPath());
+        systemEnvironment = new HashMap<String, String>();
+        systemEnvironment.put("HOME", new File(prefixFolder, "home").getPath());
+    }
+
+    @Test
+    public void testReadMaximaScriptSettings() throws IOException {
+        writeMaximaScript("#!/bin/sh",
+                "setup_vars() {",
+                "  MAXIMA_VERSION=\"5.45.1\"",
+                "  MAXIMA_DEFAULT_LISP=sbcl",
+                "  MAXIMA_TARGET=\"$MAXIMA_VERSION\"",
+                "}");
+        final Map<String, String> settings = JacomaxAutoConfigurator.readMaximaScriptSettings(maximaScript);
+        Assert.assertEquals("5.45.1", settings.get("MAXIMA_VERSION"));
+        Assert.assertEquals("sbcl", settings.get("MAXIMA_DEFAULT_LISP"));
+        Assert.assertEquals(2, settings.size());
+    }
+
+    @Test
+    public void testSbcl() throws IOException {
+        writeMaximaScript("MAXIMA_VERSION=\"5.45.1\"", "MAXIMA_DEFAULT_LISP=sbcl");
+        createFile("lib/maxima/5.47.0/binary-sbcl/maxima.core", false);
+        final File core = createFile("lib/maxima/5.45.1/binary-sbcl/maxima.core", false);
+        final File sbcl = createFile("bin/sbcl", true);
+        Assert.assertTrue(JacomaxAutoConfigurator.findLinuxLispRuntime(maximaConfiguration, maximaScript, systemEnvironment));
+        Assert.assertEquals(sbcl.getPath(), maximaConfiguration.getMaximaExecutablePath());
+        Assert.assertEquals(Arrays.asList("--core", core.getPath(), "--noinform", "--end-runtime-options",
+                "--eval", "(cl-user::run)", "--end-toplevel-options"),
+                Arrays.asList(maximaConfiguration.getMaximaCommandArguments()));
+        Assert.assertEquals("MAXIMA_PREFIX=" + prefixFolder.getPath(), maximaConfiguration.getMaximaRuntimeEnvironment()[0]);
+    }
+
+    @Test
+    public void testGcl() throws IOException {
+        writeMaximaScript("MAXIMA_VERSION=5.45.1", "MAXIMA_DEFAULT_LISP=gcl");
+        final File gclExecutable = createFile("lib/maxima/5.45.1/binary-gcl/maxima", true);
+        Assert.assertTrue(JacomaxAutoConfigurator.findLinuxLispRuntime(maximaConfiguration, maximaScript, systemEnvironment));
+        Assert.assertEquals(gclExecutable.getPath(), maximaConfiguration.getMaximaExecutablePath());
+        Assert.assertEquals(Arrays.asList("-eval", "(cl-user::run)", "-f", "--"),
+                Arrays.asList(maximaConfiguration.getMaximaCommandArguments()));
+        Assert.assertEquals("MAXIMA_PREFIX=" + prefixFolder.getPath(), maximaConfiguration.getMaximaRuntimeEnvironment()[0]);
+    }
+
+    @Test
+    public void testMaximaLispHonoured() throws IOException {
+        writeMaximaScript("MAXIMA_VERSION=5.45.1", "MAXIMA_DEFAULT_LISP=sbcl");
+        createFile("lib/maxima/5.45.1/binary-sbcl/maxima.core", false);
+        createFile("bin/sbcl", true);
+        final File gclExecutable = createFile("lib/maxima/5.45.1/binary-gcl/maxima", true);
+        systemEnvironment.put("MAXIMA_LISP", "gcl");
+        Assert.assertTrue(JacomaxAutoConfigurator.findLinuxLispRuntime(maximaConfiguration, maximaScript, systemEnvironment));
+        Assert.assertEquals(gclExecutable.getPath(), maximaConfiguration.getMaximaExecutablePath());
+    }
+
+    @Test
+    public void testMaximarcHonoured() throws IOException {
+        writeMaximaScript("MAXIMA_VERSION=5.45.1", "MAXIMA_DEFAULT_LISP=gcl");
+        createFile("lib/maxima/5.45.1/binary-gcl/maxima", true);
+        createFile("home/.maxima/maximarc", false);
+        assertScriptUnchanged();
+    }
+
+    @Test
+    public void testUnsupportedLisp() throws IOException {
+        writeMaximaScript("MAXIMA_VERSION=5.45.1", "MAXIMA_DEFAULT_LISP=ecl");
+        createFile("lib/maxima/5.45.1/binary-gcl/maxima", true);
+        assertScriptUnchanged();
+    }
+
+    @Test
+    public void testNoLispImage() throws IOException {
+        writeMaximaScript("MAXIMA_VERSION=5.45.1", "MAXIMA_DEFAULT_LISP=sbcl");
+        createFile("lib/maxima/5.45.1/share/README", false);
+        createFile("bin/sbcl", true);
+        assertScriptUnchanged();
+    }
+
+    @Test
+    public void testUnreadableScript() throws IOException {
+        createFile("lib/maxima/5.45.1/binary-gcl/maxima", true);
+        assertScriptUnchanged();
+    }
+
+    @Test
+    public void testLispRuntimeEnvironment() {
+        final Map<String, String> environment = new HashMap<String, String>();
+        environment.put("PATH", "/bin");
+        environment.put("LANG", "en_GB.UTF-8");
+        environment.put("LC_CTYPE", "en_GB.UTF-8");
+        environment.put("MAXIMA_USERDIR", "/tmp/maxima");
+        environment.put("DISPLAY", ":0");
+        environment.put("MAXIMA_PREFIX", "/somewhere/else");
+        Assert.assertEquals(Arrays.asList("MAXIMA_PREFIX=" + prefixFolder.getAbsolutePath(),
+                "DISPLAY=:0", "LANG=en_GB.UTF-8", "LC_CTYPE=en_GB.UTF-8", "MAXIMA_USERDIR=/tmp/maxima", "PATH=/bin"),
+                Arrays.asList(JacomaxAutoConfigurator.createLispRuntimeEnvironment(prefixFolder, environment)));
+    }
+
+    private void assertScriptUnchanged() {
+        Assert.assertFalse(JacomaxAutoConfigurator.findLinuxLispRuntime(maximaConfiguration, maximaScript, systemEnvironment));
+        Assert.assertEquals(maximaScript.getPath(), maximaConfiguration.getMaximaExecutablePath());
+        Assert.assertNull(maximaConfiguration.getMaximaRuntimeEnvironment());
+    }
+
+    private void writeMaximaScript(final String... lines) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(maximaScript), "UTF-8");
+        try {
+            for (final String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private File createFile(final String relativePath, final boolean executable) throws IOException {
+        final File file = new File(prefixFolder, relativePath);
+        Assert.assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Assert.assertTrue(file.createNewFile());
+        if (executable) {
+            Assert.assertTrue(file.setExecutable(true));
+        }
+        return file;
+    }
+}
@@ -0,0 +1,112 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import uk.ac.ed.ph.jacomax.utilities.MaximaOutputUtilities;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the asynchronous call methods of {@link MaximaInteractiveProcess}.
+ *
+ * @author David McKain
+ */
+public class MaximaInteractiveProcessAsyncTest extends MaximaProcessLauncherTestBase {
+
+    protected MaximaInteractiveProcess maximaInteractiveProcess;
+
+    @Before
+    public void setup() {
+        super.init();
+
+        /* Start process */
+        maximaInteractiveProcess = maximaProcessLauncher.launchInteractiveProcess();
+    }
+
+    @After
+    public void cleanup() {
+        /* Kill process so we have a clean slate each time */
+        if (maximaInteractiveProcess!=null) {
+            maximaInteractiveProcess.terminate();
+            maximaInteractiveProcess = null;
+        }
+    }
+
+    @Test
+    public void testAsyncCall() throws Exception {
+        final CompletableFuture<String> result = maximaInteractiveProcess.executeCallAsync("1;");
+        Assert.assertEquals("1", MaximaOutputUtilities.parseSingleLinearOutputResult(result.get(10, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void testAsyncSequence() throws Exception {
+        for (int i=0; i<100; i++) {
+            final String result = maximaInteractiveProcess.executeCallAsync(i + ";").get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(String.valueOf(i), MaximaOutputUtilities.parseSingleLinearOutputResult(result));
+        }
+    }
+
+    @Test
+    public void testAsyncDiscardOutput() throws Exception {
+        maximaInteractiveProcess.executeCallDiscardOutputAsync("1;").get(10, TimeUnit.SECONDS);
+        Assert.assertFalse(maximaInteractiveProcess.isTerminated());
+    }
+
+    @Test
+    public void testAsyncTimeout() throws Exception {
+        final CompletableFuture<String> result = maximaInteractiveProcess.executeCallAsync("for i: 1 while true do 1;", 1);
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected ExecutionException");
+        }
+        catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof MaximaTimeoutException);
+        }
+        Assert.assertTrue(maximaInteractiveProcess.isTerminated());
+    }
+
+    @Test
+    public void testAsyncCancel() throws Exception {
+        final CompletableFuture<String> result = maximaInteractiveProcess.executeCallAsync("for i: 1 while true do 1;", 0);
+        Assert.assertTrue(result.cancel(true));
+        Assert.assertTrue(maximaInteractiveProcess.isTerminated());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testAsyncUnterminatedInput() throws Exception {
+        maximaInteractiveProcess.executeCallAsync("0");
+    }
+}
@@ -29,6 +29,15 @@
 package uk.ac.ed.ph.jacomax;
 
 import uk.ac.ed.ph.jacomax.utilities.MaximaOutputUtilities;
+import uk.ac.ed.ph.jacomax.utilities.SingleLinearOutput;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -98,4 +107,147 @@ public class MaximaInteractiveProcessOutputTest extends MaximaProcessLauncherTes
         /* (Maxima splits the raw output, which gets rejoined by our code) */
         doSingleOutputCall("60!", "8320987112741390144276341183223364380754172606361245952449277696409600000000000000");
     }
+
+    @Test
+    public void testMultipleResults() throws Exception {
+        final String rawOutput = maximaInteractiveProcess.executeCall("1; simp:false$ string(1+x); 60!;");
+        final List<SingleLinearOutput> results = MaximaOutputUtilities.parseMultipleLinearOutputs(rawOutput);
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals("1", results.get(0).getResult());
+        Assert.assertEquals("1+x", results.get(1).getResult());
+        Assert.assertEquals("8320987112741390144276341183223364380754172606361245952449277696409600000000000000", results.get(2).getResult());
+    }
+
+    @Test
+    public void testPipelinedCalls() throws Exception {
+        final List<String> inputs = new ArrayList<String>();
+        for (int i=0; i<50; i++) {
+            inputs.add(i + ";");
+        }
+        final List<String> results = maximaInteractiveProcess.executeCalls(inputs);
+        Assert.assertEquals(inputs.size(), results.size());
+        for (int i=0; i<inputs.size(); i++) {
+            Assert.assertEquals(String.valueOf(i), MaximaOutputUtilities.parseSingleLinearOutputResult(results.get(i)));
+        }
+
+        /* Make sure process is still usable afterwards */
+        doSingleOutputCall("60", "60");
+    }
+
+    @Test
+    public void testPipelinedCallsMatchSequentialCalls() throws Exception {
+        final List<String> inputs = Arrays.asList("x: 6$", "simp:false$ string(1+x);", "60!;", "print(\"hello\")$");
+        final List<String> pipelinedResults = maximaInteractiveProcess.executeCalls(inputs);
+        maximaInteractiveProcess.softReset();
+
+        final List<String> sequentialResults = new ArrayList<String>();
+        for (final String input : inputs) {
+            sequentialResults.add(maximaInteractiveProcess.executeCall(input));
+        }
+        Assert.assertEquals(sequentialResults.size(), pipelinedResults.size());
+        for (int i=0; i<inputs.size(); i++) {
+            Assert.assertEquals(normaliseOutput(sequentialResults.get(i)), normaliseOutput(pipelinedResults.get(i)));
+        }
+    }
+
+    private static String normaliseOutput(final String rawOutput) {
+        /* (Output labels will differ, so we strip them out before comparing) */
+        return MaximaOutputUtilities.stripIntermediateInputPrompts(rawOutput).replaceAll("\\(%o\\d+\\)", "");
+    }
+
+    @Test
+    public void testPipelinedCallsWithBadCommand() throws Exception {
+        final List<String> results = maximaInteractiveProcess.executeCalls(Arrays.asList("1;", "+;", "3;"));
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals("1", MaximaOutputUtilities.parseSingleLinearOutputResult(results.get(0)));
+        Assert.assertEquals("3", MaximaOutputUtilities.parseSingleLinearOutputResult(results.get(2)));
+    }
+
+    @Test
+    public void testPipelinedCallsEmpty() throws Exception {
+        Assert.assertTrue(maximaInteractiveProcess.executeCalls(new ArrayList<String>()).isEmpty());
+    }
+
+    @Test
+    public void testStreamedOutput() throws Exception {
+        final StringWriter outputWriter = new StringWriter();
+        maximaInteractiveProcess.executeCall("60!;", outputWriter);
+        Assert.assertEquals("8320987112741390144276341183223364380754172606361245952449277696409600000000000000",
+                MaximaOutputUtilities.parseSingleLinearOutputResult(outputWriter.toString()));
+
+        /* Make sure process is still usable afterwards */
+        doSingleOutputCall("1", "1");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testStreamedOutputNull() throws Exception {
+        maximaInteractiveProcess.executeCall("1;", null);
+    }
+
+    @Test
+    public void testStreamedOutputFailure() throws Exception {
+        final Appendable failingOutput = new Appendable() {
+            public Appendable append(final CharSequence csq, final int start, final int end) throws IOException {
+                throw new IOException("Output failed");
+            }
+
+            public Appendable append(final char c) throws IOException {
+                throw new IOException("Output failed");
+            }
+
+            public Appendable append(final CharSequence csq) throws IOException {
+                throw new IOException("Output failed");
+            }
+        };
+        try {
+            maximaInteractiveProcess.executeCall("1;", failingOutput);
+            Assert.fail("Expected JacomaxRuntimeException");
+        }
+        catch (final JacomaxRuntimeException e) {
+            /* Expected */
+        }
+        Assert.assertTrue(maximaInteractiveProcess.isTerminated());
+    }
+
+    @Test
+    public void testStreamedOutputBlocked() throws Exception {
+        /* Output that gets stuck for much longer than the call timeout */
+        final CountDownLatch release = new CountDownLatch(1);
+        final Appendable blockingOutput = new Appendable() {
+            public Appendable append(final CharSequence csq, final int start, final int end) throws IOException {
+                return block();
+            }
+
+            public Appendable append(final char c) throws IOException {
+                return block();
+            }
+
+            public Appendable append(final CharSequence csq) throws IOException {
+                return block();
+            }
+
+            private Appendable block() throws IOException {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                catch (final InterruptedException e) {
+                    throw new IOException("Interrupted");
+                }
+                return this;
+            }
+        };
+        final long startTime = System.nanoTime();
+        try {
+            maximaInteractiveProcess.executeCall("1;", blockingOutput, 500, TimeUnit.MILLISECONDS);
+            Assert.fail("Expected MaximaTimeoutException");
+        }
+        catch (final MaximaTimeoutException e) {
+            /* Expected */
+        }
+        finally {
+            release.countDown();
+        }
+        Assert.assertTrue("Timeout was held up by blocked output", System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(5));
+        Assert.assertTrue(maximaInteractiveProcess.isTerminated());
+    }
 }
@@ -28,7 +28,11 @@
  */
 package uk.ac.ed.ph.jacomax;
 
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -99,6 +103,34 @@ public class MaximaInteractiveProcessTest extends MaximaProcessLauncherTestBase
         maximaInteractiveProcess.executeCall("for i: 1 while true do 1;", 1);
     }
 
+    @Test
+    public void testSubSecondTimeout() throws Exception {
+        try {
+            maximaInteractiveProcess.executeCall("for i: 1 while true do 1;", 300, TimeUnit.MILLISECONDS);
+            Assert.fail("Expected MaximaTimeoutException");
+        }
+        catch (final MaximaTimeoutException e) {
+            Assert.assertEquals(300L, e.getTimeout(TimeUnit.MILLISECONDS));
+            Assert.assertEquals(1, e.getTimeoutSeconds());
+        }
+        Assert.assertTrue(maximaInteractiveProcess.isTerminated());
+    }
+
+    @Test
+    public void testSubSecondDefaultTimeout() throws Exception {
+        maximaInteractiveProcess.setDefaultCallTimeout(300, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(300L, maximaInteractiveProcess.getDefaultCallTimeout(TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, maximaInteractiveProcess.getDefaultCallTimeout());
+        maximaInteractiveProcess.executeCall("1;");
+        try {
+            maximaInteractiveProcess.executeCall("for i: 1 while true do 1;");
+            Assert.fail("Expected MaximaTimeoutException");
+        }
+        catch (final MaximaTimeoutException e) {
+            Assert.assertEquals(300L, e.getTimeout(TimeUnit.MILLISECONDS));
+        }
+    }
+
     /**
      * Makes sure we can do a Lisp call successfully.
      */
@@ -126,4 +158,44 @@ public class MaximaInteractiveProcessTest extends MaximaProcessLauncherTestBase
     public void testBadCommand() throws Exception {
         maximaInteractiveProcess.executeCall("+;");
     }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testPipelinedCallsNull() throws Exception {
+        maximaInteractiveProcess.executeCalls(null);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testPipelinedCallsUnterminatedInput() throws Exception {
+        maximaInteractiveProcess.executeCalls(Arrays.asList("1;", "0"));
+    }
+
+    @Test
+    public void testPipelinedCallsDiscardOutput() throws Exception {
+        maximaInteractiveProcess.executeCallsDiscardOutput(Arrays.asList("1;", ":lisp (princ 1)", "+;", "2$"));
+        maximaInteractiveProcess.executeCall("1;");
+    }
+
+    @Test(expected=MaximaTimeoutException.class)
+    public void testPipelinedCallsTimeout() throws Exception {
+        maximaInteractiveProcess.executeCalls(Arrays.asList("1;", "for i: 1 while true do 1;"), 1);
+    }
+
+    @Test
+    public void testPing() throws Exception {
+        Assert.assertTrue(maximaInteractiveProcess.isAlive());
+        Assert.assertTrue(maximaInteractiveProcess.ping(5, TimeUnit.SECONDS));
+        maximaInteractiveProcess.executeCall("1;");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testPingWithoutTimeout() throws Exception {
+        maximaInteractiveProcess.ping(0, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testPingAfterTerminate() throws Exception {
+        maximaInteractiveProcess.terminate();
+        Assert.assertFalse(maximaInteractiveProcess.isAlive());
+        Assert.assertFalse(maximaInteractiveProcess.ping(5, TimeUnit.SECONDS));
+    }
 }
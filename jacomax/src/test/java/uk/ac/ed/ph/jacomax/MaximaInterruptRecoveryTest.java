@@ -0,0 +1,150 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import uk.ac.ed.ph.jacomax.internal.ProcessSupport;
+import uk.ac.ed.ph.jacomax.utilities.MaximaOutputUtilities;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that calls which time out are interrupted rather than killing Maxima when
+ * {@link MaximaConfiguration#isInterruptOnTimeout()} is set.
+ *
+ * @author David McKain
+ */
+public class MaximaInterruptRecoveryTest extends MaximaProcessLauncherTestBase {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected MaximaInteractiveProcess maximaInteractiveProcess;
+
+    @Before
+    public void setup() {
+        Assume.assumeTrue(ProcessSupport.isInterruptSupported());
+        super.init();
+
+        /* Start process */
+        maximaInteractiveProcess = maximaProcessLauncher.launchInteractiveProcess();
+    }
+
+    @After
+    public void cleanup() {
+        /* Kill process so we have a clean slate each time */
+        if (maximaInteractiveProcess!=null) {
+            maximaInteractiveProcess.terminate();
+            maximaInteractiveProcess = null;
+        }
+    }
+
+    @Override
+    protected void customiseConfiguration(final MaximaConfiguration configuration) {
+        configuration.setInterruptOnTimeout(true);
+        configuration.setInterruptRecoveryTimeout(5, TimeUnit.SECONDS);
+        configuration.setDefaultCallTimeout(2, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testInterruptedCallRecovers() throws Exception {
+        try {
+            maximaInteractiveProcess.executeCall("for i: 1 while true do 1;", 1);
+            Assert.fail("Expected MaximaTimeoutException");
+        }
+        catch (final MaximaTimeoutException e) {
+            /* Expected */
+        }
+        Assert.assertFalse(maximaInteractiveProcess.isTerminated());
+        Assert.assertEquals("2", MaximaOutputUtilities.parseSingleLinearOutputResult(maximaInteractiveProcess.executeCall("2;")));
+        Assert.assertEquals(1L, maximaProcessLauncher.getMetrics().getTimedOutCallCount());
+    }
+
+    @Test
+    public void testInterruptedAsyncCallRecovers() throws Exception {
+        final CompletableFuture<String> result = maximaInteractiveProcess.executeCallAsync("for i: 1 while true do 1;", 1);
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected ExecutionException");
+        }
+        catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof MaximaTimeoutException);
+        }
+        Assert.assertFalse(maximaInteractiveProcess.isTerminated());
+        Assert.assertEquals("3", MaximaOutputUtilities.parseSingleLinearOutputResult(maximaInteractiveProcess.executeCallAsync("3;").get(10, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void testRepeatedInterrupts() throws Exception {
+        for (int i=0; i<3; i++) {
+            try {
+                maximaInteractiveProcess.executeCall("for i: 1 while true do 1;", 200, TimeUnit.MILLISECONDS);
+                Assert.fail("Expected MaximaTimeoutException");
+            }
+            catch (final MaximaTimeoutException e) {
+                /* Expected */
+            }
+            Assert.assertEquals(String.valueOf(i), MaximaOutputUtilities.parseSingleLinearOutputResult(maximaInteractiveProcess.executeCall(i + ";")));
+        }
+    }
+
+    @Test
+    public void testSnapshotLoadTimeoutTerminatesProcess() throws Exception {
+        /* Create a "snapshot" that never finishes loading, but which can be interrupted */
+        final File snapshotFile = temporaryFolder.newFile("loop.lisp");
+        final Writer writer = new FileWriter(snapshotFile);
+        try {
+            writer.write("(loop)\n");
+        }
+        finally {
+            writer.close();
+        }
+        final long liveProcessCount = maximaProcessLauncher.getMetrics().getLiveProcessCount();
+        try {
+            maximaProcessLauncher.launchInteractiveProcessFromSnapshot(new MaximaSessionSnapshot(snapshotFile));
+            Assert.fail("Expected JacomaxRuntimeException");
+        }
+        catch (final JacomaxRuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof MaximaTimeoutException);
+        }
+        Assert.assertEquals(liveProcessCount, maximaProcessLauncher.getMetrics().getLiveProcessCount());
+    }
+}
@@ -0,0 +1,173 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.RuntimeMBeanException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the JMX MBeans registered for {@link MaximaProcessLauncher}, {@link MaximaInteractiveProcess}
+ * and {@link MaximaProcessPool}.
+ *
+ * @author David McKain
+ */
+public class MaximaJmxTest extends MaximaProcessLauncherTestBase {
+
+    private MBeanServer mbeanServer;
+    private ObjectName launcherMBeanName;
+    private MaximaInteractiveProcess maximaInteractiveProcess;
+
+    @Before
+    public void setup() {
+        super.init();
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        launcherMBeanName = maximaProcessLauncher.registerMBeans("test");
+        maximaInteractiveProcess = maximaProcessLauncher.launchInteractiveProcess();
+    }
+
+    @After
+    public void cleanup() {
+        if (maximaInteractiveProcess!=null) {
+            maximaInteractiveProcess.terminate();
+            maximaInteractiveProcess = null;
+        }
+        maximaProcessLauncher.unregisterMBeans();
+    }
+
+    @Test
+    public void testLauncherMBean() throws Exception {
+        Assert.assertEquals(new ObjectName("uk.ac.ed.ph.jacomax:type=MaximaProcessLauncher,name=test"), launcherMBeanName);
+        Assert.assertTrue(mbeanServer.isRegistered(launcherMBeanName));
+
+        maximaInteractiveProcess.executeCall("1;");
+        Assert.assertEquals(Long.valueOf(1L), mbeanServer.getAttribute(launcherMBeanName, "LiveProcessCount"));
+        Assert.assertEquals(Long.valueOf(1L), mbeanServer.getAttribute(launcherMBeanName, "CallCount"));
+        Assert.assertEquals("SUCCEEDED", mbeanServer.getAttribute(launcherMBeanName, "LastCallOutcome"));
+        Assert.assertTrue(((Double) mbeanServer.getAttribute(launcherMBeanName, "LastCallMillis")).doubleValue() > 0.0);
+        Assert.assertTrue(((Long) mbeanServer.getAttribute(launcherMBeanName, "OutputBytes")).longValue() > 0L);
+
+        maximaProcessLauncher.unregisterMBeans();
+        Assert.assertFalse(mbeanServer.isRegistered(launcherMBeanName));
+        Assert.assertNull(maximaProcessLauncher.getMBeanName());
+    }
+
+    @Test
+    public void testProcessMBean() throws Exception {
+        final ObjectName processMBeanName = getProcessMBeanName();
+        Assert.assertEquals("test", processMBeanName.getKeyProperty("launcher"));
+        Assert.assertEquals(Boolean.FALSE, mbeanServer.getAttribute(processMBeanName, "Busy"));
+        Assert.assertNull(mbeanServer.getAttribute(processMBeanName, "TerminationReason"));
+        Assert.assertEquals(Double.valueOf(-1.0), mbeanServer.getAttribute(processMBeanName, "LastCallMillis"));
+
+        maximaInteractiveProcess.executeCall("1;");
+        Assert.assertEquals(Long.valueOf(1L), mbeanServer.getAttribute(processMBeanName, "CallCount"));
+
+        mbeanServer.invoke(processMBeanName, "softReset", null, null);
+        Assert.assertFalse(maximaInteractiveProcess.isTerminated());
+
+        mbeanServer.invoke(processMBeanName, "terminate", null, null);
+        Assert.assertTrue(maximaInteractiveProcess.isTerminated());
+        Assert.assertEquals(MaximaTerminationReason.TERMINATED, maximaInteractiveProcess.getTerminationReason());
+        Assert.assertFalse(mbeanServer.isRegistered(processMBeanName));
+    }
+
+    @Test
+    public void testTimeoutTerminationReason() throws Exception {
+        final ObjectName processMBeanName = getProcessMBeanName();
+        try {
+            maximaInteractiveProcess.executeCall("sleep(5)$", 1);
+            Assert.fail("Expected MaximaTimeoutException");
+        }
+        catch (final MaximaTimeoutException e) {
+            /* Expected */
+        }
+        Assert.assertEquals(MaximaTerminationReason.CALL_TIMED_OUT, maximaInteractiveProcess.getTerminationReason());
+        Assert.assertFalse(mbeanServer.isRegistered(processMBeanName));
+        Assert.assertEquals(Long.valueOf(1L), mbeanServer.getAttribute(launcherMBeanName, "TimedOutCallCount"));
+    }
+
+    @Test
+    public void testPoolMBean() throws Exception {
+        final MaximaProcessPoolConfiguration poolConfiguration = new MaximaProcessPoolConfiguration();
+        poolConfiguration.setMinPoolSize(1);
+        poolConfiguration.setWarmPoolSize(0);
+        final MaximaProcessPool pool = new MaximaProcessPool(maximaProcessLauncher, poolConfiguration);
+        try {
+            final ObjectName poolMBeanName = pool.registerMBean("test pool");
+            final MaximaInteractiveProcess process = pool.borrowProcess();
+            Assert.assertEquals(Integer.valueOf(1), mbeanServer.getAttribute(poolMBeanName, "BorrowedProcessCount"));
+            pool.returnProcess(process);
+            Assert.assertEquals(Integer.valueOf(0), mbeanServer.getAttribute(poolMBeanName, "BorrowedProcessCount"));
+            Assert.assertEquals(Integer.valueOf(1), mbeanServer.getAttribute(poolMBeanName, "IdleProcessCount"));
+
+            pool.shutdown();
+            Assert.assertFalse(mbeanServer.isRegistered(poolMBeanName));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPooledProcessSoftResetRefused() throws Exception {
+        /* (Get rid of the standalone process so that the pooled one is the only process MBean) */
+        maximaInteractiveProcess.terminate();
+        maximaInteractiveProcess = null;
+
+        final MaximaProcessPoolConfiguration poolConfiguration = new MaximaProcessPoolConfiguration();
+        poolConfiguration.setMinPoolSize(1);
+        poolConfiguration.setWarmPoolSize(-1);
+        final MaximaProcessPool pool = new MaximaProcessPool(maximaProcessLauncher, poolConfiguration);
+        try {
+            mbeanServer.invoke(getProcessMBeanName(), "softReset", null, null);
+            Assert.fail("Expected RuntimeMBeanException");
+        }
+        catch (final RuntimeMBeanException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private ObjectName getProcessMBeanName() throws Exception {
+        final ObjectName pattern = new ObjectName("uk.ac.ed.ph.jacomax:type=MaximaInteractiveProcess,launcher=test,*");
+        final Object[] names = mbeanServer.queryNames(pattern, null).toArray();
+        Assert.assertEquals(1, names.length);
+        return (ObjectName) names[0];
+    }
+}
@@ -0,0 +1,90 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MaximaLatencyHistogram} class.
+ *
+ * @author David McKain
+ */
+public class MaximaLatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        final MaximaLatencyHistogram histogram = new MaximaLatencyHistogram();
+        Assert.assertEquals(0L, histogram.getCount());
+        Assert.assertEquals(0L, histogram.getPercentileNanos(50.0));
+        Assert.assertEquals(0.0, histogram.getMeanNanos(), 0.0);
+    }
+
+    @Test
+    public void testBuckets() {
+        final Random random = new Random(42L);
+        for (int i=0; i<100000; i++) {
+            final long value = random.nextLong() >>> (1 + random.nextInt(63));
+            final int index = MaximaLatencyHistogram.bucketIndex(value);
+            Assert.assertTrue(value <= MaximaLatencyHistogram.bucketUpperBound(index));
+            if (index > 0) {
+                Assert.assertTrue(value > MaximaLatencyHistogram.bucketUpperBound(index - 1));
+            }
+        }
+        Assert.assertEquals(Long.MAX_VALUE, MaximaLatencyHistogram.bucketUpperBound(MaximaLatencyHistogram.bucketIndex(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final MaximaLatencyHistogram histogram = new MaximaLatencyHistogram();
+        for (int i=1; i<=1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(-1L); /* (Ignored) */
+        Assert.assertEquals(1000L, histogram.getCount());
+        Assert.assertEquals(1000000L, histogram.getMaxNanos());
+        Assert.assertEquals(500500.0, histogram.getMeanNanos(), 0.0);
+        assertWithinBucket(500000L, histogram.getPercentileNanos(50.0));
+        assertWithinBucket(990000L, histogram.getPercentileNanos(99.0));
+        Assert.assertEquals(1000000L, histogram.getPercentileNanos(100.0));
+        assertWithinBucket(1000L, histogram.getPercentileNanos(0.0));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadPercentile() {
+        new MaximaLatencyHistogram().getPercentileNanos(101.0);
+    }
+
+    private static void assertWithinBucket(final long expected, final long actual) {
+        Assert.assertTrue("Expected about " + expected + " but got " + actual,
+                actual >= expected && actual <= expected + expected / 8);
+    }
+}
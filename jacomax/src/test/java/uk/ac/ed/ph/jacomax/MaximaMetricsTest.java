@@ -0,0 +1,171 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MaximaMetrics} recorded for {@link MaximaInteractiveProcess}es, and that
+ * {@link MaximaInstrumentation} gets told about things.
+ *
+ * @author David McKain
+ */
+public class MaximaMetricsTest extends MaximaProcessLauncherTestBase {
+
+    protected List<String> events;
+    protected MaximaInteractiveProcess maximaInteractiveProcess;
+
+    @Before
+    public void setup() {
+        super.init();
+        events = Collections.synchronizedList(new ArrayList<String>());
+        maximaProcessLauncher.setInstrumentation(new MaximaInstrumentation() {
+            public void processStarted(final long processNumber) {
+                events.add("started");
+            }
+
+            public void processReady(final long processNumber, final long startupNanos) {
+                events.add("ready");
+            }
+
+            public void callCompleted(final long processNumber, final MaximaCallMetrics callMetrics) {
+                events.add("call:" + callMetrics.getOutcome());
+            }
+
+            public void processTerminated(final long processNumber, final long lifetimeNanos, final boolean forciblyDestroyed) {
+                events.add("terminated");
+            }
+        });
+        maximaInteractiveProcess = maximaProcessLauncher.launchInteractiveProcess();
+    }
+
+    @After
+    public void cleanup() {
+        if (maximaInteractiveProcess!=null) {
+            maximaInteractiveProcess.terminate();
+            maximaInteractiveProcess = null;
+        }
+    }
+
+    @Test
+    public void testCall() throws Exception {
+        maximaInteractiveProcess.executeCall("1;");
+
+        final MaximaMetrics metrics = maximaInteractiveProcess.getMetrics();
+        Assert.assertEquals(1L, metrics.getProcessesStarted());
+        Assert.assertEquals(1L, metrics.getStartupHistogram().getCount());
+        Assert.assertEquals(1L, metrics.getCallCount());
+        Assert.assertEquals(0L, metrics.getFailedCallCount());
+        Assert.assertTrue(metrics.getInputBytes() > 0L);
+        Assert.assertTrue(metrics.getOutputBytes() > 0L);
+        Assert.assertEquals(1L, metrics.getInputWrittenHistogram().getCount());
+        Assert.assertEquals(1L, metrics.getFirstOutputHistogram().getCount());
+        Assert.assertTrue(metrics.getCallHistogram().getMaxNanos() >= metrics.getFirstOutputHistogram().getMaxNanos());
+        Assert.assertEquals(2L, maximaProcessLauncher.getMetrics().getStartupHistogram().getCount()
+                + maximaProcessLauncher.getMetrics().getCallCount());
+
+        maximaInteractiveProcess.terminate();
+        Assert.assertEquals(1L, metrics.getProcessesTerminated());
+        Assert.assertEquals(0L, metrics.getLiveProcessCount());
+        Assert.assertEquals(1L, metrics.getLifetimeHistogram().getCount());
+        Assert.assertEquals("[started, ready, call:SUCCEEDED, terminated]", events.toString());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        try {
+            maximaInteractiveProcess.executeCall("sleep(5)$", 1);
+            Assert.fail("Expected MaximaTimeoutException");
+        }
+        catch (final MaximaTimeoutException e) {
+            /* Expected */
+        }
+        final MaximaMetrics metrics = maximaInteractiveProcess.getMetrics();
+        Assert.assertEquals(1L, metrics.getTimedOutCallCount());
+        Assert.assertEquals(1L, metrics.getProcessesTerminated());
+        /* (The process is terminated before the call is reported, so we don't check the ordering here) */
+        Assert.assertTrue(events.contains("call:TIMED_OUT"));
+        Assert.assertTrue(events.contains("terminated"));
+    }
+
+    @Test
+    public void testLauncherMetrics() throws Exception {
+        final MaximaInteractiveProcess otherProcess = maximaProcessLauncher.launchInteractiveProcess();
+        try {
+            otherProcess.executeCall("1;");
+            maximaInteractiveProcess.executeCall("1;");
+            maximaInteractiveProcess.executeCall("2;");
+        }
+        finally {
+            otherProcess.terminate();
+        }
+        Assert.assertEquals(2L, maximaInteractiveProcess.getMetrics().getCallCount());
+        Assert.assertEquals(1L, otherProcess.getMetrics().getCallCount());
+        final MaximaMetrics launcherMetrics = maximaProcessLauncher.getMetrics();
+        Assert.assertEquals(2L, launcherMetrics.getProcessesStarted());
+        Assert.assertEquals(1L, launcherMetrics.getLiveProcessCount());
+        Assert.assertEquals(3L, launcherMetrics.getCallCount());
+    }
+
+    @Test
+    public void testFailingInstrumentation() throws Exception {
+        maximaProcessLauncher.setInstrumentation(new MaximaInstrumentation() {
+            public void processStarted(final long processNumber) {
+                throw new RuntimeException("Boom");
+            }
+
+            public void processReady(final long processNumber, final long startupNanos) {
+                throw new RuntimeException("Boom");
+            }
+
+            public void callCompleted(final long processNumber, final MaximaCallMetrics callMetrics) {
+                throw new RuntimeException("Boom");
+            }
+
+            public void processTerminated(final long processNumber, final long lifetimeNanos, final boolean forciblyDestroyed) {
+                throw new RuntimeException("Boom");
+            }
+        });
+        final MaximaInteractiveProcess otherProcess = maximaProcessLauncher.launchInteractiveProcess();
+        try {
+            otherProcess.executeCall("1;");
+        }
+        finally {
+            otherProcess.terminate();
+        }
+        Assert.assertEquals(1L, otherProcess.getMetrics().getCallCount());
+    }
+}
@@ -0,0 +1,133 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link MaximaInteractiveProcess#isAlive()} and {@link MaximaInteractiveProcess#ping(long, TimeUnit)}
+ * notice when the underlying Maxima process dies by itself.
+ *
+ * @author David McKain
+ */
+public class MaximaProcessDeathTest extends MaximaProcessLauncherTestBase {
+
+    private File wrapperScript;
+    private File pidFile;
+
+    protected MaximaInteractiveProcess maximaInteractiveProcess;
+
+    @Before
+    public void setup() throws IOException {
+        Assume.assumeTrue(new File("/bin/sh").canExecute());
+        wrapperScript = File.createTempFile("jacomax-wrapper", ".sh");
+        pidFile = File.createTempFile("jacomax-pid", ".txt");
+        super.init();
+
+        /* Start process */
+        maximaInteractiveProcess = maximaProcessLauncher.launchInteractiveProcess();
+    }
+
+    @After
+    public void cleanup() {
+        /* Kill process so we have a clean slate each time */
+        if (maximaInteractiveProcess!=null) {
+            maximaInteractiveProcess.terminate();
+            maximaInteractiveProcess = null;
+        }
+        if (wrapperScript!=null) {
+            wrapperScript.delete();
+            wrapperScript = null;
+        }
+        if (pidFile!=null) {
+            pidFile.delete();
+            pidFile = null;
+        }
+    }
+
+    /**
+     * Runs Maxima via a shell script that records its PID before <code>exec</code>ing Maxima,
+     * so that we can kill Maxima behind Jacomax's back.
+     */
+    @Override
+    protected void customiseConfiguration(final MaximaConfiguration configuration) {
+        try {
+            final Writer writer = new FileWriter(wrapperScript);
+            try {
+                writer.write("#!/bin/sh\necho $$ > '" + pidFile.getPath().replace("'", "'\\''") + "'\n"
+                        + "exec '" + configuration.getMaximaExecutablePath().replace("'", "'\\''") + "' \"$@\"\n");
+            }
+            finally {
+                writer.close();
+            }
+        }
+        catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        Assume.assumeTrue(wrapperScript.setExecutable(true));
+        configuration.setMaximaExecutablePath(wrapperScript.getPath());
+    }
+
+    @Test
+    public void testProcessDied() throws Exception {
+        Assert.assertTrue(maximaInteractiveProcess.ping(5, TimeUnit.SECONDS));
+        killMaxima();
+        for (int i=0; i<100 && maximaInteractiveProcess.isAlive(); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertFalse(maximaInteractiveProcess.isAlive());
+        Assert.assertTrue(maximaInteractiveProcess.isTerminated());
+        Assert.assertEquals(MaximaTerminationReason.PROCESS_DIED, maximaInteractiveProcess.getTerminationReason());
+        Assert.assertFalse(maximaInteractiveProcess.ping(5, TimeUnit.SECONDS));
+    }
+
+    private void killMaxima() throws IOException, InterruptedException {
+        final BufferedReader reader = new BufferedReader(new FileReader(pidFile));
+        final String pid;
+        try {
+            pid = reader.readLine().trim();
+        }
+        finally {
+            reader.close();
+        }
+        Assert.assertEquals(0, Runtime.getRuntime().exec(new String[] { "kill", "-9", pid }).waitFor());
+    }
+}
@@ -39,6 +39,15 @@ public abstract class MaximaProcessLauncherTestBase {
 
     public void init() {
         final MaximaConfiguration configuration = IntegrationTestUtilities.getMaximaConfiguration();
+        customiseConfiguration(configuration);
         maximaProcessLauncher = new MaximaProcessLauncher(configuration);
     }
+
+    /**
+     * Subclasses may override this to tweak the {@link MaximaConfiguration} before the
+     * {@link MaximaProcessLauncher} is created.
+     */
+    protected void customiseConfiguration(final MaximaConfiguration configuration) {
+        /* (Nothing to do by default) */
+    }
 }
@@ -0,0 +1,294 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link MaximaProcessPool} class.
+ *
+ * @author David McKain
+ */
+public class MaximaProcessPoolTest extends MaximaProcessLauncherTestBase {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected MaximaProcessPool maximaProcessPool;
+
+    @Before
+    public void setup() {
+        super.init();
+
+        final MaximaProcessPoolConfiguration poolConfiguration = new MaximaProcessPoolConfiguration();
+        poolConfiguration.setMinPoolSize(1);
+        poolConfiguration.setMaxPoolSize(1);
+        poolConfiguration.setDefaultBorrowTimeout(1);
+        maximaProcessPool = new MaximaProcessPool(maximaProcessLauncher, poolConfiguration);
+    }
+
+    @After
+    public void cleanup() {
+        if (maximaProcessPool!=null) {
+            maximaProcessPool.shutdown();
+            maximaProcessPool = null;
+        }
+    }
+
+    @Test
+    public void testBorrowAndReturn() throws Exception {
+        Assert.assertEquals(1, maximaProcessPool.getIdleProcessCount());
+        final MaximaInteractiveProcess process = maximaProcessPool.borrowProcess();
+        Assert.assertEquals(0, maximaProcessPool.getIdleProcessCount());
+        Assert.assertEquals(1, maximaProcessPool.getBorrowedProcessCount());
+        process.executeCall("1;");
+        maximaProcessPool.returnProcess(process);
+        Assert.assertEquals(1, maximaProcessPool.getIdleProcessCount());
+
+        /* (Process should get reused) */
+        Assert.assertSame(process, maximaProcessPool.borrowProcess());
+    }
+
+    @Test(expected=MaximaProcessPoolExhaustedException.class)
+    public void testExhausted() throws Exception {
+        maximaProcessPool.borrowProcess();
+        maximaProcessPool.borrowProcess();
+    }
+
+    @Test
+    public void testTimedOutProcessReplaced() throws Exception {
+        final MaximaInteractiveProcess process = maximaProcessPool.borrowProcess();
+        try {
+            process.executeCall("for i: 1 while true do 1;", 1);
+            Assert.fail("Expected MaximaTimeoutException");
+        }
+        catch (final MaximaTimeoutException e) {
+            /* Expected */
+        }
+        maximaProcessPool.returnProcess(process);
+        Assert.assertEquals(1, maximaProcessPool.getPoolSize());
+
+        /* (Replacement is launched in the background, so wait for it rather than relying on the short borrow timeout) */
+        waitForIdleProcesses(1);
+        final MaximaInteractiveProcess replacement = maximaProcessPool.borrowProcess();
+        Assert.assertNotSame(process, replacement);
+        replacement.executeCall("1;");
+    }
+
+    @Test
+    public void testWarming() throws Exception {
+        maximaProcessPool.shutdown();
+
+        final MaximaProcessPoolConfiguration poolConfiguration = new MaximaProcessPoolConfiguration();
+        poolConfiguration.setMinPoolSize(-1);
+        poolConfiguration.setMaxPoolSize(3);
+        poolConfiguration.setWarmPoolSize(2);
+        maximaProcessPool = new MaximaProcessPool(maximaProcessLauncher, poolConfiguration);
+        waitForIdleProcesses(2);
+
+        /* Borrowing should cause a replacement to be warmed up */
+        maximaProcessPool.borrowProcess();
+        waitForIdleProcesses(2);
+        Assert.assertEquals(3, maximaProcessPool.getPoolSize());
+        Assert.assertEquals(0, maximaProcessPool.getWarmingProcessCount());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testReturnUnknownProcess() {
+        final MaximaInteractiveProcess process = maximaProcessLauncher.launchInteractiveProcess();
+        try {
+            maximaProcessPool.returnProcess(process);
+        }
+        finally {
+            process.terminate();
+        }
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testBorrowAfterShutdown() throws Exception {
+        maximaProcessPool.shutdown();
+        maximaProcessPool.borrowProcess();
+    }
+
+    @Test
+    public void testFailedInitialLaunchCleansUp() throws Exception {
+        Assume.assumeTrue(new File("/bin/sh").canExecute());
+        maximaProcessPool.shutdown();
+
+        /* Run Maxima via a script that stops itself being run again after its second launch */
+        final File launchCountFile = temporaryFolder.newFile("launches.txt");
+        final File wrapperScript = temporaryFolder.newFile("maxima.sh");
+        final MaximaConfiguration configuration = IntegrationTestUtilities.getMaximaConfiguration();
+        final Writer writer = new FileWriter(wrapperScript);
+        try {
+            writer.write("#!/bin/sh\necho launch >> '" + launchCountFile.getPath() + "'\n"
+                    + "if [ `wc -l < '" + launchCountFile.getPath() + "'` -ge 2 ]; then chmod -x \"$0\"; fi\n"
+                    + "exec '" + configuration.getMaximaExecutablePath() + "' \"$@\"\n");
+        }
+        finally {
+            writer.close();
+        }
+        Assume.assumeTrue(wrapperScript.setExecutable(true));
+        configuration.setMaximaExecutablePath(wrapperScript.getPath());
+        final MaximaProcessLauncher failingLauncher = new MaximaProcessLauncher(configuration);
+
+        final MaximaProcessPoolConfiguration poolConfiguration = createRecyclingPoolConfiguration();
+        poolConfiguration.setMinPoolSize(3);
+        poolConfiguration.setMaxPoolSize(3);
+        try {
+            maximaProcessPool = new MaximaProcessPool(failingLauncher, poolConfiguration);
+            Assert.fail("Expected pool creation to fail");
+        }
+        catch (final JacomaxRuntimeException e) {
+            /* Expected */
+        }
+        Assert.assertEquals(2, failingLauncher.getMetrics().getProcessesStarted());
+        Assert.assertEquals(0, failingLauncher.getMetrics().getLiveProcessCount());
+    }
+
+    @Test
+    public void testRecycleAfterMaxCalls() throws Exception {
+        final MaximaProcessPoolConfiguration poolConfiguration = createRecyclingPoolConfiguration();
+        poolConfiguration.setMaxCallsPerProcess(3);
+        poolConfiguration.setPingOnBorrow(true);
+        recreatePool(poolConfiguration);
+
+        /* (First use makes 2 calls. The pool's own pings and soft resets aren't counted) */
+        final MaximaInteractiveProcess process = maximaProcessPool.borrowProcess();
+        process.executeCall("1;");
+        process.executeCall("2;");
+        maximaProcessPool.returnProcess(process);
+        Assert.assertEquals(0L, maximaProcessPool.getRecycledProcessCount());
+
+        /* Second use takes it to 3, so it should be recycled on return */
+        Assert.assertSame(process, maximaProcessPool.borrowProcess());
+        process.executeCall("3;");
+        maximaProcessPool.returnProcess(process);
+        Assert.assertEquals(1L, maximaProcessPool.getRecycledProcessCount());
+        waitForTermination(process);
+
+        final MaximaInteractiveProcess replacement = maximaProcessPool.borrowProcess();
+        Assert.assertNotSame(process, replacement);
+        replacement.executeCall("1;");
+    }
+
+    @Test
+    public void testRecycleAfterMaxAge() throws Exception {
+        final MaximaProcessPoolConfiguration poolConfiguration = createRecyclingPoolConfiguration();
+        poolConfiguration.setMaxProcessAge(500, TimeUnit.MILLISECONDS);
+        recreatePool(poolConfiguration);
+
+        /* Process should get too old while idle, so will have been recycled by the time we borrow again */
+        final MaximaInteractiveProcess process = maximaProcessPool.borrowProcess();
+        maximaProcessPool.returnProcess(process);
+        Thread.sleep(600);
+        final MaximaInteractiveProcess replacement = maximaProcessPool.borrowProcess();
+        Assert.assertNotSame(process, replacement);
+        Assert.assertEquals(1L, maximaProcessPool.getRecycledProcessCount());
+        waitForTermination(process);
+    }
+
+    @Test
+    public void testIdleProcessRecycledInBackground() throws Exception {
+        final MaximaProcessPoolConfiguration poolConfiguration = createRecyclingPoolConfiguration();
+        poolConfiguration.setMaxProcessAge(500, TimeUnit.MILLISECONDS);
+        recreatePool(poolConfiguration);
+
+        /* Process should be retired and replaced without anyone borrowing it */
+        final MaximaInteractiveProcess process = maximaProcessPool.borrowProcess();
+        maximaProcessPool.returnProcess(process);
+        waitForTermination(process);
+        Assert.assertTrue(maximaProcessPool.getRecycledProcessCount() >= 1L);
+        waitForIdleProcesses(1);
+        Assert.assertEquals(1, maximaProcessPool.getPoolSize());
+    }
+
+    @Test
+    public void testRecycleAfterMaxResidentMemory() throws Exception {
+        final MaximaProcessPoolConfiguration poolConfiguration = createRecyclingPoolConfiguration();
+        poolConfiguration.setMaxResidentMemory(1L);
+        recreatePool(poolConfiguration);
+
+        final MaximaInteractiveProcess process = maximaProcessPool.borrowProcess();
+        Assume.assumeTrue(process.getUsage().getResidentMemoryBytes() > 0L);
+        maximaProcessPool.returnProcess(process);
+        Assert.assertEquals(1L, maximaProcessPool.getRecycledProcessCount());
+        waitForTermination(process);
+    }
+
+    @Test
+    public void testPingOnBorrow() throws Exception {
+        final MaximaProcessPoolConfiguration poolConfiguration = createRecyclingPoolConfiguration();
+        poolConfiguration.setPingOnBorrow(true);
+        recreatePool(poolConfiguration);
+
+        final MaximaInteractiveProcess process = maximaProcessPool.borrowProcess();
+        maximaProcessPool.returnProcess(process);
+        Assert.assertSame(process, maximaProcessPool.borrowProcess());
+        maximaProcessPool.returnProcess(process);
+    }
+
+    private MaximaProcessPoolConfiguration createRecyclingPoolConfiguration() {
+        final MaximaProcessPoolConfiguration poolConfiguration = new MaximaProcessPoolConfiguration();
+        poolConfiguration.setMinPoolSize(1);
+        poolConfiguration.setMaxPoolSize(1);
+        poolConfiguration.setDefaultBorrowTimeout(10);
+        return poolConfiguration;
+    }
+
+    private void recreatePool(final MaximaProcessPoolConfiguration poolConfiguration) {
+        maximaProcessPool.shutdown();
+        maximaProcessPool = new MaximaProcessPool(maximaProcessLauncher, poolConfiguration);
+    }
+
+    private void waitForTermination(final MaximaInteractiveProcess process) throws InterruptedException {
+        for (int i=0; i<100 && !process.isTerminated(); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(process.isTerminated());
+    }
+
+    private void waitForIdleProcesses(final int expected) throws InterruptedException {
+        for (int i=0; i<100 && maximaProcessPool.getIdleProcessCount()<expected; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(expected, maximaProcessPool.getIdleProcessCount());
+    }
+}
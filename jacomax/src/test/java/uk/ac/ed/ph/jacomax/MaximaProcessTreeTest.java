@@ -0,0 +1,124 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import uk.ac.ed.ph.jacomax.internal.ProcessTree;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that child processes started by Maxima (as happens when Maxima is run via a wrapper
+ * script) are cleaned up when a {@link MaximaInteractiveProcess} is terminated.
+ *
+ * @author David McKain
+ */
+public class MaximaProcessTreeTest extends MaximaProcessLauncherTestBase {
+
+    private File wrapperScript;
+
+    protected MaximaInteractiveProcess maximaInteractiveProcess;
+
+    @Before
+    public void setup() throws IOException {
+        Assume.assumeTrue(ProcessTree.isDescendantsSupported());
+        Assume.assumeTrue(new File("/bin/sh").canExecute());
+        wrapperScript = File.createTempFile("jacomax-wrapper", ".sh");
+        super.init();
+
+        /* Start process */
+        maximaInteractiveProcess = maximaProcessLauncher.launchInteractiveProcess();
+    }
+
+    @After
+    public void cleanup() {
+        /* Kill process so we have a clean slate each time */
+        if (maximaInteractiveProcess!=null) {
+            maximaInteractiveProcess.terminate();
+            maximaInteractiveProcess = null;
+        }
+        if (wrapperScript!=null) {
+            wrapperScript.delete();
+            wrapperScript = null;
+        }
+    }
+
+    /**
+     * Runs Maxima via a shell script that doesn't <code>exec</code> it, so that Maxima ends up
+     * as a child of the process that Jacomax sees.
+     */
+    @Override
+    protected void customiseConfiguration(final MaximaConfiguration configuration) {
+        try {
+            final Writer writer = new FileWriter(wrapperScript);
+            try {
+                writer.write("#!/bin/sh\n'" + configuration.getMaximaExecutablePath().replace("'", "'\\''") + "' \"$@\"\n");
+            }
+            finally {
+                writer.close();
+            }
+        }
+        catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        Assume.assumeTrue(wrapperScript.setExecutable(true));
+        configuration.setMaximaExecutablePath(wrapperScript.getPath());
+        configuration.setTerminationGracePeriod(200, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testTimeoutReapsOrphan() throws Exception {
+        try {
+            maximaInteractiveProcess.executeCall("sleep(10);", 1);
+            Assert.fail("Expected MaximaTimeoutException");
+        }
+        catch (final MaximaTimeoutException e) {
+            /* Expected */
+        }
+        Assert.assertTrue(maximaInteractiveProcess.isTerminated());
+        Assert.assertEquals(1L, maximaProcessLauncher.getMetrics().getReapedOrphanCount());
+        Assert.assertEquals(1L, maximaProcessLauncher.getMetrics().getForcedDestroyCount());
+    }
+
+    @Test
+    public void testNormalTermination() throws Exception {
+        Assert.assertEquals(0, maximaInteractiveProcess.terminate());
+        Assert.assertEquals(0L, maximaProcessLauncher.getMetrics().getReapedOrphanCount());
+        Assert.assertEquals(0L, maximaProcessLauncher.getMetrics().getForcedDestroyCount());
+    }
+}
@@ -0,0 +1,106 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import uk.ac.ed.ph.jacomax.utilities.MaximaOutputUtilities;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests saving {@link MaximaSessionSnapshot}s and launching processes from them.
+ *
+ * @author David McKain
+ */
+public class MaximaSessionSnapshotTest extends MaximaProcessLauncherTestBase {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected MaximaInteractiveProcess maximaInteractiveProcess;
+    protected MaximaInteractiveProcess restoredProcess;
+
+    @Before
+    public void setup() {
+        super.init();
+        maximaInteractiveProcess = maximaProcessLauncher.launchInteractiveProcess();
+    }
+
+    @After
+    public void cleanup() {
+        if (maximaInteractiveProcess!=null) {
+            maximaInteractiveProcess.terminate();
+            maximaInteractiveProcess = null;
+        }
+        if (restoredProcess!=null) {
+            restoredProcess.terminate();
+            restoredProcess = null;
+        }
+    }
+
+    @Test
+    public void testSaveAndLaunch() throws Exception {
+        maximaInteractiveProcess.executeCallDiscardOutput("jacomaxSnapshotTest: 42$");
+        final File snapshotFile = new File(temporaryFolder.getRoot(), "snapshot \"1\".lisp");
+        final MaximaSessionSnapshot snapshot = maximaInteractiveProcess.saveSessionSnapshot(snapshotFile);
+        Assert.assertEquals(snapshotFile, snapshot.getFile());
+        Assert.assertTrue(snapshotFile.isFile());
+
+        restoredProcess = maximaProcessLauncher.launchInteractiveProcessFromSnapshot(snapshot);
+        Assert.assertEquals("42", MaximaOutputUtilities.parseSingleLinearOutput(restoredProcess.executeCall("string(jacomaxSnapshotTest);")).getResult());
+    }
+
+    @Test
+    public void testTemporaryFile() throws Exception {
+        final MaximaSessionSnapshot snapshot = maximaInteractiveProcess.saveSessionSnapshot(null);
+        try {
+            Assert.assertTrue(snapshot.getFile().isFile());
+        }
+        finally {
+            Assert.assertTrue(snapshot.delete());
+        }
+    }
+
+    @Test(expected=JacomaxRuntimeException.class)
+    public void testLaunchMissingSnapshot() {
+        restoredProcess = maximaProcessLauncher.launchInteractiveProcessFromSnapshot(new MaximaSessionSnapshot(new File(temporaryFolder.getRoot(), "missing.lisp")));
+    }
+
+    @Test(expected=MaximaProcessTerminatedException.class)
+    public void testSaveAfterTerminate() throws Exception {
+        maximaInteractiveProcess.terminate();
+        maximaInteractiveProcess.saveSessionSnapshot(null);
+    }
+}
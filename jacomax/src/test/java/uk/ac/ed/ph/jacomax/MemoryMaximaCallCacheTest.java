@@ -0,0 +1,144 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax;
+
+import uk.ac.ed.ph.jacomax.MaximaCallCacheConfiguration.EvictionPolicy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MemoryMaximaCallCache} class.
+ *
+ * @author David McKain
+ */
+public class MemoryMaximaCallCacheTest {
+
+    private static MemoryMaximaCallCache createCache(final int maxSize, final EvictionPolicy evictionPolicy,
+            final int timeToLive) {
+        final MaximaCallCacheConfiguration configuration = new MaximaCallCacheConfiguration();
+        configuration.setMaxSize(maxSize);
+        configuration.setEvictionPolicy(evictionPolicy);
+        configuration.setTimeToLive(timeToLive);
+        return new MemoryMaximaCallCache(configuration);
+    }
+
+    @Test
+    public void testDefaults() {
+        final MemoryMaximaCallCache cache = new MemoryMaximaCallCache();
+        Assert.assertEquals(MemoryMaximaCallCache.DEFAULT_MAX_SIZE, cache.getMaxSize());
+        Assert.assertEquals(EvictionPolicy.LRU, cache.getEvictionPolicy());
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        final MemoryMaximaCallCache cache = new MemoryMaximaCallCache();
+        Assert.assertNull(cache.getCachedOutput("1;"));
+        cache.cacheOutput("1;", "(%o1) 1");
+        Assert.assertEquals("(%o1) 1", cache.getCachedOutput("1;"));
+        Assert.assertEquals("(%o1) 1", cache.getCachedOutput("1;"));
+
+        final MaximaCallCacheStatistics statistics = cache.getStatistics();
+        Assert.assertEquals(2L, statistics.getHitCount());
+        Assert.assertEquals(1L, statistics.getMissCount());
+        Assert.assertEquals(1, statistics.getSize());
+        Assert.assertEquals(2.0 / 3.0, statistics.getHitRate(), 1E-9);
+    }
+
+    @Test
+    public void testReplace() {
+        final MemoryMaximaCallCache cache = createCache(2, EvictionPolicy.LFU, 0);
+        cache.cacheOutput("a;", "1");
+        cache.getCachedOutput("a;");
+        cache.cacheOutput("a;", "2");
+        Assert.assertEquals("2", cache.getCachedOutput("a;"));
+        Assert.assertEquals(1, cache.getStatistics().getSize());
+        Assert.assertEquals(0L, cache.getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void testLruEviction() {
+        final MemoryMaximaCallCache cache = createCache(2, EvictionPolicy.LRU, 0);
+        cache.cacheOutput("a;", "1");
+        cache.cacheOutput("b;", "2");
+        cache.getCachedOutput("a;"); /* ("b;" is now least recently used) */
+        cache.cacheOutput("c;", "3");
+
+        Assert.assertNull(cache.getCachedOutput("b;"));
+        Assert.assertEquals("1", cache.getCachedOutput("a;"));
+        Assert.assertEquals("3", cache.getCachedOutput("c;"));
+        Assert.assertEquals(1L, cache.getStatistics().getEvictionCount());
+        Assert.assertEquals(2, cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void testLfuEviction() {
+        final MemoryMaximaCallCache cache = createCache(2, EvictionPolicy.LFU, 0);
+        cache.cacheOutput("a;", "1");
+        cache.cacheOutput("b;", "2");
+        cache.getCachedOutput("a;");
+        cache.getCachedOutput("a;");
+        cache.getCachedOutput("b;"); /* ("b;" is most recently used but less frequently used) */
+        cache.cacheOutput("c;", "3");
+
+        Assert.assertNull(cache.getCachedOutput("b;"));
+        Assert.assertEquals("1", cache.getCachedOutput("a;"));
+        Assert.assertEquals("3", cache.getCachedOutput("c;"));
+
+        /* New entries are evicted first when frequencies are low */
+        cache.cacheOutput("d;", "4");
+        Assert.assertNull(cache.getCachedOutput("c;"));
+        Assert.assertEquals("1", cache.getCachedOutput("a;"));
+        Assert.assertEquals(2L, cache.getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        final MemoryMaximaCallCache cache = createCache(0, null, 1);
+        cache.cacheOutput("a;", "1");
+        Assert.assertEquals("1", cache.getCachedOutput("a;"));
+        Thread.sleep(1100L);
+        Assert.assertNull(cache.getCachedOutput("a;"));
+
+        final MaximaCallCacheStatistics statistics = cache.getStatistics();
+        Assert.assertEquals(1L, statistics.getExpirationCount());
+        Assert.assertEquals(1L, statistics.getMissCount());
+        Assert.assertEquals(0, statistics.getSize());
+    }
+
+    @Test
+    public void testClear() {
+        final MemoryMaximaCallCache cache = createCache(10, EvictionPolicy.LFU, 0);
+        cache.cacheOutput("a;", "1");
+        cache.cacheOutput("b;", "2");
+        cache.clear();
+        Assert.assertNull(cache.getCachedOutput("a;"));
+        Assert.assertEquals(0, cache.getStatistics().getSize());
+    }
+}
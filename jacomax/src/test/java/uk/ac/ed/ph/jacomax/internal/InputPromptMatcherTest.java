@@ -0,0 +1,90 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Tests for {@link InputPromptMatcher}
+ *
+ * @author David McKain
+ */
+@RunWith(Parameterized.class)
+public class InputPromptMatcherTest {
+
+    public static final Collection<Object[]> TEST_DATA = Arrays.asList(new Object[][] {
+            { "(%i1) ", Boolean.TRUE },
+            { "(%i123) ", Boolean.TRUE },
+            { "Banner\n(%i1) ", Boolean.TRUE },
+            { "(%i1) \r", Boolean.TRUE },
+            { "a(%i2) ", Boolean.TRUE },
+            { "(%x1) ", Boolean.TRUE },
+            { "(in1) ", Boolean.TRUE },
+            { "(dbm:1) ", Boolean.TRUE },
+            { "((%i1) ", Boolean.TRUE },
+            { "", Boolean.FALSE },
+            { "(%i1)", Boolean.FALSE },
+            { "(%i1) \n", Boolean.FALSE },
+            { "(%i1) x", Boolean.FALSE },
+            { "(%i) ", Boolean.FALSE },
+            { "(%i1)  ", Boolean.FALSE },
+            { "(%i1 ) ", Boolean.FALSE },
+            { "x) ", Boolean.FALSE },
+            { "(a)1) ", Boolean.FALSE }
+    });
+
+    @Parameters
+    public static Collection<Object[]> data() {
+        return TEST_DATA;
+    }
+
+    private final String output;
+    private final boolean expected;
+
+    public InputPromptMatcherTest(final String output, final Boolean expected) {
+        this.output = output;
+        this.expected = expected.booleanValue();
+    }
+
+    @Test
+    public void runTest() {
+        final InputPromptMatcher matcher = new InputPromptMatcher();
+        for (int i=0; i<output.length(); i++) {
+            matcher.feed(output.charAt(i));
+        }
+        Assert.assertEquals(Boolean.valueOf(expected), Boolean.valueOf(matcher.isPromptReached()));
+    }
+}
@@ -0,0 +1,125 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Tests for {@link InteractiveCallOutputHandler}, checking that the byte-level scanning
+ * used for ASCII-compatible charsets gives the same results as the character-level
+ * scanning used for other charsets, however the raw output happens to be split up.
+ *
+ * @author David McKain
+ */
+@RunWith(Parameterized.class)
+public class InteractiveCallOutputHandlerTest {
+
+    public static final Collection<Object[]> TEST_DATA = Arrays.asList(new Object[][] {
+            { "(%o1) 1\n(%i2) ABAC\n(%i3) ", new String[] { "ABAC" }, new String[] { "(%o1) 1\n(%i2) " } },
+            { "ABABAC\n(%i3) ", new String[] { "ABAC" }, new String[] { "AB" } },
+            { "AABAABAC rest\n(%i3) ", new String[] { "ABAC" }, new String[] { "AABA" } },
+            { "ABA\nABAC\n(%i3) ", new String[] { "ABAC" }, new String[] { "ABA\n" } },
+            { "x\r\ny\r\nABAC\r\n(%i3) ", new String[] { "ABAC" }, new String[] { "x\ny\n" } },
+            { "\u00e9\u4e2d\ud83d\ude00\nABAC\n(%i3) ", new String[] { "ABAC" }, new String[] { "\u00e9\u4e2d\ud83d\ude00\n" } },
+            { "(%o1) 1\nT-1\n(%i2) (%o2) 2\n(%i3) T-2\n(%i4) ", new String[] { "T-1", "T-2" }, new String[] { "(%o1) 1\n", "(%o2) 2\n(%i3) " } },
+            { "a(%i2) x: 1 (a) b) 2) ABAC\n(in3) ", new String[] { "ABAC" }, new String[] { "a(%i2) x: 1 (a) b) 2) " } },
+            { "T-1\n(dbm:1) (%o2) 2\nT-2\n(dbm:2) ", new String[] { "T-1", "T-2" }, new String[] { "", "(%o2) 2\n" } },
+            { "T-1\n(%i2) T-2\n(%i3) T-3\n(%i4) ", new String[] { "T-1", "T-2", "T-3" }, new String[] { "", "", "" } }
+    });
+
+    private static final int[] CHUNK_SIZES = { 1, 2, 3, 5, 7, 4096 };
+
+    @Parameters
+    public static Collection<Object[]> data() {
+        return TEST_DATA;
+    }
+
+    private final String rawOutput;
+    private final String[] terminators;
+    private final String[] expectedOutputs;
+
+    public InteractiveCallOutputHandlerTest(final String rawOutput, final String[] terminators, final String[] expectedOutputs) {
+        this.rawOutput = rawOutput;
+        this.terminators = terminators;
+        this.expectedOutputs = expectedOutputs;
+    }
+
+    @Test
+    public void testByteScanning() throws Exception {
+        for (final int chunkSize : CHUNK_SIZES) {
+            Assert.assertEquals(Arrays.asList(expectedOutputs), runHandler(Charset.forName("UTF-8"), chunkSize));
+        }
+    }
+
+    @Test
+    public void testCharacterScanning() throws Exception {
+        for (final int chunkSize : CHUNK_SIZES) {
+            Assert.assertEquals(Arrays.asList(expectedOutputs), runHandler(Charset.forName("UTF-16BE"), chunkSize));
+        }
+    }
+
+    private List<String> runHandler(final Charset charset, final int chunkSize) throws Exception {
+        final StringBuilder[] outputBuilders = new StringBuilder[terminators.length];
+        for (int i=0; i<outputBuilders.length; i++) {
+            outputBuilders[i] = new StringBuilder();
+        }
+        final InteractiveCallOutputHandler handler = new InteractiveCallOutputHandler(outputBuilders, terminators,
+                ByteBuffer.allocate(16), CharBuffer.allocate(16), charset.newDecoder());
+        final byte[] rawBytes = rawOutput.getBytes(charset.name());
+        final byte[] chunk = new byte[chunkSize];
+        boolean promptReached = false;
+        handler.callStarting();
+        for (int position=0; position<rawBytes.length; position+=chunkSize) {
+            final int length = Math.min(chunkSize, rawBytes.length - position);
+            System.arraycopy(rawBytes, position, chunk, 0, length);
+            Assert.assertFalse("Prompt detected too early", promptReached);
+            promptReached = handler.handleOutput(chunk, length, false);
+        }
+        handler.callFinished();
+        Assert.assertTrue("Prompt not detected", promptReached);
+
+        final List<String> result = new ArrayList<String>();
+        for (final StringBuilder outputBuilder : outputBuilders) {
+            result.add(outputBuilder.toString());
+        }
+        return result;
+    }
+}
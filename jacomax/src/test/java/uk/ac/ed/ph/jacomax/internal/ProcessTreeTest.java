@@ -0,0 +1,108 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ProcessTree}
+ *
+ * @author David McKain
+ */
+public class ProcessTreeTest {
+
+    private Process process;
+
+    @Before
+    public void setup() {
+        Assume.assumeTrue(ProcessTree.isDescendantsSupported());
+        Assume.assumeTrue(new File("/bin/sh").canExecute());
+    }
+
+    @After
+    public void cleanup() {
+        if (process!=null) {
+            process.destroyForcibly();
+            process = null;
+        }
+    }
+
+    @Test
+    public void testDestroyReapsOrphans() throws Exception {
+        process = new ProcessBuilder("/bin/sh", "-c", "sleep 300 & sleep 300 & wait").start();
+        final ProcessTree processTree = awaitDescendants(2);
+        Assert.assertEquals(2, processTree.destroy(TimeUnit.MILLISECONDS.toNanos(500)));
+        Assert.assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, ProcessTree.snapshot(process).getDescendantCount());
+    }
+
+    @Test
+    public void testDestroyEscalates() throws Exception {
+        process = new ProcessBuilder("/bin/sh", "-c", "trap '' TERM; sleep 300 & wait").start();
+        final ProcessTree processTree = awaitDescendants(1);
+        Assert.assertEquals(1, processTree.destroy(TimeUnit.MILLISECONDS.toNanos(200)));
+        Assert.assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDestroyExitedProcess() throws Exception {
+        process = new ProcessBuilder("/bin/sh", "-c", "exit 0").start();
+        final ProcessTree processTree = ProcessTree.snapshot(process);
+        Assert.assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, processTree.destroy(TimeUnit.MILLISECONDS.toNanos(200)));
+        Assert.assertEquals(0, process.exitValue());
+    }
+
+    @Test
+    public void testResourceUsage() throws Exception {
+        Assume.assumeTrue(new File("/proc/self/status").isFile());
+        process = new ProcessBuilder("/bin/sh", "-c", "sleep 300 & wait").start();
+        final ProcessTree processTree = awaitDescendants(1);
+        Assert.assertTrue(processTree.getResidentMemoryBytes() > 0L);
+        Assert.assertTrue(processTree.getCpuTimeNanos() >= 0L);
+    }
+
+    private ProcessTree awaitDescendants(final int descendantCount) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        ProcessTree result = ProcessTree.snapshot(process);
+        while (result.getDescendantCount() < descendantCount && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            result = ProcessTree.snapshot(process);
+        }
+        Assert.assertEquals(descendantCount, result.getDescendantCount());
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TimeoutSupport}
+ *
+ * @author David McKain
+ */
+public class TimeoutSupportTest {
+
+    @Test
+    public void testToSeconds() {
+        Assert.assertEquals(0, TimeoutSupport.toSeconds(0L));
+        Assert.assertEquals(1, TimeoutSupport.toSeconds(1L));
+        Assert.assertEquals(1, TimeoutSupport.toSeconds(TimeUnit.MILLISECONDS.toNanos(300)));
+        Assert.assertEquals(1, TimeoutSupport.toSeconds(TimeUnit.SECONDS.toNanos(1)));
+        Assert.assertEquals(2, TimeoutSupport.toSeconds(TimeUnit.MILLISECONDS.toNanos(1001)));
+        Assert.assertEquals(-1, TimeoutSupport.toSeconds(-1L));
+        Assert.assertEquals(-5, TimeoutSupport.toSeconds(TimeUnit.SECONDS.toNanos(-5)));
+        Assert.assertEquals(Integer.MAX_VALUE, TimeoutSupport.toSeconds(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testFormat() {
+        Assert.assertEquals("0s", TimeoutSupport.format(0L));
+        Assert.assertEquals("20s", TimeoutSupport.format(TimeUnit.SECONDS.toNanos(20)));
+        Assert.assertEquals("300ms", TimeoutSupport.format(TimeUnit.MILLISECONDS.toNanos(300)));
+        Assert.assertEquals("1500ms", TimeoutSupport.format(TimeUnit.MILLISECONDS.toNanos(1500)));
+        Assert.assertEquals("7us", TimeoutSupport.format(TimeUnit.MICROSECONDS.toNanos(7)));
+        Assert.assertEquals("123ns", TimeoutSupport.format(123L));
+        Assert.assertEquals("-1s", TimeoutSupport.format(TimeUnit.SECONDS.toNanos(-1)));
+    }
+
+    @Test
+    public void testParse() {
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(20), TimeoutSupport.parse("20"));
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(20), TimeoutSupport.parse(" 20s "));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(300), TimeoutSupport.parse("300ms"));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(300), TimeoutSupport.parse("300 ms"));
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(5), TimeoutSupport.parse("5us"));
+        Assert.assertEquals(5L, TimeoutSupport.parse("5ns"));
+        Assert.assertEquals(TimeUnit.MINUTES.toNanos(2), TimeoutSupport.parse("2m"));
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(-1), TimeoutSupport.parse("-1"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testParseBadUnit() {
+        TimeoutSupport.parse("5h");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testParseBadNumber() {
+        TimeoutSupport.parse("1.5s");
+    }
+}
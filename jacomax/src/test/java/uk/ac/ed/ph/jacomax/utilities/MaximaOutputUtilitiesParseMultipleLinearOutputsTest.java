@@ -0,0 +1,93 @@
+/* Copyright (c) 2010 - 2012, The University of Edinburgh.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice, this
+ *   list of conditions and the following disclaimer in the documentation and/or
+ *   other materials provided with the distribution.
+ * 
+ * * Neither the name of the University of Edinburgh nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.ac.ed.ph.jacomax.utilities;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MaximaOutputUtilities#parseMultipleLinearOutputs(String)} method
+ * and {@link LinearOutputIterator}.
+ *
+ * @author David McKain
+ */
+public class MaximaOutputUtilitiesParseMultipleLinearOutputsTest {
+
+    @Test
+    public void testEmpty() {
+        Assert.assertTrue(MaximaOutputUtilities.parseMultipleLinearOutputs("").isEmpty());
+    }
+
+    @Test
+    public void testNoResults() {
+        final LinearOutputIterator iterator = new LinearOutputIterator("Hello \n(%i2) ");
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals("Hello \n ", iterator.getTrailingOutput());
+    }
+
+    @Test
+    public void testSingleResult() {
+        final List<SingleLinearOutput> results = MaximaOutputUtilities.parseMultipleLinearOutputs("(%o1) 3\n");
+        Assert.assertEquals(1, results.size());
+        assertOutput("", "(%o1)", "3", results.get(0));
+    }
+
+    @Test
+    public void testMultipleResults() {
+        final LinearOutputIterator iterator = new LinearOutputIterator(
+                "(%o1) 1\n"
+                + "Hello \n"
+                + "(%i2) (%o2) \"a\\\nb\"\n"
+                + "(%o3) 123\\\n(%i4) 456\n"
+                + "Goodbye \n");
+        assertOutput("", "(%o1)", "1", iterator.next());
+        assertOutput("Hello \n ", "(%o2)", "\"a\nb\"", iterator.next());
+        assertOutput("", "(%o3)", "123 456", iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals("Goodbye \n", iterator.getTrailingOutput());
+    }
+
+    @Test
+    public void testCustomPrompts() {
+        final List<SingleLinearOutput> results = MaximaOutputUtilities.parseMultipleLinearOutputs(
+                "(in1) (out1) x\n(out2) \"(in2)\"\n", "in", "out");
+        Assert.assertEquals(2, results.size());
+        assertOutput(" ", "(out1)", "x", results.get(0));
+        assertOutput("", "(out2)", "\"\"", results.get(1));
+    }
+
+    private void assertOutput(final String expectedOutput, final String expectedOutputPrompt,
+            final String expectedResult, final SingleLinearOutput actual) {
+        Assert.assertEquals(expectedOutput, actual.getOutput());
+        Assert.assertEquals(expectedOutputPrompt, actual.getOutputPrompt());
+        Assert.assertEquals(expectedResult, actual.getResult());
+    }
+}
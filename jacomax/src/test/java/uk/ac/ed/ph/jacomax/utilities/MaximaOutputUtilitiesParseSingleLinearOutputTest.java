@@ -51,7 +51,14 @@ public class MaximaOutputUtilitiesParseSingleLinearOutputTest {
               "<math xmlns=\"http://www.w3.org/1998/Math/MathML\"> <mn>1</mn> </math>\n",
               "(%o2)",
               "false"
-            }
+            },
+            { "(%o1) 3\n", "", "(%o1)", "3" },
+            { "hello \n(%i2) (%o2) \"a\\\nb\"\n", "hello \n ", "(%o2)", "\"a\nb\"" },
+            { "(%o3) 123\\\n(%i4) 456 (%i5) \n", "", "(%o3)", "123 456" },
+            { "(%o4) 1\\\n", "", "(%o4)", "1" },
+            { "(%o5) \n(%i6) ", "", "(%o5)", "" },
+            { "(%o6) 1\n(%o7) 2\n", "", "(%o6)", "1\n(%o7) 2" },
+            { "no output prompt\n(%i2) ", null, null, null }
     });
 
     @Parameters